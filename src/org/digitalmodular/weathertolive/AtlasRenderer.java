@@ -26,11 +26,21 @@
  */
 package org.digitalmodular.weathertolive;
 
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -41,15 +51,40 @@ import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.function.IntPredicate;
 
 import net.jcip.annotations.GuardedBy;
 import org.jetbrains.annotations.Nullable;
 
+import org.digitalmodular.weathertolive.dataset.AnalogMap;
+import org.digitalmodular.weathertolive.dataset.AreaStatistics;
+import org.digitalmodular.weathertolive.dataset.CategoryMap;
+import org.digitalmodular.weathertolive.dataset.ClimateDataSet;
 import org.digitalmodular.weathertolive.dataset.DataSet;
+import org.digitalmodular.weathertolive.dataset.DistanceTransform;
 import org.digitalmodular.weathertolive.dataset.FilterDataSet;
+import org.digitalmodular.weathertolive.dataset.FilterExpression;
+import org.digitalmodular.weathertolive.dataset.FilterMasks;
+import org.digitalmodular.weathertolive.dataset.FilterState;
+import org.digitalmodular.weathertolive.dataset.KoppenClass;
+import org.digitalmodular.weathertolive.dataset.KoppenClassification;
+import org.digitalmodular.weathertolive.dataset.MonthMatches;
+import org.digitalmodular.weathertolive.dataset.Morphology;
+import org.digitalmodular.weathertolive.dataset.PixelValues;
+import org.digitalmodular.weathertolive.dataset.Region;
+import org.digitalmodular.weathertolive.dataset.RegionFinder;
+import org.digitalmodular.weathertolive.dataset.ScoreFunction;
+import org.digitalmodular.weathertolive.dataset.ScoreMap;
 import org.digitalmodular.weathertolive.util.AnimationFrame;
-import org.digitalmodular.weathertolive.util.ColorGradient;
+import org.digitalmodular.weathertolive.util.BitMaskUtilities;
+import org.digitalmodular.weathertolive.util.FramePool;
+import org.digitalmodular.weathertolive.util.GraphicsUtilities;
+import org.digitalmodular.weathertolive.util.MipMapUtilities;
+import org.digitalmodular.weathertolive.util.ParallelUtilities;
 import org.digitalmodular.weathertolive.util.RangeF;
+import org.digitalmodular.weathertolive.util.TileSource;
+import org.digitalmodular.weathertolive.util.ZoomPanel;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireAtLeast;
 import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
 import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireRange;
 
@@ -62,16 +97,185 @@ public class AtlasRenderer {
 	private static final AnimationFrame EMPTY_FRAME    = new AnimationFrame(
 			new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), FRAME_DURATION);
 
-	private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool();
+	/**
+	 * Two colors: Index 0 is transparent (not filtered), index 1 is the shade of filtered pixels.
+	 */
+	private static final IndexColorModel MASK_COLOR_MODEL = new IndexColorModel(
+			1, 2,
+			new byte[]{0, (byte)(DataSet.FILTER_SHADE >> 16)},
+			new byte[]{0, (byte)(DataSet.FILTER_SHADE >> 8)},
+			new byte[]{0, (byte)DataSet.FILTER_SHADE},
+			0);
+
+	/**
+	 * Two colors: Index 0 is sea, index 1 is land.
+	 */
+	private static final IndexColorModel ATLAS_COLOR_MODEL = new IndexColorModel(
+			1, 2,
+			new byte[]{(byte)(DataSet.SEA_BLUE >> 16), (byte)(DataSet.LAND_GREEN >> 16)},
+			new byte[]{(byte)(DataSet.SEA_BLUE >> 8), (byte)(DataSet.LAND_GREEN >> 8)},
+			new byte[]{(byte)DataSet.SEA_BLUE, (byte)DataSet.LAND_GREEN});
+
+	/**
+	 * The colors of the climate classes: Index 0 is sea, the rest are the {@link KoppenClass#getValue() values}.
+	 */
+	private static final IndexColorModel KOPPEN_COLOR_MODEL = makeKoppenColorModel();
+
+	/**
+	 * The colors of the climate regimes: Index 0 is sea, the rest are the regimes.
+	 */
+	private static final IndexColorModel CLUSTER_COLOR_MODEL = makeClusterColorModel();
+
+	/**
+	 * The background index that shows the climate classes instead of a parameter.
+	 */
+	public static final int KOPPEN_BACKGROUND  = -2;
+	/**
+	 * The background index that shows the climate regimes instead of a parameter.
+	 */
+	public static final int CLUSTER_BACKGROUND = -3;
+
+	/**
+	 * Number of colors in the palette of parameter backgrounds, including the sea color.
+	 */
+	private static final int PALETTE_SIZE = 256;
+
+	/**
+	 * The gradient of the score. Runs from dark (bad) to bright (good).
+	 */
+	private static final String SCORE_GRADIENT_FILENAME = "gradient-temperature.png";
+
+	/**
+	 * The {@link AnalogMap analog distance} at which the score gradient reaches its dark end. Closer places are
+	 * brighter.
+	 */
+	private static final float MAX_ANALOG_DISTANCE = 0.25f;
+
+	/**
+	 * Number of background frames to keep. One year of two parameters, so switching back and forth between two
+	 * sliders doesn't render anything.
+	 */
+	private static final int BACKGROUND_CACHE_SIZE = 24;
+
+	/**
+	 * Number of released masks to keep for reuse. With one mask per month on screen, and at most one being rendered
+	 * per month, this makes the pool double-buffered.
+	 */
+	private static final int MASK_POOL_SIZE = 12;
+
+	/**
+	 * Number of released score images (of each mipmap level) to keep for reuse. One is shown in all months, and at most
+	 * one more is being rendered, so one spare is enough.
+	 */
+	private static final int SCORE_POOL_SIZE = 1;
+
+	/**
+	 * Size of preview tiles, in pixels at their own level.
+	 */
+	private static final int TILE_SIZE       = 256;
+	/**
+	 * Number of preview tiles to keep (64 MB). Enough to cover a 4K screen at a few zoom levels.
+	 */
+	private static final int TILE_CACHE_SIZE = 256;
+
+	/**
+	 * Mipmap levels are made down to this width. Smaller screens just draw the smallest level scaled down.
+	 */
+	private static final int MIN_MIPMAP_WIDTH = 512;
+
+	/**
+	 * Height of the row bands that dirty regions are made of.
+	 */
+	private static final int DIRTY_BAND_HEIGHT = 16;
+
+	private static final ExecutorService EXECUTOR            = Executors.newCachedThreadPool();
+	private static final ExecutorService BACKGROUND_EXECUTOR = Executors.newFixedThreadPool(
+			ParallelUtilities.NUM_THREADS,
+			ParallelUtilities.newThreadFactory("render-background", Thread.MIN_PRIORITY));
 
 	private final Consumer<List<AnimationFrame>> renderUpdateCallback;
 
-	private @Nullable List<FilterDataSet> filterDataSets         = null;
-	private           AtomicInteger       currentMonth           = new AtomicInteger();
-	private           int                 backgroundDatasetIndex = -1;
-	private           boolean             aggregateYear          = false;
+	@SuppressWarnings("FieldHasSetterButNoGetter")
+	private @Nullable Runnable tilesUpdatedCallback = null;
+
+	private volatile @Nullable ClimateDataSet      climateDataSet         = null;
+	private volatile @Nullable List<FilterDataSet> filterDataSets         = null;
+	private final              AtomicInteger       currentMonth           = new AtomicInteger();
+	private                    int                 backgroundDatasetIndex = -1;
+	private                    boolean             aggregateYear          = false;
+	private volatile           int                 minMonths              = 0;
+
+	/**
+	 * The filter state of the current generation. Taken in {@link #dataChanged()}, so everything rendered for one
+	 * generation uses the same ranges, no matter how the sliders move in the meantime.
+	 */
+	private volatile @Nullable FilterState filterState = null;
+
+	/**
+	 * The months in which each pixel matches, of the last render that filtered each month separately.
+	 */
+	private volatile @Nullable MonthMatches monthMatches = null;
+
+	private volatile @Nullable ScoreFunction scoreFunction = null;
+	private volatile @Nullable ScoreMap      scoreMap      = null;
+
+	private volatile @Nullable Point     analogReference = null;
+	private volatile @Nullable AnalogMap analogMap       = null;
 
 	private final List<@Nullable AnimationFrame> imageSequence = new ArrayList<>(12);
+	/**
+	 * For each month, the {@link #getMaskKey(FilterState, boolean, int) mask key} of the mask on display, or -1.
+	 * Guarded by {@link #imageSequence}.
+	 */
+	private final long[]                         maskKeys      = new long[12];
+
+	private volatile @Nullable FramePool maskPool = null;
+	/**
+	 * One pool per mipmap level of the masks. Element 0 is level 1.
+	 */
+	private volatile List<FramePool>     maskMipMapPools = Collections.emptyList();
+
+	/**
+	 * One pool per mipmap level of the score and analog images. Element 0 is the full size.
+	 */
+	private volatile List<FramePool> scorePools = Collections.emptyList();
+
+	/**
+	 * The score or analog image that's shown, and its mipmaps, or an empty list. Guarded by {@link #imageSequence}.
+	 */
+	private List<BufferedImage> scoreLevels = Collections.emptyList();
+
+	private volatile @Nullable AreaStatistics areaStatistics = null;
+
+	/**
+	 * Incremented every time the data or the filters change. Tiles of older generations are stale.
+	 */
+	private final AtomicInteger generation = new AtomicInteger();
+
+	private volatile Rectangle viewport      = new Rectangle();
+	private volatile int       viewportLevel = 0;
+
+	@SuppressWarnings({"CloneableClassWithoutClone", "serial"})
+	private final Map<TileKey, BufferedImage> tileCache = new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<TileKey, BufferedImage> eldest) {
+			return size() > TILE_CACHE_SIZE;
+		}
+	};
+
+	private final AtomicBoolean tileTaskPending = new AtomicBoolean();
+
+	/**
+	 * Keys are {@code backgroundDatasetIndex * 12 + month}, or -1 for the atlas background. Values are the mipmap
+	 * chains, with the full-size background at element 0.
+	 */
+	@SuppressWarnings({"CloneableClassWithoutClone", "serial"})
+	private final Map<Integer, List<BufferedImage>> backgroundCache = new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, List<BufferedImage>> eldest) {
+			return size() > BACKGROUND_CACHE_SIZE;
+		}
+	};
 
 	private final Lock      lock      = new ReentrantLock();
 	private final Condition condition = lock.newCondition();
@@ -81,26 +285,119 @@ public class AtlasRenderer {
 	private final     AtomicBoolean taskAborting = new AtomicBoolean();
 	private final     AtomicBoolean taskRunning  = new AtomicBoolean();
 
+	/**
+	 * @param renderUpdateCallback Receives the sequence every time a frame is updated. It's called on the EDT. The
+	 *                             frames in the sequence are valid until the next call. After that, their images may
+	 *                             be reused for new frames.
+	 */
 	public AtlasRenderer(Consumer<List<AnimationFrame>> renderUpdateCallback) {
 		this.renderUpdateCallback = requireNonNull(renderUpdateCallback, "renderUpdateCallback");
 
-		clear();
+		for (int i = 0; i < 12; i++) {
+			imageSequence.add(EMPTY_FRAME);
+		}
+
+		Arrays.fill(maskKeys, -1);
 	}
 
 	private void clear() {
-		for (int i = 0; i < 12; i++) {
-			imageSequence.add(EMPTY_FRAME);
+		synchronized (imageSequence) {
+			List<AnimationFrame> oldSequence = new ArrayList<>(imageSequence);
+
+			for (int i = 0; i < 12; i++) {
+				imageSequence.set(i, EMPTY_FRAME);
+			}
+
+			Arrays.fill(maskKeys, -1);
+			monthMatches = null;
+			scoreMap = null;
+			analogMap = null;
+
+			@Nullable AreaStatistics statistics = areaStatistics;
+			if (statistics != null) {
+				for (int month = 0; month < 12; month++) {
+					statistics.setMask(month, null);
+				}
+			}
+
+			publishSequence();
+
+			for (AnimationFrame oldFrame : oldSequence) {
+				releaseFrame(oldFrame);
+			}
+
+			releaseScoreLevelsIfUnused();
 		}
 	}
 
-	@SuppressWarnings("AssignmentOrReturnOfFieldWithMutableType")
-	public @Nullable List<FilterDataSet> getFilterDataSets() {
-		return filterDataSets;
+	/**
+	 * The pool of masks, to check that steady-state rendering doesn't allocate masks anymore.
+	 */
+	public @Nullable FramePool getMaskPool() {
+		return maskPool;
+	}
+
+	public @Nullable ClimateDataSet getClimateDataSet() {
+		return climateDataSet;
 	}
 
-	@SuppressWarnings("AssignmentOrReturnOfFieldWithMutableType")
-	public void setFilterDataSets(@Nullable List<FilterDataSet> filterDataSets) {
+	public void setClimateDataSet(@Nullable ClimateDataSet climateDataSet) {
+		this.climateDataSet = climateDataSet;
+
+		@Nullable List<FilterDataSet> filterDataSets = climateDataSet == null ?
+		                                               null :
+		                                               climateDataSet.getFilterDataSets();
 		this.filterDataSets = filterDataSets;
+
+		synchronized (backgroundCache) {
+			backgroundCache.clear();
+		}
+
+		generation.incrementAndGet();
+		synchronized (tileCache) {
+			tileCache.clear();
+		}
+
+		if (filterDataSets == null) {
+			maskPool = null;
+			maskMipMapPools = Collections.emptyList();
+			scorePools = Collections.emptyList();
+			areaStatistics = null;
+		} else {
+			DataSet dataSet = filterDataSets.get(0).getDataSet();
+			int     width   = dataSet.getWidth();
+			int     height  = dataSet.getHeight();
+
+			areaStatistics = new AreaStatistics(dataSet.getMonthData(0), width, height);
+
+			maskPool = new FramePool(width, height, BufferedImage.TYPE_BYTE_BINARY, MASK_COLOR_MODEL, MASK_POOL_SIZE);
+
+			int             numLevels = MipMapUtilities.getNumReducedLevels(width, MIN_MIPMAP_WIDTH);
+			List<FramePool> pools     = new ArrayList<>(numLevels);
+			for (int level = 1; level <= numLevels; level++) {
+				pools.add(new FramePool(MipMapUtilities.getLevelSize(width, level),
+				                        MipMapUtilities.getLevelSize(height, level),
+				                        BufferedImage.TYPE_BYTE_BINARY,
+				                        MASK_COLOR_MODEL,
+				                        MASK_POOL_SIZE));
+			}
+
+			maskMipMapPools = Collections.unmodifiableList(pools);
+
+			// The colors of the gradient don't depend on the range, so scores and analogs share the color model.
+			IndexColorModel scoreColorModel = makeParameterColorModel(ColorGradientCache.getLookupTable(
+					SCORE_GRADIENT_FILENAME, 1, RangeF.UNIT, PALETTE_SIZE - 1));
+			List<FramePool> levelPools = new ArrayList<>(numLevels + 1);
+			for (int level = 0; level <= numLevels; level++) {
+				levelPools.add(new FramePool(MipMapUtilities.getLevelSize(width, level),
+				                             MipMapUtilities.getLevelSize(height, level),
+				                             BufferedImage.TYPE_BYTE_INDEXED,
+				                             scoreColorModel,
+				                             SCORE_POOL_SIZE));
+			}
+
+			scorePools = Collections.unmodifiableList(levelPools);
+		}
 	}
 
 	public int getCurrentMonth() {
@@ -116,18 +413,40 @@ public class AtlasRenderer {
 	}
 
 	public void setBackgroundDatasetIndex(int backgroundDatasetIndex) {
+		@Nullable List<FilterDataSet> filterDataSets = this.filterDataSets;
 		if (filterDataSets == null) {
-			throw new IllegalStateException("'filterDataSets' is null");
+			this.backgroundDatasetIndex = 0;
+			return;
 		}
 
-		this.backgroundDatasetIndex = filterDataSets.isEmpty() ?
-		                              0 :
-		                              requireRange(-1,
+		this.backgroundDatasetIndex = requireRange(CLUSTER_BACKGROUND,
 		                                           filterDataSets.size() - 1,
 		                                           backgroundDatasetIndex,
 		                                           "backgroundDatasetIndex");
 	}
 
+	/**
+	 * Sets a callback that is called on the EDT when new preview tiles are available.
+	 */
+	public void setTilesUpdatedCallback(@Nullable Runnable tilesUpdatedCallback) {
+		this.tilesUpdatedCallback = tilesUpdatedCallback;
+	}
+
+	/**
+	 * Tells the renderer which part of the atlas is on screen, so it can render that part first, at a matching
+	 * resolution. Tiles that became visible are rendered in the background.
+	 *
+	 * @param zoom The zoom level, as defined by {@link ZoomPanel#setZoom(int)}
+	 */
+	public void viewportChanged(Rectangle visibleImageRect, int zoom) {
+		viewport = new Rectangle(requireNonNull(visibleImageRect, "visibleImageRect"));
+		viewportLevel = ZoomPanel.getLevelForZoom(zoom);
+
+		if (!tileTaskPending.getAndSet(true)) {
+			EXECUTOR.submit(this::tileTask);
+		}
+	}
+
 	public boolean isAggregateYear() {
 		return aggregateYear;
 	}
@@ -136,6 +455,221 @@ public class AtlasRenderer {
 		this.aggregateYear = aggregateYear;
 	}
 
+	public int getMinMonths() {
+		return minMonths;
+	}
+
+	/**
+	 * Switches to month-count mode, where a pixel is shaded when the filters pass in fewer than {@code minMonths}
+	 * months, or back to showing each month separately with 0. Filtering the entire year takes precedence.
+	 */
+	public void setMinMonths(int minMonths) {
+		this.minMonths = requireRange(0, 12, minMonths, "minMonths");
+	}
+
+	public @Nullable ScoreFunction getScoreFunction() {
+		return scoreFunction;
+	}
+
+	/**
+	 * Switches to score mode, where every month shows how pleasant each place is over the whole year instead of the
+	 * filtered parameters, or back with {@code null}.
+	 */
+	public void setScoreFunction(@Nullable ScoreFunction scoreFunction) {
+		this.scoreFunction = scoreFunction;
+	}
+
+	/**
+	 * Returns the scores of the last render in score mode, or {@code null} if there wasn't one.
+	 */
+	public @Nullable ScoreMap getScoreMap() {
+		return scoreMap;
+	}
+
+	public @Nullable Point getAnalogReference() {
+		return analogReference == null ? null : new Point(analogReference);
+	}
+
+	/**
+	 * Switches to analog mode, where every month shows how similar the climate of each place is to that of the given
+	 * pixel, or back with {@code null}. This takes precedence over score mode.
+	 */
+	public void setAnalogReference(@Nullable Point analogReference) {
+		this.analogReference = analogReference == null ? null : new Point(analogReference);
+	}
+
+	/**
+	 * Returns the distances of the last render, or {@code null} if it wasn't in analog mode.
+	 */
+	public @Nullable AnalogMap getAnalogMap() {
+		return analogMap;
+	}
+
+	/**
+	 * Returns the area of the land that matches in the frames on display, or {@code null} if there's no data. Months
+	 * without a mask (not rendered yet, or in score or analog mode) have no area.
+	 */
+	public @Nullable AreaStatistics getAreaStatistics() {
+		return areaStatistics;
+	}
+
+	/**
+	 * Returns the months in which each pixel matches, as of the last render that filtered each month separately (not
+	 * the entire year, score or analog mode), or {@code null} if there wasn't one. This is before the post-filter.
+	 */
+	public @Nullable MonthMatches getMonthMatches() {
+		return monthMatches;
+	}
+
+	/**
+	 * Finds the contiguous regions of land that match the filters in the frame on display for the given month.
+	 * Returns an empty list when the frame doesn't show filtered parameters (score or analog mode) or isn't rendered
+	 * yet.
+	 *
+	 * @param maxRegions The maximum number of regions to return. The largest regions are returned, largest first.
+	 */
+	public List<Region> findRegions(int month, int maxRegions) {
+		requireAtLeast(0, maxRegions, "maxRegions");
+
+		@Nullable List<FilterDataSet> filterDataSetsCopy = filterDataSets;
+		byte @Nullable []             matches            = getMatches(month);
+		if (filterDataSetsCopy == null || matches == null) {
+			return Collections.emptyList();
+		}
+
+		DataSet dataSet = filterDataSetsCopy.get(0).getDataSet();
+		int     width   = dataSet.getWidth();
+		int     height  = dataSet.getHeight();
+		if (matches.length != BitMaskUtilities.getStride(width) * height) {
+			return Collections.emptyList(); // Data sets changed in the meantime
+		}
+
+		return RegionFinder.find(matches, width, height, maxRegions);
+	}
+
+	/**
+	 * Returns the land that matches the filters in the frame on display for the given month, as a packed mask (see
+	 * {@link BitMaskUtilities}) with the matching pixels set. Returns {@code null} when the frame doesn't show
+	 * filtered parameters (score or analog mode) or isn't rendered yet.
+	 */
+	public byte @Nullable [] getMatches(int month) {
+		requireRange(0, 11, month, "month");
+
+		@Nullable List<FilterDataSet> filterDataSetsCopy = filterDataSets;
+		if (filterDataSetsCopy == null) {
+			return null;
+		}
+
+		DataSet dataSet = filterDataSetsCopy.get(0).getDataSet();
+		int     width   = dataSet.getWidth();
+		int     height  = dataSet.getHeight();
+
+		// Copy, because the mask is reused once it's not on display anymore.
+		byte[] matches;
+		synchronized (imageSequence) {
+			@Nullable AnimationFrame frame = imageSequence.get(month);
+			@Nullable BufferedImage  mask  = frame == null ? null : frame.getOverlay();
+			if (mask == null || mask.getWidth() != width || mask.getHeight() != height) {
+				return null;
+			}
+
+			matches = ((DataBufferByte)mask.getRaster().getDataBuffer()).getData().clone();
+		}
+
+		float[] atlas = dataSet.getMonthData(0);
+		ParallelUtilities.forEachBand(height, (beginRow, endRow) ->
+				renderMatches(atlas, matches, matches, width, beginRow, endRow));
+
+		return matches;
+	}
+
+	/**
+	 * Sets the bits of the land that isn't shaded in the mask, for the rows {@code [beginRow, endRow)}.
+	 *
+	 * @param atlas   Any month of any data set. Pixels without data are sea.
+	 * @param matches May be the same array as {@code mask}.
+	 */
+	private static void renderMatches(float[] atlas, byte[] mask, byte[] matches, int width, int beginRow, int endRow) {
+		int       stride   = BitMaskUtilities.getStride(width);
+		boolean[] land     = new boolean[width];
+		byte[]    landBits = new byte[stride];
+
+		for (int y = beginRow; y < endRow; y++) {
+			int begin = y * width;
+
+			for (int x = 0; x < width; x++) {
+				land[x] = !Float.isNaN(atlas[begin + x]);
+			}
+
+			packBits(land, landBits, 0);
+
+			// Shaded pixels don't match, and neither does the sea.
+			int offset = y * stride;
+			for (int i = 0; i < stride; i++) {
+				matches[offset + i] = (byte)(~mask[offset + i] & landBits[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the mask of the filter state gets a post-filter: a morphology, a match radius, or both.
+	 */
+	private static boolean hasPostFilter(FilterState filterState) {
+		return filterState.getMorphology() != null || filterState.getMatchRadius() > 0;
+	}
+
+	/**
+	 * Cleans up the land that isn't shaded with the morphology of the filter state, and then unshades the land within
+	 * the match radius of what's left.
+	 */
+	private static void postFilterMask(byte[] mask, float[] atlas, int width, int height, FilterState filterState) {
+		byte[] land    = new byte[mask.length];
+		byte[] matches = new byte[mask.length];
+		byte[] none    = new byte[mask.length];
+		ParallelUtilities.forEachBand(height, (beginRow, endRow) -> {
+			renderMatches(atlas, none, land, width, beginRow, endRow);
+			renderMatches(atlas, mask, matches, width, beginRow, endRow);
+		});
+
+		@Nullable Morphology morphology = filterState.getMorphology();
+		if (morphology != null) {
+			morphology.apply(matches, land, width, height, filterState.getMorphologyRadius());
+		}
+
+		float  matchRadius = filterState.getMatchRadius();
+		byte[] relaxed     = matchRadius > 0 ?
+		                     DistanceTransform.getWithinDistance(matches, width, height, matchRadius) :
+		                     matches;
+
+		for (int i = 0; i < mask.length; i++) {
+			mask[i] = (byte)(land[i] & ~relaxed[i]);
+		}
+	}
+
+	/**
+	 * Waits until the render started by the last {@link #dataChanged()} is done, so every month is in the sequence.
+	 * This is for use without a GUI, where nothing else signals the end of a render.
+	 */
+	public void awaitRender() throws InterruptedException {
+		@Nullable Future<?> future;
+		lock.lock();
+		try {
+			future = rootFuture;
+		} finally {
+			lock.unlock();
+		}
+
+		if (future == null) {
+			return;
+		}
+
+		try {
+			future.get();
+		} catch (ExecutionException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
 	// TODO offload work from the GUI thread.
 	public void dataChanged() {
 		lock.lock();
@@ -154,6 +688,10 @@ public class AtlasRenderer {
 			}
 
 			taskAborting.set(false);
+
+			@Nullable ClimateDataSet climateDataSetCopy = climateDataSet;
+			filterState = climateDataSetCopy == null ? null : climateDataSetCopy.getFilterState();
+			generation.incrementAndGet();
 			rootFuture = EXECUTOR.submit(this::renderTask);
 		} finally {
 			lock.unlock();
@@ -161,7 +699,15 @@ public class AtlasRenderer {
 	}
 
 	void renderTask() {
-		int currentMonthCopy = currentMonth.get();
+		int                           currentMonthCopy    = currentMonth.get();
+		int                           backgroundIndexCopy = backgroundDatasetIndex;
+		boolean                       aggregateCopy       = aggregateYear;
+		int                           minMonthsCopy       = aggregateCopy ? 0 : minMonths;
+		int                           generationCopy      = generation.get();
+		@Nullable FilterState         filterStateCopy     = filterState;
+		@Nullable List<FilterDataSet> filterDataSetsCopy  = filterDataSets;
+		@Nullable ScoreFunction       scoreFunctionCopy   = scoreFunction;
+		@Nullable Point               analogReferenceCopy = analogReference;
 
 		System.out.println("renderTask()");
 		long t = System.nanoTime();
@@ -169,28 +715,126 @@ public class AtlasRenderer {
 		taskRunning.set(true);
 
 		try {
-			if (filterDataSets == null) {
+			if (filterDataSetsCopy == null || filterStateCopy == null) {
 				clear();
-				renderUpdateCallback.accept(imageSequence);
+				return;
+			} else if (filterStateCopy.getNumFilters() != filterDataSetsCopy.size()) {
+				return; // Data sets changed since dataChanged(). Another call will follow.
+			}
+
+			monthMatches = null;
+			analogMap = null;
+
+			if (analogReferenceCopy != null) {
+				renderAnalogs(filterDataSetsCopy, analogReferenceCopy);
+				return;
+			} else if (scoreFunctionCopy != null) {
+				if (scoreFunctionCopy.getNumFilters() == filterDataSetsCopy.size()) {
+					renderScore(filterDataSetsCopy, filterStateCopy, scoreFunctionCopy);
+				}
+
 				return;
 			}
 
-			int @Nullable [] aggregateFilteredPixels = null;
-			if (aggregateYear) {
-				aggregateFilteredPixels = renderAggregateYear();
+			// Show the visible part of the current month first. The tiles are rendered straight from the raw data, so
+			// this doesn't wait for the full-globe render below. They're filtered pixel by pixel, so they can't show
+			// a post-filter.
+			boolean postFilter = hasPostFilter(filterStateCopy);
+			if (!postFilter && renderVisibleTiles(generationCopy, currentMonthCopy, filterStateCopy)) {
+				publishPreview(generationCopy, currentMonthCopy);
+			}
+
+			if (checkStopCondition()) {
+				return;
+			}
+
+			int     width  = filterDataSetsCopy.get(0).getDataSet().getWidth();
+			int     height = filterDataSetsCopy.get(0).getDataSet().getHeight();
+			float[] atlas  = filterDataSetsCopy.get(0).getDataSet().getMonthData(0);
+
+			// Filter everything up-front, so the months rendered concurrently below only read shared data.
+			List<FilterMasks> filterMasks   = new ArrayList<>(filterDataSetsCopy.size());
+			byte @Nullable [] aggregateMask = null;
+			if (aggregateCopy) {
+				aggregateMask = renderAggregateYear(filterDataSetsCopy, filterStateCopy);
 
 				// Note to self: Don't abort here. Let it render at least a frame (at the cost of responsiveness)
+			} else {
+				for (int i = 0; i < filterDataSetsCopy.size(); i++) {
+					filterMasks.add(filterDataSetsCopy.get(i).getFilterMasks(filterStateCopy.getFilterMinMax(i)));
+
+					if (checkStopCondition()) {
+						return;
+					}
+				}
+
+				@Nullable FilterExpression expression = filterStateCopy.getExpression();
+				if (expression != null) {
+					filterMasks.add(expression.getFilterMasks(filterDataSetsCopy));
+				}
+
+				filterMasks.addAll(getCategoryFilterMasks(filterStateCopy));
+
+				// This is cheap (bit-parallel over the masks), so it's also kept in per-month mode, for the readout.
+				MonthMatches matches = MonthMatches.of(filterMasks);
+				monthMatches = matches;
+				if (minMonthsCopy > 0) {
+					aggregateMask = matches.renderMinMonthsMask(minMonthsCopy);
+				}
 			}
 
-			for (int i = 0; i < 12; i++) {
-				int month = (currentMonthCopy + i) % 12;
-				System.out.println("month: " + month);
+			// The months share the aggregate mask, so it's post-filtered once, here.
+			if (aggregateMask != null && postFilter) {
+				postFilterMask(aggregateMask, atlas, width, height, filterStateCopy);
+			}
 
-				renderMonth(month, aggregateFilteredPixels);
+			@Nullable FilterState monthPostFilter = aggregateMask == null && postFilter ? filterStateCopy : null;
+			long  maskKey          = getMaskKey(filterStateCopy, aggregateCopy, minMonthsCopy);
+
+			// The current month is urgent, so render it first, using all cores.
+			System.out.println("month: " + currentMonthCopy);
+			renderMonth(currentMonthCopy,
+			            backgroundIndexCopy,
+			            width,
+			            height,
+			            filterMasks,
+			            aggregateMask,
+			            monthPostFilter,
+			            atlas,
+			            maskKey,
+			            true);
 
-				if (taskAborting.get()) {
-					return;
+			if (taskAborting.get()) {
+				return;
+			}
+
+			// Render the other months concurrently (one month per thread) at a lower priority.
+			byte @Nullable [] finalAggregateMask = aggregateMask;
+			List<Future<?>>   futures            = new ArrayList<>(11);
+			for (int i = 1; i < 12; i++) {
+				int month = (currentMonthCopy + i) % 12;
+				futures.add(BACKGROUND_EXECUTOR.submit(() -> {
+					if (!taskAborting.get()) {
+						renderMonth(month,
+						            backgroundIndexCopy,
+						            width,
+						            height,
+						            filterMasks,
+						            finalAggregateMask,
+						            monthPostFilter,
+						            atlas,
+						            maskKey,
+						            false);
+					}
+				}));
+			}
+
+			try {
+				for (Future<?> future : futures) {
+					future.get();
 				}
+			} catch (InterruptedException | ExecutionException ex) {
+				throw new RuntimeException(ex);
 			}
 		} finally {
 			if (taskAborting.get()) {
@@ -208,145 +852,777 @@ public class AtlasRenderer {
 		}
 	}
 
-	private void renderMonth(int month, int @Nullable [] aggregateFilteredPixels) {
-		assert filterDataSets != null;
+	/**
+	 * Identifies the contents of a mask: the filter state and how the months are combined.
+	 */
+	private static long getMaskKey(FilterState filterState, boolean aggregate, int minMonths) {
+		return filterState.getVersion() << 5 | (aggregate ? 16 : minMonths);
+	}
 
-		int width  = filterDataSets.get(0).getDataSet().getWidth();
-		int height = filterDataSets.get(0).getDataSet().getHeight();
+	/**
+	 * @param filterMasks   The masks of each data set, and of the expression if any, all from the same filter state.
+	 *                      Unused (and may be empty) when {@code aggregateMask} is given.
+	 * @param aggregateMask The combination of all masks of all months (entire year or month count), or {@code null} to
+	 *                      use the month's masks.
+	 * @param postFilter    The filter state whose morphology and match radius apply to the mask, or {@code null} to
+	 *                      apply neither.
+	 * @param atlas         Any month of any data set. Pixels without data are sea.
+	 * @param maskKey       The key of the resulting mask. When the frame on display has the same key, its mask is
+	 *                      reused.
+	 * @param parallel      Whether to split the month in row bands and render them on all cores, or to render it on
+	 *                      the calling thread.
+	 */
+	private void renderMonth(int month,
+	                         int backgroundIndex,
+	                         int width,
+	                         int height,
+	                         List<FilterMasks> filterMasks,
+	                         byte @Nullable [] aggregateMask,
+	                         @Nullable FilterState postFilter,
+	                         float[] atlas,
+	                         long maskKey,
+	                         boolean parallel) {
+		List<BufferedImage> backgroundLevels  = getBackground(month, backgroundIndex, parallel);
+		BufferedImage       background        = backgroundLevels.get(0);
+		List<BufferedImage> backgroundMipMaps = backgroundLevels.subList(1, backgroundLevels.size());
+
+		if (taskAborting.get()) {
+			return;
+		}
 
-		BufferedImage image  = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-		int[]         pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+		if (reuseMask(month, background, backgroundMipMaps, maskKey)) {
+			return;
+		}
 
-		renderBackground(month, pixels);
+		@Nullable FramePool pool = maskPool;
+		if (pool == null || pool.getWidth() != width || pool.getHeight() != height) {
+			return; // Datasets changed while rendering
+		}
+
+		BufferedImage mask     = pool.acquire();
+		byte[]        maskBits = ((DataBufferByte)mask.getRaster().getDataBuffer()).getData();
+		int           stride   = BitMaskUtilities.getStride(width);
+
+		if (parallel) {
+			ParallelUtilities.forEachBand(height, (begin, end) ->
+					renderMaskBand(month, filterMasks, aggregateMask, maskBits, begin * stride, end * stride));
+		} else {
+			renderMaskBand(month, filterMasks, aggregateMask, maskBits, 0, height * stride);
+		}
+
+		if (postFilter != null && !taskAborting.get()) {
+			postFilterMask(maskBits, atlas, width, height, postFilter);
+		}
 
 		if (taskAborting.get()) {
+			pool.release(mask); // Never published, so nobody else has it.
 			return;
 		}
 
-		if (aggregateFilteredPixels != null) {
-			renderAggregateFilteredPixels(aggregateFilteredPixels, pixels);
-		} else {
-			renderFilteredPixels(month, pixels);
+		AnimationFrame frame = new AnimationFrame(background, mask, FRAME_DURATION)
+				.withMipMaps(backgroundMipMaps, Collections.emptyList());
+		publishFrame(month, withDirtyRegions(month, frame), maskKey);
+
+		// The full-size frame is on screen already. Zoomed out, it's drawn from the background's mipmaps and the
+		// full-size mask until the mask's mipmaps follow.
+		List<FramePool>     pools       = maskMipMapPools;
+		List<BufferedImage> maskMipMaps = new ArrayList<>(pools.size());
+		for (FramePool levelPool : pools) {
+			maskMipMaps.add(levelPool.acquire());
+		}
+
+		buildMipMaps(mask, maskMipMaps, MipMapUtilities::reduceBinaryAnd, parallel);
+
+		if (taskAborting.get()) {
+			for (int i = 0; i < maskMipMaps.size(); i++) {
+				pools.get(i).release(maskMipMaps.get(i));
+			}
+
+			return;
 		}
 
-		imageSequence.set(month, new AnimationFrame(image, FRAME_DURATION));
-		renderUpdateCallback.accept(imageSequence);
+		publishFrame(month, frame.withMipMaps(backgroundMipMaps, maskMipMaps), maskKey);
 	}
 
-	private int[] renderAggregateYear() {
-		assert filterDataSets != null;
+	/**
+	 * When the frame on display was rendered from the same filter state, only the background can be different. Then
+	 * its mask (and mask mipmaps) are shared with the new frame instead of being rendered again.
+	 *
+	 * @return whether the frame on display is up-to-date now
+	 */
+	private boolean reuseMask(int month,
+	                          BufferedImage background,
+	                          List<BufferedImage> backgroundMipMaps,
+	                          long maskKey) {
+		synchronized (imageSequence) {
+			@Nullable AnimationFrame oldFrame = imageSequence.get(month);
+			if (oldFrame == null || oldFrame.getOverlay() == null || maskKeys[month] != maskKey) {
+				return false;
+			}
+
+			//noinspection ObjectEquality // Comparing identity, not equality
+			if (oldFrame.getImage() != background || oldFrame.getTileSource() != null) {
+				AnimationFrame frame = new AnimationFrame(background, oldFrame.getOverlay(), FRAME_DURATION)
+						.withMipMaps(backgroundMipMaps, oldFrame.getOverlayMipMaps());
+				publishFrame(month, frame, maskKey);
+			}
+
+			return true;
+		}
+	}
+
+	/**
+	 * When the frame that's replaced has the same background, marks where the mask changed. Small filter changes often
+	 * flip just a few bands of pixels, and viewers then only need to repaint those.
+	 */
+	private AnimationFrame withDirtyRegions(int month, AnimationFrame frame) {
+		@Nullable AnimationFrame oldFrame;
+		synchronized (imageSequence) {
+			oldFrame = imageSequence.get(month);
+		}
+
+		@Nullable BufferedImage oldMask = oldFrame == null ? null : oldFrame.getOverlay();
+		BufferedImage           mask    = frame.getOverlay();
+		assert mask != null;
+
+		//noinspection ObjectEquality // Comparing identity, not equality
+		if (oldMask == null || oldFrame.getImage() != frame.getImage() ||
+		    oldMask.getWidth() != mask.getWidth() || oldMask.getHeight() != mask.getHeight()) {
+			return frame;
+		}
+
+		// Only this thread replaces this month's frame, so the old mask isn't recycled while comparing. Once the new
+		// frame is published it is, so the dirty regions refer to the old frame, not to its mask.
+		List<Rectangle> dirtyRegions = BitMaskUtilities.findChangedRegions(
+				((DataBufferByte)oldMask.getRaster().getDataBuffer()).getData(),
+				((DataBufferByte)mask.getRaster().getDataBuffer()).getData(),
+				mask.getWidth(),
+				mask.getHeight(),
+				DIRTY_BAND_HEIGHT);
+		return frame.withDirtyRegions(oldFrame, dirtyRegions);
+	}
+
+	/**
+	 * Fills each image in {@code mipMaps} by reducing the image before it, starting with {@code image}.
+	 */
+	private static void buildMipMaps(BufferedImage image,
+	                                 List<BufferedImage> mipMaps,
+	                                 MipMapUtilities.Reducer reducer,
+	                                 boolean parallel) {
+		BufferedImage src = image;
+		for (BufferedImage dst : mipMaps) {
+			byte[] srcPixels = ((DataBufferByte)src.getRaster().getDataBuffer()).getData();
+			byte[] dstPixels = ((DataBufferByte)dst.getRaster().getDataBuffer()).getData();
+			int    srcWidth  = src.getWidth();
+			int    srcHeight = src.getHeight();
+
+			ParallelUtilities.BandTask task = (begin, end) ->
+					reducer.reduce(srcPixels, srcWidth, srcHeight, dstPixels, begin, end);
+
+			if (parallel) {
+				ParallelUtilities.forEachBand(dst.getHeight(), task);
+			} else {
+				task.run(0, dst.getHeight());
+			}
+
+			src = dst;
+		}
+	}
+
+	/**
+	 * @param maskKey The {@link #getMaskKey(FilterState, boolean, int) mask key} of the frame's mask.
+	 */
+	private void publishFrame(int month, AnimationFrame frame, long maskKey) {
+		synchronized (imageSequence) {
+			@Nullable AnimationFrame oldFrame = imageSequence.set(month, frame);
+			maskKeys[month] = maskKey;
+
+			updateAreaStatistics(month, oldFrame, frame);
+			publishSequence();
+
+			// A preview shares the mask of the frame it replaces.
+			if (oldFrame != null && oldFrame.getOverlay() != frame.getOverlay()) {
+				releaseFrame(oldFrame);
+			}
+
+			releaseScoreLevelsIfUnused();
+		}
+	}
+
+	/**
+	 * Counts the matching area of a frame's mask. When the mask only changed a little since the frame it replaces,
+	 * only the changed regions are counted.
+	 */
+	@SuppressWarnings("ObjectEquality") // Comparing identity, not equality
+	private void updateAreaStatistics(int month, @Nullable AnimationFrame oldFrame, AnimationFrame frame) {
+		@Nullable AreaStatistics statistics = areaStatistics;
+		@Nullable BufferedImage  mask       = frame.getOverlay();
+		@Nullable BufferedImage  oldMask    = oldFrame == null ? null : oldFrame.getOverlay();
+		if (statistics == null || (oldMask == mask && mask != null)) {
+			return;
+		}
+
+		if (mask == null || mask.getWidth() != statistics.getWidth() || mask.getHeight() != statistics.getHeight()) {
+			statistics.setMask(month, null);
+			return;
+		}
+
+		byte[]                    maskBits     = ((DataBufferByte)mask.getRaster().getDataBuffer()).getData();
+		@Nullable List<Rectangle> dirtyRegions = frame.getDirtyRegions();
+		if (oldMask != null && frame.getPreviousSerial() == oldFrame.getSerial() && dirtyRegions != null) {
+			byte[] oldMaskBits = ((DataBufferByte)oldMask.getRaster().getDataBuffer()).getData();
+			statistics.updateMask(month, oldMaskBits, maskBits, dirtyRegions);
+		} else {
+			statistics.setMask(month, maskBits);
+		}
+	}
+
+	/**
+	 * Publishes a frame that shows the preview tiles, and the previous frame where tiles are missing.
+	 */
+	private void publishPreview(int generation, int month) {
+		@Nullable List<FilterDataSet> filterDataSets = this.filterDataSets;
+		if (filterDataSets == null) {
+			return;
+		}
 
 		int width  = filterDataSets.get(0).getDataSet().getWidth();
 		int height = filterDataSets.get(0).getDataSet().getHeight();
 
-		int[] aggregateFilteredPixels = new int[width * height];
-		Arrays.fill(aggregateFilteredPixels, 1);
+		synchronized (imageSequence) {
+			@Nullable AnimationFrame oldFrame = imageSequence.get(month);
+			assert oldFrame != null;
 
-		for (int month = 0; month < 12; month++) {
-			for (FilterDataSet filterDataSet : filterDataSets) {
-				int[] filteredMonthData = filterDataSet.getFilteredData()[month];
-				int   length            = filteredMonthData.length;
+			publishFrame(month,
+			             oldFrame.withTileSource(new MonthTiles(generation, month, width, height)),
+			             maskKeys[month]);
+		}
+	}
+
+	/**
+	 * Hands a snapshot of the sequence to the callback on the EDT. This happens while holding the lock, so months
+	 * that finish concurrently can't publish their snapshots out of order.
+	 */
+	private void publishSequence() {
+		synchronized (imageSequence) {
+			List<AnimationFrame> sequence = new ArrayList<>(imageSequence);
+			GraphicsUtilities.runOnEDT(() -> renderUpdateCallback.accept(sequence));
+		}
+	}
+
+	/**
+	 * Returns the mask of a frame (and its mipmaps) to the pools, after the EDT has processed the sequence that
+	 * replaced it. Painting also happens on the EDT, so by then nothing draws the mask anymore.
+	 */
+	private void releaseFrame(AnimationFrame frame) {
+		@Nullable BufferedImage mask        = frame.getOverlay();
+		List<BufferedImage>     maskMipMaps = frame.getOverlayMipMaps();
+		@Nullable FramePool     pool        = maskPool;
+		List<FramePool>         pools       = maskMipMapPools;
+		if (mask != null && pool != null) {
+			GraphicsUtilities.runOnEDT(() -> {
+				pool.release(mask);
+
+				for (int i = 0; i < Math.min(maskMipMaps.size(), pools.size()); i++) {
+					pools.get(i).release(maskMipMaps.get(i));
+				}
+			});
+		}
+	}
+
+	/**
+	 * Combines the filters of all months into one mask. A pixel is shaded when it's filtered out in any month.
+	 * <p>
+	 * Each data set filters its annual extrema instead of every month, so this costs one pass per data set.
+	 */
+	private byte[] renderAggregateYear(List<FilterDataSet> filterDataSets, FilterState filterState) {
+		byte[] aggregateMask = filterDataSets.get(0).getAnnualFilterMask(filterState.getFilterMinMax(0)).clone();
+
+		for (int f = 1; f < filterDataSets.size(); f++) {
+			byte[] mask = filterDataSets.get(f).getAnnualFilterMask(filterState.getFilterMinMax(f));
+
+			ParallelUtilities.forEachBand(aggregateMask.length, (begin, end) -> {
+				for (int i = begin; i < end; i++) {
+					aggregateMask[i] |= mask[i];
+				}
+			});
+
+			if (checkStopCondition()) {
+				return aggregateMask;
+			}
+		}
+
+		// The climate classes and regimes are the same in every month.
+		for (FilterMasks categoryMasks : getCategoryFilterMasks(filterState)) {
+			byte[] mask = categoryMasks.getMask(0);
+
+			ParallelUtilities.forEachBand(aggregateMask.length, (begin, end) -> {
+				for (int i = begin; i < end; i++) {
+					aggregateMask[i] |= mask[i];
+				}
+			});
+		}
+
+		// The expression has no annual extrema to work with, so it is filtered in every month.
+		@Nullable FilterExpression expression = filterState.getExpression();
+		if (expression != null) {
+			FilterMasks expressionMasks = expression.getFilterMasks(filterDataSets);
 
-				for (int i = 0; i < length; i++) {
-					if (filteredMonthData[i] == 0) {
-						aggregateFilteredPixels[i] = 0;
+			ParallelUtilities.forEachBand(aggregateMask.length, (begin, end) -> {
+				for (int month = 0; month < 12; month++) {
+					byte[] mask = expressionMasks.getMask(month);
+					for (int i = begin; i < end; i++) {
+						aggregateMask[i] |= mask[i];
 					}
 				}
+			});
+		}
+
+		return aggregateMask;
+	}
+
+	/**
+	 * Renders the score of every place through the score gradient, and shows it in all months. There's no mask, as
+	 * nothing is filtered out.
+	 */
+	private void renderScore(List<FilterDataSet> filterDataSets, FilterState filterState, ScoreFunction scoreFunction) {
+		ScoreMap map = ScoreMap.compute(filterDataSets, filterState, scoreFunction);
+		scoreMap = map;
+
+		if (taskAborting.get()) {
+			return;
+		}
+
+		int              width       = map.getWidth();
+		int              height      = map.getHeight();
+		ColorLookupTable lookupTable = ColorGradientCache.getLookupTable(
+				SCORE_GRADIENT_FILENAME, 1, RangeF.UNIT, PALETTE_SIZE - 1);
+
+		@Nullable List<BufferedImage> levels = acquireScoreLevels(width, height);
+		if (levels == null) {
+			return; // Datasets changed while rendering
+		}
+
+		byte[] pixels = ((DataBufferByte)levels.get(0).getRaster().getDataBuffer()).getData();
+
+		ParallelUtilities.forEachBand(height, (begin, end) ->
+				renderParameterBackground(map.getScores(), lookupTable, pixels, begin * width, end * width));
+
+		publishScoreLevels(levels);
+	}
+
+	/**
+	 * Renders the distance of every place to the climate of the reference through the score gradient, and shows it in
+	 * all months, like {@link #renderScore(List, FilterState, ScoreFunction)}.
+	 */
+	private void renderAnalogs(List<FilterDataSet> filterDataSets, Point reference) {
+		AnalogMap map;
+		try {
+			map = AnalogMap.compute(filterDataSets, reference.x, reference.y);
+		} catch (IllegalArgumentException ignored) {
+			return; // The reference is in the sea, or outside this data set.
+		}
+
+		analogMap = map;
+
+		if (taskAborting.get()) {
+			return;
+		}
+
+		int              width       = map.getWidth();
+		int              height      = map.getHeight();
+		float[]          distances   = map.getDistances();
+		ColorLookupTable lookupTable = ColorGradientCache.getLookupTable(
+				SCORE_GRADIENT_FILENAME, 1, RangeF.of(0, MAX_ANALOG_DISTANCE), PALETTE_SIZE - 1);
+
+		@Nullable List<BufferedImage> levels = acquireScoreLevels(width, height);
+		if (levels == null) {
+			return; // Datasets changed while rendering
+		}
+
+		byte[] pixels = ((DataBufferByte)levels.get(0).getRaster().getDataBuffer()).getData();
+
+		ParallelUtilities.forEachBand(height, (begin, end) -> {
+			for (int i = begin * width; i < end * width; i++) {
+				float distance = distances[i];
+
+				if (Float.isNaN(distance)) {
+					pixels[i] = 0;
+				} else {
+					pixels[i] = (byte)(lookupTable.getIndex(MAX_ANALOG_DISTANCE - distance) + 1);
+				}
+			}
+		});
+
+		publishScoreLevels(levels);
+	}
+
+	/**
+	 * Takes an image for {@link #renderScore(List, FilterState, ScoreFunction)} or
+	 * {@link #renderAnalogs(List, Point)} from the pools, with its mipmaps, or returns {@code null} if the pools are
+	 * for different data sets.
+	 */
+	private @Nullable List<BufferedImage> acquireScoreLevels(int width, int height) {
+		List<FramePool> pools = scorePools;
+		if (pools.isEmpty() || pools.get(0).getWidth() != width || pools.get(0).getHeight() != height) {
+			return null;
+		}
+
+		List<BufferedImage> levels = new ArrayList<>(pools.size());
+		for (FramePool pool : pools) {
+			levels.add(pool.acquire());
+		}
+
+		return levels;
+	}
+
+	/**
+	 * Builds the mipmaps of a score or analog image, and shows it in all months at once. The image is the same in
+	 * every month, so the sequence is published once, not once per month.
+	 */
+	private void publishScoreLevels(List<BufferedImage> levels) {
+		buildMipMaps(levels.get(0), levels.subList(1, levels.size()), MipMapUtilities::reduceIndexed, true);
+
+		if (taskAborting.get()) {
+			releaseScoreLevels(levels); // Never published, so nobody else has them.
+			return;
+		}
+
+		AnimationFrame frame = new AnimationFrame(levels.get(0), FRAME_DURATION)
+				.withMipMaps(levels.subList(1, levels.size()), Collections.emptyList());
+
+		synchronized (imageSequence) {
+			for (int month = 0; month < 12; month++) {
+				@Nullable AnimationFrame oldFrame = imageSequence.set(month, frame);
+				maskKeys[month] = -1;
+
+				updateAreaStatistics(month, oldFrame, frame);
+
+				if (oldFrame != null) {
+					releaseFrame(oldFrame);
+				}
+			}
+
+			publishSequence();
+
+			releaseScoreLevelsIfUnused();
+			scoreLevels = levels;
+		}
+	}
+
+	/**
+	 * Returns the score or analog image that's shown to the pools once no month shows it anymore, after the EDT has
+	 * processed the sequence that replaced it, like {@link #releaseFrame(AnimationFrame)}.
+	 */
+	@SuppressWarnings("ObjectEquality") // Comparing identity, not equality
+	private void releaseScoreLevelsIfUnused() {
+		synchronized (imageSequence) {
+			if (scoreLevels.isEmpty()) {
+				return;
+			}
 
-				if (checkStopCondition()) {
-					return aggregateFilteredPixels;
+			// Previews and masks can be put on top of it while switching back to filtering.
+			BufferedImage image = scoreLevels.get(0);
+			for (AnimationFrame frame : imageSequence) {
+				if (frame.getImage() == image) {
+					return;
 				}
 			}
+
+			List<BufferedImage> levels = scoreLevels;
+			scoreLevels = Collections.emptyList();
+			GraphicsUtilities.runOnEDT(() -> releaseScoreLevels(levels));
 		}
+	}
 
-		return aggregateFilteredPixels;
+	private void releaseScoreLevels(List<BufferedImage> levels) {
+		List<FramePool> pools = scorePools;
+		for (int i = 0; i < Math.min(levels.size(), pools.size()); i++) {
+			pools.get(i).release(levels.get(i));
+		}
 	}
 
-	private void renderBackground(int month, int[] pixels) {
+	/**
+	 * The background only depends on the dataset and the month (not on the filters), so it's rendered once and then
+	 * taken from the cache while the filters change.
+	 * <p>
+	 * To save memory, backgrounds are indexed images: 1 byte per pixel for parameter backgrounds (palette index 0 is
+	 * sea, the rest is the gradient), and 1 bit per pixel for the atlas background.
+	 * <p>
+	 * Returns the mipmap chain, with the full-size background at element 0. Pixels of smaller levels are the averages
+	 * of the gradient indices below them, or sea when the majority is sea.
+	 */
+	private List<BufferedImage> getBackground(int month, int backgroundIndex, boolean parallel) {
 		assert filterDataSets != null;
 
-		if (backgroundDatasetIndex >= 0) {
-			DataSet dataSet = filterDataSets.get(backgroundDatasetIndex).getDataSet();
-			renderParameterBackground(dataSet, month, pixels);
+		@Nullable CategoryMap categories = getBackgroundCategories(backgroundIndex);
+		if (backgroundIndex < -1 && categories == null) {
+			backgroundIndex = -1;
+		}
+
+		// All months of the atlas and category backgrounds are the same. Each number of regimes has its own key.
+		int key;
+		if (backgroundIndex == CLUSTER_BACKGROUND && categories != null) {
+			key = CLUSTER_BACKGROUND * 100 - categories.getNumCategories();
+		} else {
+			key = backgroundIndex < 0 ? backgroundIndex : backgroundIndex * 12 + month;
+		}
+
+		synchronized (backgroundCache) {
+			@Nullable List<BufferedImage> backgroundLevels = backgroundCache.get(key);
+			if (backgroundLevels != null) {
+				return backgroundLevels;
+			}
+		}
+
+		int width  = filterDataSets.get(0).getDataSet().getWidth();
+		int height = filterDataSets.get(0).getDataSet().getHeight();
+
+		BufferedImage              background;
+		ParallelUtilities.BandTask renderer;
+		MipMapUtilities.Reducer    reducer;
+		if (backgroundIndex >= 0) {
+			DataSet          dataSet     = filterDataSets.get(backgroundIndex).getDataSet();
+			ColorLookupTable lookupTable = ColorGradientCache.getLookupTable(
+					dataSet.getGradientFilename(), dataSet.getGamma(), dataSet.getMinMax(), PALETTE_SIZE - 1);
+
+			background = new BufferedImage(
+					width, height, BufferedImage.TYPE_BYTE_INDEXED, makeParameterColorModel(lookupTable));
+			byte[] pixels = ((DataBufferByte)background.getRaster().getDataBuffer()).getData();
+
+			float[] rawMonthData = dataSet.getMonthData(month);
+			renderer = (begin, end) ->
+					renderParameterBackground(rawMonthData, lookupTable, pixels, begin * width, end * width);
+			reducer = MipMapUtilities::reduceIndexed;
+		} else if (categories != null) {
+			background = new BufferedImage(
+					width, height, BufferedImage.TYPE_BYTE_INDEXED, getCategoryColorModel(backgroundIndex));
+			byte[] pixels = ((DataBufferByte)background.getRaster().getDataBuffer()).getData();
+			byte[] values = categories.getCategories();
+
+			renderer = (begin, end) -> System.arraycopy(values, begin * width, pixels, begin * width,
+			                                            (end - begin) * width);
+			reducer = MipMapUtilities::reduceCategorical;
 		} else {
 			// TODO use NASA Blue Marble or something
-			float[] atlas = filterDataSets.get(0).getDataSet().getRawData()[0];
-			renderAtlasBackground(atlas, pixels);
+			float[] atlas = filterDataSets.get(0).getDataSet().getMonthData(0);
+
+			background = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY, ATLAS_COLOR_MODEL);
+			byte[] pixels = ((DataBufferByte)background.getRaster().getDataBuffer()).getData();
+
+			renderer = (begin, end) -> renderAtlasBackground(atlas, pixels, width, begin, end);
+			reducer = MipMapUtilities::reduceBinaryMajority;
+		}
+
+		if (parallel) {
+			ParallelUtilities.forEachBand(height, renderer);
+		} else {
+			renderer.run(0, height);
+		}
+
+		List<BufferedImage> backgroundLevels = makeMipMapChain(background, reducer, parallel);
+
+		// Don't cache partial renders.
+		if (!taskAborting.get()) {
+			synchronized (backgroundCache) {
+				backgroundCache.put(key, backgroundLevels);
+			}
 		}
+
+		return backgroundLevels;
 	}
 
-	private void renderParameterBackground(DataSet dataSet, int month, int[] pixels) {
-		float[][]               rawData  = dataSet.getRawData();
-		RangeF                  minMax   = dataSet.getMinMax();
-		int                     gamma    = dataSet.getGamma();
-		@Nullable ColorGradient gradient = ColorGradientCache.getGradient(dataSet.getGradientFilename());
-		int                     length   = rawData[0].length;
+	/**
+	 * Returns the mipmap chain of an indexed image, with the image itself at element 0.
+	 */
+	private List<BufferedImage> makeMipMapChain(BufferedImage image,
+	                                            MipMapUtilities.Reducer reducer,
+	                                            boolean parallel) {
+		int                 numLevels = MipMapUtilities.getNumReducedLevels(image.getWidth(), MIN_MIPMAP_WIDTH);
+		List<BufferedImage> levels    = new ArrayList<>(numLevels + 1);
+		levels.add(image);
+		for (int level = 1; level <= numLevels; level++) {
+			levels.add(new BufferedImage(MipMapUtilities.getLevelSize(image.getWidth(), level),
+			                             MipMapUtilities.getLevelSize(image.getHeight(), level),
+			                             image.getType(),
+			                             (IndexColorModel)image.getColorModel()));
+		}
 
-		float[] rawMonthData = rawData[month];
+		buildMipMaps(image, levels.subList(1, levels.size()), reducer, parallel);
+		return Collections.unmodifiableList(levels);
+	}
 
-		for (int i = 0; i < length; i++) {
-			float value = minMax.unLerp(rawMonthData[i]);
+	private static IndexColorModel makeKoppenColorModel() {
+		KoppenClass[] koppenClasses = KoppenClass.values();
+		int           size          = koppenClasses.length + 1;
+		byte[]        r             = new byte[size];
+		byte[]        g             = new byte[size];
+		byte[]        b             = new byte[size];
+
+		for (int i = 0; i < size; i++) {
+			int color = i == 0 ? DataSet.SEA_BLUE : koppenClasses[i - 1].getColor();
+			r[i] = (byte)(color >> 16);
+			g[i] = (byte)(color >> 8);
+			b[i] = (byte)color;
+		}
 
-			int color;
-			if (Float.isNaN(value)) {
-				color = DataSet.SEA_BLUE;
-			} else {
-				if (gamma > 1) {
-					value = applyGamma(value, gamma);
-				}
+		return new IndexColorModel(8, size, r, g, b);
+	}
 
-				if (gradient != null) {
-					color = gradient.getColor(value);
-				} else {
-					color = (int)(value * 255) * 0x010101;
-				}
+	/**
+	 * Colors that are easy to tell apart: hues spread by the golden angle, alternating between lighter and darker.
+	 */
+	private static IndexColorModel makeClusterColorModel() {
+		int    size = CategoryMap.MAX_CATEGORIES + 1;
+		byte[] r    = new byte[size];
+		byte[] g    = new byte[size];
+		byte[] b    = new byte[size];
+
+		for (int i = 0; i < size; i++) {
+			float hue   = (i - 1) * 0.381966f;
+			int   color = i == 0 ? DataSet.SEA_BLUE : Color.HSBtoRGB(hue, 0.6f, i % 2 == 0 ? 0.65f : 0.9f);
+			r[i] = (byte)(color >> 16);
+			g[i] = (byte)(color >> 8);
+			b[i] = (byte)color;
+		}
+
+		return new IndexColorModel(8, size, r, g, b);
+	}
+
+	/**
+	 * Returns the color in which a climate regime is shown.
+	 *
+	 * @param cluster The regime, from 1 to {@link CategoryMap#MAX_CATEGORIES}
+	 */
+	public static int getClusterColor(int cluster) {
+		requireRange(1, CategoryMap.MAX_CATEGORIES, cluster, "cluster");
+
+		return CLUSTER_COLOR_MODEL.getRGB(cluster) & 0xFFFFFF;
+	}
+
+	private static IndexColorModel getCategoryColorModel(int backgroundIndex) {
+		return backgroundIndex == KOPPEN_BACKGROUND ? KOPPEN_COLOR_MODEL : CLUSTER_COLOR_MODEL;
+	}
+
+	/**
+	 * Returns the climate classes or regimes to show as background, or {@code null} for the other backgrounds or
+	 * when the climate classes aren't available.
+	 */
+	private @Nullable CategoryMap getBackgroundCategories(int backgroundIndex) {
+		@Nullable ClimateDataSet climateDataSetCopy = climateDataSet;
+		if (climateDataSetCopy == null) {
+			return null;
+		} else if (backgroundIndex == KOPPEN_BACKGROUND) {
+			return climateDataSetCopy.getKoppenClassification();
+		} else if (backgroundIndex == CLUSTER_BACKGROUND) {
+			return climateDataSetCopy.getClimateClusters();
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the masks of the climate classes and regimes that are filtered on, computing them on first use. Each
+	 * of them is the same in every month.
+	 */
+	private List<FilterMasks> getCategoryFilterMasks(FilterState filterState) {
+		@Nullable ClimateDataSet climateDataSetCopy = climateDataSet;
+		if (climateDataSetCopy == null) {
+			return Collections.emptyList();
+		}
+
+		List<FilterMasks> categoryMasks = new ArrayList<>(2);
+
+		@Nullable Set<KoppenClass> koppenClasses = filterState.getKoppenClasses();
+		if (koppenClasses != null) {
+			@Nullable KoppenClassification classification = climateDataSetCopy.getKoppenClassification();
+			if (classification != null) {
+				categoryMasks.add(classification.getFilterMasks(koppenClasses));
 			}
+		}
 
-			pixels[i] = color;
+		int clusterBits = filterState.getClusterBits();
+		if (clusterBits != CategoryMap.ALL_CATEGORIES) {
+			categoryMasks.add(climateDataSetCopy.getClimateClusters().getFilterMasks(clusterBits));
 		}
 
-		checkStopCondition();
+		return categoryMasks;
 	}
 
-	private void renderAtlasBackground(float[] atlas, int[] pixels) {
-		int length = atlas.length;
+	private static IndexColorModel makeParameterColorModel(ColorLookupTable lookupTable) {
+		int    size = lookupTable.getSize() + 1;
+		byte[] r    = new byte[size];
+		byte[] g    = new byte[size];
+		byte[] b    = new byte[size];
+
+		for (int i = 0; i < size; i++) {
+			int color = i == 0 ? DataSet.SEA_BLUE : lookupTable.getColorAt(i - 1);
+			r[i] = (byte)(color >> 16);
+			g[i] = (byte)(color >> 8);
+			b[i] = (byte)color;
+		}
+
+		return new IndexColorModel(8, size, r, g, b);
+	}
 
-		for (int i = 0; i < length; i++) {
-			int color;
-			if (Float.isNaN(atlas[i])) {
-				color = DataSet.SEA_BLUE;
+	/**
+	 * Renders data values as palette indices of {@link #makeParameterColorModel(ColorLookupTable)}.
+	 */
+	private void renderParameterBackground(float[] data,
+	                                       ColorLookupTable lookupTable,
+	                                       byte[] pixels,
+	                                       int begin,
+	                                       int end) {
+		for (int i = begin; i < end; i++) {
+			float value = data[i];
+
+			if (Float.isNaN(value)) {
+				pixels[i] = 0;
 			} else {
-				color = DataSet.LAND_GREEN;
+				pixels[i] = (byte)(lookupTable.getIndex(value) + 1);
 			}
-
-			pixels[i] = color;
 		}
 
 		checkStopCondition();
 	}
 
-	private void renderAggregateFilteredPixels(int[] aggregateFilteredPixels, int[] pixels) {
-		int length = aggregateFilteredPixels.length;
+	private void renderAtlasBackground(float[] atlas, byte[] pixels, int width, int beginRow, int endRow) {
+		int       stride = (width + 7) / 8;
+		boolean[] land   = new boolean[width];
 
-		for (int i = 0; i < length; i++) {
-			if (aggregateFilteredPixels[i] == 0) {
-				pixels[i] = DataSet.FILTER_SHADE;
+		for (int y = beginRow; y < endRow; y++) {
+			int begin = y * width;
+
+			for (int x = 0; x < width; x++) {
+				land[x] = !Float.isNaN(atlas[begin + x]);
 			}
+
+			packBits(land, pixels, y * stride);
 		}
 
 		checkStopCondition();
 	}
 
-	private void renderFilteredPixels(int month, int[] pixels) {
-		assert filterDataSets != null;
+	/**
+	 * Renders the bytes {@code [begin, end)} of the mask. A set bit shades the pixel, a clear bit lets the background
+	 * through. The filter masks have the same layout as the mask, so this just combines bytes.
+	 */
+	private void renderMaskBand(int month,
+	                            List<FilterMasks> filterMasks,
+	                            byte @Nullable [] aggregateMask,
+	                            byte[] maskBits,
+	                            int begin,
+	                            int end) {
+		if (aggregateMask != null) {
+			System.arraycopy(aggregateMask, begin, maskBits, begin, end - begin);
+		} else {
+			System.arraycopy(filterMasks.get(0).getMask(month), begin, maskBits, begin, end - begin);
 
-		for (FilterDataSet filterDataSet : filterDataSets) {
-			int[] filteredMonthData = filterDataSet.getFilteredData()[month];
-			int   length            = filteredMonthData.length;
+			for (int f = 1; f < filterMasks.size(); f++) {
+				byte[] mask = filterMasks.get(f).getMask(month);
 
-			for (int i = 0; i < length; i++) {
-				if (filteredMonthData[i] == 0) {
-					pixels[i] = DataSet.FILTER_SHADE;
+				for (int i = begin; i < end; i++) {
+					maskBits[i] |= mask[i];
 				}
 			}
 		}
@@ -354,6 +1630,296 @@ public class AtlasRenderer {
 		checkStopCondition();
 	}
 
+	/**
+	 * Packs the booleans into bytes, most significant bit first, which is the layout of
+	 * {@link BufferedImage#TYPE_BYTE_BINARY}.
+	 */
+	private static void packBits(boolean[] bits, byte[] bytes, int offset) {
+		int length = bits.length;
+
+		for (int x = 0; x < length; x += 8) {
+			int packed = 0;
+			int n      = Math.min(8, length - x);
+
+			for (int bit = 0; bit < n; bit++) {
+				if (bits[x + bit]) {
+					packed |= 0x80 >>> bit;
+				}
+			}
+
+			bytes[offset + x / 8] = (byte)packed;
+		}
+	}
+
+	private void tileTask() {
+		tileTaskPending.set(false);
+
+		int                   generationCopy  = generation.get();
+		int                   month           = currentMonth.get();
+		@Nullable FilterState filterStateCopy = filterState;
+		if (filterStateCopy == null) {
+			return;
+		}
+
+		// Only render tiles when a preview for this generation is on display.
+		synchronized (imageSequence) {
+			@Nullable AnimationFrame frame = imageSequence.get(month);
+			if (frame == null ||
+			    !(frame.getTileSource() instanceof MonthTiles) ||
+			    ((MonthTiles)frame.getTileSource()).generation != generationCopy) {
+				return;
+			}
+		}
+
+		if (renderVisibleTiles(generationCopy, month, filterStateCopy)) {
+			@Nullable Runnable callback = tilesUpdatedCallback;
+			if (callback != null) {
+				GraphicsUtilities.runOnEDT(callback);
+			}
+		}
+	}
+
+	/**
+	 * Renders the tiles in the viewport that are not in the cache yet.
+	 *
+	 * @return whether there is something to show, i.e. the viewport is not empty and rendering wasn't aborted
+	 */
+	private boolean renderVisibleTiles(int generation, int month, FilterState filterState) {
+		@Nullable List<FilterDataSet> filterDataSetsCopy = filterDataSets;
+		Rectangle                     visible            = viewport;
+		int                           level              = viewportLevel;
+		if (filterDataSetsCopy == null ||
+		    filterDataSetsCopy.size() != filterState.getNumFilters() ||
+		    visible.isEmpty()) {
+			return false;
+		}
+
+		int width    = filterDataSetsCopy.get(0).getDataSet().getWidth();
+		int height   = filterDataSetsCopy.get(0).getDataSet().getHeight();
+		int tileSpan = TILE_SIZE << level;
+
+		visible = visible.intersection(new Rectangle(0, 0, width, height));
+		if (visible.isEmpty()) {
+			return false;
+		}
+
+		List<TileKey> missing = new ArrayList<>(64);
+		synchronized (tileCache) {
+			for (int tileY = visible.y / tileSpan; tileY <= (visible.y + visible.height - 1) / tileSpan; tileY++) {
+				for (int tileX = visible.x / tileSpan; tileX <= (visible.x + visible.width - 1) / tileSpan; tileX++) {
+					TileKey key = new TileKey(generation, month, level, tileX, tileY);
+					if (!tileCache.containsKey(key)) {
+						missing.add(key);
+					}
+				}
+			}
+		}
+
+		int     backgroundIndex = backgroundDatasetIndex;
+		boolean aggregate       = aggregateYear;
+		int     minMonthsCopy   = aggregate ? 0 : minMonths;
+
+		@Nullable CategoryMap backgroundCategories = getBackgroundCategories(backgroundIndex);
+		List<byte[]>          categoryMasks        = new ArrayList<>(2);
+		for (FilterMasks masks : getCategoryFilterMasks(filterState)) {
+			categoryMasks.add(masks.getMask(0));
+		}
+
+		// One tile per band
+		ParallelUtilities.forEachBand(missing.size(), missing.size(), (begin, end) -> {
+			for (int i = begin; i < end; i++) {
+				if (this.generation.get() != generation) {
+					return;
+				}
+
+				TileKey       key  = missing.get(i);
+				BufferedImage tile = renderTile(filterDataSetsCopy,
+				                                filterState,
+				                                backgroundCategories,
+				                                categoryMasks,
+				                                key,
+				                                backgroundIndex,
+				                                aggregate,
+				                                minMonthsCopy);
+
+				synchronized (tileCache) {
+					tileCache.put(key, tile);
+				}
+			}
+		});
+
+		return this.generation.get() == generation;
+	}
+
+	/**
+	 * Renders background and filter shading of one tile, by sampling the raw data at the resolution of the tile's
+	 * level.
+	 */
+	private static BufferedImage renderTile(List<FilterDataSet> filterDataSets,
+	                                        FilterState filterState,
+	                                        @Nullable CategoryMap backgroundCategories,
+	                                        List<byte[]> categoryMasks,
+	                                        TileKey key,
+	                                        int backgroundIndex,
+	                                        boolean aggregate,
+	                                        int minMonths) {
+		int width      = filterDataSets.get(0).getDataSet().getWidth();
+		int height     = filterDataSets.get(0).getDataSet().getHeight();
+		int step       = 1 << key.level;
+		int beginX     = key.tileX * TILE_SIZE << key.level;
+		int beginY     = key.tileY * TILE_SIZE << key.level;
+		int tileWidth  = Math.min(TILE_SIZE, (width - beginX + step - 1) >> key.level);
+		int tileHeight = Math.min(TILE_SIZE, (height - beginY + step - 1) >> key.level);
+
+		float[]                    backgroundData;
+		@Nullable ColorLookupTable lookupTable;
+		if (backgroundCategories != null) {
+			backgroundData = filterDataSets.get(0).getDataSet().getMonthData(0);
+			lookupTable = null;
+		} else if (backgroundIndex >= 0) {
+			DataSet dataSet = filterDataSets.get(backgroundIndex).getDataSet();
+			backgroundData = dataSet.getMonthData(key.month);
+			lookupTable = ColorGradientCache.getLookupTable(
+					dataSet.getGradientFilename(), dataSet.getGamma(), dataSet.getMinMax());
+		} else {
+			backgroundData = filterDataSets.get(0).getDataSet().getMonthData(0);
+			lookupTable = null;
+		}
+
+		// When aggregating, a range holds in all months exactly when it holds for both annual extrema.
+		// Computed data sets are evaluated on the fly, for the pixels of this tile only.
+		int           numFilters = filterDataSets.size();
+		int           numArrays  = aggregate ? 2 : 1;
+		PixelValues[] filterData = new PixelValues[numFilters * numArrays];
+		RangeF[]      ranges     = new RangeF[numFilters * numArrays];
+		for (int f = 0; f < numFilters; f++) {
+			DataSet dataSet = filterDataSets.get(f).getDataSet();
+			if (aggregate) {
+				float[] annualMin = dataSet.getAnnualMin();
+				float[] annualMax = dataSet.getAnnualMax();
+				filterData[f * 2] = i -> annualMin[i];
+				filterData[f * 2 + 1] = i -> annualMax[i];
+				ranges[f * 2] = filterState.getFilterMinMax(f);
+				ranges[f * 2 + 1] = filterState.getFilterMinMax(f);
+			} else {
+				filterData[f] = dataSet.getMonthValues(key.month);
+				ranges[f] = filterState.getFilterMinMax(f);
+			}
+		}
+
+		PixelValues[][] allMonthValues = new PixelValues[minMonths > 0 ? numFilters : 0][12];
+		for (int f = 0; f < allMonthValues.length; f++) {
+			for (int month = 0; month < 12; month++) {
+				allMonthValues[f][month] = filterDataSets.get(f).getDataSet().getMonthValues(month);
+			}
+		}
+
+		IndexColorModel categoryColors = getCategoryColorModel(backgroundIndex);
+		int             stride         = BitMaskUtilities.getStride(width);
+
+		// The expression of every month that has to pass: all months when aggregating, or just this month.
+		@Nullable FilterExpression expression  = filterState.getExpression();
+		IntPredicate[]             expressions = new IntPredicate[0];
+		if (expression != null) {
+			expressions = aggregate || minMonths > 0 ? new IntPredicate[12] : new IntPredicate[1];
+			for (int j = 0; j < expressions.length; j++) {
+				expressions[j] = expression.compile(filterDataSets, expressions.length == 1 ? key.month : j);
+			}
+		}
+
+		BufferedImage tile   = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_RGB);
+		int[]         pixels = ((DataBufferInt)tile.getRaster().getDataBuffer()).getData();
+
+		for (int v = 0; v < tileHeight; v++) {
+			int y        = beginY + v * step;
+			int rowIndex = y * width + beginX;
+
+			for (int u = 0; u < tileWidth; u++) {
+				int   x     = beginX + u * step;
+				int   i     = rowIndex + u * step;
+				float value = backgroundData[i];
+
+				int color;
+				if (backgroundCategories != null) {
+					color = categoryColors.getRGB(backgroundCategories.getValue(i)) & 0xFFFFFF;
+				} else if (Float.isNaN(value)) {
+					color = DataSet.SEA_BLUE;
+				} else if (lookupTable != null) {
+					color = lookupTable.getColor(value);
+				} else {
+					color = DataSet.LAND_GREEN;
+				}
+
+				if (isMasked(categoryMasks, y * stride + x / 8, 0x80 >>> (x & 7))) {
+					color = DataSet.FILTER_SHADE;
+				} else if (minMonths > 0) {
+					if (countMatchingMonths(allMonthValues, filterState, expressions, i) < minMonths) {
+						color = DataSet.FILTER_SHADE;
+					}
+				} else {
+					for (int j = 0; j < filterData.length; j++) {
+						float filterValue = filterData[j].get(i);
+						if (!Float.isNaN(filterValue) && !ranges[j].contains(filterValue)) {
+							color = DataSet.FILTER_SHADE;
+							break;
+						}
+					}
+
+					for (IntPredicate predicate : expressions) {
+						if (!predicate.test(i)) {
+							color = DataSet.FILTER_SHADE;
+							break;
+						}
+					}
+				}
+
+				pixels[v * tileWidth + u] = color;
+			}
+		}
+
+		return tile;
+	}
+
+	private static boolean isMasked(List<byte[]> masks, int index, int bit) {
+		for (byte[] mask : masks) {
+			if ((mask[index] & bit) != 0) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @param monthValues The values of every data set, for every month.
+	 * @param expressions The compiled expression of every month, or an empty array when there is no expression.
+	 */
+	private static int countMatchingMonths(PixelValues[][] monthValues,
+	                                       FilterState filterState,
+	                                       IntPredicate[] expressions,
+	                                       int i) {
+		int count = 0;
+
+		for (int month = 0; month < 12; month++) {
+			boolean matches = true;
+
+			for (int f = 0; f < monthValues.length && matches; f++) {
+				float value = monthValues[f][month].get(i);
+				matches = Float.isNaN(value) || filterState.getFilterMinMax(f).contains(value);
+			}
+
+			if (matches && expressions.length > 0) {
+				matches = expressions[month].test(i);
+			}
+
+			if (matches) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
 	private boolean checkStopCondition() {
 		lock.lock();
 		try {
@@ -388,4 +1954,86 @@ public class AtlasRenderer {
 			}
 		}
 	}
+
+	/**
+	 * The preview tiles of one month of one generation.
+	 */
+	private final class MonthTiles implements TileSource {
+		private final int generation;
+		private final int month;
+		private final int width;
+		private final int height;
+
+		private MonthTiles(int generation, int month, int width, int height) {
+			this.generation = generation;
+			this.month = month;
+			this.width = width;
+			this.height = height;
+		}
+
+		@Override
+		public int getWidth() {
+			return width;
+		}
+
+		@Override
+		public int getHeight() {
+			return height;
+		}
+
+		@Override
+		public int getTileSize() {
+			return TILE_SIZE;
+		}
+
+		@Override
+		public @Nullable BufferedImage getTile(int level, int tileX, int tileY) {
+			synchronized (tileCache) {
+				return tileCache.get(new TileKey(generation, month, level, tileX, tileY));
+			}
+		}
+	}
+
+	private static final class TileKey {
+		private final int generation;
+		private final int month;
+		private final int level;
+		private final int tileX;
+		private final int tileY;
+
+		private TileKey(int generation, int month, int level, int tileX, int tileY) {
+			this.generation = generation;
+			this.month = month;
+			this.level = level;
+			this.tileX = tileX;
+			this.tileY = tileY;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			} else if (!(o instanceof TileKey)) {
+				return false;
+			}
+
+			TileKey other = (TileKey)o;
+			return generation == other.generation &&
+			       month == other.month &&
+			       level == other.level &&
+			       tileX == other.tileX &&
+			       tileY == other.tileY;
+		}
+
+		@Override
+		public int hashCode() {
+			int hashCode = 0x811C9DC5;
+			hashCode = 0x01000193 * (hashCode ^ generation);
+			hashCode = 0x01000193 * (hashCode ^ month);
+			hashCode = 0x01000193 * (hashCode ^ level);
+			hashCode = 0x01000193 * (hashCode ^ tileX);
+			hashCode = 0x01000193 * (hashCode ^ tileY);
+			return hashCode;
+		}
+	}
 }
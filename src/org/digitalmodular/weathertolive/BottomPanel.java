@@ -27,29 +27,52 @@
 package org.digitalmodular.weathertolive;
 
 import java.awt.BorderLayout;
+import java.awt.Color;
 import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
 import javax.swing.BoxLayout;
+import javax.swing.Icon;
+import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JMenuItem;
 import javax.swing.JPanel;
+import javax.swing.JPopupMenu;
 import javax.swing.JScrollPane;
 import javax.swing.JSlider;
+import javax.swing.JSpinner;
+import javax.swing.JTextField;
 import javax.swing.RootPaneContainer;
 import javax.swing.ScrollPaneConstants;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.UIManager;
 import javax.swing.event.ChangeEvent;
 
 import org.jetbrains.annotations.Nullable;
 
 import org.digitalmodular.weathertolive.action.HelpAction;
 import org.digitalmodular.weathertolive.action.SelectAction;
+import org.digitalmodular.weathertolive.dataset.AreaStatistics;
+import org.digitalmodular.weathertolive.dataset.CategoryMap;
+import org.digitalmodular.weathertolive.dataset.ClimateClusters;
 import org.digitalmodular.weathertolive.dataset.ClimateDataSet;
-import org.digitalmodular.weathertolive.dataset.FilterDataSet;
+import org.digitalmodular.weathertolive.dataset.KoppenClass;
+import org.digitalmodular.weathertolive.dataset.Morphology;
 import org.digitalmodular.weathertolive.util.LabelSlider;
 import org.digitalmodular.weathertolive.util.ListPanel;
 import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
@@ -61,19 +84,44 @@ import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNo
 public class BottomPanel extends JPanel {
 	public static final int SPACING = 6;
 
+	private static final int COLOR_ICON_SIZE = 12;
+
 	private final WeatherToLivePanel parent;
 
-	private final JButton   newButton             = new JButton("New");
-	private final JButton   loadButton            = new JButton("Load");
-	private final JButton   saveButton            = new JButton("Save");
-	private final JButton   saveAsButton          = new JButton("Save As");
-	private final JButton   helpButton            = new JButton("Help");
-	private final JCheckBox imperialCheckbox      = new JCheckBox("Imperial units");
-	private final JCheckBox fastPreviewCheckbox   = new JCheckBox("Fast previewing");
-	private final JCheckBox animateCheckbox       = new JCheckBox("Animate");
-	private final JSlider   monthSlider           = new LabelSlider(Arrays.asList(
+	private final JButton    newButton             = new JButton("New");
+	private final JButton    loadButton            = new JButton("Load");
+	private final JButton    saveButton            = new JButton("Save");
+	private final JButton    saveAsButton          = new JButton("Save As");
+	private final JButton    helpButton            = new JButton("Help");
+	private final JCheckBox  imperialCheckbox      = new JCheckBox("Imperial units");
+	private final JCheckBox  fastPreviewCheckbox   = new JCheckBox("Fast previewing");
+	private final JCheckBox  animateCheckbox       = new JCheckBox("Animate");
+	private final JSlider    monthSlider           = new LabelSlider(Arrays.asList(
 			"j", "f", "m", "a", "m", "j", "j", "a", "s", "o", "n", "d"));
-	private final JCheckBox aggregateYearCheckbox = new JCheckBox("Filter entire year");
+	private final JCheckBox  aggregateYearCheckbox = new JCheckBox("Filter entire year");
+	private final JCheckBox  minMonthsCheckbox     = new JCheckBox("Filter month count");
+	private final JSpinner   minMonthsSpinner      = new JSpinner(new SpinnerNumberModel(9, 1, 12, 1));
+	private final JCheckBox  scoreCheckbox         = new JCheckBox("Show score");
+	private final JCheckBox  analogCheckbox        = new JCheckBox("Find similar places");
+	private final JTextField expressionField       = new JTextField(16);
+	private final JSpinner   matchRadiusSpinner    = new JSpinner(new SpinnerNumberModel(0, 0, 1000, 10));
+	private final JSpinner   morphologySpinner     = new JSpinner(new SpinnerNumberModel(2, 1, 50, 1));
+	private final JCheckBox  koppenCheckbox        = new JCheckBox("Show climate classes");
+	private final JButton    koppenButton          = new JButton("Climate classes");
+	private final JCheckBox  clusterCheckbox       = new JCheckBox("Show climate regimes");
+	private final JSpinner   clusterSpinner        = new JSpinner(new SpinnerNumberModel(
+			ClimateClusters.DEFAULT_NUM_CLUSTERS, 2, CategoryMap.MAX_CATEGORIES, 1));
+	private final JButton    clusterButton         = new JButton("Regimes");
+	private final JButton    regionsButton         = new JButton("Find regions");
+	private final JLabel     areaLabel             = new JLabel();
+	private final JLabel     placeLabel            = new JLabel(" ");
+
+	private final JComboBox<String> morphologyComboBox = new JComboBox<>();
+
+	private final JPopupMenu                          koppenMenu       = new JPopupMenu();
+	private final Map<KoppenClass, JCheckBoxMenuItem> koppenMenuItems  = new EnumMap<>(KoppenClass.class);
+	private final JPopupMenu                          clusterMenu      = new JPopupMenu();
+	private final List<JCheckBoxMenuItem>             clusterMenuItems = new ArrayList<>(CategoryMap.MAX_CATEGORIES);
 
 	private final ListPanel filterPanel = new ListPanel(BoxLayout.X_AXIS, SPACING);
 
@@ -125,29 +173,193 @@ public class BottomPanel extends JPanel {
 			p.add(animateCheckbox);
 			p.add(monthSlider);
 			p.add(aggregateYearCheckbox);
+			{
+				JPanel p2 = new JPanel(new BorderLayout(SPACING, 0));
+				p2.add(minMonthsCheckbox, BorderLayout.CENTER);
+				p2.add(minMonthsSpinner, BorderLayout.LINE_END);
+				p.add(p2);
+			}
+			p.add(scoreCheckbox);
+			p.add(analogCheckbox);
+			{
+				JPanel p2 = new JPanel(new BorderLayout(SPACING, 0));
+				p2.add(new JLabel("Expression"), BorderLayout.LINE_START);
+				p2.add(expressionField, BorderLayout.CENTER);
+				p.add(p2);
+			}
+			{
+				JPanel p2 = new JPanel(new BorderLayout(SPACING, 0));
+				p2.add(new JLabel("Match within (km)"), BorderLayout.CENTER);
+				p2.add(matchRadiusSpinner, BorderLayout.LINE_END);
+				p.add(p2);
+			}
+			{
+				JPanel p2 = new JPanel(new BorderLayout(SPACING, 0));
+				p2.add(morphologyComboBox, BorderLayout.CENTER);
+				p2.add(morphologySpinner, BorderLayout.LINE_END);
+				p.add(p2);
+			}
+			{
+				JPanel p2 = new JPanel(new BorderLayout(SPACING, 0));
+				p2.add(koppenCheckbox, BorderLayout.CENTER);
+				p2.add(koppenButton, BorderLayout.LINE_END);
+				p.add(p2);
+			}
+			{
+				JPanel p2 = new JPanel(new BorderLayout(SPACING, 0));
+				p2.add(clusterCheckbox, BorderLayout.CENTER);
+				{
+					JPanel p3 = new JPanel(new BorderLayout(SPACING, 0));
+					p3.add(clusterSpinner, BorderLayout.CENTER);
+					p3.add(clusterButton, BorderLayout.LINE_END);
+					p2.add(p3, BorderLayout.LINE_END);
+				}
+				p.add(p2);
+			}
+			p.add(regionsButton);
+			p.add(areaLabel);
+			p.add(placeLabel);
 			add(p, BorderLayout.LINE_END);
 		}
 
+		makeKoppenMenu();
+		makeClusterMenu(ClimateClusters.DEFAULT_NUM_CLUSTERS);
+
+		morphologyComboBox.addItem("No clean-up");
+		for (Morphology morphology : Morphology.values()) {
+			morphologyComboBox.addItem(morphology.getDescription());
+		}
+
 		aggregateYearCheckbox.setToolTipText("Combine the monthly filter results into a single result");
+		minMonthsCheckbox.setToolTipText("Shade the places where the filters match in fewer months than this");
+		scoreCheckbox.setToolTipText("Show how close each place is to the filter ranges, over the whole year");
+		analogCheckbox.setToolTipText("Click a place to show how similar the climate is everywhere else");
+		matchRadiusSpinner.setToolTipText("Also show the places this close to a place where the filters match");
+		morphologyComboBox.setToolTipText("Clean up the places where the filters match, before the match radius");
+		morphologySpinner.setToolTipText("The size of the clean-up, in pixels");
+		koppenCheckbox.setToolTipText("Show the Köppen-Geiger climate class of each place as background");
+		koppenButton.setToolTipText("Choose the Köppen-Geiger climate classes to show");
+		clusterCheckbox.setToolTipText("Show places with a similar climate all year round in the same color");
+		clusterSpinner.setToolTipText("The number of climate regimes");
+		clusterButton.setToolTipText("Choose the climate regimes to show");
+		regionsButton.setToolTipText("List the largest areas where the filters match this month, " +
+		                             "or the best or most similar places in score or analog mode");
+		areaLabel.setToolTipText("The area of land where the filters match, this month and averaged over the year");
+		placeLabel.setToolTipText("About the place under the mouse");
+	}
+
+	private void makeKoppenMenu() {
+		JMenuItem allItem  = new JMenuItem("All");
+		JMenuItem noneItem = new JMenuItem("None");
+		allItem.addActionListener(e -> setAllKoppenClasses(true));
+		noneItem.addActionListener(e -> setAllKoppenClasses(false));
+		koppenMenu.add(allItem);
+		koppenMenu.add(noneItem);
+
+		char group = 0;
+		for (KoppenClass koppenClass : KoppenClass.values()) {
+			if (koppenClass.getGroup() != group) {
+				group = koppenClass.getGroup();
+				koppenMenu.addSeparator();
+			}
+
+			JCheckBoxMenuItem item = new JCheckBoxMenuItem(
+					koppenClass.getCode() + " - " + koppenClass.getDescription(), true);
+			item.putClientProperty("CheckBoxMenuItem.doNotCloseOnMouseClick", true);
+			item.addActionListener(e -> koppenClassesChanged());
+			koppenMenu.add(item);
+			koppenMenuItems.put(koppenClass, item);
+		}
+	}
+
+	private void makeClusterMenu(int numClusters) {
+		clusterMenu.removeAll();
+		clusterMenuItems.clear();
+
+		JMenuItem allItem  = new JMenuItem("All");
+		JMenuItem noneItem = new JMenuItem("None");
+		allItem.addActionListener(e -> setAllClusters(true));
+		noneItem.addActionListener(e -> setAllClusters(false));
+		clusterMenu.add(allItem);
+		clusterMenu.add(noneItem);
+		clusterMenu.addSeparator();
+
+		for (int cluster = 1; cluster <= numClusters; cluster++) {
+			JCheckBoxMenuItem item = new JCheckBoxMenuItem(
+					"Regime " + cluster, makeColorIcon(AtlasRenderer.getClusterColor(cluster)), true);
+			item.putClientProperty("CheckBoxMenuItem.doNotCloseOnMouseClick", true);
+			item.addActionListener(e -> clustersChanged());
+			clusterMenu.add(item);
+			clusterMenuItems.add(item);
+		}
+	}
+
+	private static Icon makeColorIcon(int color) {
+		BufferedImage image = new BufferedImage(COLOR_ICON_SIZE, COLOR_ICON_SIZE, BufferedImage.TYPE_INT_RGB);
+		Arrays.fill(((DataBufferInt)image.getRaster().getDataBuffer()).getData(), color);
+		return new ImageIcon(image);
 	}
 
 	public void prepareFilters(@Nullable ClimateDataSet climateDataSet) {
 		filterPanel.removeAll();
 
-		List<FilterDataSet> filterDataSets = climateDataSet == null ?
-		                                     Collections.emptyList() :
-		                                     climateDataSet.getFilterDataSets();
+		expressionField.setText("");
+		expressionField.setForeground(UIManager.getColor("TextField.foreground"));
+		expressionField.setToolTipText(climateDataSet == null ? null : getExpressionHelp(climateDataSet));
 
-		for (int i = 0; i < filterDataSets.size(); i++) {
-			DataSetParameterPanel parameter = new DataSetParameterPanel(filterDataSets.get(i), i);
-			parameter.setParameterChangedCallback(this::parameterChanged);
+		machineEvent++;
+		try {
+			matchRadiusSpinner.setValue(0);
+			morphologyComboBox.setSelectedIndex(0);
+		} finally {
+			machineEvent--;
+		}
 
-			filterPanel.add(parameter);
+		analogCheckbox.setSelected(false);
+
+		boolean hasKoppen = climateDataSet != null && climateDataSet.hasKoppenClassification();
+		koppenCheckbox.setSelected(false);
+		koppenCheckbox.setEnabled(hasKoppen);
+		koppenButton.setEnabled(hasKoppen);
+		for (JCheckBoxMenuItem item : koppenMenuItems.values()) {
+			item.setSelected(true);
+		}
+
+		int numClusters = climateDataSet == null ? ClimateClusters.DEFAULT_NUM_CLUSTERS :
+		                  climateDataSet.getNumClusters();
+		machineEvent++;
+		try {
+			clusterCheckbox.setSelected(false);
+			clusterSpinner.setValue(numClusters);
+		} finally {
+			machineEvent--;
+		}
+
+		makeClusterMenu(numClusters);
+		clusterCheckbox.setEnabled(climateDataSet != null);
+		clusterSpinner.setEnabled(climateDataSet != null);
+		clusterButton.setEnabled(climateDataSet != null);
+		regionsButton.setEnabled(climateDataSet != null);
+
+		if (climateDataSet != null) {
+			for (int i = 0; i < climateDataSet.getFilterDataSets().size(); i++) {
+				DataSetParameterPanel parameter = new DataSetParameterPanel(climateDataSet, i);
+				parameter.setParameterChangedCallback(this::parameterChanged);
+				parameter.setScoreMode(scoreCheckbox.isSelected());
+				parameter.dataChanged();
+
+				filterPanel.add(parameter);
+			}
 		}
 
 		filterPanel.revalidate();
 	}
 
+	private static String getExpressionHelp(ClimateDataSet climateDataSet) {
+		return "<html>An extra filter, like <tt>tmax - tmin &lt; 12 &amp;&amp; prec &gt; 40</tt>. " +
+		       "Press Enter to apply.<br>Parameters: " + String.join(", ", climateDataSet.getVariableNames());
+	}
+
 	private void attachListeners(RootPaneContainer frame) {
 		ActionListener actionPerformed = this::actionPerformed;
 
@@ -161,6 +373,20 @@ public class BottomPanel extends JPanel {
 		animateCheckbox.addActionListener(actionPerformed);
 		monthSlider.addChangeListener(this::monthChanged);
 		aggregateYearCheckbox.addActionListener(actionPerformed);
+		minMonthsCheckbox.addActionListener(actionPerformed);
+		minMonthsSpinner.addChangeListener(this::minMonthsChanged);
+		matchRadiusSpinner.addChangeListener(this::matchRadiusChanged);
+		morphologyComboBox.addActionListener(actionPerformed);
+		morphologySpinner.addChangeListener(this::morphologyChanged);
+		scoreCheckbox.addActionListener(actionPerformed);
+		analogCheckbox.addActionListener(actionPerformed);
+		expressionField.addActionListener(actionPerformed);
+		koppenCheckbox.addActionListener(actionPerformed);
+		koppenButton.addActionListener(actionPerformed);
+		clusterCheckbox.addActionListener(actionPerformed);
+		clusterSpinner.addChangeListener(this::numClustersChanged);
+		clusterButton.addActionListener(actionPerformed);
+		regionsButton.addActionListener(actionPerformed);
 	}
 
 	@SuppressWarnings("ObjectEquality") // Comparing identity, not equality
@@ -178,13 +404,177 @@ public class BottomPanel extends JPanel {
 			} else if (e.getSource() == animateCheckbox) {
 				parent.setAnimated(animateCheckbox.isSelected());
 			} else if (e.getSource() == aggregateYearCheckbox) {
-				parent.setAggregateYear(aggregateYearCheckbox.isSelected());
+				if (aggregateYearCheckbox.isSelected()) {
+					minMonthsCheckbox.setSelected(false);
+				}
+
+				monthFilterChanged();
+			} else if (e.getSource() == minMonthsCheckbox) {
+				if (minMonthsCheckbox.isSelected()) {
+					aggregateYearCheckbox.setSelected(false);
+				}
+
+				monthFilterChanged();
+			} else if (e.getSource() == scoreCheckbox) {
+				for (int i = 0; i < filterPanel.getNumChildren(); i++) {
+					filterPanel.getChild(i).setScoreMode(scoreCheckbox.isSelected());
+				}
+
+				parent.setScoreMode(scoreCheckbox.isSelected());
+			} else if (e.getSource() == analogCheckbox) {
+				parent.setAnalogMode(analogCheckbox.isSelected());
+			} else if (e.getSource() == expressionField) {
+				expressionChanged();
+			} else if (e.getSource() == morphologyComboBox) {
+				morphologyChanged();
+			} else if (e.getSource() == koppenCheckbox) {
+				clusterCheckbox.setSelected(false);
+				parent.setKoppenBackground(koppenCheckbox.isSelected());
+			} else if (e.getSource() == koppenButton) {
+				koppenMenu.show(koppenButton, 0, koppenButton.getHeight());
+			} else if (e.getSource() == clusterCheckbox) {
+				koppenCheckbox.setSelected(false);
+				parent.setClusterBackground(clusterCheckbox.isSelected());
+			} else if (e.getSource() == clusterButton) {
+				clusterMenu.show(clusterButton, 0, clusterButton.getHeight());
+			} else if (e.getSource() == regionsButton) {
+				parent.findRegions();
 			}
 		} finally {
 			machineEvent--;
 		}
 	}
 
+	// Spinner listener
+	private void minMonthsChanged(ChangeEvent e) {
+		if (machineEvent > 0 || !minMonthsCheckbox.isSelected()) {
+			return;
+		}
+
+		machineEvent++;
+		try {
+			monthFilterChanged();
+		} finally {
+			machineEvent--;
+		}
+	}
+
+	// Spinner listener
+	private void matchRadiusChanged(ChangeEvent e) {
+		if (machineEvent > 0) {
+			return;
+		}
+
+		machineEvent++;
+		try {
+			parent.setMatchRadius((Integer)matchRadiusSpinner.getValue());
+		} finally {
+			machineEvent--;
+		}
+	}
+
+	// Spinner listener
+	private void morphologyChanged(ChangeEvent e) {
+		if (machineEvent > 0 || morphologyComboBox.getSelectedIndex() == 0) {
+			return;
+		}
+
+		machineEvent++;
+		try {
+			morphologyChanged();
+		} finally {
+			machineEvent--;
+		}
+	}
+
+	// Spinner listener
+	private void numClustersChanged(ChangeEvent e) {
+		if (machineEvent > 0) {
+			return;
+		}
+
+		machineEvent++;
+		try {
+			int numClusters = (Integer)clusterSpinner.getValue();
+			makeClusterMenu(numClusters);
+			parent.setNumClusters(numClusters);
+		} finally {
+			machineEvent--;
+		}
+	}
+
+	private void morphologyChanged() {
+		// The first item is 'none', the others follow the order of the operators.
+		int                  index      = morphologyComboBox.getSelectedIndex();
+		@Nullable Morphology morphology = index <= 0 ? null : Morphology.values()[index - 1];
+		parent.setMorphology(morphology, (Integer)morphologySpinner.getValue());
+	}
+
+	private void monthFilterChanged() {
+		int minMonths = minMonthsCheckbox.isSelected() ? (Integer)minMonthsSpinner.getValue() : 0;
+		parent.setMonthFilter(aggregateYearCheckbox.isSelected(), minMonths);
+	}
+
+	private void expressionChanged() {
+		@Nullable ClimateDataSet climateDataSet = parent.getClimateDataSet();
+		if (climateDataSet == null) {
+			return;
+		}
+
+		try {
+			parent.setFilterExpression(expressionField.getText());
+
+			expressionField.setForeground(UIManager.getColor("TextField.foreground"));
+			expressionField.setToolTipText(getExpressionHelp(climateDataSet));
+		} catch (ParseException ex) {
+			expressionField.setForeground(Color.RED);
+			expressionField.setToolTipText(ex.getMessage());
+			expressionField.setCaretPosition(Math.min(ex.getErrorOffset(), expressionField.getText().length()));
+		}
+	}
+
+	private void setAllKoppenClasses(boolean selected) {
+		for (JCheckBoxMenuItem item : koppenMenuItems.values()) {
+			item.setSelected(selected);
+		}
+
+		koppenClassesChanged();
+	}
+
+	private void koppenClassesChanged() {
+		Set<KoppenClass> koppenClasses = EnumSet.noneOf(KoppenClass.class);
+		for (Map.Entry<KoppenClass, JCheckBoxMenuItem> entry : koppenMenuItems.entrySet()) {
+			if (entry.getValue().isSelected()) {
+				koppenClasses.add(entry.getKey());
+			}
+		}
+
+		// All classes selected is the same as not filtering, but cheaper.
+		parent.setKoppenClasses(koppenClasses.size() == koppenMenuItems.size() ? null : koppenClasses);
+	}
+
+	private void setAllClusters(boolean selected) {
+		for (JCheckBoxMenuItem item : clusterMenuItems) {
+			item.setSelected(selected);
+		}
+
+		clustersChanged();
+	}
+
+	private void clustersChanged() {
+		int     clusterBits = 0;
+		boolean all         = true;
+		for (int i = 0; i < clusterMenuItems.size(); i++) {
+			if (clusterMenuItems.get(i).isSelected()) {
+				clusterBits |= 1 << (i + 1);
+			} else {
+				all = false;
+			}
+		}
+
+		parent.setClusterBits(all ? CategoryMap.ALL_CATEGORIES : clusterBits);
+	}
+
 	// Slider listener
 	private void monthChanged(ChangeEvent e) {
 		if (machineEvent > 0) {
@@ -209,6 +599,39 @@ public class BottomPanel extends JPanel {
 		} finally {
 			machineEvent--;
 		}
+
+		areaChanged();
+	}
+
+	/**
+	 * Shows the matching area of the month on display, and averaged over the year.
+	 */
+	public void areaChanged() {
+		@Nullable AreaStatistics statistics = parent.getAreaStatistics();
+		if (statistics == null) {
+			areaLabel.setText(" ");
+			return;
+		}
+
+		areaLabel.setText("Matching " + formatArea(statistics.getArea(monthSlider.getValue())) +
+		                  ", yearly mean " + formatArea(statistics.getMeanArea()));
+	}
+
+	/**
+	 * Shows information about the place under the mouse.
+	 */
+	public void setPlaceText(String text) {
+		placeLabel.setText(text);
+	}
+
+	private String formatArea(double area) {
+		if (Double.isNaN(area)) {
+			return "-";
+		} else if (imperialCheckbox.isSelected()) {
+			return String.format("%,.0f mi²", area / (1.609344 * 1.609344));
+		} else {
+			return String.format("%,.0f km²", area);
+		}
 	}
 
 	// Called from the outside, so don't call this from listeners
@@ -233,6 +656,8 @@ public class BottomPanel extends JPanel {
 		} finally {
 			machineEvent--;
 		}
+
+		areaChanged();
 	}
 
 	public void setParameterChangedCallback(@Nullable Consumer<Integer> parameterChangedCallback) {
@@ -249,11 +674,20 @@ public class BottomPanel extends JPanel {
 	}
 
 	/**
-	 * Called from outside, to update the inside.
+	 * Called from outside, to update the inside. Only the parameter that changed needs a new thumbnail.
 	 */
-	public void dataChanged() {
-		for (int i = 0; i < filterPanel.getNumChildren(); i++) {
-			filterPanel.getChild(i).dataChanged();
+	public void dataChanged(int dataSetIndex) {
+		// A parameter is shown as background now.
+		machineEvent++;
+		try {
+			koppenCheckbox.setSelected(false);
+			clusterCheckbox.setSelected(false);
+		} finally {
+			machineEvent--;
+		}
+
+		if (dataSetIndex >= 0 && dataSetIndex < filterPanel.getNumChildren()) {
+			filterPanel.getChild(dataSetIndex).dataChanged();
 		}
 	}
 }
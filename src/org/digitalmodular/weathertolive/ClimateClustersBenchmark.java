@@ -0,0 +1,138 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.weathertolive.dataset.CategoryMap;
+import org.digitalmodular.weathertolive.dataset.ClimateClusters;
+import org.digitalmodular.weathertolive.dataset.ClimateDataSet;
+import org.digitalmodular.weathertolive.dataset.ClimateDataSetMetadata;
+import org.digitalmodular.weathertolive.dataset.DataSet;
+import org.digitalmodular.weathertolive.dataset.FilterDataSet;
+
+/**
+ * Times {@link ClimateClusters#compute(List, int, long)} on whole climate data sets, without a GUI. Each data set is
+ * clustered once to warm up, and then a few more times, of which the fastest and the median are reported.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+public final class ClimateClustersBenchmark {
+	private static final String USAGE =
+			"Usage: ClimateClustersBenchmark [option...] [config.tsv...]\n" +
+			"Options:\n" +
+			"  --clusters=K  The number of climate regimes. The default is " +
+			ClimateClusters.DEFAULT_NUM_CLUSTERS + ".\n" +
+			"  --runs=N      The number of timed runs. The default is 5.\n" +
+			"The default configurations are the 10 and 2.5 arc-minute WorldClim data sets.";
+
+	private static final List<String> DEFAULT_CONFIGS = List.of(
+			"config-worldclim-2.1-10min.tsv", "config-worldclim-2.1-2.5min.tsv");
+
+	private static final int  DEFAULT_RUNS = 5;
+	private static final long SEED         = 2022;
+
+	private ClimateClustersBenchmark() {
+		throw new AssertionError();
+	}
+
+	public static void main(String... args) throws IOException, InterruptedException {
+		int          numClusters = ClimateClusters.DEFAULT_NUM_CLUSTERS;
+		int          runs        = DEFAULT_RUNS;
+		List<String> configs     = new ArrayList<>(args.length);
+
+		try {
+			for (String arg : args) {
+				String value = arg.substring(arg.indexOf('=') + 1);
+				if (arg.startsWith("--clusters=")) {
+					numClusters = Integer.parseInt(value);
+				} else if (arg.startsWith("--runs=")) {
+					runs = Integer.parseInt(value);
+				} else if (!arg.startsWith("--")) {
+					configs.add(arg);
+				} else {
+					exit("Unknown argument: " + arg);
+				}
+			}
+		} catch (NumberFormatException ex) {
+			exit(ex.getMessage());
+		}
+
+		if (numClusters < 2 || numClusters > CategoryMap.MAX_CATEGORIES || runs < 1) {
+			exit("Argument out of range");
+		}
+
+		if (configs.isEmpty()) {
+			configs.addAll(DEFAULT_CONFIGS);
+		}
+
+		System.out.println(Runtime.getRuntime().availableProcessors() + " threads, " + numClusters + " clusters");
+
+		for (String config : configs) {
+			ClimateDataSetMetadata metadata       = new ClimateDataSetMetadata(Paths.get(config));
+			ClimateDataSet         climateDataSet = WeatherToLiveExport.load(metadata);
+			List<FilterDataSet>    filterDataSets = climateDataSet.getFilterDataSets();
+			DataSet                dataSet        = filterDataSets.get(0).getDataSet();
+
+			ClimateClusters.compute(filterDataSets, numClusters, SEED);
+
+			long[] nanos = new long[runs];
+			for (int i = 0; i < runs; i++) {
+				long start = System.nanoTime();
+				ClimateClusters.compute(filterDataSets, numClusters, SEED);
+				nanos[i] = System.nanoTime() - start;
+			}
+
+			Arrays.sort(nanos);
+			System.out.printf("%s: %d x %d, %d parameters: fastest %.0f ms, median %.0f ms%n",
+			                  metadata.getName(),
+			                  dataSet.getWidth(),
+			                  dataSet.getHeight(),
+			                  filterDataSets.size(),
+			                  nanos[0] / 1.0e6,
+			                  nanos[runs / 2] / 1.0e6);
+		}
+
+		System.exit(0);
+	}
+
+	private static void exit(@Nullable String message) {
+		if (message != null) {
+			System.err.println(message);
+		}
+
+		System.err.println(USAGE);
+		System.exit(2);
+	}
+}
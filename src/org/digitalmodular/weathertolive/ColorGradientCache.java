@@ -28,14 +28,20 @@ package org.digitalmodular.weathertolive;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jetbrains.annotations.Nullable;
 
 import org.digitalmodular.weathertolive.util.ColorGradient;
+import org.digitalmodular.weathertolive.util.RangeF;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireAtLeast;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
 
 /**
+ * Caches gradients and color lookup tables. Safe to use from multiple (render) threads.
+ *
  * @author Mark Jeronimus
  */
 // Created 2022-09-03
@@ -44,22 +50,42 @@ public final class ColorGradientCache {
 		throw new AssertionError();
 	}
 
+	public static final int DEFAULT_LOOKUP_TABLE_SIZE = 4096;
+
 	@SuppressWarnings("StaticCollection")
-	private static final Map<String, ColorGradient> GRADIENTS = new HashMap<>(3);
+	private static final Map<String, ColorGradient> GRADIENTS = new ConcurrentHashMap<>(3);
+
+	@SuppressWarnings("StaticCollection")
+	private static final Map<LookupTableKey, ColorLookupTable> LOOKUP_TABLES = new ConcurrentHashMap<>(16);
 
 	public static @Nullable ColorGradient getGradient(@Nullable String filename) {
 		if (filename == null) {
 			return null;
 		}
 
-		ColorGradient gradient = GRADIENTS.get(filename);
+		return GRADIENTS.computeIfAbsent(filename, ColorGradientCache::loadGradient);
+	}
 
-		if (gradient == null) {
-			gradient = loadGradient(filename);
-			GRADIENTS.put(filename, gradient);
-		}
+	public static ColorLookupTable getLookupTable(@Nullable String gradientFilename, int gamma, RangeF minMax) {
+		return getLookupTable(gradientFilename, gamma, minMax, DEFAULT_LOOKUP_TABLE_SIZE);
+	}
 
-		return gradient;
+	/**
+	 * @param gradientFilename The gradient, or {@code null} for a gray scale
+	 * @param minMax           The range of data values to map to the ends of the gradient
+	 * @param size             The number of colors to sample from the gradient
+	 */
+	public static ColorLookupTable getLookupTable(@Nullable String gradientFilename,
+	                                              int gamma,
+	                                              RangeF minMax,
+	                                              int size) {
+		requireAtLeast(1, gamma, "gamma");
+		requireNonNull(minMax, "minMax");
+		requireAtLeast(2, size, "size");
+
+		LookupTableKey key = new LookupTableKey(gradientFilename, gamma, minMax, size);
+		return LOOKUP_TABLES.computeIfAbsent(
+				key, ignored -> new ColorLookupTable(getGradient(gradientFilename), gamma, minMax, size));
 	}
 
 	private static ColorGradient loadGradient(String filename) {
@@ -69,4 +95,43 @@ public final class ColorGradientCache {
 			return new ColorGradient(new float[][]{{0.1f, 0.1f, 0.1f}, {1.0f, 1.0f, 1.0f}}); // Fallback to gray scale
 		}
 	}
+
+	private static final class LookupTableKey {
+		private final @Nullable String gradientFilename;
+		private final           int    gamma;
+		private final           RangeF minMax;
+		private final           int    size;
+
+		private LookupTableKey(@Nullable String gradientFilename, int gamma, RangeF minMax, int size) {
+			this.gradientFilename = gradientFilename;
+			this.gamma = gamma;
+			this.minMax = minMax;
+			this.size = size;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			} else if (!(o instanceof LookupTableKey)) {
+				return false;
+			}
+
+			LookupTableKey other = (LookupTableKey)o;
+			return gamma == other.gamma &&
+			       size == other.size &&
+			       Objects.equals(gradientFilename, other.gradientFilename) &&
+			       minMax.equals(other.minMax);
+		}
+
+		@Override
+		public int hashCode() {
+			int hashCode = 0x811C9DC5;
+			hashCode = 0x01000193 * (hashCode ^ Objects.hashCode(gradientFilename));
+			hashCode = 0x01000193 * (hashCode ^ Integer.hashCode(gamma));
+			hashCode = 0x01000193 * (hashCode ^ minMax.hashCode());
+			hashCode = 0x01000193 * (hashCode ^ Integer.hashCode(size));
+			return hashCode;
+		}
+	}
 }
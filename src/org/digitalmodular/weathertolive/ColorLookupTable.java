@@ -0,0 +1,110 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive;
+
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.weathertolive.util.ColorGradient;
+import org.digitalmodular.weathertolive.util.RangeF;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireAtLeast;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+
+/**
+ * Maps data values directly to packed RGB colors, by sampling the whole chain of
+ * {@link RangeF#unLerp(float) normalization}, {@link AtlasRenderer#applyGamma(float, int) gamma} and
+ * {@link ColorGradient#getColor(float) gradient} once at construction.
+ * <p>
+ * Instances are immutable and can be shared between threads. Use {@link ColorGradientCache#getLookupTable} to get
+ * one.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-06
+public final class ColorLookupTable {
+	private final int[] colors;
+	private final float scale;
+	private final float offset;
+
+	/**
+	 * @param gradient The gradient, or {@code null} for a gray scale
+	 * @param minMax   The range of data values to map to the ends of the gradient
+	 * @param size     The number of colors to sample from the gradient
+	 */
+	ColorLookupTable(@Nullable ColorGradient gradient, int gamma, RangeF minMax, int size) {
+		requireAtLeast(1, gamma, "gamma");
+		requireNonNull(minMax, "minMax");
+		requireAtLeast(2, size, "size");
+
+		colors = new int[size];
+		for (int i = 0; i < size; i++) {
+			float value = i / (float)(size - 1);
+
+			if (gamma > 1) {
+				value = AtlasRenderer.applyGamma(value, gamma);
+			}
+
+			if (gradient != null) {
+				colors[i] = gradient.getColor(value);
+			} else {
+				colors[i] = (int)(value * 255) * 0x010101;
+			}
+		}
+
+		// Rounds to the nearest entry: index = (value - begin) / span * (size - 1) + 0.5
+		float span = minMax.getSpan();
+		scale = span > 0 ? (size - 1) / span : 0;
+		offset = 0.5f - minMax.getBegin() * scale;
+	}
+
+	public int getSize() {
+		return colors.length;
+	}
+
+	/**
+	 * Returns the index of the color for a data value, in the range {@code [0, size)}. Values outside the range are
+	 * clamped to the ends of the gradient.
+	 * <p>
+	 * This doesn't handle {@link Float#NaN} (sea). Check for that first.
+	 */
+	public int getIndex(float value) {
+		int index = (int)(value * scale + offset);
+		return Math.max(0, Math.min(colors.length - 1, index));
+	}
+
+	/**
+	 * Returns the color for a data value. Values outside the range are clamped to the ends of the gradient.
+	 * <p>
+	 * This doesn't handle {@link Float#NaN} (sea). Check for that first.
+	 */
+	public int getColor(float value) {
+		return colors[getIndex(value)];
+	}
+
+	public int getColorAt(int index) {
+		return colors[index];
+	}
+}
@@ -29,11 +29,14 @@ package org.digitalmodular.weathertolive;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.GridLayout;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 import java.util.function.DoubleUnaryOperator;
 import java.util.regex.Matcher;
@@ -41,27 +44,34 @@ import java.util.regex.Pattern;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JSlider;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingConstants;
 import javax.swing.event.ChangeEvent;
 
 import org.jetbrains.annotations.Nullable;
 
 import com.jidesoft.swing.RangeSlider;
+import org.digitalmodular.weathertolive.dataset.ClimateDataSet;
 import org.digitalmodular.weathertolive.dataset.FilterDataSet;
+import org.digitalmodular.weathertolive.dataset.ScoreFunction;
 import org.digitalmodular.weathertolive.util.AnimationFrame;
 import org.digitalmodular.weathertolive.util.Animator;
+import org.digitalmodular.weathertolive.util.GraphicsUtilities;
 import org.digitalmodular.weathertolive.util.ImagePanel;
 import org.digitalmodular.weathertolive.util.NumberUtilities;
+import org.digitalmodular.weathertolive.util.ParallelUtilities;
 import org.digitalmodular.weathertolive.util.PreferredNumbers;
 import org.digitalmodular.weathertolive.util.RangeF;
+import static org.digitalmodular.weathertolive.BottomPanel.SPACING;
 import static org.digitalmodular.weathertolive.WeatherToLivePanel.SCALE_FACTOR;
 import static org.digitalmodular.weathertolive.dataset.DataSet.FILTER_HIGHLIGHT;
 import static org.digitalmodular.weathertolive.dataset.DataSet.LAND_GREEN;
 import static org.digitalmodular.weathertolive.dataset.DataSet.SEA_BLUE;
 import static org.digitalmodular.weathertolive.dataset.DataSet.THUMBNAIL_HEIGHT;
 import static org.digitalmodular.weathertolive.dataset.DataSet.THUMBNAIL_WIDTH;
-import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireAtLeast;
 import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireRange;
 
 /**
  * @author Mark Jeronimus
@@ -73,8 +83,17 @@ public class DataSetParameterPanel extends JPanel {
 
 	private static final Pattern EXTRACT_UNIT_PATTERN = Pattern.compile("^(.+) \\((.+)\\)$");
 
-	private final FilterDataSet filterDataSet;
-	private final int           dataSetIndex;
+	private static final int THUMBNAIL_FRAME_DURATION = 1_500_000_000 / 12;
+
+	/**
+	 * Shared by all panels. Thumbnails are small, so one thread keeps up with any slider.
+	 */
+	private static final ExecutorService THUMBNAIL_EXECUTOR = Executors.newSingleThreadExecutor(
+			ParallelUtilities.newThreadFactory("thumbnail-renderer", Thread.NORM_PRIORITY));
+
+	private final ClimateDataSet climateDataSet;
+	private final int            dataSetIndex;
+	private final FilterDataSet  filterDataSet;
 
 	private final DecimalFormat numberFormat;
 
@@ -84,10 +103,28 @@ public class DataSetParameterPanel extends JPanel {
 	private final JSlider    slider         = new RangeSlider();
 	private final JLabel     endLabel       = new JLabel();
 
-	private final Animator animator = new Animator(thumbnailPanel::setImage);
+	/**
+	 * Only shown in score mode.
+	 */
+	private final JPanel   scorePanel     = new JPanel(new GridLayout(2, 2, SPACING, 0));
+	private final JSpinner weightSpinner  = new JSpinner(new SpinnerNumberModel(1.0, 0.0, 10.0, 0.5));
+	private final JSpinner falloffSpinner = new JSpinner(new SpinnerNumberModel(10, 0, 100, 1));
+
+	private final Animator animator = new Animator(frame -> thumbnailPanel.setImage(frame.getImage()));
 
 	private final float sliderStepSize;
 
+	/**
+	 * Two sets of thumbnails. One is shown while the other is rendered. Only accessed on the EDT, except for the back
+	 * buffer while it's being rendered.
+	 */
+	private final BufferedImage[][] thumbnailBuffers = new BufferedImage[2][12];
+	private       int               backBufferIndex  = 0;
+
+	private           boolean thumbnailRenderPending = false;
+	private           boolean thumbnailRenderAgain   = false;
+	private @Nullable RangeF  shownFilterMinMax      = null;
+
 	private boolean             imperialUnits  = false;
 	private DoubleUnaryOperator unitConversion = d -> d;
 
@@ -95,10 +132,12 @@ public class DataSetParameterPanel extends JPanel {
 	private @Nullable Consumer<Integer> parameterChangedCallback = null;
 
 	@SuppressWarnings("OverridableMethodCallDuringObjectConstruction")
-	public DataSetParameterPanel(FilterDataSet filterDataSet, int dataSetIndex) {
+	public DataSetParameterPanel(ClimateDataSet climateDataSet, int dataSetIndex) {
 		super(new BorderLayout());
-		this.filterDataSet = requireNonNull(filterDataSet, "filterDataSet");
-		this.dataSetIndex = requireAtLeast(0, dataSetIndex, "dataSetIndex");
+		this.climateDataSet = requireNonNull(climateDataSet, "climateDataSet");
+		List<FilterDataSet> filterDataSets = climateDataSet.getFilterDataSets();
+		this.dataSetIndex = requireRange(0, filterDataSets.size() - 1, dataSetIndex, "dataSetIndex");
+		filterDataSet = filterDataSets.get(dataSetIndex);
 
 		RangeF minMax        = filterDataSet.getDataSet().getMinMax();
 		int    quantizerStep = calculateQuantizerStep(minMax.getSpan() / filterDataSet.getDataSet().getGamma());
@@ -117,6 +156,7 @@ public class DataSetParameterPanel extends JPanel {
 			thumbnailPanel.setBackground(Color.BLACK);
 			add(thumbnailPanel, BorderLayout.CENTER);
 		}
+		JPanel southPanel = new JPanel(new BorderLayout());
 		{
 			JPanel p = new JPanel(new BorderLayout());
 
@@ -138,8 +178,26 @@ public class DataSetParameterPanel extends JPanel {
 				p.add(endLabel, BorderLayout.LINE_END);
 			}
 
-			add(p, BorderLayout.SOUTH);
+			southPanel.add(p, BorderLayout.CENTER);
+		}
+		{
+			ScoreFunction scoreFunction = climateDataSet.getScoreFunction();
+			weightSpinner.setValue((double)scoreFunction.getWeight(dataSetIndex));
+			weightSpinner.setToolTipText("How much this parameter counts in the score. 0 ignores it.");
+			weightSpinner.addChangeListener(this::weightChanged);
+			falloffSpinner.setValue(Math.round(scoreFunction.getFalloff(dataSetIndex) * 100 / minMax.getSpan()));
+			falloffSpinner.setToolTipText("How far outside the range the score drops to 0, " +
+			                              "as a percentage of all values of this parameter");
+			falloffSpinner.addChangeListener(this::falloffChanged);
+
+			scorePanel.add(new JLabel("Weight"));
+			scorePanel.add(weightSpinner);
+			scorePanel.add(new JLabel("Falloff (%)"));
+			scorePanel.add(falloffSpinner);
+			scorePanel.setVisible(false);
+			southPanel.add(scorePanel, BorderLayout.SOUTH);
 		}
+		add(southPanel, BorderLayout.SOUTH);
 
 		setImperialUnits(false);
 	}
@@ -229,13 +287,34 @@ public class DataSetParameterPanel extends JPanel {
 
 		updateLabels(minMax);
 
-		filterDataSet.setFilterMinMax(minMax);
+		if (!climateDataSet.setFilterMinMax(dataSetIndex, minMax)) {
+			return;
+		}
 
 		if (parameterChangedCallback != null) {
 			parameterChangedCallback.accept(dataSetIndex);
 		}
 	}
 
+	// Spinner listener
+	private void weightChanged(ChangeEvent e) {
+		float weight = ((Number)weightSpinner.getValue()).floatValue();
+
+		if (climateDataSet.setScoreWeight(dataSetIndex, weight) && parameterChangedCallback != null) {
+			parameterChangedCallback.accept(dataSetIndex);
+		}
+	}
+
+	// Spinner listener
+	private void falloffChanged(ChangeEvent e) {
+		float falloff = ((Number)falloffSpinner.getValue()).floatValue() / 100 *
+		                filterDataSet.getDataSet().getMinMax().getSpan();
+
+		if (climateDataSet.setScoreFalloff(dataSetIndex, falloff) && parameterChangedCallback != null) {
+			parameterChangedCallback.accept(dataSetIndex);
+		}
+	}
+
 	private RangeF getMinMax() {
 		float begin = slider.getValue();
 		float end   = begin + slider.getExtent();
@@ -268,6 +347,13 @@ public class DataSetParameterPanel extends JPanel {
 		endLabel.setText(numberFormat.format(end));
 	}
 
+	/**
+	 * Shows or hides the weight and falloff of the parameter in the score.
+	 */
+	public void setScoreMode(boolean scoreMode) {
+		scorePanel.setVisible(scoreMode);
+	}
+
 	public void setMonth(int month) {
 		animator.setAnimationFrame(month);
 	}
@@ -278,40 +364,79 @@ public class DataSetParameterPanel extends JPanel {
 
 	/**
 	 * Called from outside, to update the inside.
+	 * <p>
+	 * The thumbnails are rendered on a background thread, and published on the EDT. Changes that arrive while rendering
+	 * are combined into one more render.
 	 */
 	public void dataChanged() {
-		updateThumbnail();
+		GraphicsUtilities.runOnEDT(() -> {
+			if (thumbnailRenderPending) {
+				thumbnailRenderAgain = true;
+			} else {
+				startThumbnailRender();
+			}
+		});
+	}
+
+	private void startThumbnailRender() {
+		RangeF filterMinMax = climateDataSet.getFilterState().getFilterMinMax(dataSetIndex);
+		if (filterMinMax.equals(shownFilterMinMax)) {
+			return;
+		}
+
+		thumbnailRenderPending = true;
+
+		BufferedImage[] buffers = thumbnailBuffers[backBufferIndex];
+		THUMBNAIL_EXECUTOR.execute(() -> {
+			renderThumbnails(filterMinMax, buffers);
+			GraphicsUtilities.runOnEDT(() -> publishThumbnails(filterMinMax, buffers));
+		});
 	}
 
-	public void updateThumbnail() {
+	private void publishThumbnails(RangeF filterMinMax, BufferedImage[] buffers) {
 		List<AnimationFrame> thumbnailSequence = new ArrayList<>(12);
+		for (BufferedImage image : buffers) {
+			thumbnailSequence.add(new AnimationFrame(image, THUMBNAIL_FRAME_DURATION));
+		}
 
-		int[][] thumbnails = filterDataSet.getFilteredThumbnails();
-		int     length     = thumbnails[0].length;
+		animator.setAnimation(thumbnailSequence);
+
+		// The front buffer isn't shown anymore, so it can be rendered into.
+		backBufferIndex ^= 1;
+		shownFilterMinMax = filterMinMax;
+		thumbnailRenderPending = false;
+
+		if (thumbnailRenderAgain) {
+			thumbnailRenderAgain = false;
+			startThumbnailRender();
+		}
+	}
+
+	/**
+	 * Colors the thumbnails directly from the per-thumbnail-pixel ranges of the data.
+	 */
+	private void renderThumbnails(RangeF filterMinMax, BufferedImage[] buffers) {
+		@Nullable RangeF[][] thumbnails = filterDataSet.getDataSet().getThumbnails();
 
 		for (int month = 0; month < 12; month++) {
-			BufferedImage image = new BufferedImage(THUMBNAIL_WIDTH,
-			                                        THUMBNAIL_HEIGHT,
-			                                        BufferedImage.TYPE_INT_RGB);
-			int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+			if (buffers[month] == null) {
+				buffers[month] = new BufferedImage(THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT, BufferedImage.TYPE_INT_RGB);
+			}
 
-			int[] monthThumbnail = thumbnails[month];
+			int[]              pixels         = ((DataBufferInt)buffers[month].getRaster().getDataBuffer()).getData();
+			@Nullable RangeF[] monthThumbnail = thumbnails[month];
 
-			for (int i = 0; i < length; i++) {
-				float thumbnailPixel = monthThumbnail[i];
+			for (int i = 0; i < monthThumbnail.length; i++) {
+				@Nullable RangeF range = monthThumbnail[i];
 
-				if (thumbnailPixel == -1) {
+				if (range == null) {
 					pixels[i] = SEA_BLUE;
-				} else if (thumbnailPixel > 0) {
+				} else if (filterMinMax.intersects(range)) {
 					pixels[i] = FILTER_HIGHLIGHT;
 				} else {
 					pixels[i] = LAND_GREEN;
 				}
 			}
-
-			thumbnailSequence.add(new AnimationFrame(image, 1_500_000_000 / 12));
 		}
-
-		animator.setAnimation(thumbnailSequence);
 	}
 }
@@ -0,0 +1,256 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.weathertolive.dataset.ClimateDataSet;
+import org.digitalmodular.weathertolive.dataset.ClimateDataSetDownloader;
+import org.digitalmodular.weathertolive.dataset.ClimateDataSetLoader;
+import org.digitalmodular.weathertolive.dataset.ClimateDataSetMetadata;
+import org.digitalmodular.weathertolive.dataset.ContourTracer;
+import org.digitalmodular.weathertolive.dataset.DataSet;
+import org.digitalmodular.weathertolive.dataset.FilterExpression;
+import org.digitalmodular.weathertolive.dataset.GeoJsonWriter;
+import org.digitalmodular.weathertolive.dataset.Morphology;
+import org.digitalmodular.weathertolive.util.MultiProgressListener;
+import org.digitalmodular.weathertolive.util.ProgressListener;
+import org.digitalmodular.weathertolive.util.RangeF;
+import org.digitalmodular.weathertolive.util.TextProgressListener;
+
+/**
+ * Exports the places where the filters match as GeoJSON polygons, without a GUI. The masks come from the same
+ * {@link AtlasRenderer} as what the GUI shows, and are traced with {@link ContourTracer}.
+ * <p>
+ * Filters are given as {@code variable=min:max}, with the variable names of the expression language.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+public final class WeatherToLiveExport {
+	private static final String USAGE =
+			"Usage: WeatherToLiveExport <config.tsv> <output.geojson> [option...] [variable=min:max...]\n" +
+			"Options:\n" +
+			"  --month=N          Export only month N (1 to 12). The default is every month.\n" +
+			"  --year             Filter the entire year. Exports one set of polygons.\n" +
+			"  --min-months=N     Match the places where the filters match in at least N months.\n" +
+			"  --expression=EXPR  Filter on an expression as well.\n" +
+			"  --morphology=OP:R  Clean up the matching places first, with OP one of dilate, erode, open or close,\n" +
+			"                     and R the radius in pixels.\n" +
+			"  --match-radius=KM  Also match the land this close to matching land.\n" +
+			"  --tolerance=PIXELS Simplify the outlines by up to this distance. The default is 1.";
+
+	private static final double DEFAULT_TOLERANCE = 1;
+
+	private WeatherToLiveExport() {
+		throw new AssertionError();
+	}
+
+	public static void main(String... args) throws IOException, InterruptedException {
+		if (args.length < 2) {
+			exit(null);
+		}
+
+		Path                 output           = Paths.get(args[1]);
+		int                  month            = -1;
+		boolean              aggregateYear    = false;
+		int                  minMonths        = 0;
+		@Nullable String     expression       = null;
+		@Nullable Morphology morphology       = null;
+		int                  morphologyRadius = 0;
+		float                matchRadius      = 0;
+		double               tolerance        = DEFAULT_TOLERANCE;
+		List<String>         ranges           = new ArrayList<>(args.length);
+
+		try {
+			for (int i = 2; i < args.length; i++) {
+				String arg   = args[i];
+				String value = arg.substring(arg.indexOf('=') + 1);
+				if (arg.startsWith("--month=")) {
+					// Validate before converting, as -1 means every month.
+					int number = Integer.parseInt(value);
+					if (number < 1 || number > 12) {
+						exit("Month out of range: " + value);
+					}
+
+					month = number - 1;
+				} else if (arg.equals("--year")) {
+					aggregateYear = true;
+				} else if (arg.startsWith("--min-months=")) {
+					minMonths = Integer.parseInt(value);
+				} else if (arg.startsWith("--expression=")) {
+					expression = value;
+				} else if (arg.startsWith("--morphology=")) {
+					int colon = value.indexOf(':');
+					if (colon < 0) {
+						exit("Expected --morphology=OP:R: " + arg);
+					}
+
+					String operator = value.substring(0, colon);
+					try {
+						morphology = Morphology.valueOf(operator.toUpperCase(Locale.ROOT));
+					} catch (IllegalArgumentException ignored) {
+						exit("Unknown morphology: " + operator);
+					}
+
+					morphologyRadius = Integer.parseInt(value.substring(colon + 1));
+				} else if (arg.startsWith("--match-radius=")) {
+					matchRadius = Float.parseFloat(value);
+				} else if (arg.startsWith("--tolerance=")) {
+					tolerance = Double.parseDouble(value);
+				} else if (!arg.startsWith("--") && arg.contains("=")) {
+					ranges.add(arg);
+				} else {
+					exit("Unknown argument: " + arg);
+				}
+			}
+		} catch (NumberFormatException ex) {
+			exit(ex.getMessage());
+		}
+
+		if (minMonths < 0 || minMonths > 12 || morphologyRadius < 0 || matchRadius < 0 || tolerance < 0) {
+			exit("Argument out of range");
+		}
+
+		ClimateDataSet climateDataSet = load(new ClimateDataSetMetadata(Paths.get(args[0])));
+		setFilters(climateDataSet, ranges, expression);
+		climateDataSet.setMorphology(morphology, morphologyRadius);
+		climateDataSet.setMatchRadius(matchRadius);
+
+		AtlasRenderer atlasRenderer = new AtlasRenderer(ignored -> { });
+		atlasRenderer.setClimateDataSet(climateDataSet);
+		atlasRenderer.setBackgroundDatasetIndex(0);
+		atlasRenderer.setAggregateYear(aggregateYear);
+		atlasRenderer.setMinMonths(minMonths);
+		atlasRenderer.dataChanged();
+		atlasRenderer.awaitRender();
+
+		DataSet dataSet = climateDataSet.getFilterDataSets().get(0).getDataSet();
+		int     width   = dataSet.getWidth();
+		int     height  = dataSet.getHeight();
+
+		// All months share the mask of the entire year.
+		List<Integer> months = new ArrayList<>(12);
+		if (aggregateYear) {
+			months.add(0);
+		} else if (month >= 0) {
+			months.add(month);
+		} else {
+			for (int i = 0; i < 12; i++) {
+				months.add(i);
+			}
+		}
+
+		double finalTolerance = tolerance;
+		try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8);
+		     GeoJsonWriter geoJsonWriter = new GeoJsonWriter(writer, width, height)) {
+			for (int i : months) {
+				byte @Nullable [] matches = atlasRenderer.getMatches(i);
+				if (matches == null) {
+					throw new IllegalStateException("Month " + (i + 1) + " wasn't rendered");
+				}
+
+				int propertyMonth = aggregateYear ? -1 : i;
+				ContourTracer.trace(matches, width, height, finalTolerance,
+				                    (rings, region) -> geoJsonWriter.writePolygon(rings, propertyMonth, region));
+				System.out.println("Exported month " + (i + 1));
+			}
+		}
+
+		System.exit(0);
+	}
+
+	static ClimateDataSet load(ClimateDataSetMetadata metadata) throws IOException, InterruptedException {
+		// The second progress bar follows single files, which is too much detail for a console.
+		ProgressListener      textListener     = new TextProgressListener(System.out, 1);
+		MultiProgressListener progressListener = (progressBarIndex, evt) -> {
+			if (progressBarIndex == 0) {
+				textListener.progressUpdated(evt);
+			}
+		};
+
+		System.out.println("Downloading " + metadata.getName());
+		ClimateDataSetDownloader.download(metadata, progressListener);
+
+		System.out.println("Loading " + metadata.getName());
+		return new ClimateDataSetLoader().load(metadata, progressListener);
+	}
+
+	private static void setFilters(ClimateDataSet climateDataSet, List<String> ranges, @Nullable String expression) {
+		List<String> variableNames = climateDataSet.getVariableNames();
+
+		for (String range : ranges) {
+			int    equals = range.indexOf('=');
+			int    colon  = range.indexOf(':', equals);
+			String name   = range.substring(0, equals);
+			int    index  = variableNames.indexOf(name);
+			if (index < 0 || colon < 0) {
+				exit("Expected variable=min:max, with a variable from " + variableNames + ": " + range);
+			}
+
+			try {
+				float min = Float.parseFloat(range.substring(equals + 1, colon));
+				float max = Float.parseFloat(range.substring(colon + 1));
+				if (!(min <= max)) {
+					exit("Expected min <= max: " + range);
+				}
+
+				climateDataSet.setFilterMinMax(index, RangeF.of(min, max));
+			} catch (NumberFormatException ex) {
+				exit(ex.getMessage());
+			}
+		}
+
+		if (expression != null) {
+			try {
+				climateDataSet.setFilterExpression(FilterExpression.parse(expression, variableNames));
+			} catch (ParseException ex) {
+				exit(ex.getMessage());
+			}
+		}
+	}
+
+	private static void exit(@Nullable String message) {
+		if (message != null) {
+			System.err.println(message);
+		}
+
+		System.err.println(USAGE);
+		System.exit(2);
+	}
+}
@@ -27,20 +27,45 @@
 package org.digitalmodular.weathertolive;
 
 import java.awt.BorderLayout;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.DisplayMode;
-import java.awt.GraphicsDevice;
-import java.util.Collections;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.text.ParseException;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JList;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.ListSelectionModel;
 import javax.swing.RootPaneContainer;
+import javax.swing.event.ListSelectionEvent;
 
 import org.jetbrains.annotations.Nullable;
 
+import org.digitalmodular.weathertolive.dataset.AnalogMap;
+import org.digitalmodular.weathertolive.dataset.AreaStatistics;
+import org.digitalmodular.weathertolive.dataset.CategoryMap;
 import org.digitalmodular.weathertolive.dataset.ClimateDataSet;
 import org.digitalmodular.weathertolive.dataset.FilterDataSet;
+import org.digitalmodular.weathertolive.dataset.FilterExpression;
+import org.digitalmodular.weathertolive.dataset.KoppenClass;
+import org.digitalmodular.weathertolive.dataset.MonthMatches;
+import org.digitalmodular.weathertolive.dataset.Morphology;
+import org.digitalmodular.weathertolive.dataset.RankedLocation;
+import org.digitalmodular.weathertolive.dataset.Region;
+import org.digitalmodular.weathertolive.dataset.ScoreMap;
+import org.digitalmodular.weathertolive.util.AnimationFrame;
 import org.digitalmodular.weathertolive.util.Animator;
 import org.digitalmodular.weathertolive.util.GraphicsUtilities;
+import org.digitalmodular.weathertolive.util.ParallelUtilities;
 import org.digitalmodular.weathertolive.util.ZoomPanel;
 
 /**
@@ -48,24 +73,50 @@ import org.digitalmodular.weathertolive.util.ZoomPanel;
  */
 // Created 2022-08-30
 public class WeatherToLivePanel extends JPanel {
-	public static final int SCALE_FACTOR;
+	public static final int SCALE_FACTOR = GraphicsUtilities.getScaleFactor();
 
-	static {
-		GraphicsDevice gd             = GraphicsUtilities.getDisplayDevice();
-		int            realWidth      = gd.getDisplayMode().getWidth();
-		float          effectiveWidth = gd.getDefaultConfiguration().getBounds().width;
-		SCALE_FACTOR = Math.round(realWidth / effectiveWidth);
-	}
+	/**
+	 * The number of regions listed by {@link #findRegions()}.
+	 */
+	private static final int MAX_REGIONS = 100;
+
+	/**
+	 * The number of places listed by {@link #findAnalogs(Point)} and {@link #findBestPlaces()}.
+	 */
+	private static final int MAX_PLACES = 100;
+
+	/**
+	 * The size in pixels of the area to zoom to when a place is selected.
+	 */
+	private static final int PLACE_ZOOM_SIZE = 32;
+
+	private static final String[] MONTH_NAMES = {
+			"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+
+	private static final ExecutorService REGION_EXECUTOR = Executors.newSingleThreadExecutor(
+			ParallelUtilities.newThreadFactory("region-finder", Thread.NORM_PRIORITY));
 
 	private final ZoomPanel   worldPanel = new ZoomPanel();
 	private final BottomPanel bottomPanel;
 
-	private final Animator animator = new Animator(worldPanel::setImage);
+	private final JList<Region>         regionList     = new JList<>();
+	private final JList<RankedLocation> placeList      = new JList<>();
+	private final JScrollPane           listScrollPane = new JScrollPane(regionList);
 
-	private final AtlasRenderer atlasRenderer = new AtlasRenderer(animator::setAnimation);
+	private final Animator animator = new Animator(worldPanel::setFrame);
+
+	private final AtlasRenderer atlasRenderer = new AtlasRenderer(this::sequenceUpdated);
 
 	private @Nullable ClimateDataSet climateDataSet = null;
 
+	private boolean scoreMode  = false;
+	private boolean analogMode = false;
+
+	/**
+	 * Counts the calls of {@link #findBestPlaces()}, so a call that's superseded before it gets to run can be skipped.
+	 */
+	private final AtomicInteger bestPlacesRequest = new AtomicInteger();
+
 	@SuppressWarnings({"OverridableMethodCallDuringObjectConstruction", "ThisEscapedInObjectConstruction"})
 	public WeatherToLivePanel(RootPaneContainer frame) {
 		super(new BorderLayout());
@@ -73,8 +124,30 @@ public class WeatherToLivePanel extends JPanel {
 		DisplayMode displayMode = GraphicsUtilities.getDisplayMode();
 		setPreferredSize(new Dimension(displayMode.getWidth() * 3 / 8, displayMode.getHeight() * 3 / 8));
 
+		worldPanel.setViewportListener(atlasRenderer::viewportChanged);
+		atlasRenderer.setTilesUpdatedCallback(worldPanel::repaint);
+		worldPanel.setImageListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				imageClicked(e.getX(), e.getY());
+			}
+
+			@Override
+			public void mouseMoved(MouseEvent e) {
+				imageHovered(e.getX(), e.getY());
+			}
+		});
 		add(worldPanel, BorderLayout.CENTER);
 
+		regionList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		regionList.setCellRenderer(new RegionCellRenderer());
+		regionList.addListSelectionListener(this::regionSelected);
+		placeList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		placeList.setCellRenderer(new PlaceCellRenderer());
+		placeList.addListSelectionListener(this::placeSelected);
+		listScrollPane.setVisible(false);
+		add(listScrollPane, BorderLayout.LINE_END);
+
 		bottomPanel = new BottomPanel(frame, this);
 		bottomPanel.setParameterChangedCallback(this::dataChanged);
 		add(bottomPanel, BorderLayout.SOUTH);
@@ -97,21 +170,342 @@ public class WeatherToLivePanel extends JPanel {
 
 		this.climateDataSet = climateDataSet;
 
-		List<FilterDataSet> filterDataSets = climateDataSet == null ?
-		                                     Collections.emptyList() :
-		                                     climateDataSet.getFilterDataSets();
-
-		atlasRenderer.setFilterDataSets(filterDataSets);
+		atlasRenderer.setClimateDataSet(climateDataSet);
 		atlasRenderer.setBackgroundDatasetIndex(0);
+		atlasRenderer.setAnalogReference(null);
+		analogMode = false;
+		showRegions(List.of());
+		updateScoreFunction();
 		bottomPanel.prepareFilters(climateDataSet);
 
 		setMonth(0);
 	}
 
+	private void sequenceUpdated(List<AnimationFrame> sequence) {
+		animator.setAnimation(sequence);
+		bottomPanel.areaChanged();
+	}
+
+	/**
+	 * Returns the area of the land that matches the filters, or {@code null} if there's no data.
+	 */
+	public @Nullable AreaStatistics getAreaStatistics() {
+		return atlasRenderer.getAreaStatistics();
+	}
+
 	public void dataChanged(int dataSetIndex) {
 		atlasRenderer.setBackgroundDatasetIndex(dataSetIndex);
+		updateScoreFunction();
+		atlasRenderer.dataChanged();
+		bottomPanel.dataChanged(dataSetIndex);
+
+		// The score depends on the filter ranges too.
+		if (scoreMode && atlasRenderer.getAnalogReference() == null) {
+			findBestPlaces();
+		}
+	}
+
+	/**
+	 * Switches between showing the filtered parameters and showing the score of every place. Switching it on also
+	 * lists the best places.
+	 */
+	public void setScoreMode(boolean scoreMode) {
+		this.scoreMode = scoreMode;
+
+		updateScoreFunction();
+		atlasRenderer.dataChanged();
+
+		if (atlasRenderer.getAnalogReference() == null) {
+			if (scoreMode) {
+				findBestPlaces();
+			} else {
+				showRegions(List.of());
+			}
+		}
+	}
+
+	private void updateScoreFunction() {
+		if (scoreMode && climateDataSet != null) {
+			atlasRenderer.setScoreFunction(climateDataSet.getScoreFunction());
+		} else {
+			atlasRenderer.setScoreFunction(null);
+		}
+	}
+
+	/**
+	 * Switches between showing the filtered parameters and showing how similar each place is to a place clicked on.
+	 * Until the first click, nothing changes. Each click also lists the most similar places.
+	 */
+	public void setAnalogMode(boolean analogMode) {
+		this.analogMode = analogMode;
+
+		if (!analogMode && atlasRenderer.getAnalogReference() != null) {
+			atlasRenderer.setAnalogReference(null);
+			atlasRenderer.dataChanged();
+			showRegions(List.of());
+		}
+	}
+
+	/**
+	 * @param x The horizontal pixel coordinate in the data sets
+	 * @param y The vertical pixel coordinate in the data sets
+	 */
+	private void imageClicked(int x, int y) {
+		if (analogMode) {
+			Point reference = new Point(x, y);
+			atlasRenderer.setAnalogReference(reference);
+			atlasRenderer.dataChanged();
+			findAnalogs(reference);
+		}
+	}
+
+	/**
+	 * Shows in which months the filters match at the place under the mouse, or in analog mode, how different its
+	 * climate is from that of the reference.
+	 *
+	 * @param x The horizontal pixel coordinate in the data sets
+	 * @param y The vertical pixel coordinate in the data sets
+	 */
+	private void imageHovered(int x, int y) {
+		@Nullable AnalogMap analogMap = atlasRenderer.getAnalogMap();
+		if (analogMap != null && x < analogMap.getWidth() && y < analogMap.getHeight()) {
+			float  distance = analogMap.getDistance(x, y);
+			String text     = Float.isNaN(distance) ? " " : String.format("Climate distance here %.3f", distance);
+			bottomPanel.setPlaceText(text);
+			return;
+		}
+
+		@Nullable MonthMatches monthMatches = atlasRenderer.getMonthMatches();
+		if (monthMatches == null || x >= monthMatches.getWidth() || y >= monthMatches.getHeight()) {
+			bottomPanel.setPlaceText(" ");
+			return;
+		}
+
+		int months = monthMatches.getMatchingMonths(x, y);
+		if (months == 0) {
+			bottomPanel.setPlaceText("Matches here in no month");
+			return;
+		}
+
+		StringBuilder text = new StringBuilder(64).append("Matches here in");
+		for (int month = 0; month < 12; month++) {
+			if ((months >> month & 1) != 0) {
+				text.append(' ').append(MONTH_NAMES[month]);
+			}
+		}
+
+		bottomPanel.setPlaceText(text.toString());
+	}
+
+	/**
+	 * Filters with a {@link FilterExpression} on top of the ranges.
+	 *
+	 * @param source The expression, or an empty string to remove it
+	 * @throws ParseException when the expression is malformed. The filter stays unchanged.
+	 */
+	public void setFilterExpression(String source) throws ParseException {
+		if (climateDataSet == null) {
+			return;
+		}
+
+		@Nullable FilterExpression expression = null;
+		if (!source.isBlank()) {
+			expression = FilterExpression.parse(source, climateDataSet.getVariableNames());
+		}
+
+		if (climateDataSet.setFilterExpression(expression)) {
+			atlasRenderer.dataChanged();
+		}
+	}
+
+	/**
+	 * @param koppenClasses The climate classes to show, or {@code null} to not filter on climate class.
+	 */
+	public void setKoppenClasses(@Nullable Set<KoppenClass> koppenClasses) {
+		if (climateDataSet != null && climateDataSet.setKoppenClasses(koppenClasses)) {
+			atlasRenderer.dataChanged();
+		}
+	}
+
+	/**
+	 * Shows the climate classes as background, instead of the last changed parameter.
+	 */
+	public void setKoppenBackground(boolean koppenBackground) {
+		atlasRenderer.setBackgroundDatasetIndex(koppenBackground ? AtlasRenderer.KOPPEN_BACKGROUND : 0);
 		atlasRenderer.dataChanged();
-		bottomPanel.dataChanged();
+	}
+
+	/**
+	 * Shows the climate regimes as background, instead of the last changed parameter.
+	 */
+	public void setClusterBackground(boolean clusterBackground) {
+		atlasRenderer.setBackgroundDatasetIndex(clusterBackground ? AtlasRenderer.CLUSTER_BACKGROUND : 0);
+		atlasRenderer.dataChanged();
+	}
+
+	/**
+	 * Changes the number of climate regimes. This removes the filter on regimes.
+	 */
+	public void setNumClusters(int numClusters) {
+		if (climateDataSet != null && climateDataSet.setNumClusters(numClusters)) {
+			atlasRenderer.dataChanged();
+		}
+	}
+
+	/**
+	 * @param clusterBits The climate regimes to show, with bit {@code n} set for regime {@code n}, or
+	 *                    {@link CategoryMap#ALL_CATEGORIES} to not filter on climate regime.
+	 */
+	public void setClusterBits(int clusterBits) {
+		if (climateDataSet != null && climateDataSet.setClusterBits(clusterBits)) {
+			atlasRenderer.dataChanged();
+		}
+	}
+
+	/**
+	 * @param matchRadius The distance in km from a place where the filters match within which places are shown as
+	 *                    matching too, or 0 to show only the places themselves.
+	 */
+	public void setMatchRadius(float matchRadius) {
+		if (climateDataSet != null && climateDataSet.setMatchRadius(matchRadius)) {
+			atlasRenderer.dataChanged();
+		}
+	}
+
+	/**
+	 * @param morphology The operator that cleans up the places where the filters match, or {@code null} for none.
+	 * @param radius     The radius of the operator in pixels.
+	 */
+	public void setMorphology(@Nullable Morphology morphology, int radius) {
+		if (climateDataSet != null && climateDataSet.setMorphology(morphology, radius)) {
+			atlasRenderer.dataChanged();
+		}
+	}
+
+	/**
+	 * Lists the largest regions where the filters match in the month on display. Selecting one zooms to it.
+	 * <p>
+	 * In score and analog mode, there's nothing filtered, so this lists the places with the best score or the places
+	 * most similar to the one clicked on instead.
+	 */
+	public void findRegions() {
+		if (climateDataSet == null) {
+			return;
+		}
+
+		@Nullable Point analogReference = atlasRenderer.getAnalogReference();
+		if (analogReference != null) {
+			findAnalogs(analogReference);
+			return;
+		} else if (scoreMode) {
+			findBestPlaces();
+			return;
+		}
+
+		int month = animator.getAnimationFrame();
+		REGION_EXECUTOR.execute(() -> {
+			List<Region> regions = atlasRenderer.findRegions(month, MAX_REGIONS);
+			GraphicsUtilities.runOnEDT(() -> showRegions(regions));
+		});
+	}
+
+	/**
+	 * Lists the places with the climate most similar to that of the given pixel, most similar first. Selecting one
+	 * zooms to it.
+	 */
+	private void findAnalogs(Point reference) {
+		if (climateDataSet == null) {
+			return;
+		}
+
+		List<FilterDataSet> filterDataSets = climateDataSet.getFilterDataSets();
+		REGION_EXECUTOR.execute(() -> {
+			List<RankedLocation> places = findNearest(filterDataSets, reference);
+			GraphicsUtilities.runOnEDT(() -> showPlaces(places));
+		});
+	}
+
+	private static List<RankedLocation> findNearest(List<FilterDataSet> filterDataSets, Point reference) {
+		try {
+			return AnalogMap.findNearest(filterDataSets, reference.x, reference.y, MAX_PLACES);
+		} catch (IllegalArgumentException ignored) {
+			return List.of(); // The reference is in the sea, or outside this data set.
+		}
+	}
+
+	/**
+	 * Lists the places with the best score, best first, once the score of every place is rendered. Selecting one
+	 * zooms to it.
+	 * <p>
+	 * Every slider change in score mode calls this, so when calls pile up, only the last one does the work.
+	 */
+	private void findBestPlaces() {
+		int request = bestPlacesRequest.incrementAndGet();
+		REGION_EXECUTOR.execute(() -> {
+			if (request != bestPlacesRequest.get()) {
+				return;
+			}
+
+			try {
+				atlasRenderer.awaitRender();
+			} catch (InterruptedException ignored) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+
+			if (request != bestPlacesRequest.get()) {
+				return;
+			}
+
+			@Nullable ScoreMap   scoreMap = atlasRenderer.getScoreMap();
+			List<RankedLocation> places   = scoreMap == null ? List.of() : scoreMap.findTopK(MAX_PLACES);
+			GraphicsUtilities.runOnEDT(() -> {
+				if (request == bestPlacesRequest.get() && scoreMode) {
+					showPlaces(places);
+				}
+			});
+		});
+	}
+
+	private void showRegions(List<Region> regions) {
+		regionList.setListData(regions.toArray(new Region[0]));
+		listScrollPane.setViewportView(regionList);
+		listScrollPane.setVisible(!regions.isEmpty());
+		revalidate();
+	}
+
+	private void showPlaces(List<RankedLocation> places) {
+		placeList.setListData(places.toArray(new RankedLocation[0]));
+		listScrollPane.setViewportView(placeList);
+		listScrollPane.setVisible(!places.isEmpty());
+		revalidate();
+	}
+
+	// List selection listener
+	private void regionSelected(ListSelectionEvent e) {
+		if (e.getValueIsAdjusting()) {
+			return;
+		}
+
+		@Nullable Region region = regionList.getSelectedValue();
+		if (region != null) {
+			worldPanel.zoomTo(region.getBounds());
+		}
+	}
+
+	// List selection listener
+	private void placeSelected(ListSelectionEvent e) {
+		if (e.getValueIsAdjusting()) {
+			return;
+		}
+
+		@Nullable RankedLocation place = placeList.getSelectedValue();
+		if (place != null) {
+			worldPanel.zoomTo(new Rectangle(place.getX() - PLACE_ZOOM_SIZE / 2,
+			                                place.getY() - PLACE_ZOOM_SIZE / 2,
+			                                PLACE_ZOOM_SIZE,
+			                                PLACE_ZOOM_SIZE));
+		}
 	}
 
 	public void setFastPreview(boolean fastPreview) {
@@ -134,8 +528,52 @@ public class WeatherToLivePanel extends JPanel {
 		atlasRenderer.setCurrentMonth(month);
 	}
 
-	public void setAggregateYear(boolean aggregateYear) {
+	/**
+	 * @param aggregateYear Whether to filter the entire year at once
+	 * @param minMonths     When not filtering the entire year, the number of months the filters should match, or 0 to
+	 *                      show each month separately
+	 */
+	public void setMonthFilter(boolean aggregateYear, int minMonths) {
 		atlasRenderer.setAggregateYear(aggregateYear);
+		atlasRenderer.setMinMonths(minMonths);
 		atlasRenderer.dataChanged();
 	}
+
+	/**
+	 * Shows the area and centroid of a region, for example "12,345 km² 45.2°N 3.1°E".
+	 */
+	@SuppressWarnings("serial")
+	private static class RegionCellRenderer extends DefaultListCellRenderer {
+		@Override
+		public Component getListCellRendererComponent(
+				JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+			Region region    = (Region)value;
+			float  latitude  = region.getCentroidLatitude();
+			float  longitude = region.getCentroidLongitude();
+			String text      = String.format("%,.0f km² %.1f°%c %.1f°%c",
+			                                 region.getArea(),
+			                                 Math.abs(latitude), latitude < 0 ? 'S' : 'N',
+			                                 Math.abs(longitude), longitude < 0 ? 'W' : 'E');
+			return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+		}
+	}
+
+	/**
+	 * Shows the location of a place and the value it was ranked by, for example "45.2°N 3.1°E 0.12".
+	 */
+	@SuppressWarnings("serial")
+	private static class PlaceCellRenderer extends DefaultListCellRenderer {
+		@Override
+		public Component getListCellRendererComponent(
+				JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+			RankedLocation place     = (RankedLocation)value;
+			float          latitude  = place.getLatitude();
+			float          longitude = place.getLongitude();
+			String         text      = String.format("%.1f°%c %.1f°%c %.2f",
+			                                         Math.abs(latitude), latitude < 0 ? 'S' : 'N',
+			                                         Math.abs(longitude), longitude < 0 ? 'W' : 'E',
+			                                         place.getValue());
+			return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+		}
+	}
 }
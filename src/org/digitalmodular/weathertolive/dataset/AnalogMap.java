@@ -0,0 +1,318 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.jcip.annotations.Immutable;
+
+import org.digitalmodular.weathertolive.util.ParallelUtilities;
+import org.digitalmodular.weathertolive.util.TopKSelector;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireAtLeast;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireRange;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireSizeAtLeast;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireThat;
+
+/**
+ * How similar the climate of each pixel is to that of a reference pixel. Every pixel has a profile of 12 months for
+ * each parameter, with each parameter normalized by the span of its data set. The distance is the root mean square of
+ * the differences between the profiles: 0 for an identical climate, and at most 1. It's {@link Float#NaN} where
+ * there's no (complete) data.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+@Immutable
+public final class AnalogMap {
+	/**
+	 * The number of terms (months) summed between prunes in {@link #findNearest(List, int, int, int)}. Pruning
+	 * compacts the list of remaining pixels, which costs about as much as summing a term for them, so pruning after
+	 * every term would cost more than it saves.
+	 */
+	private static final int PRUNE_INTERVAL = 3;
+
+	private final int     width;
+	private final int     height;
+	private final int     referenceX;
+	private final int     referenceY;
+	private final float[] distances;
+
+	private AnalogMap(int width, int height, int referenceX, int referenceY, float[] distances) {
+		this.width = width;
+		this.height = height;
+		this.referenceX = referenceX;
+		this.referenceY = referenceY;
+		this.distances = distances;
+	}
+
+	/**
+	 * @throws IllegalArgumentException when the reference pixel doesn't have data in every month.
+	 */
+	public static AnalogMap compute(List<FilterDataSet> filterDataSets, int referenceX, int referenceY) {
+		Profile profile = new Profile(filterDataSets, referenceX, referenceY);
+		int     width   = profile.width;
+
+		float[] distances = new float[width * profile.height];
+
+		// Term by term, with the innermost loop along the row, so every array is read sequentially and the JIT can
+		// vectorize the loop. Sea propagates as NaN without branching.
+		ParallelUtilities.forEachBand(profile.height, (beginRow, endRow) -> {
+			float[] sums = new float[width];
+
+			for (int y = beginRow; y < endRow; y++) {
+				int row = y * width;
+
+				Arrays.fill(sums, 0);
+
+				for (int term = 0; term < profile.values.length; term++) {
+					PixelValues values    = profile.values[term];
+					float       reference = profile.reference[term];
+					float       scale     = profile.scales[term];
+
+					for (int x = 0; x < width; x++) {
+						float difference = (values.get(row + x) - reference) * scale;
+						sums[x] += difference * difference;
+					}
+				}
+
+				for (int x = 0; x < width; x++) {
+					distances[row + x] = profile.toDistance(sums[x]);
+				}
+			}
+		});
+
+		return new AnalogMap(width, profile.height, referenceX, referenceY, distances);
+	}
+
+	/**
+	 * Returns the {@code k} most similar locations to the reference, most similar first, without computing the whole
+	 * map. The reference itself is included, as the first. Equal distances are ordered north to south, then west to
+	 * east.
+	 * <p>
+	 * The terms (one per month of each parameter) are summed one term at a time, row by row. After every few terms, the
+	 * pixels whose partial sum is already worse than the {@code k} best of the band so far are dropped, so most of the
+	 * globe is discarded after a few months of the first parameter.
+	 *
+	 * @throws IllegalArgumentException when the reference pixel doesn't have data in every month.
+	 */
+	public static List<RankedLocation> findNearest(List<FilterDataSet> filterDataSets,
+	                                               int referenceX,
+	                                               int referenceY,
+	                                               int k) {
+		requireAtLeast(0, k, "k");
+		Profile profile = new Profile(filterDataSets, referenceX, referenceY);
+		int     width   = profile.width;
+
+		float bound = findInitialBound(profile, referenceX, referenceY, k);
+
+		List<TopKSelector> bandSelectors = Collections.synchronizedList(new ArrayList<>());
+
+		// Selectors keep the highest values, so they're given the negated sums.
+		ParallelUtilities.forEachBand(profile.height, (beginRow, endRow) -> {
+			TopKSelector selector  = new TopKSelector(k);
+			float[]      sums      = new float[width];
+			int[]        remaining = new int[width];
+
+			for (int y = beginRow; y < endRow; y++) {
+				int row          = y * width;
+				int numRemaining = width;
+
+				Arrays.fill(sums, 0);
+				for (int x = 0; x < width; x++) {
+					remaining[x] = x;
+				}
+
+				for (int term = 0; term < profile.values.length && numRemaining > 0; term++) {
+					PixelValues values    = profile.values[term];
+					float       reference = profile.reference[term];
+					float       scale     = profile.scales[term];
+
+					for (int j = 0; j < numRemaining; j++) {
+						int   x          = remaining[j];
+						float difference = (values.get(row + x) - reference) * scale;
+						sums[x] += difference * difference;
+					}
+
+					// After every few terms, drop the pixels that can't make it anymore.
+					if (term % PRUNE_INTERVAL == PRUNE_INTERVAL - 1) {
+						int numKept = 0;
+						for (int j = 0; j < numRemaining; j++) {
+							int x = remaining[j];
+							if (sums[x] <= bound && selector.wouldAccept(-sums[x], row + x)) {
+								remaining[numKept++] = x;
+							}
+						}
+
+						numRemaining = numKept;
+					}
+				}
+
+				for (int j = 0; j < numRemaining; j++) {
+					int x = remaining[j];
+					selector.offer(-sums[x], row + x);
+				}
+			}
+
+			bandSelectors.add(selector);
+		});
+
+		TopKSelector selector = new TopKSelector(k);
+		for (TopKSelector bandSelector : bandSelectors) {
+			selector.addAll(bandSelector);
+		}
+
+		// The sums aren't kept, so the few winners are summed again.
+		int[]                indices   = selector.removeAllSorted();
+		List<RankedLocation> locations = new ArrayList<>(indices.length);
+		for (int i : indices) {
+			float distance = profile.toDistance(profile.getSum(i));
+			locations.add(new RankedLocation(i % width, i / width, width, profile.height, distance));
+		}
+
+		return locations;
+	}
+
+	/**
+	 * Returns an upper bound of the {@code k}th best sum, from the pixels around the reference, which tend to have a
+	 * similar climate. Without it, bands far away from the reference would only be compared to each other and keep
+	 * nearly everything.
+	 */
+	private static float findInitialBound(Profile profile, int referenceX, int referenceY, int k) {
+		int windowSize = Math.min(profile.width, k * 4);
+		if (k == 0 || windowSize < k) {
+			return Float.POSITIVE_INFINITY;
+		}
+
+		float[] sums = new float[windowSize];
+		for (int j = 0; j < windowSize; j++) {
+			// Wraps around the date line.
+			int x = Math.floorMod(referenceX + j - windowSize / 2, profile.width);
+			sums[j] = profile.getSum(referenceY * profile.width + x);
+		}
+
+		// NaN sorts last.
+		Arrays.sort(sums);
+		return Float.isNaN(sums[k - 1]) ? Float.POSITIVE_INFINITY : sums[k - 1];
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getReferenceX() {
+		return referenceX;
+	}
+
+	public int getReferenceY() {
+		return referenceY;
+	}
+
+	public float getDistance(int x, int y) {
+		requireRange(0, width - 1, x, "x");
+		requireRange(0, height - 1, y, "y");
+
+		return distances[y * width + x];
+	}
+
+	/**
+	 * Returns a view into the (immutable!) internal data, with dimensions [pixel 0..width*height].
+	 */
+	@SuppressWarnings("AssignmentOrReturnOfFieldWithMutableType")
+	public float[] getDistances() {
+		return distances;
+	}
+
+	/**
+	 * The terms of the distance, flattened to [parameter * 12 + month]. Parameters that don't vary are left out.
+	 */
+	private static final class Profile {
+		final int           width;
+		final int           height;
+		final PixelValues[] values;
+		final float[]       reference;
+		final float[]       scales;
+
+		Profile(List<FilterDataSet> filterDataSets, int referenceX, int referenceY) {
+			requireSizeAtLeast(1, filterDataSets, "filterDataSets");
+			width = filterDataSets.get(0).getDataSet().getWidth();
+			height = filterDataSets.get(0).getDataSet().getHeight();
+			requireRange(0, width - 1, referenceX, "referenceX");
+			requireRange(0, height - 1, referenceY, "referenceY");
+
+			int referenceIndex = referenceY * width + referenceX;
+			int numTerms       = 0;
+
+			PixelValues[] values    = new PixelValues[filterDataSets.size() * 12];
+			float[]       reference = new float[values.length];
+			float[]       scales    = new float[values.length];
+			for (FilterDataSet filterDataSet : filterDataSets) {
+				DataSet dataSet = requireNonNull(filterDataSet, "filterDataSet").getDataSet();
+				float   span    = dataSet.getMinMax().getSpan();
+				if (!(span > 0)) {
+					continue;
+				}
+
+				for (int month = 0; month < 12; month++) {
+					values[numTerms] = dataSet.getMonthValues(month);
+					reference[numTerms] = values[numTerms].get(referenceIndex);
+					scales[numTerms] = 1 / span;
+					requireThat(!Float.isNaN(reference[numTerms]),
+					            "The reference has no data for " + dataSet.getName());
+					numTerms++;
+				}
+			}
+
+			requireThat(numTerms > 0, "None of the parameters vary");
+
+			this.values = Arrays.copyOf(values, numTerms);
+			this.reference = Arrays.copyOf(reference, numTerms);
+			this.scales = Arrays.copyOf(scales, numTerms);
+		}
+
+		float getSum(int index) {
+			float sum = 0;
+			for (int term = 0; term < values.length; term++) {
+				float difference = (values[term].get(index) - reference[term]) * scales[term];
+				sum += difference * difference;
+			}
+
+			return sum;
+		}
+
+		float toDistance(float sum) {
+			return (float)Math.sqrt(sum / values.length);
+		}
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.weathertolive.util.BitMaskUtilities;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireArrayLengthExactly;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireRange;
+
+/**
+ * The area of the land that matches the filters, in km², per month and averaged over the year.
+ * <p>
+ * On the grid, pixels near the poles cover much less area than pixels near the equator. Counting pixels would make
+ * the polar regions look many times larger than they are, so every row is weighted by the area of its pixels.
+ * <p>
+ * The number of matching pixels is kept for every row, so when a mask changes only a little, only the changed parts
+ * need to be counted again.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+@ThreadSafe
+public final class AreaStatistics {
+	private final int      width;
+	private final int      height;
+	private final int      stride;
+	/**
+	 * A set bit is land, in the layout of the masks.
+	 */
+	private final byte[]   land;
+	/**
+	 * The area of one pixel, for each row.
+	 */
+	private final double[] pixelAreas;
+	private final double   landArea;
+
+	/**
+	 * For each month, the number of matching pixels in each row, or {@code null} when the month has no mask.
+	 */
+	@GuardedBy("this")
+	private final int[][]  rowCounts = new int[12][];
+	@GuardedBy("this")
+	private final double[] areas     = new double[12];
+
+	/**
+	 * @param landData Any month of any data set. Pixels without data are sea.
+	 */
+	public AreaStatistics(float[] landData, int width, int height) {
+		requireNonNull(landData, "landData");
+		requireArrayLengthExactly(width * height, landData, "landData");
+
+		this.width = width;
+		this.height = height;
+		stride = BitMaskUtilities.getStride(width);
+
+		land = new byte[stride * height];
+		pixelAreas = new double[height];
+		double totalArea = 0;
+		for (int y = 0; y < height; y++) {
+			pixelAreas[y] = GridGeometry.getPixelArea(y, width, height);
+
+			int numLand = 0;
+			for (int x = 0; x < width; x++) {
+				if (!Float.isNaN(landData[y * width + x])) {
+					land[y * stride + (x >> 3)] |= (byte)(0x80 >>> (x & 7));
+					numLand++;
+				}
+			}
+
+			totalArea += numLand * pixelAreas[y];
+		}
+
+		landArea = totalArea;
+		Arrays.fill(areas, Double.NaN);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the total area of land, in km².
+	 */
+	public double getLandArea() {
+		return landArea;
+	}
+
+	/**
+	 * Returns the matching area of a month, in km², or {@link Double#NaN} when the month has no mask.
+	 */
+	public synchronized double getArea(int month) {
+		requireRange(0, 11, month, "month");
+
+		return areas[month];
+	}
+
+	/**
+	 * Returns the matching area averaged over all months, in km², or {@link Double#NaN} when a month has no mask.
+	 */
+	public synchronized double getMeanArea() {
+		double sum = 0;
+		for (double area : areas) {
+			sum += area;
+		}
+
+		return sum / 12;
+	}
+
+	/**
+	 * Counts all pixels of a month's mask.
+	 *
+	 * @param mask The mask, where a set bit shades the pixel, or {@code null} if the month has no mask.
+	 */
+	public synchronized void setMask(int month, byte @Nullable [] mask) {
+		requireRange(0, 11, month, "month");
+
+		if (mask == null) {
+			rowCounts[month] = null;
+			areas[month] = Double.NaN;
+			return;
+		}
+
+		requireArrayLengthExactly(stride * height, mask, "mask");
+
+		int[] counts = new int[height];
+		for (int y = 0; y < height; y++) {
+			counts[y] = countMatches(mask, y * stride, (y + 1) * stride);
+		}
+
+		rowCounts[month] = counts;
+		areas[month] = sumAreas(counts);
+	}
+
+	/**
+	 * Counts only the changed parts of a month's mask. Falls back to {@link #setMask(int, byte[])} when the month
+	 * doesn't have the old mask.
+	 *
+	 * @param oldMask        The mask that was counted last for this month
+	 * @param mask           The new mask
+	 * @param changedRegions The regions where the masks differ, as found by
+	 *                       {@link BitMaskUtilities#findChangedRegions(byte[], byte[], int, int, int)}
+	 */
+	public synchronized void updateMask(int month, byte[] oldMask, byte[] mask, List<Rectangle> changedRegions) {
+		requireRange(0, 11, month, "month");
+		requireArrayLengthExactly(stride * height, oldMask, "oldMask");
+		requireArrayLengthExactly(stride * height, mask, "mask");
+		requireNonNull(changedRegions, "changedRegions");
+
+		int @Nullable [] counts = rowCounts[month];
+		if (counts == null) {
+			setMask(month, mask);
+			return;
+		}
+
+		for (Rectangle region : changedRegions) {
+			int beginByte = region.x >> 3;
+			int endByte   = (region.x + region.width + 7) >> 3;
+
+			for (int y = region.y; y < region.y + region.height; y++) {
+				int offset = y * stride;
+				counts[y] += countMatches(mask, offset + beginByte, offset + endByte) -
+				             countMatches(oldMask, offset + beginByte, offset + endByte);
+			}
+		}
+
+		areas[month] = sumAreas(counts);
+	}
+
+	private int countMatches(byte[] mask, int begin, int end) {
+		int count = 0;
+		for (int i = begin; i < end; i++) {
+			count += Integer.bitCount(~mask[i] & land[i] & 0xFF);
+		}
+
+		return count;
+	}
+
+	private double sumAreas(int[] counts) {
+		double sum = 0;
+		for (int y = 0; y < height; y++) {
+			sum += counts[y] * pixelAreas[y];
+		}
+
+		return sum;
+	}
+}
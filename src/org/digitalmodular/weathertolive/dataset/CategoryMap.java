@@ -0,0 +1,160 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+import java.util.Arrays;
+
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.weathertolive.util.BitMaskUtilities;
+import org.digitalmodular.weathertolive.util.ParallelUtilities;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireArrayLengthExactly;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+
+/**
+ * A category for every pixel, which doesn't change over the year. Categories are numbered from 1 to at most
+ * {@link #MAX_CATEGORIES}, and 0 means there's no data.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+@ThreadSafe
+public abstract class CategoryMap {
+	/**
+	 * The maximum number of categories, so a set of them fits in the bits of an {@code int}.
+	 */
+	public static final int MAX_CATEGORIES = 31;
+
+	/**
+	 * The set of all categories, as bits. Filtering on it doesn't filter anything out.
+	 */
+	public static final int ALL_CATEGORIES = -1;
+
+	private final int    width;
+	private final int    height;
+	private final byte[] categories;
+
+	/**
+	 * The mask of the most recent set of categories. Replaced as a whole, never modified.
+	 */
+	private volatile @Nullable CategoryMask lastCategoryMask = null;
+
+	protected CategoryMap(int width, int height, byte[] categories) {
+		this.width = width;
+		this.height = height;
+		this.categories = requireNonNull(categories, "categories");
+		requireArrayLengthExactly(width * height, categories, "categories");
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the number of categories, not counting 0 (no data).
+	 */
+	public abstract int getNumCategories();
+
+	/**
+	 * Returns the category of a pixel, or 0 where there's no data.
+	 */
+	public int getValue(int index) {
+		return categories[index];
+	}
+
+	/**
+	 * Returns a view into the (mutable!) internal data: the category of every pixel, or 0 where there's no data.
+	 */
+	@SuppressWarnings("AssignmentOrReturnOfFieldWithMutableType")
+	public byte[] getCategories() {
+		return categories;
+	}
+
+	/**
+	 * Returns the masks of the places that are not in one of the given categories. As the categories don't change
+	 * over the year, all months share the same mask. Places without data are never filtered out.
+	 * <p>
+	 * The masks of the most recent set of categories are kept.
+	 *
+	 * @param bits The categories that pass, with bit {@code n} set for category {@code n}.
+	 */
+	public FilterMasks getFilterMasks(int bits) {
+		@Nullable CategoryMask categoryMask = lastCategoryMask;
+		if (categoryMask != null && categoryMask.bits == bits) {
+			return categoryMask.filterMasks;
+		}
+
+		byte[] mask = new byte[BitMaskUtilities.getStride(width) * height];
+		ParallelUtilities.forEachBand(height, (begin, end) -> filter(bits, mask, begin, end));
+
+		byte[][] masks = new byte[12][];
+		Arrays.fill(masks, mask);
+
+		FilterMasks filterMasks = new FilterMasks(null, width, height, masks);
+		lastCategoryMask = new CategoryMask(bits, filterMasks);
+		return filterMasks;
+	}
+
+	private void filter(int bits, byte[] mask, int begin, int end) {
+		int stride = BitMaskUtilities.getStride(width);
+
+		for (int y = begin; y < end; y++) {
+			int row = y * width;
+			int out = y * stride;
+
+			for (int x = 0; x < width; x += 8) {
+				int packed = 0;
+				int n      = Math.min(8, width - x);
+
+				for (int bit = 0; bit < n; bit++) {
+					int value = categories[row + x + bit];
+
+					if (value != 0 && (bits >>> value & 1) == 0) {
+						packed |= 0x80 >>> bit;
+					}
+				}
+
+				mask[out + x / 8] = (byte)packed;
+			}
+		}
+	}
+
+	private static final class CategoryMask {
+		private final int         bits;
+		private final FilterMasks filterMasks;
+
+		private CategoryMask(int bits, FilterMasks filterMasks) {
+			this.bits = bits;
+			this.filterMasks = filterMasks;
+		}
+	}
+}
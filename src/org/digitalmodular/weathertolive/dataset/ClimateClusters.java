@@ -0,0 +1,375 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.digitalmodular.weathertolive.util.ParallelUtilities;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireRange;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireSizeAtLeast;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireThat;
+
+/**
+ * Climate regimes: the pixels clustered by their profile of 12 months of every parameter, with mini-batch k-means
+ * (Sculley, 2010). Each parameter is normalized by the range of its data set, so they all weigh the same.
+ * <p>
+ * The result only depends on the seed. Batches are drawn in sequence, the samples of a batch are assigned to
+ * centroids in parallel (each independently), and the centroids are then updated in batch order on one thread.
+ * Clusters are numbered by the yearly average of the first parameter of their centroid, from low to high.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+@ThreadSafe
+public final class ClimateClusters extends CategoryMap {
+	public static final int DEFAULT_NUM_CLUSTERS = 8;
+
+	private static final int BATCH_SIZE              = 4096;
+	private static final int NUM_ITERATIONS          = 100;
+	/**
+	 * How many random pixels to try per sample before giving up, for when (nearly) everything is sea.
+	 */
+	private static final int MAX_ATTEMPTS_PER_SAMPLE = 100;
+
+	private final int     numClusters;
+	private final int     numTerms;
+	/**
+	 * In data units, with dimensions [(cluster - 1) * numTerms + parameter * 12 + month].
+	 */
+	private final float[] centroids;
+
+	private ClimateClusters(int width, int height, byte[] clusters, int numClusters, int numTerms, float[] centroids) {
+		super(width, height, clusters);
+		this.numClusters = numClusters;
+		this.numTerms = numTerms;
+		this.centroids = centroids;
+	}
+
+	/**
+	 * Clusters every pixel that has data in every month.
+	 *
+	 * @param numClusters The number of clusters, from 2 to {@link #MAX_CATEGORIES}
+	 * @param seed        The seed of the random batches
+	 * @throws IllegalArgumentException when there are fewer pixels with data than clusters.
+	 */
+	public static ClimateClusters compute(List<FilterDataSet> filterDataSets, int numClusters, long seed) {
+		requireSizeAtLeast(1, filterDataSets, "filterDataSets");
+		requireRange(2, MAX_CATEGORIES, numClusters, "numClusters");
+
+		Features         features  = new Features(filterDataSets);
+		int              numTerms  = features.values.length;
+		SplittableRandom random    = new SplittableRandom(seed);
+		int[]            batch     = new int[BATCH_SIZE];
+		float[]          samples   = new float[BATCH_SIZE * numTerms];
+		float[]          centroids = new float[numClusters * numTerms];
+
+		int batchSize = drawBatch(features, random, batch, samples);
+		requireThat(batchSize >= numClusters, "Not enough pixels with data: " + batchSize);
+		initializeCentroids(samples, batchSize, numTerms, numClusters, random, centroids);
+
+		int[] counts     = new int[numClusters];
+		int[] assignment = new int[BATCH_SIZE];
+		for (int iteration = 0; iteration < NUM_ITERATIONS; iteration++) {
+			if (iteration > 0) {
+				batchSize = drawBatch(features, random, batch, samples);
+			}
+
+			ParallelUtilities.forEachBand(batchSize, (begin, end) -> {
+				for (int i = begin; i < end; i++) {
+					assignment[i] = findNearest(samples, i * numTerms, centroids, numClusters, numTerms);
+				}
+			});
+
+			// Each centroid moves towards its samples with a step size of 1 / (number of samples so far).
+			for (int i = 0; i < batchSize; i++) {
+				int   cluster = assignment[i];
+				float step    = 1.0f / ++counts[cluster];
+
+				for (int term = 0; term < numTerms; term++) {
+					int c = cluster * numTerms + term;
+					centroids[c] += step * (samples[i * numTerms + term] - centroids[c]);
+				}
+			}
+		}
+
+		float[] sortedCentroids = sortCentroids(centroids, numClusters, numTerms);
+		byte[]  clusters        = assignAll(features, sortedCentroids, numClusters);
+
+		// From normalized to data units.
+		for (int c = 0; c < sortedCentroids.length; c++) {
+			int term = c % numTerms;
+			sortedCentroids[c] = features.scales[term] > 0 ?
+			                     sortedCentroids[c] / features.scales[term] + features.offsets[term] :
+			                     features.offsets[term];
+		}
+
+		return new ClimateClusters(features.width, features.height, clusters, numClusters, numTerms, sortedCentroids);
+	}
+
+	/**
+	 * Draws random pixels that have data in every month, and copies their normalized profiles.
+	 *
+	 * @return the number of samples drawn, which is less than the size of the batch only when there's (nearly) no
+	 * data.
+	 */
+	private static int drawBatch(Features features, SplittableRandom random, int[] batch, float[] samples) {
+		int numPixels   = features.width * features.height;
+		int size        = 0;
+		int maxAttempts = batch.length * MAX_ATTEMPTS_PER_SAMPLE;
+
+		for (int attempt = 0; attempt < maxAttempts && size < batch.length; attempt++) {
+			int index = random.nextInt(numPixels);
+
+			if (features.load(index, samples, size * features.values.length)) {
+				batch[size] = index;
+				size++;
+			}
+		}
+
+		return size;
+	}
+
+	/**
+	 * k-means++: The first centroid is a random sample, and every next one is a sample drawn with a probability
+	 * proportional to its squared distance to the nearest centroid so far.
+	 */
+	private static void initializeCentroids(float[] samples,
+	                                        int numSamples,
+	                                        int numTerms,
+	                                        int numClusters,
+	                                        SplittableRandom random,
+	                                        float[] centroids) {
+		float[] distances = new float[numSamples];
+		Arrays.fill(distances, Float.POSITIVE_INFINITY);
+
+		int sample = random.nextInt(numSamples);
+		for (int cluster = 0; cluster < numClusters; cluster++) {
+			System.arraycopy(samples, sample * numTerms, centroids, cluster * numTerms, numTerms);
+
+			double total = 0;
+			for (int i = 0; i < numSamples; i++) {
+				float distance = getSquaredDistance(samples, i * numTerms, centroids, cluster * numTerms, numTerms);
+				distances[i] = Math.min(distances[i], distance);
+				total += distances[i];
+			}
+
+			// When all remaining samples coincide with a centroid, any of them will do.
+			double threshold = random.nextDouble() * total;
+			sample = numSamples - 1;
+			for (int i = 0; i < numSamples; i++) {
+				threshold -= distances[i];
+				if (threshold < 0) {
+					sample = i;
+					break;
+				}
+			}
+		}
+	}
+
+	private static int findNearest(float[] samples, int offset, float[] centroids, int numClusters, int numTerms) {
+		int   nearest         = 0;
+		float nearestDistance = Float.POSITIVE_INFINITY;
+
+		for (int cluster = 0; cluster < numClusters; cluster++) {
+			float distance = getSquaredDistance(samples, offset, centroids, cluster * numTerms, numTerms);
+			if (distance < nearestDistance) {
+				nearest = cluster;
+				nearestDistance = distance;
+			}
+		}
+
+		return nearest;
+	}
+
+	private static float getSquaredDistance(float[] a, int offsetA, float[] b, int offsetB, int length) {
+		float sum = 0;
+		for (int i = 0; i < length; i++) {
+			float difference = a[offsetA + i] - b[offsetB + i];
+			sum += difference * difference;
+		}
+
+		return sum;
+	}
+
+	/**
+	 * Returns the centroids ordered by the average of the first 12 terms (the first parameter over the year). Equal
+	 * averages keep their order.
+	 */
+	private static float[] sortCentroids(float[] centroids, int numClusters, int numTerms) {
+		Integer[] order    = new Integer[numClusters];
+		float[]   averages = new float[numClusters];
+		for (int cluster = 0; cluster < numClusters; cluster++) {
+			order[cluster] = cluster;
+
+			for (int term = 0; term < 12; term++) {
+				averages[cluster] += centroids[cluster * numTerms + term] / 12;
+			}
+		}
+
+		Arrays.sort(order, (a, b) -> Float.compare(averages[a], averages[b]));
+
+		float[] sorted = new float[centroids.length];
+		for (int cluster = 0; cluster < numClusters; cluster++) {
+			System.arraycopy(centroids, order[cluster] * numTerms, sorted, cluster * numTerms, numTerms);
+		}
+
+		return sorted;
+	}
+
+	/**
+	 * Assigns every pixel to its nearest centroid, in parallel bands of rows. For each row, the distances to all
+	 * centroids are accumulated term by term, with the innermost loop along the row.
+	 */
+	private static byte[] assignAll(Features features, float[] centroids, int numClusters) {
+		int    width    = features.width;
+		int    numTerms = features.values.length;
+		byte[] clusters = new byte[width * features.height];
+
+		ParallelUtilities.forEachBand(features.height, (beginRow, endRow) -> {
+			float[] values    = new float[width];
+			float[] distances = new float[numClusters * width];
+
+			for (int y = beginRow; y < endRow; y++) {
+				int row = y * width;
+
+				Arrays.fill(distances, 0);
+
+				for (int term = 0; term < numTerms; term++) {
+					PixelValues pixelValues = features.values[term];
+					float       scale       = features.scales[term];
+					float       offset      = features.offsets[term];
+					for (int x = 0; x < width; x++) {
+						values[x] = (pixelValues.get(row + x) - offset) * scale;
+					}
+
+					for (int cluster = 0; cluster < numClusters; cluster++) {
+						float centroid = centroids[cluster * numTerms + term];
+						int   base     = cluster * width;
+
+						for (int x = 0; x < width; x++) {
+							float difference = values[x] - centroid;
+							distances[base + x] += difference * difference;
+						}
+					}
+				}
+
+				for (int x = 0; x < width; x++) {
+					int   nearest         = -1;
+					float nearestDistance = Float.POSITIVE_INFINITY;
+
+					// NaN is never less, so pixels without (complete) data stay at -1.
+					for (int cluster = 0; cluster < numClusters; cluster++) {
+						float distance = distances[cluster * width + x];
+						if (distance < nearestDistance) {
+							nearest = cluster;
+							nearestDistance = distance;
+						}
+					}
+
+					clusters[row + x] = (byte)(nearest + 1);
+				}
+			}
+		});
+
+		return clusters;
+	}
+
+	public int getNumClusters() {
+		return numClusters;
+	}
+
+	@Override
+	public int getNumCategories() {
+		return numClusters;
+	}
+
+	/**
+	 * Returns the value of a parameter in a month, at the center of a cluster.
+	 *
+	 * @param cluster The cluster, from 1 to {@link #getNumClusters()}
+	 */
+	public float getCentroid(int cluster, int parameter, int month) {
+		requireRange(1, numClusters, cluster, "cluster");
+		requireRange(0, numTerms / 12 - 1, parameter, "parameter");
+		requireRange(0, 11, month, "month");
+
+		return centroids[(cluster - 1) * numTerms + parameter * 12 + month];
+	}
+
+	/**
+	 * The normalized profile of a pixel, with dimensions [parameter * 12 + month]: {@code (value - offset) * scale}.
+	 * Parameters that don't vary have a scale of 0.
+	 */
+	private static final class Features {
+		final int           width;
+		final int           height;
+		final PixelValues[] values;
+		final float[]       offsets;
+		final float[]       scales;
+
+		Features(List<FilterDataSet> filterDataSets) {
+			width = filterDataSets.get(0).getDataSet().getWidth();
+			height = filterDataSets.get(0).getDataSet().getHeight();
+
+			values = new PixelValues[filterDataSets.size() * 12];
+			offsets = new float[values.length];
+			scales = new float[values.length];
+			for (int parameter = 0; parameter < filterDataSets.size(); parameter++) {
+				DataSet dataSet = requireNonNull(filterDataSets.get(parameter), "filterDataSets[i]").getDataSet();
+				float   span    = dataSet.getMinMax().getSpan();
+
+				for (int month = 0; month < 12; month++) {
+					int term = parameter * 12 + month;
+					values[term] = dataSet.getMonthValues(month);
+					offsets[term] = dataSet.getMinMax().getBegin();
+					scales[term] = span > 0 ? 1 / span : 0;
+				}
+			}
+		}
+
+		/**
+		 * @return whether the pixel has data in every month. If not, the destination is partially overwritten.
+		 */
+		boolean load(int index, float[] destination, int offset) {
+			for (int term = 0; term < values.length; term++) {
+				float value = values[term].get(index);
+				if (Float.isNaN(value)) {
+					return false;
+				}
+
+				destination[offset + term] = (value - offsets[term]) * scales[term];
+			}
+
+			return true;
+		}
+	}
+}
@@ -26,10 +26,18 @@
  */
 package org.digitalmodular.weathertolive.dataset;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.weathertolive.util.RangeF;
 import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireRange;
 import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireSizeAtLeast;
 
 /**
@@ -39,14 +47,57 @@ import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireSi
  */
 // Created 2022-08-31
 public class ClimateDataSet {
+	/**
+	 * The names of the monthly mean temperature, in the supported climate data sets.
+	 */
+	private static final List<String> TEMPERATURE_NAMES   = List.of("tavg", "tmp");
+	/**
+	 * The names of the monthly precipitation, in the supported climate data sets.
+	 */
+	private static final List<String> PRECIPITATION_NAMES = List.of("prec", "pre");
+
+	/**
+	 * The seed of the climate regimes, so they come out the same every time.
+	 */
+	private static final long CLUSTER_SEED = 2022;
+
 	private final ClimateDataSetMetadata metadata;
 	private final List<FilterDataSet>    filterDataSets;
 
+	private final List<String>           variableNames;
+
+	private final AtomicReference<FilterState>   filterState;
+	private final AtomicReference<ScoreFunction> scoreFunction;
+
+	private final Object koppenLock = new Object();
+
+	private volatile @Nullable KoppenClassification koppenClassification = null;
+
+	private final Object clusterLock = new Object();
+
+	private volatile           int             numClusters     = ClimateClusters.DEFAULT_NUM_CLUSTERS;
+	private volatile @Nullable ClimateClusters climateClusters = null;
+
 	public ClimateDataSet(ClimateDataSetMetadata metadata, List<FilterDataSet> filterDataSets) {
 		this.metadata = requireNonNull(metadata, "metadata");
 		requireSizeAtLeast(1, filterDataSets, "filterDataSets");
 
 		this.filterDataSets = Collections.unmodifiableList(filterDataSets);
+
+		List<String> names = new ArrayList<>(filterDataSets.size());
+		for (int i = 0; i < filterDataSets.size(); i++) {
+			names.add(i < metadata.getNumMetadata() ? metadata.getMetadata(i).getVariableName() : "v" + i);
+		}
+
+		variableNames = Collections.unmodifiableList(names);
+
+		List<RangeF> filterRanges = new ArrayList<>(filterDataSets.size());
+		for (FilterDataSet filterDataSet : filterDataSets) {
+			filterRanges.add(filterDataSet.getDataSet().getMinMax());
+		}
+
+		filterState = new AtomicReference<>(FilterState.of(filterRanges));
+		scoreFunction = new AtomicReference<>(ScoreFunction.defaults(filterDataSets));
 	}
 
 	public ClimateDataSetMetadata getMetadata() {
@@ -56,4 +107,214 @@ public class ClimateDataSet {
 	public List<FilterDataSet> getFilterDataSets() {
 		return filterDataSets;
 	}
+
+	/**
+	 * Returns the short names of the parameters, for use in {@link FilterExpression}s, with one name per element of
+	 * {@link #getFilterDataSets()}.
+	 *
+	 * @see ClimateDataSetMetadata.ClimateDataSetData#getVariableName()
+	 */
+	public List<String> getVariableNames() {
+		return variableNames;
+	}
+
+	/**
+	 * Returns the current snapshot of the filter ranges, with one range per element of {@link #getFilterDataSets()}.
+	 */
+	public FilterState getFilterState() {
+		return filterState.get();
+	}
+
+	/**
+	 * Atomically publishes a new filter state with one range changed.
+	 *
+	 * @return whether the range was different
+	 */
+	public boolean setFilterMinMax(int dataSetIndex, RangeF filterMinMax) {
+		requireRange(0, filterDataSets.size() - 1, dataSetIndex, "dataSetIndex");
+		requireNonNull(filterMinMax, "filterMinMax");
+
+		FilterState oldState = filterState.getAndUpdate(state -> state.withFilterMinMax(dataSetIndex, filterMinMax));
+		return !oldState.getFilterMinMax(dataSetIndex).equals(filterMinMax);
+	}
+
+	/**
+	 * Atomically publishes a new filter state with the expression changed.
+	 *
+	 * @param expression The new expression, or {@code null} to filter with the ranges only.
+	 * @return whether the expression was different
+	 */
+	public boolean setFilterExpression(@Nullable FilterExpression expression) {
+		FilterState oldState = filterState.getAndUpdate(state -> state.withExpression(expression));
+		//noinspection ObjectEquality // Comparing identity, not equality
+		return oldState.getExpression() != expression;
+	}
+
+	/**
+	 * Atomically publishes a new filter state with the climate classes changed.
+	 *
+	 * @param koppenClasses The classes that pass the filter, or {@code null} to not filter on climate class.
+	 * @return whether the classes were different
+	 */
+	public boolean setKoppenClasses(@Nullable Set<KoppenClass> koppenClasses) {
+		FilterState oldState = filterState.getAndUpdate(state -> state.withKoppenClasses(koppenClasses));
+		return !Objects.equals(oldState.getKoppenClasses(), koppenClasses);
+	}
+
+	/**
+	 * Returns the current snapshot of the score weights and falloffs, with one of each per element of
+	 * {@link #getFilterDataSets()}.
+	 */
+	public ScoreFunction getScoreFunction() {
+		return scoreFunction.get();
+	}
+
+	/**
+	 * Atomically publishes a new score function with one weight changed.
+	 *
+	 * @return whether the weight was different
+	 */
+	public boolean setScoreWeight(int dataSetIndex, float weight) {
+		requireRange(0, filterDataSets.size() - 1, dataSetIndex, "dataSetIndex");
+
+		ScoreFunction oldFunction = scoreFunction.getAndUpdate(function -> function.withWeight(dataSetIndex, weight));
+		return oldFunction.getWeight(dataSetIndex) != weight;
+	}
+
+	/**
+	 * Atomically publishes a new score function with one falloff changed.
+	 *
+	 * @return whether the falloff was different
+	 */
+	public boolean setScoreFalloff(int dataSetIndex, float falloff) {
+		requireRange(0, filterDataSets.size() - 1, dataSetIndex, "dataSetIndex");
+
+		ScoreFunction oldFunction = scoreFunction.getAndUpdate(function -> function.withFalloff(dataSetIndex, falloff));
+		return oldFunction.getFalloff(dataSetIndex) != falloff;
+	}
+
+	/**
+	 * Tells whether this climate data set has the parameters for {@link #getKoppenClassification()}.
+	 */
+	public boolean hasKoppenClassification() {
+		return findVariable(TEMPERATURE_NAMES) >= 0 && findVariable(PRECIPITATION_NAMES) >= 0;
+	}
+
+	/**
+	 * Returns the Köppen-Geiger climate class of every place, computed on first use and kept with this data set.
+	 *
+	 * @return the classification, or {@code null} if there's no monthly mean temperature or precipitation.
+	 */
+	public @Nullable KoppenClassification getKoppenClassification() {
+		@Nullable KoppenClassification classification = koppenClassification;
+		if (classification != null || !hasKoppenClassification()) {
+			return classification;
+		}
+
+		synchronized (koppenLock) {
+			classification = koppenClassification;
+			if (classification == null) {
+				DataSet temperature   = filterDataSets.get(findVariable(TEMPERATURE_NAMES)).getDataSet();
+				DataSet precipitation = filterDataSets.get(findVariable(PRECIPITATION_NAMES)).getDataSet();
+				classification = KoppenClassification.compute(temperature, precipitation);
+				koppenClassification = classification;
+			}
+
+			return classification;
+		}
+	}
+
+	public int getNumClusters() {
+		return numClusters;
+	}
+
+	/**
+	 * Changes the number of climate regimes. As that renumbers the regimes, the filter on regimes is removed.
+	 *
+	 * @return whether the number was different
+	 */
+	public boolean setNumClusters(int numClusters) {
+		requireRange(2, CategoryMap.MAX_CATEGORIES, numClusters, "numClusters");
+
+		if (this.numClusters == numClusters) {
+			return false;
+		}
+
+		this.numClusters = numClusters;
+		filterState.updateAndGet(state -> state.withClusterBits(CategoryMap.ALL_CATEGORIES));
+		return true;
+	}
+
+	/**
+	 * Atomically publishes a new filter state with the climate regimes changed.
+	 *
+	 * @param clusterBits The regimes that pass the filter, with bit {@code n} set for regime {@code n}, or
+	 *                    {@link CategoryMap#ALL_CATEGORIES} to not filter on climate regime.
+	 * @return whether the regimes were different
+	 */
+	public boolean setClusterBits(int clusterBits) {
+		FilterState oldState = filterState.getAndUpdate(state -> state.withClusterBits(clusterBits));
+		return oldState.getClusterBits() != clusterBits;
+	}
+
+	/**
+	 * Atomically publishes a new filter state with the match radius changed.
+	 *
+	 * @param matchRadius The distance in km from a matching place within which other places match too, or 0 to match
+	 *                    only the places themselves.
+	 * @return whether the radius was different
+	 */
+	public boolean setMatchRadius(float matchRadius) {
+		FilterState oldState = filterState.getAndUpdate(state -> state.withMatchRadius(matchRadius));
+		return oldState.getMatchRadius() != matchRadius;
+	}
+
+	/**
+	 * Atomically publishes a new filter state with the morphology changed.
+	 *
+	 * @param morphology The operator that cleans up the matching places, or {@code null} for none.
+	 * @param radius     The radius of the operator in pixels.
+	 * @return whether the morphology was different
+	 */
+	public boolean setMorphology(@Nullable Morphology morphology, int radius) {
+		FilterState oldState = filterState.getAndUpdate(state -> state.withMorphology(morphology, radius));
+		if (morphology == null || radius == 0) {
+			return oldState.getMorphology() != null;
+		}
+
+		return oldState.getMorphology() != morphology || oldState.getMorphologyRadius() != radius;
+	}
+
+	/**
+	 * Returns the climate regimes of every place, for the current {@link #getNumClusters() number of regimes}. They
+	 * are computed on first use, and kept until the number changes.
+	 */
+	public ClimateClusters getClimateClusters() {
+		int                       numClustersCopy = numClusters;
+		@Nullable ClimateClusters clusters        = climateClusters;
+		if (clusters != null && clusters.getNumClusters() == numClustersCopy) {
+			return clusters;
+		}
+
+		synchronized (clusterLock) {
+			clusters = climateClusters;
+			if (clusters == null || clusters.getNumClusters() != numClustersCopy) {
+				clusters = ClimateClusters.compute(filterDataSets, numClustersCopy, CLUSTER_SEED);
+				climateClusters = clusters;
+			}
+
+			return clusters;
+		}
+	}
+
+	private int findVariable(List<String> candidates) {
+		for (String candidate : candidates) {
+			int index = variableNames.indexOf(candidate);
+			if (index >= 0) {
+				return index;
+			}
+		}
+
+		return -1;
+	}
 }
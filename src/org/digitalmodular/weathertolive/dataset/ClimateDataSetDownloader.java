@@ -54,6 +54,10 @@ public final class ClimateDataSetDownloader {
 		ProgressListener downloadProgressListener = progressListener.wrapAsSingleProgressListener(1);
 
 		for (int i = 0; i < numDataSets; i++) {
+			if (metadata.getMetadata(i).isDerived()) {
+				continue;
+			}
+
 			String filename = metadata.getMetadata(i).filename;
 
 			URL  url  = new URL(metadata.getDownloadRoot() + filename);
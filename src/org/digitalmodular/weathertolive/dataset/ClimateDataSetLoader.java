@@ -27,14 +27,19 @@
 package org.digitalmodular.weathertolive.dataset;
 
 import java.io.IOException;
+import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import org.digitalmodular.weathertolive.util.BitMaskUtilities;
 import org.digitalmodular.weathertolive.util.MultiProgressListener;
 import org.digitalmodular.weathertolive.util.ProgressEvent;
 import org.digitalmodular.weathertolive.util.ProgressListener;
@@ -45,6 +50,12 @@ import static org.digitalmodular.weathertolive.dataset.ClimateDataSetMetadata.Cl
  */
 // Created 2022-09-03
 public final class ClimateDataSetLoader {
+	/**
+	 * The formula of a derived parameter with the distance in km from every place on land to the nearest sea, like
+	 * {@code coast=distanceToSea(tmp)}. The sea is where the named parameter has no data.
+	 */
+	private static final Pattern DISTANCE_TO_SEA = Pattern.compile("distanceToSea\\(\\s*(\\w+)\\s*\\)");
+
 	private final WorldClim21DataSetLoader worldClim21DataSetLoader = new WorldClim21DataSetLoader();
 	private final CRUCL20DataSetLoader     crucl20DataSetLoader     = new CRUCL20DataSetLoader();
 
@@ -78,7 +89,9 @@ public final class ClimateDataSetLoader {
 					throw new InterruptedException("Canceled");
 				}
 
-				if (filename.endsWith(".zip")) {
+				if (setMetadata.isDerived()) {
+					dataSets.add(loadDerived(metadata, setMetadata, dataSets));
+				} else if (filename.endsWith(".zip")) {
 					dataSets.add(worldClim21DataSetLoader.load(setMetadata, loadProgressListener));
 				} else if (filename.endsWith(".gz")) {
 					dataSets.add(crucl20DataSetLoader.load(setMetadata, loadProgressListener));
@@ -110,6 +123,81 @@ public final class ClimateDataSetLoader {
 		}
 	}
 
+	/**
+	 * Makes a parameter that is computed from the ones before it.
+	 */
+	private static FilterDataSet loadDerived(ClimateDataSetMetadata metadata,
+	                                         ClimateDataSetData setMetadata,
+	                                         List<FilterDataSet> dataSets) throws IOException {
+		List<String>  variableNames = new ArrayList<>(dataSets.size());
+		List<DataSet> sources       = new ArrayList<>(dataSets.size());
+		for (int i = 0; i < dataSets.size(); i++) {
+			variableNames.add(metadata.getMetadata(i).getVariableName());
+			sources.add(dataSets.get(i).getDataSet());
+		}
+
+		Matcher matcher = DISTANCE_TO_SEA.matcher(setMetadata.getFormula());
+		if (matcher.matches()) {
+			int index = variableNames.indexOf(matcher.group(1));
+			if (index < 0) {
+				throw new IOException("Bad formula for " + setMetadata.getVariableName() + ": Unknown parameter " +
+				                      matcher.group(1));
+			}
+
+			return makeDistanceToSea(setMetadata, sources.get(index));
+		}
+
+		try {
+			DataSet dataSet = DerivedDataSet.create(setMetadata.dataSetName,
+			                                        setMetadata.getFormula(),
+			                                        variableNames,
+			                                        sources,
+			                                        setMetadata.absoluteZero,
+			                                        setMetadata.gamma,
+			                                        setMetadata.gradientFilename);
+			return new FilterDataSet(dataSet);
+		} catch (ParseException ex) {
+			throw new IOException("Bad formula for " + setMetadata.getVariableName() + " at position " +
+			                      ex.getErrorOffset() + ": " + ex.getMessage(), ex);
+		}
+	}
+
+	private static FilterDataSet makeDistanceToSea(ClimateDataSetData setMetadata, DataSet source) {
+		int     width  = source.getWidth();
+		int     height = source.getHeight();
+		int     stride = BitMaskUtilities.getStride(width);
+		float[] data   = source.getMonthData(0);
+
+		byte[] sea = new byte[stride * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (Float.isNaN(data[y * width + x])) {
+					sea[y * stride + (x >> 3)] |= (byte)(0x80 >>> (x & 7));
+				}
+			}
+		}
+
+		float[] distances = DistanceTransform.getDistances(sea, width, height, Float.POSITIVE_INFINITY);
+		for (int i = 0; i < distances.length; i++) {
+			if (Float.isNaN(data[i]) || Float.isInfinite(distances[i])) {
+				distances[i] = Float.NaN; // The sea itself, or a world without sea
+			}
+		}
+
+		// The distance doesn't change through the year, so all months share one array.
+		float[][] months = new float[12][];
+		Arrays.fill(months, distances);
+
+		DataSet dataSet = new DataSet(setMetadata.dataSetName,
+		                              months,
+		                              width,
+		                              height,
+		                              setMetadata.absoluteZero,
+		                              setMetadata.gamma,
+		                              setMetadata.gradientFilename);
+		return new FilterDataSet(dataSet);
+	}
+
 	public void cancel() {
 		lock.lock();
 		try {
@@ -62,6 +62,42 @@ public class ClimateDataSetMetadata {
 			this.gamma = gamma;
 			this.gradientFilename = gradientFilename;
 		}
+
+		/**
+		 * Tells whether this parameter is computed from the others instead of loaded. In that case, the filename
+		 * column holds {@code name=formula}, like {@code swing=tmax - tmin}. The formula {@code distanceToSea(tmin)}
+		 * gives the distance in km to the nearest place where {@code tmin} has no data.
+		 */
+		public boolean isDerived() {
+			return filename.indexOf('=') >= 0;
+		}
+
+		/**
+		 * Returns the short name of the parameter, for use in formulas. For loaded parameters it's taken from the
+		 * file name, like {@code tmin} from {@code wc2.1_10m_tmin.zip}.
+		 */
+		public String getVariableName() {
+			if (isDerived()) {
+				return filename.substring(0, filename.indexOf('=')).trim();
+			}
+
+			String name = filename.substring(filename.lastIndexOf('_') + 1);
+			int    dot  = name.indexOf('.');
+			return dot < 0 ? name : name.substring(0, dot);
+		}
+
+		/**
+		 * Returns the formula of a derived parameter.
+		 *
+		 * @throws IllegalStateException when the parameter isn't derived
+		 */
+		public String getFormula() {
+			if (!isDerived()) {
+				throw new IllegalStateException("Not a derived parameter: " + filename);
+			}
+
+			return filename.substring(filename.indexOf('=') + 1).trim();
+		}
 	}
 
 	private final Path                     file;
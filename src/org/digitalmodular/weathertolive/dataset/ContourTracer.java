@@ -0,0 +1,514 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import org.digitalmodular.weathertolive.util.BitMaskUtilities;
+import org.digitalmodular.weathertolive.util.ParallelUtilities;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireArrayLengthExactly;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireThat;
+
+/**
+ * Traces the outlines of the set pixels in a mask as polygons, with marching squares, and simplifies them.
+ * <p>
+ * The outlines follow the pixel edges, so vertices are pixel corners: {@code (0, 0)} is the top-left corner of the
+ * grid, and {@code (width, height)} the bottom-right. Pixels are connected to the 4 pixels next to them, so pixels
+ * that only touch at a corner get separate polygons.
+ * <p>
+ * The mask is traced in bands of rows, in parallel. Each band is closed off at its top and bottom, and the grid at the
+ * date line, so polygons are cut there. Together, they still cover exactly the set pixels, and the vertices on the
+ * cuts are never simplified away, so neighboring polygons keep meeting without gaps. Only the rings of a few bands are
+ * in memory at a time, so the polygons can be written out while the rest is traced.
+ * <p>
+ * To put the pieces back together, each polygon comes with the number of the region it's a piece of, as labeled by
+ * {@link RegionFinder}, which connects the pixels across the date line too. The labels are kept as runs of pixels,
+ * which is much less than the rings.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+public final class ContourTracer {
+	/**
+	 * Rows per band. Shorter bands cut more polygons, longer bands take more memory.
+	 */
+	private static final int BAND_HEIGHT = 64;
+
+	private static final int RIGHT = 0;
+	private static final int DOWN  = 1;
+	private static final int LEFT  = 2;
+	private static final int UP    = 3;
+
+	private ContourTracer() {
+		throw new AssertionError();
+	}
+
+	@FunctionalInterface
+	public interface PolygonConsumer {
+		/**
+		 * @param rings  The outer ring, followed by the holes. Each ring is a sequence of {@code x, y} pairs of pixel
+		 *               corners. The last vertex connects back to the first. Outer rings run counterclockwise and holes
+		 *               clockwise, as seen on a map with north up.
+		 * @param region The region of the mask that the polygon is a piece of (see {@link RegionFinder.Labels})
+		 */
+		void accept(int[][] rings, int region) throws IOException;
+	}
+
+	/**
+	 * Traces the polygons and passes them to the consumer on the calling thread, north to south.
+	 *
+	 * @param mask      A packed mask (see {@link BitMaskUtilities}) with the pixels inside the polygons set
+	 * @param tolerance The maximum distance in pixels between a simplified outline and the pixel edges, or 0 to only
+	 *                  merge straight edges. Topology isn't guaranteed beyond half a pixel: simplified rings can cross
+	 *                  their neighbors.
+	 */
+	public static void trace(byte[] mask, int width, int height, double tolerance, PolygonConsumer consumer)
+			throws IOException {
+		requireNonNull(mask, "mask");
+		requireArrayLengthExactly(BitMaskUtilities.getStride(width) * height, mask, "mask");
+		requireThat(tolerance >= 0, "'tolerance' should be at least 0: " + tolerance);
+		requireNonNull(consumer, "consumer");
+
+		RegionFinder.Labels labels = RegionFinder.label(mask, width, height);
+
+		int numBands  = (height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+		int groupSize = ParallelUtilities.NUM_THREADS * 2;
+
+		for (int firstBand = 0; firstBand < numBands; firstBand += groupSize) {
+			int numGroupBands = Math.min(groupSize, numBands - firstBand);
+			int beginRow      = firstBand * BAND_HEIGHT;
+
+			List<Band>          groupBands    = new ArrayList<>(Collections.nCopies(numGroupBands, null));
+			List<List<int[][]>> groupPolygons = new ArrayList<>(Collections.nCopies(numGroupBands, null));
+			ParallelUtilities.forEachBand(numGroupBands, numGroupBands, (begin, end) -> {
+				for (int band = begin; band < end; band++) {
+					int bandBegin = beginRow + band * BAND_HEIGHT;
+					int bandEnd   = Math.min(bandBegin + BAND_HEIGHT, height);
+					groupBands.set(band, new Band(mask, width, bandBegin, bandEnd, labels));
+					groupPolygons.set(band, groupBands.get(band).trace(tolerance));
+				}
+			});
+
+			for (int band = 0; band < numGroupBands; band++) {
+				List<int[][]> polygons        = groupPolygons.get(band);
+				int[]         regionOfPolygon = groupBands.get(band).regionOfPolygon;
+				for (int polygon = 0; polygon < polygons.size(); polygon++) {
+					consumer.accept(polygons.get(polygon), regionOfPolygon[polygon]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops the vertices that are within the tolerance of the outline without them (Douglas-Peucker). Anchors are
+	 * always kept. Rings that would collapse are kept as they are.
+	 */
+	private static int[] simplify(int[] ring, double tolerance, int width, int beginRow, int endRow) {
+		int numVertices = ring.length / 2;
+
+		// Keep the vertices on the cuts, so they still meet the polygons on the other side.
+		int[] anchors    = new int[numVertices + 1];
+		int   numAnchors = 0;
+		for (int i = 0; i < numVertices; i++) {
+			int x = ring[i * 2];
+			int y = ring[i * 2 + 1];
+			if (x == 0 || x == width || y == beginRow || y == endRow) {
+				anchors[numAnchors++] = i;
+			}
+		}
+
+		// A ring needs at least two anchors to have something to simplify between.
+		if (numAnchors == 0) {
+			anchors[numAnchors++] = 0;
+		}
+
+		if (numAnchors == 1) {
+			int    first    = anchors[0];
+			int    farthest = first;
+			double maxDist  = -1;
+			for (int i = 0; i < numVertices; i++) {
+				double dist = Math.hypot(ring[i * 2] - ring[first * 2], ring[i * 2 + 1] - ring[first * 2 + 1]);
+				if (dist > maxDist) {
+					maxDist = dist;
+					farthest = i;
+				}
+			}
+
+			anchors[numAnchors++] = farthest;
+			Arrays.sort(anchors, 0, numAnchors);
+		}
+
+		boolean[] keep  = new boolean[numVertices];
+		int[]     stack = new int[numVertices * 2];
+		for (int a = 0; a < numAnchors; a++) {
+			int first = anchors[a];
+			int last  = a + 1 < numAnchors ? anchors[a + 1] : anchors[0] + numVertices;
+			keep[first] = true;
+
+			int stackSize = 0;
+			stack[stackSize++] = first;
+			stack[stackSize++] = last;
+			while (stackSize > 0) {
+				int end   = stack[--stackSize];
+				int begin = stack[--stackSize];
+
+				int    farthest = -1;
+				double maxDist  = tolerance;
+				for (int i = begin + 1; i < end; i++) {
+					double dist = distanceToSegment(ring, i % numVertices, begin % numVertices, end % numVertices);
+					if (dist > maxDist) {
+						maxDist = dist;
+						farthest = i;
+					}
+				}
+
+				if (farthest >= 0) {
+					keep[farthest % numVertices] = true;
+					stack[stackSize++] = begin;
+					stack[stackSize++] = farthest;
+					stack[stackSize++] = farthest;
+					stack[stackSize++] = end;
+				}
+			}
+		}
+
+		int numKept = 0;
+		for (boolean kept : keep) {
+			if (kept) {
+				numKept++;
+			}
+		}
+
+		if (numKept < 3) {
+			return ring;
+		}
+
+		int[] simplified = new int[numKept * 2];
+		int   j          = 0;
+		for (int i = 0; i < numVertices; i++) {
+			if (keep[i]) {
+				simplified[j++] = ring[i * 2];
+				simplified[j++] = ring[i * 2 + 1];
+			}
+		}
+
+		return simplified;
+	}
+
+	private static double distanceToSegment(int[] ring, int vertex, int begin, int end) {
+		double px = ring[vertex * 2] - ring[begin * 2];
+		double py = ring[vertex * 2 + 1] - ring[begin * 2 + 1];
+		double dx = ring[end * 2] - ring[begin * 2];
+		double dy = ring[end * 2 + 1] - ring[begin * 2 + 1];
+
+		double lengthSquared = dx * dx + dy * dy;
+		double t             = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared));
+		return Math.hypot(px - t * dx, py - t * dy);
+	}
+
+	/**
+	 * The runs and rings of a band of rows.
+	 */
+	private static final class Band {
+		private final byte[]              mask;
+		private final int                 width;
+		private final int                 stride;
+		private final int                 beginRow;
+		private final int                 endRow;
+		private final RegionFinder.Labels labels;
+
+		/**
+		 * Pairs of begin (inclusive) and end (exclusive) columns of the runs of set pixels.
+		 */
+		private       int[] runs    = new int[64];
+		private       int   numRuns = 0;
+		/**
+		 * For each row, the first run. The element after the last row is the number of runs.
+		 */
+		private final int[] rowStarts;
+
+		/**
+		 * For each run, the ring along its left edge. A hole belongs to the same polygon as the runs around it.
+		 */
+		private final int[] ringOfRun;
+		private       int[] polygonOfRing = new int[16];
+		private       int   numRings      = 0;
+
+		/**
+		 * Per polygon, the outer ring followed by the holes.
+		 */
+		private final List<List<int[]>> polygons        = new ArrayList<>();
+		/**
+		 * Per polygon, the region of the whole mask it's a piece of.
+		 */
+		private       int[]             regionOfPolygon = new int[16];
+
+		/**
+		 * The horizontal edges that were traced already, per row of pixel corners.
+		 */
+		private final BitSet visited;
+
+		/**
+		 * The vertices of the ring being traced, in {@code x, y} pairs.
+		 */
+		private int[] vertices    = new int[64];
+		private int   numVertices = 0;
+
+		Band(byte[] mask, int width, int beginRow, int endRow, RegionFinder.Labels labels) {
+			this.mask = mask;
+			this.width = width;
+			stride = BitMaskUtilities.getStride(width);
+			this.beginRow = beginRow;
+			this.endRow = endRow;
+			this.labels = labels;
+
+			rowStarts = new int[endRow - beginRow + 1];
+			for (int y = beginRow; y < endRow; y++) {
+				rowStarts[y - beginRow] = numRuns;
+				findRuns(y);
+			}
+
+			rowStarts[endRow - beginRow] = numRuns;
+
+			ringOfRun = new int[numRuns];
+			visited = new BitSet((endRow - beginRow + 1) * width);
+		}
+
+		private void findRuns(int y) {
+			int x = 0;
+			while (x < width) {
+				// Skip empty bytes at once.
+				if ((x & 7) == 0 && mask[y * stride + (x >> 3)] == 0) {
+					x += 8;
+					continue;
+				}
+
+				if (!isInside(x, y)) {
+					x++;
+					continue;
+				}
+
+				int begin = x;
+				while (x < width && isInside(x, y)) {
+					x++;
+				}
+
+				if (numRuns * 2 == runs.length) {
+					runs = Arrays.copyOf(runs, runs.length * 2);
+				}
+
+				runs[numRuns * 2] = begin;
+				runs[numRuns * 2 + 1] = x;
+				numRuns++;
+			}
+		}
+
+		/**
+		 * Returns the polygons of the band, each as its outer ring followed by its holes.
+		 */
+		List<int[][]> trace(double tolerance) {
+			// Scan the horizontal edges north to south, west to east. The first edge of a ring that's found is on its
+			// top side, and the pixel below it is inside for an outer ring and outside for a hole.
+			for (int y = beginRow; y <= endRow; y++) {
+				for (int i = 0; i < stride; i++) {
+					// Skip bytes without edges at once.
+					if (getByte(i, y - 1) == getByte(i, y)) {
+						continue;
+					}
+
+					int end = Math.min(i * 8 + 8, width);
+					for (int x = i * 8; x < end; x++) {
+						boolean above = isInside(x, y - 1);
+						if (above != isInside(x, y) && !visited.get((y - beginRow) * width + x)) {
+							if (above) {
+								traceRing(x, y, RIGHT);
+							} else {
+								traceRing(x + 1, y, LEFT);
+							}
+						}
+					}
+				}
+			}
+
+			List<int[][]> result = new ArrayList<>(polygons.size());
+			for (List<int[]> rings : polygons) {
+				int[][] simplified = new int[rings.size()][];
+				for (int i = 0; i < simplified.length; i++) {
+					simplified[i] = simplify(rings.get(i), tolerance, width, beginRow, endRow);
+				}
+
+				result.add(simplified);
+			}
+
+			return result;
+		}
+
+		private void traceRing(int startX, int startY, int startDirection) {
+			int ring = numRings++;
+			if (ring == polygonOfRing.length) {
+				polygonOfRing = Arrays.copyOf(polygonOfRing, ring * 2);
+			}
+
+			numVertices = 0;
+
+			int x         = startX;
+			int y         = startY;
+			int direction = startDirection;
+			do {
+				switch (direction) {
+					case RIGHT:
+						visited.set((y - beginRow) * width + x);
+						x++;
+						break;
+					case DOWN:
+						ringOfRun[findRun(x, y)] = ring;
+						y++;
+						break;
+					case LEFT:
+						x--;
+						visited.set((y - beginRow) * width + x);
+						break;
+					case UP:
+						y--;
+						break;
+					default:
+						throw new AssertionError(direction);
+				}
+
+				int next = nextDirection(x, y, direction);
+				if (next != direction) {
+					addVertex(x, y);
+				}
+
+				direction = next;
+			} while (x != startX || y != startY || direction != startDirection);
+
+			int[] vertexArray = Arrays.copyOf(vertices, numVertices * 2);
+			if (startDirection == LEFT) {
+				int polygon = polygons.size();
+				if (polygon == regionOfPolygon.length) {
+					regionOfPolygon = Arrays.copyOf(regionOfPolygon, polygon * 2);
+				}
+
+				// An outer ring starts at the top-right corner of its first pixel.
+				regionOfPolygon[polygon] = labels.getRegion(startX - 1, startY);
+				polygonOfRing[ring] = polygon;
+				List<int[]> rings = new ArrayList<>(1);
+				rings.add(vertexArray);
+				polygons.add(rings);
+			} else {
+				// The run above the start of the hole is already traced, because it's further north.
+				int polygon = polygonOfRing[ringOfRun[findRun(startX, startY - 1)]];
+				polygonOfRing[ring] = polygon;
+				polygons.get(polygon).add(vertexArray);
+			}
+		}
+
+		/**
+		 * Returns the direction to leave a corner in, given the direction it was reached in. At a corner where two
+		 * diagonal pixels are inside, both ways out exist. Turning left keeps following the same pixel, so diagonal
+		 * pixels stay apart.
+		 */
+		private int nextDirection(int x, int y, int direction) {
+			for (int turn = 3; turn <= 5; turn++) {
+				int next = (direction + turn) & 3;
+				if (hasEdge(x, y, next)) {
+					return next;
+				}
+			}
+
+			throw new AssertionError("Dead end at " + x + ", " + y);
+		}
+
+		/**
+		 * Returns whether an edge leaves the corner in the given direction, with the inside on its left.
+		 */
+		private boolean hasEdge(int x, int y, int direction) {
+			switch (direction) {
+				case RIGHT:
+					return isInside(x, y - 1) && !isInside(x, y);
+				case DOWN:
+					return isInside(x, y) && !isInside(x - 1, y);
+				case LEFT:
+					return isInside(x - 1, y) && !isInside(x - 1, y - 1);
+				case UP:
+					return isInside(x - 1, y - 1) && !isInside(x, y - 1);
+				default:
+					throw new AssertionError(direction);
+			}
+		}
+
+		/**
+		 * Returns the run of row {@code y} that contains column {@code x}.
+		 */
+		private int findRun(int x, int y) {
+			int low  = rowStarts[y - beginRow];
+			int high = rowStarts[y - beginRow + 1] - 1;
+			while (low < high) {
+				int middle = (low + high + 1) >>> 1;
+				if (runs[middle * 2] <= x) {
+					low = middle;
+				} else {
+					high = middle - 1;
+				}
+			}
+
+			return low;
+		}
+
+		private void addVertex(int x, int y) {
+			if (numVertices * 2 == vertices.length) {
+				vertices = Arrays.copyOf(vertices, vertices.length * 2);
+			}
+
+			vertices[numVertices * 2] = x;
+			vertices[numVertices * 2 + 1] = y;
+			numVertices++;
+		}
+
+		/**
+		 * Pixels outside the band, or beyond the date line, are outside.
+		 */
+		private boolean isInside(int x, int y) {
+			if (x < 0 || x >= width || y < beginRow || y >= endRow) {
+				return false;
+			}
+
+			return (mask[y * stride + (x >> 3)] & 0x80 >>> (x & 7)) != 0;
+		}
+
+		private byte getByte(int i, int y) {
+			return y < beginRow || y >= endRow ? 0 : mask[y * stride + i];
+		}
+	}
+}
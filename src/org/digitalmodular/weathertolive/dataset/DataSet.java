@@ -26,11 +26,15 @@
  */
 package org.digitalmodular.weathertolive.dataset;
 
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
 import org.jetbrains.annotations.Nullable;
 
+import org.digitalmodular.weathertolive.util.GraphicsUtilities;
+import org.digitalmodular.weathertolive.util.ParallelUtilities;
 import org.digitalmodular.weathertolive.util.RangeF;
 import org.digitalmodular.weathertolive.util.RangeFBuilder;
-import static org.digitalmodular.weathertolive.WeatherToLivePanel.SCALE_FACTOR;
 import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireArrayLengthExactly;
 import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireAtLeast;
 import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
@@ -53,19 +57,21 @@ public class DataSet {
 	public static final int FILTER_HIGHLIGHT = 0xFFFF00;
 	public static final int FILTER_SHADE     = 0x000000;
 
-	public static final int THUMBNAIL_HEIGHT = 90 * SCALE_FACTOR;
+	public static final int THUMBNAIL_HEIGHT = 90 * GraphicsUtilities.getScaleFactor();
 	public static final int THUMBNAIL_WIDTH  = THUMBNAIL_HEIGHT * 2;
 
 	static final int THUMBNAIL_PIXELS = THUMBNAIL_WIDTH * THUMBNAIL_HEIGHT;
 
-	private final String    name;
-	private final int       width;
-	private final int       height;
-	private final float[][] rawData;
-	private final boolean   absoluteZero;
-	private final RangeF    minMax;
-	private final int       gamma;
-	private final String    gradientFilename;
+	private final String               name;
+	private final int                  width;
+	private final int                  height;
+	private final float @Nullable [][] rawData;
+	private final float[]              annualMin;
+	private final float[]              annualMax;
+	private final boolean              absoluteZero;
+	private final RangeF               minMax;
+	private final int                  gamma;
+	private final String               gradientFilename;
 
 	// Confusing syntax for: Non-null array (pointer / object) of non-null arrays of @Nullable elements.
 	// https://checkerframework.org/jsr308/specification/java-annotation-design.html#array-syntax
@@ -82,38 +88,133 @@ public class DataSet {
 	                  boolean absoluteZero,
 	                  int gamma,
 	                  String gradientFilename) {
+		this(name, requireRawData(rawData, width, height), width, height, absoluteZero, gamma, gradientFilename,
+		     month -> {
+			     float[] rawMonthData = rawData[month];
+			     return i -> rawMonthData[i];
+		     });
+	}
+
+	/**
+	 * For data sets that compute their values instead of storing them. Subclasses should override
+	 * {@link #getMonthData(int)} and {@link #getMonthValues(int)}.
+	 *
+	 * @param monthValues  Gives the values of each month. Each month is read once, to gather the statistics.
+	 * @param absoluteZero Whether the values start at 0 or can go negative (should find minimum)
+	 */
+	protected DataSet(String name,
+	                  int width,
+	                  int height,
+	                  boolean absoluteZero,
+	                  int gamma,
+	                  String gradientFilename,
+	                  IntFunction<PixelValues> monthValues) {
+		this(name, null, width, height, absoluteZero, gamma, gradientFilename, monthValues);
+	}
+
+	private DataSet(String name,
+	                float @Nullable [][] rawData,
+	                int width,
+	                int height,
+	                boolean absoluteZero,
+	                int gamma,
+	                String gradientFilename,
+	                IntFunction<PixelValues> monthValues) {
 		this.name = requireStringLengthAtLeast(1, name, "name");
-		this.rawData = requireNonNull(rawData, "rawData");
-		requireArrayLengthExactly(12, rawData, "rawData");
+		this.rawData = rawData;
 		this.width = requireAtLeast(360, width, "width");
 		this.height = requireAtLeast(180, height, "height");
 		requireThat(width / THUMBNAIL_WIDTH * THUMBNAIL_WIDTH == width,
 		            THUMBNAIL_WIDTH + " doesn't divide 'width': " + width);
 		requireThat(width == height * 2, "'width' should be double 'height': " + width + ", " + height);
+		this.absoluteZero = absoluteZero;
+		annualMin = new float[width * height];
+		annualMax = new float[width * height];
+		minMax = findStatistics(requireNonNull(monthValues, "monthValues"));
+		this.gamma = requireAtLeast(1, gamma, "gamma");
+		this.gradientFilename = requireStringLengthAtLeast(1, gradientFilename, "gradientFilename");
+	}
+
+	private static float[][] requireRawData(float[][] rawData, int width, int height) {
+		requireNonNull(rawData, "rawData");
+		requireArrayLengthExactly(12, rawData, "rawData");
 		for (int month = 0; month < 12; month++) {
 			requireThat(rawData[month].length == width * height,
 			            "'rawData[" + month + "].length' should equal 'width' * 'height': " +
 			            rawData[month].length + ", " + width + " * " + height + " (" + width * height + ')');
 		}
-		this.absoluteZero = absoluteZero;
-		minMax = findMinMax(rawData, absoluteZero);
-		this.gamma = requireAtLeast(1, gamma, "gamma");
-		this.gradientFilename = requireStringLengthAtLeast(1, gradientFilename, "gradientFilename");
 
-		prepareThumbnails();
+		return rawData;
 	}
 
-	private RangeF findMinMax(float[][] rawData, boolean absoluteZero) {
-		float min = Float.POSITIVE_INFINITY;
-		float max = Float.NEGATIVE_INFINITY;
+	/**
+	 * Finds the range of all values, the lowest and highest value of each pixel over the 12 months, and the
+	 * thumbnails, in one pass over each month. Pixels without data in any month get {@link Float#NaN} as annual
+	 * extrema.
+	 * <p>
+	 * The bands are rows of thumbnail cells, so each band makes whole cells.
+	 */
+	private RangeF findStatistics(IntFunction<PixelValues> monthValues) {
+		int     blockSize = width / THUMBNAIL_WIDTH;
+		float[] bandMin   = new float[THUMBNAIL_HEIGHT];
+		float[] bandMax   = new float[THUMBNAIL_HEIGHT];
+		Arrays.fill(annualMin, Float.POSITIVE_INFINITY);
+		Arrays.fill(annualMax, Float.NEGATIVE_INFINITY);
+		Arrays.fill(bandMin, Float.POSITIVE_INFINITY);
+		Arrays.fill(bandMax, Float.NEGATIVE_INFINITY);
 
 		for (int month = 0; month < 12; month++) {
-			for (float value : rawData[month]) {
-				if (!Float.isNaN(value)) {
-					min = Math.min(min, value);
-					max = Math.max(max, value);
+			PixelValues        values         = monthValues.apply(month);
+			@Nullable RangeF[] monthThumbnail = thumbnails[month];
+
+			ParallelUtilities.forEachBand(THUMBNAIL_HEIGHT, (beginRow, endRow) -> {
+				RangeFBuilder rb = new RangeFBuilder();
+
+				for (int y = beginRow; y < endRow; y++) {
+					for (int x = 0; x < THUMBNAIL_WIDTH; x++) {
+						rb.reset();
+
+						int dataI = x * blockSize + y * width * blockSize;
+						for (int v = 0; v < blockSize; v++) {
+							for (int u = 0; u < blockSize; u++) {
+								float value = values.get(dataI);
+								if (!Float.isNaN(value)) {
+									rb.add(value);
+									annualMin[dataI] = Math.min(annualMin[dataI], value);
+									annualMax[dataI] = Math.max(annualMax[dataI], value);
+								}
+
+								dataI++;
+							}
+
+							dataI += width - blockSize;
+						}
+
+						@Nullable RangeF thumbnail = rb.buildOrNull();
+						monthThumbnail[y * THUMBNAIL_WIDTH + x] = thumbnail;
+						if (thumbnail != null) {
+							bandMin[y] = Math.min(bandMin[y], thumbnail.getBegin());
+							bandMax[y] = Math.max(bandMax[y], thumbnail.getEnd());
+						}
+					}
+				}
+			});
+		}
+
+		ParallelUtilities.forEachBand(height, (beginRow, endRow) -> {
+			for (int i = beginRow * width; i < endRow * width; i++) {
+				if (annualMin[i] > annualMax[i]) {
+					annualMin[i] = Float.NaN;
+					annualMax[i] = Float.NaN;
 				}
 			}
+		});
+
+		float min = Float.POSITIVE_INFINITY;
+		float max = Float.NEGATIVE_INFINITY;
+		for (int y = 0; y < THUMBNAIL_HEIGHT; y++) {
+			min = Math.min(min, bandMin[y]);
+			max = Math.max(max, bandMax[y]);
 		}
 
 		if (absoluteZero) {
@@ -128,37 +229,6 @@ public class DataSet {
 		return RangeF.of(min, max);
 	}
 
-	private void prepareThumbnails() {
-		int blockSize = width / THUMBNAIL_WIDTH;
-
-		RangeFBuilder rb = new RangeFBuilder();
-
-		for (int month = 0; month < 12; month++) {
-			float[]            rawMonthData   = rawData[month];
-			@Nullable RangeF[] monthThumbnail = thumbnails[month];
-			int                thumbI         = 0;
-
-			for (int y = 0; y < THUMBNAIL_HEIGHT; y++) {
-				for (int x = 0; x < THUMBNAIL_WIDTH; x++) {
-					rb.reset();
-
-					int dataI = x * blockSize + y * width * blockSize;
-					for (int v = 0; v < blockSize; v++) {
-						for (int u = 0; u < blockSize; u++) {
-							rb.add(rawMonthData[dataI]);
-							dataI++;
-						}
-
-						dataI += width - blockSize;
-					}
-
-					monthThumbnail[thumbI] = rb.buildOrNull();
-					thumbI++;
-				}
-			}
-		}
-	}
-
 	public String getName() {
 		return name;
 	}
@@ -172,15 +242,46 @@ public class DataSet {
 	}
 
 	/**
-	 * Returns a view into the (mutable!) internal data.
+	 * Returns a view into the (mutable!) internal data of one month, as a linear array of width*height grid cells.
 	 * <p>
-	 * The array has dimensions [month 0..12][pixel 0..width*height].
+	 * For data sets that compute their values, the array may be computed on demand. Prefer
+	 * {@link #getMonthValues(int)} where the values are only read once.
+	 */
+	@SuppressWarnings("AssignmentOrReturnOfFieldWithMutableType")
+	public float[] getMonthData(int month) {
+		assert rawData != null : "Subclass should override getMonthData()";
+		return rawData[month];
+	}
+
+	/**
+	 * Returns the values of one month, without storing them if they're computed.
+	 */
+	public PixelValues getMonthValues(int month) {
+		assert rawData != null : "Subclass should override getMonthValues()";
+		float[] rawMonthData = rawData[month];
+		return i -> rawMonthData[i];
+	}
+
+	/**
+	 * Returns a view into the (mutable!) internal data: the lowest value of each pixel over all months, or
+	 * {@link Float#NaN} where there's no data in any month.
 	 * <p>
-	 * This array is the same as provided to the constructor.
+	 * This data is generated once in the constructor.
 	 */
 	@SuppressWarnings("AssignmentOrReturnOfFieldWithMutableType")
-	public float[][] getRawData() {
-		return rawData;
+	public float[] getAnnualMin() {
+		return annualMin;
+	}
+
+	/**
+	 * Returns a view into the (mutable!) internal data: the highest value of each pixel over all months, or
+	 * {@link Float#NaN} where there's no data in any month.
+	 * <p>
+	 * This data is generated once in the constructor.
+	 */
+	@SuppressWarnings("AssignmentOrReturnOfFieldWithMutableType")
+	public float[] getAnnualMax() {
+		return annualMax;
 	}
 
 	public RangeF getMinMax() {
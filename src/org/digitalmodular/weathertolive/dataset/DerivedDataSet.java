@@ -0,0 +1,182 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.weathertolive.dataset.FilterExpression.NumberFormula;
+import org.digitalmodular.weathertolive.util.ParallelUtilities;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireThat;
+
+/**
+ * A parameter that is computed from other parameters with a formula, like {@code tmax - tmin}, instead of loaded.
+ * <p>
+ * The values aren't stored. Filters evaluate the formula on the fly, and only the few months that are needed as a
+ * whole (e.g. to render a background) are kept. The statistics (range, annual extrema and thumbnails) are gathered
+ * in one pass over each month during construction.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+@ThreadSafe
+public class DerivedDataSet extends DataSet {
+	/**
+	 * The number of computed months to keep.
+	 */
+	private static final int MONTH_CACHE_SIZE = 2;
+
+	private final String        formulaSource;
+	private final NumberFormula formula;
+	private final List<DataSet> sources;
+
+	@GuardedBy("monthCache")
+	private final Map<Integer, float[]> monthCache = new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, float[]> eldest) {
+			return size() > MONTH_CACHE_SIZE;
+		}
+	};
+
+	private DerivedDataSet(String name,
+	                       String formulaSource,
+	                       NumberFormula formula,
+	                       List<DataSet> sources,
+	                       boolean absoluteZero,
+	                       int gamma,
+	                       String gradientFilename) {
+		super(name,
+		      sources.get(0).getWidth(),
+		      sources.get(0).getHeight(),
+		      absoluteZero,
+		      gamma,
+		      gradientFilename,
+		      month -> compile(formula, sources, month));
+
+		this.formulaSource = formulaSource;
+		this.formula = formula;
+		this.sources = sources;
+	}
+
+	/**
+	 * @param formulaSource The formula, in the syntax of {@link FilterExpression}, but giving a number
+	 * @param variableNames The names of the parameters that the formula can use
+	 * @param sources       The data sets of the parameters, in the same order as {@code variableNames}
+	 * @param absoluteZero  Whether the values start at 0 or can go negative (should find minimum)
+	 * @throws ParseException when the formula is malformed
+	 */
+	public static DerivedDataSet create(String name,
+	                                    String formulaSource,
+	                                    List<String> variableNames,
+	                                    List<DataSet> sources,
+	                                    boolean absoluteZero,
+	                                    int gamma,
+	                                    String gradientFilename) throws ParseException {
+		requireNonNull(sources, "sources");
+		requireThat(sources.size() == variableNames.size(),
+		            "Expected " + variableNames.size() + " sources: " + sources.size());
+		requireThat(!sources.isEmpty(), "'sources' is empty");
+		for (DataSet source : sources) {
+			requireThat(source.getWidth() == sources.get(0).getWidth() &&
+			            source.getHeight() == sources.get(0).getHeight(),
+			            "Sources differ in size: " + source.getName());
+		}
+
+		NumberFormula formula = FilterExpression.parseNumber(formulaSource, variableNames);
+		return new DerivedDataSet(name,
+		                          formulaSource,
+		                          formula,
+		                          new ArrayList<>(sources),
+		                          absoluteZero,
+		                          gamma,
+		                          gradientFilename);
+	}
+
+	public String getFormulaSource() {
+		return formulaSource;
+	}
+
+	/**
+	 * Computes the month on first use. Only the most recently used months are kept.
+	 */
+	@Override
+	public float[] getMonthData(int month) {
+		@Nullable float[] monthData;
+		synchronized (monthCache) {
+			monthData = monthCache.get(month);
+		}
+
+		if (monthData != null) {
+			return monthData;
+		}
+
+		// Compute outside the lock, so other months don't wait. Two threads might compute the same month.
+		int         width  = getWidth();
+		PixelValues values = getMonthValues(month);
+		float[]     data   = new float[width * getHeight()];
+		ParallelUtilities.forEachBand(getHeight(), (begin, end) -> {
+			for (int i = begin * width; i < end * width; i++) {
+				data[i] = values.get(i);
+			}
+		});
+
+		synchronized (monthCache) {
+			monthCache.put(month, data);
+		}
+
+		return data;
+	}
+
+	@Override
+	public PixelValues getMonthValues(int month) {
+		return compile(formula, sources, month);
+	}
+
+	/**
+	 * Results that aren't finite (e.g. after dividing by zero) count as no data.
+	 */
+	private static PixelValues compile(NumberFormula formula, List<DataSet> sources, int month) {
+		float[][] data = new float[sources.size()][];
+		for (int variable : formula.getUsedVariables()) {
+			data[variable] = sources.get(variable).getMonthData(month);
+		}
+
+		PixelValues values = formula.compile(data);
+		return i -> {
+			float value = values.get(i);
+			return Float.isFinite(value) ? value : Float.NaN;
+		};
+	}
+}
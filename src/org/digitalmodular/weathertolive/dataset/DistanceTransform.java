@@ -0,0 +1,247 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+import java.util.Arrays;
+
+import org.digitalmodular.weathertolive.util.BitMaskUtilities;
+import org.digitalmodular.weathertolive.util.ParallelUtilities;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireArrayLengthExactly;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireThat;
+
+/**
+ * Finds the distance from every pixel to the nearest source pixel, over the surface of the earth. The left and right
+ * edges of the grid are connected (the date line).
+ * <p>
+ * The first pass finds, in every row, the nearest source pixel to the left or right of each pixel. Along a circle of
+ * latitude, the distance to a place only grows with the difference in longitude, so that is also the nearest source
+ * pixel in that row in kilometers. The second pass looks at the rows above and below each pixel, starting with the
+ * nearest, until the difference in latitude alone is farther than the nearest source found.
+ * <p>
+ * Distances are measured between the centers of the pixels, along great circles.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+public final class DistanceTransform {
+	private DistanceTransform() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Returns the distance in km from every pixel to the nearest source pixel, or {@link Float#POSITIVE_INFINITY} when
+	 * there's none within {@code maxDistance}.
+	 *
+	 * @param sources     A packed mask (see {@link BitMaskUtilities}) with the source pixels set
+	 * @param maxDistance The distance in km to look for sources, or {@link Float#POSITIVE_INFINITY} to look everywhere.
+	 *                    A smaller distance is a lot faster.
+	 */
+	public static float[] getDistances(byte[] sources, int width, int height, float maxDistance) {
+		float[] distances = new float[width * height];
+		transform(sources, width, height, maxDistance, (y, rowHavs) -> {
+			int offset = y * width;
+			for (int x = 0; x < width; x++) {
+				double hav = rowHavs[x];
+				distances[offset + x] = hav == Double.POSITIVE_INFINITY ? Float.POSITIVE_INFINITY :
+				                        (float)(2 * GridGeometry.EARTH_RADIUS * Math.asin(Math.sqrt(hav)));
+			}
+		});
+		return distances;
+	}
+
+	/**
+	 * Returns a packed mask with the pixels set that are within a distance of a source pixel, including the source
+	 * pixels themselves.
+	 *
+	 * @param sources  A packed mask (see {@link BitMaskUtilities}) with the source pixels set
+	 * @param distance The distance in km
+	 */
+	public static byte[] getWithinDistance(byte[] sources, int width, int height, float distance) {
+		int    stride = BitMaskUtilities.getStride(width);
+		byte[] within = new byte[stride * height];
+		transform(sources, width, height, distance, (y, rowHavs) -> {
+			int offset = y * stride;
+			for (int x = 0; x < width; x++) {
+				if (rowHavs[x] != Double.POSITIVE_INFINITY) {
+					within[offset + (x >> 3)] |= (byte)(0x80 >>> (x & 7));
+				}
+			}
+		});
+		return within;
+	}
+
+	@FunctionalInterface
+	private interface RowConsumer {
+		/**
+		 * Receives the haversines of the angles to the nearest source pixels of a row, or
+		 * {@link Double#POSITIVE_INFINITY} where there's none within the maximum distance. The array is reused for the
+		 * next row of the same band.
+		 */
+		void accept(int y, double[] rowHavs);
+	}
+
+	private static void transform(byte[] sources, int width, int height, float maxDistance, RowConsumer consumer) {
+		requireNonNull(sources, "sources");
+		requireArrayLengthExactly(BitMaskUtilities.getStride(width) * height, sources, "sources");
+		requireThat(width / 2 < Short.MAX_VALUE, "'width' too large: " + width);
+		requireThat(maxDistance >= 0, "'maxDistance' should be at least 0: " + maxDistance);
+
+		short[]   columnDistances = new short[width * height];
+		boolean[] rowHasSources   = new boolean[height];
+		ParallelUtilities.forEachBand(height, (beginRow, endRow) -> {
+			for (int y = beginRow; y < endRow; y++) {
+				rowHasSources[y] = findColumnDistances(sources, width, y, columnDistances);
+			}
+		});
+
+		// The haversine, hav(angle) = sin²(angle / 2), grows with the distance, and stays accurate at short distances.
+		double[] cosLatitudes  = new double[height];
+		double[] latitudeHavs  = new double[height];
+		double[] longitudeHavs = new double[width / 2 + 1];
+		double   latitudeStep  = Math.PI / height;
+		double   longitudeStep = 2 * Math.PI / width;
+		for (int y = 0; y < height; y++) {
+			cosLatitudes[y] = Math.cos(Math.toRadians(GridGeometry.getLatitude(y, height)));
+			latitudeHavs[y] = haversine(y * latitudeStep);
+		}
+
+		for (int dx = 0; dx < longitudeHavs.length; dx++) {
+			longitudeHavs[dx] = haversine(dx * longitudeStep);
+		}
+
+		double maxAngle = maxDistance / GridGeometry.EARTH_RADIUS;
+		double maxHav   = maxAngle >= Math.PI ? Double.POSITIVE_INFINITY : haversine(maxAngle);
+
+		ParallelUtilities.forEachBand(height, (beginRow, endRow) -> {
+			double[] bestHavs  = new double[width];
+			int[]    remaining = new int[width];
+
+			for (int y = beginRow; y < endRow; y++) {
+				Arrays.fill(bestHavs, Double.POSITIVE_INFINITY);
+				for (int x = 0; x < width; x++) {
+					remaining[x] = x;
+				}
+
+				// Row by row, outwards, for the pixels that could still find a nearer source pixel.
+				int numRemaining = width;
+				for (int dy = 0; dy < height && numRemaining > 0; dy++) {
+					double latitudeHav = latitudeHavs[dy];
+					if (latitudeHav > maxHav) {
+						break;
+					}
+
+					int numKept = 0;
+					for (int i = 0; i < numRemaining; i++) {
+						int x = remaining[i];
+						if (latitudeHav <= bestHavs[x]) {
+							remaining[numKept++] = x;
+						}
+					}
+
+					numRemaining = numKept;
+
+					for (int y2 = y - dy; y2 <= y + dy; y2 += Math.max(1, dy * 2)) {
+						if (y2 >= 0 && y2 < height && rowHasSources[y2]) {
+							double factor = cosLatitudes[y] * cosLatitudes[y2];
+							int    offset = y2 * width;
+
+							for (int i = 0; i < numRemaining; i++) {
+								int    x   = remaining[i];
+								double hav = latitudeHav + factor * longitudeHavs[columnDistances[offset + x]];
+								if (hav < bestHavs[x] && hav <= maxHav) {
+									bestHavs[x] = hav;
+								}
+							}
+						}
+					}
+				}
+
+				consumer.accept(y, bestHavs);
+			}
+		});
+	}
+
+	/**
+	 * Finds, for every pixel in a row, the number of columns to the nearest source pixel in that row, going either
+	 * way around.
+	 *
+	 * @return whether the row has source pixels
+	 */
+	private static boolean findColumnDistances(byte[] sources, int width, int y, short[] columnDistances) {
+		int offset = y * BitMaskUtilities.getStride(width);
+		int begin  = y * width;
+
+		int first = -1;
+		int last  = -1;
+		for (int x = 0; x < width; x++) {
+			if (isSet(sources, offset, x)) {
+				if (first < 0) {
+					first = x;
+				}
+
+				last = x;
+			}
+		}
+
+		if (first < 0) {
+			return false;
+		}
+
+		// From the left, starting with the last source pixel of the row, across the date line.
+		int previous = last - width;
+		for (int x = 0; x < width; x++) {
+			if (isSet(sources, offset, x)) {
+				previous = x;
+			}
+
+			// When farther than half the width, the other way around is nearer.
+			columnDistances[begin + x] = (short)Math.min(x - previous, width / 2);
+		}
+
+		// From the right, starting with the first source pixel of the row, across the date line.
+		int next = first + width;
+		for (int x = width - 1; x >= 0; x--) {
+			if (isSet(sources, offset, x)) {
+				next = x;
+			}
+
+			columnDistances[begin + x] = (short)Math.min(columnDistances[begin + x], next - x);
+		}
+
+		return true;
+	}
+
+	private static boolean isSet(byte[] mask, int offset, int x) {
+		return (mask[offset + (x >> 3)] & 0x80 >>> (x & 7)) != 0;
+	}
+
+	private static double haversine(double angle) {
+		double sin = Math.sin(angle / 2);
+		return sin * sin;
+	}
+}
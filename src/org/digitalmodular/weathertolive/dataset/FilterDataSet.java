@@ -26,128 +26,195 @@
  */
 package org.digitalmodular.weathertolive.dataset;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.jetbrains.annotations.Nullable;
 
+import org.digitalmodular.weathertolive.util.BitMaskUtilities;
+import org.digitalmodular.weathertolive.util.ParallelUtilities;
 import org.digitalmodular.weathertolive.util.RangeF;
 import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
 
 /**
+ * Filters a {@link DataSet} with ranges taken from a {@link FilterState}. The data set itself has no filter state, so
+ * renders of different states can run at the same time.
+ *
  * @author Mark Jeronimus
  */
 // Created 2022-09-01
 public class FilterDataSet {
-	private final DataSet dataSet;
+	private static final long MASK_CACHE_BYTES = 64L * 1024 * 1024;
 
-	private RangeF filterMinMax;
+	/**
+	 * Shared by all data sets, so the bound (in compressed bytes) holds for the whole program.
+	 */
+	private static final FilterMaskCache MASK_CACHE = new FilterMaskCache(MASK_CACHE_BYTES);
 
-	private       boolean mainDataDirty = true;
-	private final int[][] filteredData;
+	/**
+	 * Identifies the data set in {@link #MASK_CACHE}. Entries of data sets that are no longer used simply age out, and
+	 * don't keep the data alive.
+	 */
+	private static final AtomicInteger ID_COUNTER = new AtomicInteger();
 
-	private       boolean thumbnailDataDirty = true;
-	private final int[][] filteredThumbnails = new int[12][DataSet.THUMBNAIL_PIXELS];
+	private final DataSet dataSet;
+	private final int     id = ID_COUNTER.getAndIncrement();
 
-	public FilterDataSet(DataSet dataSet) {
-		this.dataSet = requireNonNull(dataSet, "dataSet");
+	/**
+	 * The masks of the most recent range. Replaced as a whole, never modified.
+	 */
+	private volatile @Nullable FilterMasks lastFilterMasks = null;
 
-		filterMinMax = dataSet.getMinMax();
+	/**
+	 * The annual mask of the most recent range. Replaced as a whole, never modified.
+	 */
+	private volatile @Nullable AnnualMask lastAnnualMask = null;
 
-		filteredData = new int[12][dataSet.getRawData()[0].length];
+	public FilterDataSet(DataSet dataSet) {
+		this.dataSet = requireNonNull(dataSet, "dataSet");
 	}
 
 	public DataSet getDataSet() {
 		return dataSet;
 	}
 
-	private void markDirty() {
-		mainDataDirty = true;
-		thumbnailDataDirty = true;
-	}
-
-	public RangeF getFilterMinMax() {
-		return filterMinMax;
-	}
-
-	public void setFilterMinMax(RangeF filterMinMax) {
+	/**
+	 * Returns the masks of the data filtered with the given range.
+	 * <p>
+	 * The masks of the most recent range are kept, so everything that renders one filter state shares them. Masks of
+	 * earlier ranges are kept compressed in a cache, so they only have to be decompressed when the range is used
+	 * again. When two threads ask for a new range at the same time, both may compute it, but both get a complete
+	 * result.
+	 */
+	public FilterMasks getFilterMasks(RangeF filterMinMax) {
 		requireNonNull(filterMinMax, "filterMinMax");
 
-		if (this.filterMinMax.equals(filterMinMax)) {
-			return;
+		@Nullable FilterMasks filterMasks = lastFilterMasks;
+		if (filterMasks != null && filterMinMax.equals(filterMasks.getFilterMinMax())) {
+			return filterMasks;
+		}
+
+		filterMasks = MASK_CACHE.get(id, filterMinMax);
+		if (filterMasks == null) {
+			filterMasks = filter(filterMinMax);
+			MASK_CACHE.put(id, filterMasks);
 		}
 
-		this.filterMinMax = filterMinMax;
-		markDirty();
+		lastFilterMasks = filterMasks;
+		return filterMasks;
 	}
 
 	/**
-	 * Returns a view into the (mutable!) raw data.
+	 * Returns the mask of the data filtered with the given range in all months at once: a bit is set where the data is
+	 * outside the range in any month. The mask has the same layout as those of {@link FilterMasks}, and must not be
+	 * modified.
 	 * <p>
-	 * The array has dimensions [month 0..12][pixel 0..width*height].
-	 * <p>
-	 * This data in this view is regenerated every time a parameter is changed.
+	 * This needs one pass over the annual extrema of the data set instead of one pass per month, and doesn't need the
+	 * masks of the individual months. The mask of the most recent range is kept.
 	 */
-	@SuppressWarnings("AssignmentOrReturnOfFieldWithMutableType")
-	public int[][] getFilteredData() {
-		if (mainDataDirty) {
-			filterMainData();
-			mainDataDirty = false;
+	public byte[] getAnnualFilterMask(RangeF filterMinMax) {
+		requireNonNull(filterMinMax, "filterMinMax");
+
+		@Nullable AnnualMask annualMask = lastAnnualMask;
+		if (annualMask != null && annualMask.filterMinMax.equals(filterMinMax)) {
+			return annualMask.mask;
 		}
 
-		return filteredData;
+		int    width  = dataSet.getWidth();
+		int    height = dataSet.getHeight();
+		byte[] mask   = new byte[BitMaskUtilities.getStride(width) * height];
+
+		ParallelUtilities.forEachBand(height, (begin, end) -> filterAnnual(
+				dataSet.getAnnualMin(), dataSet.getAnnualMax(), filterMinMax, mask, width, begin, end));
+
+		lastAnnualMask = new AnnualMask(filterMinMax, mask);
+		return mask;
 	}
 
-	/**
-	 * Returns a view into the (mutable!) raw data.
-	 * <p>
-	 * The array has dimensions [month 0..12][pixel 0..width*height].
-	 * <p>
-	 * This data in this view is regenerated every time a parameter is changed.
-	 */
-	@SuppressWarnings("AssignmentOrReturnOfFieldWithMutableType")
-	public int[][] getFilteredThumbnails() {
-		if (thumbnailDataDirty) {
-			filterThumbnailData();
-			thumbnailDataDirty = false;
+	private FilterMasks filter(RangeF filterMinMax) {
+		int      width  = dataSet.getWidth();
+		int      height = dataSet.getHeight();
+		int      stride = BitMaskUtilities.getStride(width);
+		byte[][] masks  = new byte[12][stride * height];
+
+		// Computed data sets are evaluated on the fly here, without storing their months.
+		PixelValues[] monthValues = new PixelValues[12];
+		for (int month = 0; month < 12; month++) {
+			monthValues[month] = dataSet.getMonthValues(month);
 		}
 
-		return filteredThumbnails;
+		ParallelUtilities.forEachBand(height, (begin, end) -> {
+			for (int month = 0; month < 12; month++) {
+				filter(monthValues[month], filterMinMax, masks[month], width, begin, end);
+			}
+		});
+
+		return new FilterMasks(filterMinMax, width, height, masks);
 	}
 
-	private void filterMainData() {
-		float[][] rawData = dataSet.getRawData();
+	private static void filter(PixelValues values, RangeF filterMinMax, byte[] mask, int width, int begin, int end) {
+		int stride = BitMaskUtilities.getStride(width);
 
-		for (int month = 0; month < 12; month++) {
-			float[] rawMonthData      = rawData[month];
-			int[]   filteredMonthData = filteredData[month];
-
-			for (int i = 0; i < rawMonthData.length; i++) {
-				if (Float.isNaN(rawMonthData[i])) {
-					filteredMonthData[i] = -1;
-				} else if (filterMinMax.contains(rawMonthData[i])) {
-					filteredMonthData[i] = 1;
-				} else {
-					filteredMonthData[i] = 0;
+		for (int y = begin; y < end; y++) {
+			int row = y * width;
+			int out = y * stride;
+
+			for (int x = 0; x < width; x += 8) {
+				int packed = 0;
+				int n      = Math.min(8, width - x);
+
+				for (int bit = 0; bit < n; bit++) {
+					float value = values.get(row + x + bit);
+
+					// NaN means no data, which is never filtered out.
+					if (!Float.isNaN(value) && !filterMinMax.contains(value)) {
+						packed |= 0x80 >>> bit;
+					}
 				}
+
+				mask[out + x / 8] = (byte)packed;
 			}
 		}
 	}
 
-	private void filterThumbnailData() {
-		@Nullable RangeF[][] thumbnails = dataSet.getThumbnails();
-
-		for (int month = 0; month < 12; month++) {
-			@Nullable RangeF[] rawMonthData          = thumbnails[month];
-			int[]              filteredThumbnailData = filteredThumbnails[month];
-
-			for (int i = 0; i < rawMonthData.length; i++) {
-				@Nullable RangeF rawMonthDatum = rawMonthData[i];
-				if (rawMonthDatum == null) {
-					filteredThumbnailData[i] = -1;
-				} else if (filterMinMax.intersects(rawMonthDatum)) {
-					filteredThumbnailData[i] = 1;
-				} else {
-					filteredThumbnailData[i] = 0;
+	private static void filterAnnual(float[] annualMin,
+	                                 float[] annualMax,
+	                                 RangeF filterMinMax,
+	                                 byte[] mask,
+	                                 int width,
+	                                 int begin,
+	                                 int end) {
+		int stride = BitMaskUtilities.getStride(width);
+
+		for (int y = begin; y < end; y++) {
+			int row = y * width;
+			int out = y * stride;
+
+			for (int x = 0; x < width; x += 8) {
+				int packed = 0;
+				int n      = Math.min(8, width - x);
+
+				for (int bit = 0; bit < n; bit++) {
+					int i = row + x + bit;
+
+					// The range holds in all months exactly when it holds for both extrema. Both are NaN without data.
+					if (!Float.isNaN(annualMin[i]) &&
+					    !(filterMinMax.contains(annualMin[i]) && filterMinMax.contains(annualMax[i]))) {
+						packed |= 0x80 >>> bit;
+					}
 				}
+
+				mask[out + x / 8] = (byte)packed;
 			}
 		}
 	}
+
+	private static final class AnnualMask {
+		private final RangeF filterMinMax;
+		private final byte[] mask;
+
+		private AnnualMask(RangeF filterMinMax, byte[] mask) {
+			this.filterMinMax = filterMinMax;
+			this.mask = mask;
+		}
+	}
 }
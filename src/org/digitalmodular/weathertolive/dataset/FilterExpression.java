@@ -0,0 +1,718 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.weathertolive.util.BitMaskUtilities;
+import org.digitalmodular.weathertolive.util.ParallelUtilities;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireThat;
+
+/**
+ * A filter written as a formula over the parameters, like {@code tmax - tmin < 12 && prec > 40 || wind < 5}. A place
+ * passes in a month when the formula is true for the values of that month.
+ * <p>
+ * The formula is parsed once, and compiled for each month into a tree of lambdas that read the data arrays directly,
+ * without boxing. Comparisons of a parameter with a constant, the most common case, are a single lambda.
+ * <p>
+ * Syntax, from lowest to highest precedence:
+ * <ul>
+ * <li>{@code ||}</li>
+ * <li>{@code &&}</li>
+ * <li>{@code !}</li>
+ * <li>{@code < <= > >= == !=}</li>
+ * <li>{@code + -}</li>
+ * <li>{@code * /}</li>
+ * <li>unary {@code -}</li>
+ * <li>numbers, parameter names, {@code abs(a)}, {@code exp(a)}, {@code min(a, b)}, {@code max(a, b)}, and
+ * parentheses</li>
+ * </ul>
+ * Like the range filters, places where a parameter used in the formula has no data are never filtered out.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+@ThreadSafe
+public final class FilterExpression {
+	private final String       source;
+	private final BooleanNode  root;
+	private final List<String> variableNames;
+	/**
+	 * Indices of the parameters that appear in the formula.
+	 */
+	private final int[]        usedVariables;
+
+	/**
+	 * The masks of the most recent data sets. Replaced as a whole, never modified.
+	 */
+	private volatile @Nullable CachedMasks lastFilterMasks = null;
+
+	private FilterExpression(String source, BooleanNode root, List<String> variableNames, int[] usedVariables) {
+		this.source = source;
+		this.root = root;
+		this.variableNames = variableNames;
+		this.usedVariables = usedVariables;
+	}
+
+	/**
+	 * @param variableNames The names of the parameters, in the order of the data sets the formula is applied to
+	 * @throws ParseException when the formula is malformed. The offset points at the offending token.
+	 */
+	public static FilterExpression parse(String source, List<String> variableNames) throws ParseException {
+		requireNonNull(source, "source");
+		requireNonNull(variableNames, "variableNames");
+
+		Parser      parser = new Parser(source, variableNames);
+		BooleanNode root   = parser.parse();
+
+		int[] usedVariables = parser.usedVariables.stream().toArray();
+		return new FilterExpression(
+				source, root, Collections.unmodifiableList(new ArrayList<>(variableNames)), usedVariables);
+	}
+
+	/**
+	 * Parses a formula that gives a number instead of a condition, like {@code tmax - tmin}.
+	 *
+	 * @throws ParseException when the formula is malformed. The offset points at the offending token.
+	 */
+	static NumberFormula parseNumber(String source, List<String> variableNames) throws ParseException {
+		requireNonNull(source, "source");
+		requireNonNull(variableNames, "variableNames");
+
+		Parser     parser = new Parser(source, variableNames);
+		NumberNode root   = parser.parseFormula();
+		return new NumberFormula(root, parser.usedVariables.stream().toArray());
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public List<String> getVariableNames() {
+		return variableNames;
+	}
+
+	/**
+	 * Compiles the formula for one month.
+	 *
+	 * @param filterDataSets The data sets, in the order of the variable names
+	 * @return A predicate on pixel index that tells whether a place passes the filter, which is when the formula is
+	 * true or when a parameter used in it has no data.
+	 */
+	public IntPredicate compile(List<FilterDataSet> filterDataSets, int month) {
+		IntPredicate predicate = root.compile(getMonthData(filterDataSets, month));
+		float[][]    usedData  = getUsedData(filterDataSets, month);
+		return i -> !hasData(usedData, i) || predicate.test(i);
+	}
+
+	/**
+	 * Returns the masks of the places filtered out by the formula. The masks of the most recent data sets are kept.
+	 *
+	 * @param filterDataSets The data sets, in the order of the variable names
+	 */
+	public FilterMasks getFilterMasks(List<FilterDataSet> filterDataSets) {
+		requireThat(filterDataSets.size() == variableNames.size(),
+		            "Expected " + variableNames.size() + " data sets: " + filterDataSets.size());
+
+		@Nullable CachedMasks cachedMasks = lastFilterMasks;
+		//noinspection ObjectEquality // Comparing identity, not equality
+		if (cachedMasks != null && cachedMasks.filterDataSets == filterDataSets) {
+			return cachedMasks.filterMasks;
+		}
+
+		FilterMasks filterMasks = filter(filterDataSets);
+		lastFilterMasks = new CachedMasks(filterDataSets, filterMasks);
+		return filterMasks;
+	}
+
+	private FilterMasks filter(List<FilterDataSet> filterDataSets) {
+		int      width  = filterDataSets.get(0).getDataSet().getWidth();
+		int      height = filterDataSets.get(0).getDataSet().getHeight();
+		int      stride = BitMaskUtilities.getStride(width);
+		byte[][] masks  = new byte[12][stride * height];
+
+		// One month at a time, so computed parameters need only one month of data at a time.
+		for (int month = 0; month < 12; month++) {
+			IntPredicate predicate = root.compile(getMonthData(filterDataSets, month));
+			float[][]    usedData  = getUsedData(filterDataSets, month);
+			byte[]       mask      = masks[month];
+
+			ParallelUtilities.forEachBand(height, (begin, end) -> filter(predicate, usedData, mask, width, begin, end));
+		}
+
+		return new FilterMasks(null, width, height, masks);
+	}
+
+	private static void filter(IntPredicate predicate, float[][] usedData, byte[] mask, int width, int begin, int end) {
+		int stride = BitMaskUtilities.getStride(width);
+
+		for (int y = begin; y < end; y++) {
+			int row = y * width;
+			int out = y * stride;
+
+			for (int x = 0; x < width; x += 8) {
+				int packed = 0;
+				int n      = Math.min(8, width - x);
+
+				for (int bit = 0; bit < n; bit++) {
+					int i = row + x + bit;
+
+					if (hasData(usedData, i) && !predicate.test(i)) {
+						packed |= 0x80 >>> bit;
+					}
+				}
+
+				mask[out + x / 8] = (byte)packed;
+			}
+		}
+	}
+
+	private static boolean hasData(float[][] usedData, int i) {
+		for (float[] data : usedData) {
+			if (Float.isNaN(data[i])) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the data of one month of every parameter, or {@code null} for the parameters not in the formula (which
+	 * might have to be computed).
+	 */
+	private float[][] getMonthData(List<FilterDataSet> filterDataSets, int month) {
+		float[][] monthData = new float[filterDataSets.size()][];
+		for (int variable : usedVariables) {
+			monthData[variable] = filterDataSets.get(variable).getDataSet().getMonthData(month);
+		}
+
+		return monthData;
+	}
+
+	private float[][] getUsedData(List<FilterDataSet> filterDataSets, int month) {
+		float[][] usedData = new float[usedVariables.length][];
+		for (int i = 0; i < usedData.length; i++) {
+			usedData[i] = filterDataSets.get(usedVariables[i]).getDataSet().getMonthData(month);
+		}
+
+		return usedData;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + '[' + source + ']';
+	}
+
+	private static final class CachedMasks {
+		private final List<FilterDataSet> filterDataSets;
+		private final FilterMasks         filterMasks;
+
+		private CachedMasks(List<FilterDataSet> filterDataSets, FilterMasks filterMasks) {
+			this.filterDataSets = filterDataSets;
+			this.filterMasks = filterMasks;
+		}
+	}
+
+	/**
+	 * A parsed formula that gives a number.
+	 */
+	static final class NumberFormula {
+		private final NumberNode root;
+		private final int[]      usedVariables;
+
+		private NumberFormula(NumberNode root, int[] usedVariables) {
+			this.root = root;
+			this.usedVariables = usedVariables;
+		}
+
+		/**
+		 * Returns the indices of the parameters that appear in the formula.
+		 */
+		int[] getUsedVariables() {
+			return usedVariables.clone();
+		}
+
+		/**
+		 * @param data The data of one month of every parameter, in the order of the variable names. Only the used
+		 *             parameters are read.
+		 */
+		PixelValues compile(float[][] data) {
+			return root.compile(data);
+		}
+	}
+
+	private interface NumberNode {
+		PixelValues compile(float[][] data);
+	}
+
+	private interface BooleanNode {
+		IntPredicate compile(float[][] data);
+	}
+
+	private static final class ConstantNode implements NumberNode {
+		private final float value;
+
+		private ConstantNode(float value) {
+			this.value = value;
+		}
+
+		@Override
+		public PixelValues compile(float[][] data) {
+			float value = this.value;
+			return i -> value;
+		}
+	}
+
+	private static final class VariableNode implements NumberNode {
+		private final int variable;
+
+		private VariableNode(int variable) {
+			this.variable = variable;
+		}
+
+		@Override
+		public PixelValues compile(float[][] data) {
+			float[] values = data[variable];
+			return i -> values[i];
+		}
+	}
+
+	private static final class UnaryNode implements NumberNode {
+		private final char       operator;
+		private final NumberNode operand;
+
+		private UnaryNode(char operator, NumberNode operand) {
+			this.operator = operator;
+			this.operand = operand;
+		}
+
+		@Override
+		public PixelValues compile(float[][] data) {
+			PixelValues a = operand.compile(data);
+			switch (operator) {
+				case '-':
+					return i -> -a.get(i);
+				case 'a':
+					return i -> Math.abs(a.get(i));
+				case 'e':
+					return i -> (float)Math.exp(a.get(i));
+				default:
+					throw new AssertionError(operator);
+			}
+		}
+	}
+
+	private static final class ArithmeticNode implements NumberNode {
+		private final char       operator;
+		private final NumberNode left;
+		private final NumberNode right;
+
+		private ArithmeticNode(char operator, NumberNode left, NumberNode right) {
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public PixelValues compile(float[][] data) {
+			PixelValues a = left.compile(data);
+			PixelValues b = right.compile(data);
+			switch (operator) {
+				case '+':
+					return i -> a.get(i) + b.get(i);
+				case '-':
+					return i -> a.get(i) - b.get(i);
+				case '*':
+					return i -> a.get(i) * b.get(i);
+				case '/':
+					return i -> a.get(i) / b.get(i);
+				case 'm':
+					return i -> Math.min(a.get(i), b.get(i));
+				case 'M':
+					return i -> Math.max(a.get(i), b.get(i));
+				default:
+					throw new AssertionError(operator);
+			}
+		}
+	}
+
+	private static final class ComparisonNode implements BooleanNode {
+		private final String     operator;
+		private final NumberNode left;
+		private final NumberNode right;
+
+		private ComparisonNode(String operator, NumberNode left, NumberNode right) {
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public IntPredicate compile(float[][] data) {
+			// Specialize the common case of a parameter against a constant.
+			if (left instanceof VariableNode && right instanceof ConstantNode) {
+				float[] values = data[((VariableNode)left).variable];
+				float   value  = ((ConstantNode)right).value;
+				switch (operator) {
+					case "<":
+						return i -> values[i] < value;
+					case "<=":
+						return i -> values[i] <= value;
+					case ">":
+						return i -> values[i] > value;
+					case ">=":
+						return i -> values[i] >= value;
+					case "==":
+						return i -> values[i] == value;
+					case "!=":
+						return i -> values[i] != value;
+					default:
+						throw new AssertionError(operator);
+				}
+			}
+
+			PixelValues a = left.compile(data);
+			PixelValues b = right.compile(data);
+			switch (operator) {
+				case "<":
+					return i -> a.get(i) < b.get(i);
+				case "<=":
+					return i -> a.get(i) <= b.get(i);
+				case ">":
+					return i -> a.get(i) > b.get(i);
+				case ">=":
+					return i -> a.get(i) >= b.get(i);
+				case "==":
+					return i -> a.get(i) == b.get(i);
+				case "!=":
+					return i -> a.get(i) != b.get(i);
+				default:
+					throw new AssertionError(operator);
+			}
+		}
+	}
+
+	private static final class LogicalNode implements BooleanNode {
+		private final char        operator;
+		private final BooleanNode left;
+		private final BooleanNode right;
+
+		private LogicalNode(char operator, BooleanNode left, BooleanNode right) {
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public IntPredicate compile(float[][] data) {
+			IntPredicate a = left.compile(data);
+			IntPredicate b = right.compile(data);
+			switch (operator) {
+				case '&':
+					return i -> a.test(i) && b.test(i);
+				case '|':
+					return i -> a.test(i) || b.test(i);
+				default:
+					throw new AssertionError(operator);
+			}
+		}
+	}
+
+	private static final class NotNode implements BooleanNode {
+		private final BooleanNode operand;
+
+		private NotNode(BooleanNode operand) {
+			this.operand = operand;
+		}
+
+		@Override
+		public IntPredicate compile(float[][] data) {
+			IntPredicate a = operand.compile(data);
+			return i -> !a.test(i);
+		}
+	}
+
+	/**
+	 * A recursive descent parser. Each level of precedence has its own method.
+	 */
+	private static final class Parser {
+		private final String       source;
+		private final List<String> variableNames;
+		private final BitSet       usedVariables = new BitSet();
+
+		private int position = 0;
+
+		private Parser(String source, List<String> variableNames) {
+			this.source = source;
+			this.variableNames = variableNames;
+		}
+
+		private BooleanNode parse() throws ParseException {
+			BooleanNode node = parseOr();
+
+			skipWhitespace();
+			if (position < source.length()) {
+				throw new ParseException("Unexpected '" + source.charAt(position) + '\'', position);
+			}
+
+			return node;
+		}
+
+		private NumberNode parseFormula() throws ParseException {
+			NumberNode node = parseSum();
+
+			skipWhitespace();
+			if (position < source.length()) {
+				throw new ParseException("Unexpected '" + source.charAt(position) + '\'', position);
+			}
+
+			return node;
+		}
+
+		private BooleanNode parseOr() throws ParseException {
+			BooleanNode node = parseAnd();
+
+			while (accept("||")) {
+				node = new LogicalNode('|', node, parseAnd());
+			}
+
+			return node;
+		}
+
+		private BooleanNode parseAnd() throws ParseException {
+			BooleanNode node = parseNot();
+
+			while (accept("&&")) {
+				node = new LogicalNode('&', node, parseNot());
+			}
+
+			return node;
+		}
+
+		private BooleanNode parseNot() throws ParseException {
+			if (peek("!=")) {
+				throw new ParseException("Unexpected '!='", position);
+			} else if (accept("!")) {
+				return new NotNode(parseNot());
+			}
+
+			// A parenthesized condition. Try it, and backtrack when it turns out to be a number, like '(a + b) < c'.
+			int begin = position;
+			if (!accept("(")) {
+				return parseComparison();
+			}
+
+			try {
+				BooleanNode node = parseOr();
+				expect(")");
+				return node;
+			} catch (ParseException ex) {
+				position = begin;
+
+				try {
+					return parseComparison();
+				} catch (ParseException ex2) {
+					// Report whichever attempt got further.
+					throw ex.getErrorOffset() > ex2.getErrorOffset() ? ex : ex2;
+				}
+			}
+		}
+
+		private BooleanNode parseComparison() throws ParseException {
+			NumberNode left = parseSum();
+
+			for (String operator : new String[]{"<=", ">=", "==", "!=", "<", ">"}) {
+				if (accept(operator)) {
+					return new ComparisonNode(operator, left, parseSum());
+				}
+			}
+
+			skipWhitespace();
+			throw new ParseException("Expected a comparison", position);
+		}
+
+		private NumberNode parseSum() throws ParseException {
+			NumberNode node = parseProduct();
+
+			while (true) {
+				if (accept("+")) {
+					node = new ArithmeticNode('+', node, parseProduct());
+				} else if (accept("-")) {
+					node = new ArithmeticNode('-', node, parseProduct());
+				} else {
+					return node;
+				}
+			}
+		}
+
+		private NumberNode parseProduct() throws ParseException {
+			NumberNode node = parseUnary();
+
+			while (true) {
+				if (accept("*")) {
+					node = new ArithmeticNode('*', node, parseUnary());
+				} else if (accept("/")) {
+					node = new ArithmeticNode('/', node, parseUnary());
+				} else {
+					return node;
+				}
+			}
+		}
+
+		private NumberNode parseUnary() throws ParseException {
+			if (accept("-")) {
+				NumberNode operand = parseUnary();
+				if (operand instanceof ConstantNode) {
+					return new ConstantNode(-((ConstantNode)operand).value);
+				}
+
+				return new UnaryNode('-', operand);
+			}
+
+			return parsePrimary();
+		}
+
+		private NumberNode parsePrimary() throws ParseException {
+			skipWhitespace();
+
+			if (accept("(")) {
+				NumberNode node = parseSum();
+				expect(")");
+				return node;
+			}
+
+			int begin = position;
+			if (position < source.length() &&
+			    (Character.isDigit(source.charAt(position)) || source.charAt(position) == '.')) {
+				return parseNumber();
+			}
+
+			while (position < source.length() &&
+			       (Character.isLetterOrDigit(source.charAt(position)) || source.charAt(position) == '_')) {
+				position++;
+			}
+
+			if (begin == position) {
+				throw new ParseException(position < source.length() ?
+				                         "Unexpected '" + source.charAt(position) + '\'' :
+				                         "Unexpected end", position);
+			}
+
+			String name = source.substring(begin, position);
+			switch (name) {
+				case "abs":
+					return parseFunction(begin, 1, (args) -> new UnaryNode('a', args.get(0)));
+				case "exp":
+					return parseFunction(begin, 1, (args) -> new UnaryNode('e', args.get(0)));
+				case "min":
+					return parseFunction(begin, 2, (args) -> new ArithmeticNode('m', args.get(0), args.get(1)));
+				case "max":
+					return parseFunction(begin, 2, (args) -> new ArithmeticNode('M', args.get(0), args.get(1)));
+			}
+
+			int variable = variableNames.indexOf(name);
+			if (variable < 0) {
+				throw new ParseException("Unknown parameter '" + name + "'. Known are: " + variableNames, begin);
+			}
+
+			usedVariables.set(variable);
+			return new VariableNode(variable);
+		}
+
+		private NumberNode parseFunction(int begin, int numArguments, FunctionFactory factory) throws ParseException {
+			expect("(");
+
+			List<NumberNode> arguments = new ArrayList<>(numArguments);
+			do {
+				arguments.add(parseSum());
+			} while (accept(","));
+
+			expect(")");
+
+			if (arguments.size() != numArguments) {
+				throw new ParseException("Expected " + numArguments + " argument(s)", begin);
+			}
+
+			return factory.create(arguments);
+		}
+
+		private NumberNode parseNumber() throws ParseException {
+			int begin = position;
+			while (position < source.length() &&
+			       (Character.isDigit(source.charAt(position)) || source.charAt(position) == '.')) {
+				position++;
+			}
+
+			try {
+				return new ConstantNode(Float.parseFloat(source.substring(begin, position)));
+			} catch (NumberFormatException ignored) {
+				throw new ParseException("Malformed number", begin);
+			}
+		}
+
+		private boolean peek(String token) {
+			skipWhitespace();
+			return source.startsWith(token, position);
+		}
+
+		private boolean accept(String token) {
+			if (peek(token)) {
+				position += token.length();
+				return true;
+			}
+
+			return false;
+		}
+
+		private void expect(String token) throws ParseException {
+			if (!accept(token)) {
+				throw new ParseException("Expected '" + token + '\'', position);
+			}
+		}
+
+		private void skipWhitespace() {
+			while (position < source.length() && Character.isWhitespace(source.charAt(position))) {
+				position++;
+			}
+		}
+	}
+
+	@FunctionalInterface
+	private interface FunctionFactory {
+		NumberNode create(List<NumberNode> arguments);
+	}
+}
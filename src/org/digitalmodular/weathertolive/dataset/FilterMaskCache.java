@@ -0,0 +1,185 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.weathertolive.util.BitMaskUtilities;
+import org.digitalmodular.weathertolive.util.ParallelUtilities;
+import org.digitalmodular.weathertolive.util.RangeF;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireAtLeast;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+
+/**
+ * Keeps the {@link FilterMasks} of recently used ranges, compressed, so returning to an earlier slider position
+ * doesn't have to filter the data again.
+ * <p>
+ * The size is bounded by the total number of compressed bytes. When a new entry doesn't fit, the least recently used
+ * entries are dropped.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+@ThreadSafe
+final class FilterMaskCache {
+	private final long maxBytes;
+
+	@GuardedBy("this")
+	private final Map<Key, CompressedMasks> cache = new LinkedHashMap<>(16, 0.75f, true);
+	@GuardedBy("this")
+	private       long                      bytes = 0;
+
+	FilterMaskCache(long maxBytes) {
+		this.maxBytes = requireAtLeast(0, maxBytes, "maxBytes");
+	}
+
+	/**
+	 * Returns the masks of the given data set and range, or {@code null} if they're not in the cache.
+	 */
+	@Nullable FilterMasks get(int dataSetId, RangeF filterMinMax) {
+		@Nullable CompressedMasks compressedMasks;
+		synchronized (this) {
+			compressedMasks = cache.get(new Key(dataSetId, filterMinMax));
+		}
+
+		// Decompress outside the lock. The compressed masks are immutable.
+		return compressedMasks == null ? null : compressedMasks.decompress(filterMinMax);
+	}
+
+	void put(int dataSetId, FilterMasks filterMasks) {
+		requireNonNull(filterMasks, "filterMasks");
+		RangeF filterMinMax = requireNonNull(filterMasks.getFilterMinMax(), "filterMasks.getFilterMinMax()");
+
+		CompressedMasks compressedMasks = new CompressedMasks(filterMasks);
+		if (compressedMasks.getNumBytes() > maxBytes) {
+			return;
+		}
+
+		synchronized (this) {
+			@Nullable CompressedMasks old = cache.put(new Key(dataSetId, filterMinMax), compressedMasks);
+			if (old != null) {
+				bytes -= old.getNumBytes();
+			}
+
+			bytes += compressedMasks.getNumBytes();
+
+			Iterator<CompressedMasks> iterator = cache.values().iterator();
+			while (bytes > maxBytes) {
+				bytes -= iterator.next().getNumBytes();
+				iterator.remove();
+			}
+		}
+	}
+
+	synchronized long getNumBytes() {
+		return bytes;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return getClass().getSimpleName() + "[entries=" + cache.size() + ", bytes=" + bytes + '/' + maxBytes + ']';
+	}
+
+	private static final class Key {
+		private final int    dataSetId;
+		private final RangeF filterMinMax;
+
+		private Key(int dataSetId, RangeF filterMinMax) {
+			this.dataSetId = dataSetId;
+			this.filterMinMax = requireNonNull(filterMinMax, "filterMinMax");
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			} else if (!(o instanceof Key)) {
+				return false;
+			}
+
+			Key other = (Key)o;
+			return dataSetId == other.dataSetId &&
+			       filterMinMax.equals(other.filterMinMax);
+		}
+
+		@Override
+		public int hashCode() {
+			int hashCode = 0x811C9DC5;
+			hashCode = 0x01000193 * (hashCode ^ dataSetId);
+			hashCode = 0x01000193 * (hashCode ^ filterMinMax.hashCode());
+			return hashCode;
+		}
+	}
+
+	private static final class CompressedMasks {
+		private final int      width;
+		private final int      height;
+		private final byte[][] masks = new byte[12][];
+		private final long     numBytes;
+
+		private CompressedMasks(FilterMasks filterMasks) {
+			width = filterMasks.getWidth();
+			height = filterMasks.getHeight();
+
+			ParallelUtilities.forEachBand(12, 12, (begin, end) -> {
+				for (int month = begin; month < end; month++) {
+					masks[month] = BitMaskUtilities.compress(filterMasks.getMask(month));
+				}
+			});
+
+			long numBytes = 0;
+			for (byte[] mask : masks) {
+				numBytes += mask.length;
+			}
+
+			this.numBytes = numBytes;
+		}
+
+		public long getNumBytes() {
+			return numBytes;
+		}
+
+		public FilterMasks decompress(RangeF filterMinMax) {
+			int      stride       = BitMaskUtilities.getStride(width);
+			byte[][] uncompressed = new byte[12][stride * height];
+
+			ParallelUtilities.forEachBand(12, 12, (begin, end) -> {
+				for (int month = begin; month < end; month++) {
+					BitMaskUtilities.decompress(masks[month], uncompressed[month]);
+				}
+			});
+
+			return new FilterMasks(filterMinMax, width, height, uncompressed);
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+import net.jcip.annotations.Immutable;
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.weathertolive.util.BitMaskUtilities;
+import org.digitalmodular.weathertolive.util.RangeF;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+
+/**
+ * The result of filtering the 12 months of a {@link DataSet} with one range, or of filtering all parameters with a
+ * {@link FilterExpression}, as 1-bit masks. A bit is set where the data is outside the range (or where the expression
+ * is false). Pixels without data are never set.
+ * <p>
+ * The masks have the layout of {@link java.awt.image.BufferedImage#TYPE_BYTE_BINARY}: rows of
+ * {@code (width + 7) / 8} bytes, most significant bit first. The arrays are shared, and must not be modified.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-11
+@Immutable
+public final class FilterMasks {
+	private final @Nullable RangeF   filterMinMax;
+	private final           int      width;
+	private final           int      height;
+	private final           byte[][] masks;
+
+	/**
+	 * @param filterMinMax The range that made the masks, or {@code null} for the masks of an expression.
+	 */
+	FilterMasks(@Nullable RangeF filterMinMax, int width, int height, byte[][] masks) {
+		this.filterMinMax = filterMinMax;
+		this.width = width;
+		this.height = height;
+		this.masks = requireNonNull(masks, "masks");
+	}
+
+	/**
+	 * Returns the range that made the masks, or {@code null} for the masks of an expression.
+	 */
+	public @Nullable RangeF getFilterMinMax() {
+		return filterMinMax;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getStride() {
+		return BitMaskUtilities.getStride(width);
+	}
+
+	@SuppressWarnings("AssignmentOrReturnOfFieldWithMutableType")
+	public byte[] getMask(int month) {
+		return masks[month];
+	}
+}
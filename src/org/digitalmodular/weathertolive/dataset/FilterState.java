@@ -0,0 +1,260 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.Immutable;
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.weathertolive.util.RangeF;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireAtLeast;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireRange;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireSizeAtLeast;
+
+/**
+ * A snapshot of the filter ranges of all parameters of a {@link ClimateDataSet}, and of the optional filter
+ * expression, climate classes, climate regimes, match radius and morphology.
+ * <p>
+ * Every change makes a new snapshot with a new (increasing) version, so anything computed from a snapshot can be
+ * cached by its version. Renders bind to one snapshot, so they never see a mix of old and new ranges.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-11
+@Immutable
+public final class FilterState {
+	private static final AtomicLong VERSION_COUNTER = new AtomicLong();
+
+	private final           long             version;
+	private final           RangeF[]         filterRanges;
+	private final @Nullable FilterExpression expression;
+	private final @Nullable Set<KoppenClass> koppenClasses;
+	private final           int              clusterBits;
+	private final           float            matchRadius;
+	private final @Nullable Morphology       morphology;
+	private final           int              morphologyRadius;
+
+	private FilterState(RangeF[] filterRanges,
+	                    @Nullable FilterExpression expression,
+	                    @Nullable Set<KoppenClass> koppenClasses,
+	                    int clusterBits,
+	                    float matchRadius,
+	                    @Nullable Morphology morphology,
+	                    int morphologyRadius) {
+		version = VERSION_COUNTER.incrementAndGet();
+		this.filterRanges = filterRanges;
+		this.expression = expression;
+		this.koppenClasses = koppenClasses;
+		this.clusterBits = clusterBits;
+		this.matchRadius = matchRadius;
+		this.morphology = morphology;
+		this.morphologyRadius = morphologyRadius;
+	}
+
+	public static FilterState of(List<RangeF> filterRanges) {
+		requireSizeAtLeast(1, filterRanges, "filterRanges");
+
+		RangeF[] array = filterRanges.toArray(new RangeF[0]);
+		for (int i = 0; i < array.length; i++) {
+			requireNonNull(array[i], "filterRanges[" + i + ']');
+		}
+
+		return new FilterState(array, null, null, CategoryMap.ALL_CATEGORIES, 0, null, 0);
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public int getNumFilters() {
+		return filterRanges.length;
+	}
+
+	public RangeF getFilterMinMax(int index) {
+		return filterRanges[index];
+	}
+
+	/**
+	 * Returns a snapshot with one range changed, or this snapshot if the range is the same.
+	 */
+	public FilterState withFilterMinMax(int index, RangeF filterMinMax) {
+		requireRange(0, filterRanges.length - 1, index, "index");
+		requireNonNull(filterMinMax, "filterMinMax");
+
+		if (filterRanges[index].equals(filterMinMax)) {
+			return this;
+		}
+
+		RangeF[] array = filterRanges.clone();
+		array[index] = filterMinMax;
+		return new FilterState(
+				array, expression, koppenClasses, clusterBits, matchRadius, morphology, morphologyRadius);
+	}
+
+	/**
+	 * Returns the filter expression, which applies on top of the ranges, or {@code null} if there is none.
+	 */
+	public @Nullable FilterExpression getExpression() {
+		return expression;
+	}
+
+	/**
+	 * Returns a snapshot with the expression changed, or this snapshot if it is the same instance.
+	 */
+	public FilterState withExpression(@Nullable FilterExpression expression) {
+		//noinspection ObjectEquality // Comparing identity, not equality
+		if (this.expression == expression) {
+			return this;
+		}
+
+		return new FilterState(
+				filterRanges, expression, koppenClasses, clusterBits, matchRadius, morphology, morphologyRadius);
+	}
+
+	/**
+	 * Returns the climate classes that pass the filter, or {@code null} to not filter on climate class.
+	 */
+	public @Nullable Set<KoppenClass> getKoppenClasses() {
+		return koppenClasses;
+	}
+
+	/**
+	 * Returns a snapshot with the climate classes changed, or this snapshot if they're the same.
+	 *
+	 * @param koppenClasses The classes that pass the filter, or {@code null} to not filter on climate class.
+	 */
+	public FilterState withKoppenClasses(@Nullable Set<KoppenClass> koppenClasses) {
+		if (koppenClasses == null ? this.koppenClasses == null : koppenClasses.equals(this.koppenClasses)) {
+			return this;
+		}
+
+		@Nullable Set<KoppenClass> copy = null;
+		if (koppenClasses != null) {
+			copy = Collections.unmodifiableSet(koppenClasses.isEmpty() ?
+			                                   EnumSet.noneOf(KoppenClass.class) :
+			                                   EnumSet.copyOf(koppenClasses));
+		}
+
+		return new FilterState(filterRanges, expression, copy, clusterBits, matchRadius, morphology, morphologyRadius);
+	}
+
+	/**
+	 * Returns the {@link ClimateClusters climate regimes} that pass the filter, with bit {@code n} set for regime
+	 * {@code n}, or {@link CategoryMap#ALL_CATEGORIES} to not filter on climate regime.
+	 */
+	public int getClusterBits() {
+		return clusterBits;
+	}
+
+	/**
+	 * Returns a snapshot with the climate regimes changed, or this snapshot if they're the same.
+	 */
+	public FilterState withClusterBits(int clusterBits) {
+		if (this.clusterBits == clusterBits) {
+			return this;
+		}
+
+		return new FilterState(
+				filterRanges, expression, koppenClasses, clusterBits, matchRadius, morphology, morphologyRadius);
+	}
+
+	/**
+	 * Returns the distance in km from a matching place within which other places match too, or 0 to match only the
+	 * places themselves.
+	 */
+	public float getMatchRadius() {
+		return matchRadius;
+	}
+
+	/**
+	 * Returns a snapshot with the match radius changed, or this snapshot if it's the same.
+	 *
+	 * @param matchRadius The distance in km, or 0 to match only the places themselves.
+	 */
+	public FilterState withMatchRadius(float matchRadius) {
+		requireAtLeast(0.0f, matchRadius, "matchRadius");
+
+		if (this.matchRadius == matchRadius) {
+			return this;
+		}
+
+		return new FilterState(
+				filterRanges, expression, koppenClasses, clusterBits, matchRadius, morphology, morphologyRadius);
+	}
+
+	/**
+	 * Returns the operator that cleans up the matching places before the match radius applies, or {@code null} if
+	 * there is none.
+	 */
+	public @Nullable Morphology getMorphology() {
+		return morphology;
+	}
+
+	/**
+	 * Returns the radius in pixels of the {@link #getMorphology() morphology}.
+	 */
+	public int getMorphologyRadius() {
+		return morphologyRadius;
+	}
+
+	/**
+	 * Returns a snapshot with the morphology changed, or this snapshot if it's the same.
+	 *
+	 * @param morphology The operator, or {@code null} for none.
+	 * @param radius     The radius in pixels. Ignored without an operator.
+	 */
+	public FilterState withMorphology(@Nullable Morphology morphology, int radius) {
+		requireAtLeast(0, radius, "radius");
+
+		// Without either, there's nothing to do, so there's one way to say it.
+		boolean none = morphology == null || radius == 0;
+		if (none ? this.morphology == null : this.morphology == morphology && morphologyRadius == radius) {
+			return this;
+		}
+
+		return new FilterState(filterRanges, expression, koppenClasses, clusterBits, matchRadius,
+		                       none ? null : morphology, none ? 0 : radius);
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[v" + version + ", " + Arrays.toString(filterRanges) +
+		       (expression == null ? "" : ", " + expression.getSource()) +
+		       (koppenClasses == null ? "" : ", " + koppenClasses) +
+		       (clusterBits == CategoryMap.ALL_CATEGORIES ? "" : ", clusters=" + Integer.toBinaryString(clusterBits)) +
+		       (matchRadius == 0 ? "" : ", within " + matchRadius + " km") +
+		       (morphology == null ? "" : ", " + morphology + '(' + morphologyRadius + ')') +
+		       ']';
+	}
+}
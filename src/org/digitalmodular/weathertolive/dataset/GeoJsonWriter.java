@@ -0,0 +1,166 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireAtLeast;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireRange;
+
+/**
+ * Writes the polygons of a {@link ContourTracer} as a GeoJSON (RFC 7946) feature collection, one feature at a time, so
+ * nothing is kept in memory. Closing it finishes the collection and closes the writer.
+ * <p>
+ * Each polygon is a feature with the month (1 to 12) as property, unless it's for the whole year, and the region it's
+ * a piece of. The tracer cuts the matching areas into pieces, so the features with the same month and region together
+ * make up one contiguous area.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+public class GeoJsonWriter implements Closeable {
+	/**
+	 * Fixed-point decimals of the coordinates. Five decimals of a degree is about a meter.
+	 */
+	private static final int DECIMALS = 5;
+	private static final int SCALE    = 100_000;
+
+	private final Writer out;
+	private final int    width;
+	private final int    height;
+
+	private final StringBuilder builder = new StringBuilder(1024);
+
+	private boolean first = true;
+
+	/**
+	 * Starts the feature collection.
+	 *
+	 * @param width  The width of the grid the polygons were traced in
+	 * @param height The height of the grid the polygons were traced in
+	 */
+	public GeoJsonWriter(Writer out, int width, int height) throws IOException {
+		this.out = requireNonNull(out, "out");
+		this.width = requireAtLeast(1, width, "width");
+		this.height = requireAtLeast(1, height, "height");
+
+		out.write("{\"type\":\"FeatureCollection\",\"features\":[\n");
+	}
+
+	/**
+	 * @param rings  The polygon, as given by {@link ContourTracer.PolygonConsumer#accept(int[][], int)}
+	 * @param month  The month of the polygon (0 to 11), or -1 for the whole year.
+	 * @param region The region, as given by {@link ContourTracer.PolygonConsumer#accept(int[][], int)}
+	 */
+	public void writePolygon(int[][] rings, int month, int region) throws IOException {
+		requireNonNull(rings, "rings");
+		requireRange(-1, 11, month, "month");
+		requireAtLeast(0, region, "region");
+
+		builder.setLength(0);
+		if (!first) {
+			builder.append(",\n");
+		}
+
+		first = false;
+
+		builder.append("{\"type\":\"Feature\",\"properties\":{");
+		if (month >= 0) {
+			builder.append("\"month\":").append(month + 1).append(',');
+		}
+
+		builder.append("\"region\":").append(region);
+
+		builder.append("},\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[");
+		for (int i = 0; i < rings.length; i++) {
+			if (i > 0) {
+				builder.append(',');
+			}
+
+			appendRing(rings[i]);
+		}
+
+		builder.append("]}}");
+		out.write(builder.toString());
+	}
+
+	/**
+	 * GeoJSON rings are closed: the first position is repeated at the end.
+	 */
+	private void appendRing(int[] ring) {
+		builder.append('[');
+		for (int i = 0; i <= ring.length; i += 2) {
+			int j = i % ring.length;
+
+			builder.append('[');
+			appendDegrees(Math.round((double)ring[j] * 360 * SCALE / width) - 180L * SCALE);
+			builder.append(',');
+			appendDegrees(90L * SCALE - Math.round((double)ring[j + 1] * 180 * SCALE / height));
+			builder.append(i < ring.length ? "]," : "]");
+		}
+
+		builder.append(']');
+	}
+
+	/**
+	 * Appends degrees in fixed point, without trailing zeros.
+	 */
+	private void appendDegrees(long fixed) {
+		if (fixed < 0) {
+			builder.append('-');
+		}
+
+		long magnitude = Math.abs(fixed);
+		builder.append(magnitude / SCALE);
+
+		long fraction = magnitude % SCALE;
+		if (fraction != 0) {
+			int decimals = DECIMALS;
+			while (fraction % 10 == 0) {
+				fraction /= 10;
+				decimals--;
+			}
+
+			String digits = Long.toString(fraction);
+			builder.append('.');
+			for (int i = digits.length(); i < decimals; i++) {
+				builder.append('0');
+			}
+
+			builder.append(digits);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.write("\n]}\n");
+		out.close();
+	}
+}
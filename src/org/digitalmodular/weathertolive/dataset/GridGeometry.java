@@ -0,0 +1,69 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+/**
+ * The geometry of the grids of the climate data sets: equirectangular, spanning the whole globe, starting at the date
+ * line and the north pole. Pixel coordinates refer to the center of the pixel.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+public final class GridGeometry {
+	/**
+	 * The mean radius of the Earth, in km.
+	 */
+	public static final double EARTH_RADIUS = 6371.0088;
+
+	private GridGeometry() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Returns the latitude of the center of a row, in degrees.
+	 */
+	public static double getLatitude(int y, int height) {
+		return 90 - (y + 0.5) * 180 / height;
+	}
+
+	/**
+	 * Returns the longitude of the center of a column, in degrees.
+	 */
+	public static double getLongitude(int x, int width) {
+		return (x + 0.5) * 360 / width - 180;
+	}
+
+	/**
+	 * Returns the area of each pixel of a row, in km². The pixels are bounded by lines of latitude, so this is exact
+	 * on a sphere.
+	 */
+	public static double getPixelArea(int y, int width, int height) {
+		double north = Math.toRadians(90 - y * 180.0 / height);
+		double south = Math.toRadians(90 - (y + 1) * 180.0 / height);
+		return EARTH_RADIUS * EARTH_RADIUS * (2 * Math.PI / width) * (Math.sin(north) - Math.sin(south));
+	}
+}
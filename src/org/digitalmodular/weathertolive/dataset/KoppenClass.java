@@ -0,0 +1,118 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireRange;
+
+/**
+ * The 30 climate classes of the Köppen-Geiger classification, as used by Beck et al. (2018), with their customary
+ * colors.
+ * <p>
+ * In a classification raster, a class is stored as its {@link #getValue() value}, and 0 means no data.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+public enum KoppenClass {
+	AF("Af", "Tropical, rainforest", 0x0000FF),
+	AM("Am", "Tropical, monsoon", 0x0078FF),
+	AW("Aw", "Tropical, savannah", 0x46AAFA),
+	BWH("BWh", "Arid, desert, hot", 0xFF0000),
+	BWK("BWk", "Arid, desert, cold", 0xFF9696),
+	BSH("BSh", "Arid, steppe, hot", 0xF5A500),
+	BSK("BSk", "Arid, steppe, cold", 0xFFDC64),
+	CSA("Csa", "Temperate, dry summer, hot summer", 0xFFFF00),
+	CSB("Csb", "Temperate, dry summer, warm summer", 0xC8C800),
+	CSC("Csc", "Temperate, dry summer, cold summer", 0x969600),
+	CWA("Cwa", "Temperate, dry winter, hot summer", 0x96FF96),
+	CWB("Cwb", "Temperate, dry winter, warm summer", 0x64C864),
+	CWC("Cwc", "Temperate, dry winter, cold summer", 0x329632),
+	CFA("Cfa", "Temperate, no dry season, hot summer", 0xC8FF50),
+	CFB("Cfb", "Temperate, no dry season, warm summer", 0x64FF50),
+	CFC("Cfc", "Temperate, no dry season, cold summer", 0x32C800),
+	DSA("Dsa", "Cold, dry summer, hot summer", 0xFF00FF),
+	DSB("Dsb", "Cold, dry summer, warm summer", 0xC800C8),
+	DSC("Dsc", "Cold, dry summer, cold summer", 0x963296),
+	DSD("Dsd", "Cold, dry summer, very cold winter", 0x966496),
+	DWA("Dwa", "Cold, dry winter, hot summer", 0xAAAFFF),
+	DWB("Dwb", "Cold, dry winter, warm summer", 0x5A78DC),
+	DWC("Dwc", "Cold, dry winter, cold summer", 0x4B50B4),
+	DWD("Dwd", "Cold, dry winter, very cold winter", 0x320087),
+	DFA("Dfa", "Cold, no dry season, hot summer", 0x00FFFF),
+	DFB("Dfb", "Cold, no dry season, warm summer", 0x37C8FF),
+	DFC("Dfc", "Cold, no dry season, cold summer", 0x007D7D),
+	DFD("Dfd", "Cold, no dry season, very cold winter", 0x00465F),
+	ET("ET", "Polar, tundra", 0xB2B2B2),
+	EF("EF", "Polar, frost", 0x666666);
+
+	private static final KoppenClass[] VALUES = values();
+
+	private final String code;
+	private final String description;
+	private final int    color;
+
+	KoppenClass(String code, String description, int color) {
+		this.code = code;
+		this.description = description;
+		this.color = color;
+	}
+
+	/**
+	 * Returns the class with the given value.
+	 *
+	 * @throws IllegalArgumentException when the value is not 1 to 30
+	 */
+	public static KoppenClass fromValue(int value) {
+		return VALUES[requireRange(1, VALUES.length, value, "value") - 1];
+	}
+
+	/**
+	 * Returns the value that represents this class in a classification raster, 1 to 30.
+	 */
+	public int getValue() {
+		return ordinal() + 1;
+	}
+
+	public String getCode() {
+		return code;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public int getColor() {
+		return color;
+	}
+
+	/**
+	 * Returns the main group: 'A', 'B', 'C', 'D' or 'E'.
+	 */
+	public char getGroup() {
+		return code.charAt(0);
+	}
+}
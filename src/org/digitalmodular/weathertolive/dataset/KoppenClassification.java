@@ -0,0 +1,238 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+import java.util.Set;
+
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.weathertolive.util.ParallelUtilities;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireThat;
+
+/**
+ * The Köppen-Geiger climate class of every pixel, computed from the monthly mean temperature and precipitation.
+ * <p>
+ * The rules are those of Beck et al. (2018). Summer is April to September on the northern hemisphere, and October to
+ * March on the southern hemisphere. The categories are the {@link KoppenClass#getValue() values} of the classes.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+@ThreadSafe
+public final class KoppenClassification extends CategoryMap {
+	private KoppenClassification(int width, int height, byte[] classes) {
+		super(width, height, classes);
+	}
+
+	/**
+	 * Classifies every pixel, in parallel bands of rows.
+	 *
+	 * @param temperature   The monthly mean temperature, in °C
+	 * @param precipitation The monthly precipitation, in mm
+	 */
+	public static KoppenClassification compute(DataSet temperature, DataSet precipitation) {
+		requireNonNull(temperature, "temperature");
+		requireNonNull(precipitation, "precipitation");
+		requireThat(temperature.getWidth() == precipitation.getWidth() &&
+		            temperature.getHeight() == precipitation.getHeight(),
+		            "Data sets differ in size: " + temperature.getName() + ", " + precipitation.getName());
+
+		int           width               = temperature.getWidth();
+		int           height              = temperature.getHeight();
+		byte[]        classes             = new byte[width * height];
+		PixelValues[] temperatureValues   = new PixelValues[12];
+		PixelValues[] precipitationValues = new PixelValues[12];
+		for (int month = 0; month < 12; month++) {
+			temperatureValues[month] = temperature.getMonthValues(month);
+			precipitationValues[month] = precipitation.getMonthValues(month);
+		}
+
+		ParallelUtilities.forEachBand(height, (beginRow, endRow) -> {
+			float[] t = new float[12];
+			float[] p = new float[12];
+
+			for (int y = beginRow; y < endRow; y++) {
+				boolean northern = y < height / 2;
+
+				for (int i = y * width; i < (y + 1) * width; i++) {
+					boolean hasData = true;
+					for (int month = 0; month < 12 && hasData; month++) {
+						t[month] = temperatureValues[month].get(i);
+						p[month] = precipitationValues[month].get(i);
+						hasData = !Float.isNaN(t[month]) && !Float.isNaN(p[month]);
+					}
+
+					classes[i] = hasData ? (byte)classify(t, p, northern).getValue() : 0;
+				}
+			}
+		});
+
+		return new KoppenClassification(width, height, classes);
+	}
+
+	/**
+	 * Classifies one place.
+	 *
+	 * @param t        The mean temperature of each month, in °C
+	 * @param p        The precipitation of each month, in mm
+	 * @param northern Whether the place is on the northern hemisphere
+	 */
+	static KoppenClass classify(float[] t, float[] p, boolean northern) {
+		float meanT         = 0;
+		float totalP        = 0;
+		float summerP       = 0;
+		float hottestT      = Float.NEGATIVE_INFINITY;
+		float coldestT      = Float.POSITIVE_INFINITY;
+		int   warmMonths    = 0;
+		float driestP       = Float.POSITIVE_INFINITY;
+		float driestSummer  = Float.POSITIVE_INFINITY;
+		float driestWinter  = Float.POSITIVE_INFINITY;
+		float wettestSummer = Float.NEGATIVE_INFINITY;
+		float wettestWinter = Float.NEGATIVE_INFINITY;
+
+		for (int month = 0; month < 12; month++) {
+			boolean summer = northern == (month >= 3 && month < 9);
+
+			meanT += t[month] / 12;
+			totalP += p[month];
+			hottestT = Math.max(hottestT, t[month]);
+			coldestT = Math.min(coldestT, t[month]);
+			driestP = Math.min(driestP, p[month]);
+			if (t[month] > 10) {
+				warmMonths++;
+			}
+
+			if (summer) {
+				summerP += p[month];
+				driestSummer = Math.min(driestSummer, p[month]);
+				wettestSummer = Math.max(wettestSummer, p[month]);
+			} else {
+				driestWinter = Math.min(driestWinter, p[month]);
+				wettestWinter = Math.max(wettestWinter, p[month]);
+			}
+		}
+
+		if (hottestT < 10) {
+			return hottestT > 0 ? KoppenClass.ET : KoppenClass.EF;
+		}
+
+		float winterP = totalP - summerP;
+		float aridThreshold;
+		if (winterP >= 0.7f * totalP) {
+			aridThreshold = 2 * meanT;
+		} else if (summerP >= 0.7f * totalP) {
+			aridThreshold = 2 * meanT + 28;
+		} else {
+			aridThreshold = 2 * meanT + 14;
+		}
+
+		if (totalP < 10 * aridThreshold) {
+			boolean desert = totalP < 5 * aridThreshold;
+			if (meanT >= 18) {
+				return desert ? KoppenClass.BWH : KoppenClass.BSH;
+			} else {
+				return desert ? KoppenClass.BWK : KoppenClass.BSK;
+			}
+		}
+
+		if (coldestT >= 18) {
+			if (driestP >= 60) {
+				return KoppenClass.AF;
+			} else if (driestP >= 100 - totalP / 25) {
+				return KoppenClass.AM;
+			} else {
+				return KoppenClass.AW;
+			}
+		}
+
+		// Second letter: s, w, or f. Third letter: a, b, c, or d.
+		int dryness;
+		if (driestSummer < 40 && driestSummer < wettestWinter / 3) {
+			dryness = 0;
+		} else if (driestWinter < wettestSummer / 10) {
+			dryness = 1;
+		} else {
+			dryness = 2;
+		}
+
+		boolean temperate = coldestT > 0;
+		int     summerHeat;
+		if (hottestT >= 22) {
+			summerHeat = 0;
+		} else if (warmMonths >= 4) {
+			summerHeat = 1;
+		} else if (!temperate && coldestT < -38) {
+			summerHeat = 3;
+		} else {
+			summerHeat = 2;
+		}
+
+		if (temperate) {
+			return KoppenClass.fromValue(KoppenClass.CSA.getValue() + dryness * 3 + summerHeat);
+		} else {
+			return KoppenClass.fromValue(KoppenClass.DSA.getValue() + dryness * 4 + summerHeat);
+		}
+	}
+
+	@Override
+	public int getNumCategories() {
+		return KoppenClass.values().length;
+	}
+
+	/**
+	 * Returns the class of a pixel, or {@code null} where there's no data.
+	 */
+	public @Nullable KoppenClass getKoppenClass(int index) {
+		int value = getValue(index);
+		return value == 0 ? null : KoppenClass.fromValue(value);
+	}
+
+	/**
+	 * Returns the classes as a bit set, with bit {@link KoppenClass#getValue() value} set for each class.
+	 */
+	public static int toBits(Set<KoppenClass> koppenClasses) {
+		int bits = 0;
+		for (KoppenClass koppenClass : koppenClasses) {
+			bits |= 1 << koppenClass.getValue();
+		}
+
+		return bits;
+	}
+
+	/**
+	 * Returns the masks of the places that are not of one of the given classes.
+	 *
+	 * @see #getFilterMasks(int)
+	 */
+	public FilterMasks getFilterMasks(Set<KoppenClass> koppenClasses) {
+		requireNonNull(koppenClasses, "koppenClasses");
+
+		return getFilterMasks(toBits(koppenClasses));
+	}
+}
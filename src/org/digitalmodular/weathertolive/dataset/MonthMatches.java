@@ -0,0 +1,139 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+import java.util.List;
+
+import net.jcip.annotations.Immutable;
+
+import org.digitalmodular.weathertolive.util.BitMaskUtilities;
+import org.digitalmodular.weathertolive.util.ParallelUtilities;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireRange;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireSizeAtLeast;
+
+/**
+ * The result of all filters of one filter state, per month: for each pixel, the set of months in which all filters
+ * pass. This is a 12-bit month mask per pixel, stored as 12 packed masks (one bit plane per month) in the layout of
+ * {@link FilterMasks}.
+ * <p>
+ * Pixels without data pass in every month, like they're never shaded by a filter.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+@Immutable
+public final class MonthMatches {
+	private final int      width;
+	private final int      height;
+	/**
+	 * A bit is set where the month does <em>not</em> match, which is the combination of the filter masks as-is.
+	 */
+	private final byte[][] monthMasks;
+
+	private MonthMatches(int width, int height, byte[][] monthMasks) {
+		this.width = width;
+		this.height = height;
+		this.monthMasks = monthMasks;
+	}
+
+	/**
+	 * Combines the filter masks of each data set, all from the same filter state.
+	 */
+	public static MonthMatches of(List<FilterMasks> filterMasks) {
+		requireSizeAtLeast(1, filterMasks, "filterMasks");
+
+		int      width      = filterMasks.get(0).getWidth();
+		int      height     = filterMasks.get(0).getHeight();
+		int      stride     = filterMasks.get(0).getStride();
+		byte[][] monthMasks = new byte[12][stride * height];
+
+		ParallelUtilities.forEachBand(height, (beginRow, endRow) -> {
+			int begin = beginRow * stride;
+			int end   = endRow * stride;
+
+			for (int month = 0; month < 12; month++) {
+				byte[] monthMask = monthMasks[month];
+
+				for (FilterMasks masks : filterMasks) {
+					byte[] mask = masks.getMask(month);
+
+					for (int i = begin; i < end; i++) {
+						monthMask[i] |= mask[i];
+					}
+				}
+			}
+		});
+
+		return new MonthMatches(width, height, monthMasks);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the months in which all filters pass at the given pixel, as a bit mask with bit {@code m} for month
+	 * {@code m}.
+	 */
+	public int getMatchingMonths(int x, int y) {
+		requireRange(0, width - 1, x, "x");
+		requireRange(0, height - 1, y, "y");
+
+		int i     = y * BitMaskUtilities.getStride(width) + x / 8;
+		int shift = 7 - x % 8;
+
+		int months = 0;
+		for (int month = 0; month < 12; month++) {
+			if ((monthMasks[month][i] >> shift & 1) == 0) {
+				months |= 1 << month;
+			}
+		}
+
+		return months;
+	}
+
+	/**
+	 * Renders the mask of places that match in fewer than {@code minMonths} months, in the layout of
+	 * {@link FilterMasks}. With 12, this is the same as filtering the entire year.
+	 */
+	public byte[] renderMinMonthsMask(int minMonths) {
+		requireRange(1, 12, minMonths, "minMonths");
+
+		int    stride = BitMaskUtilities.getStride(width);
+		byte[] mask   = new byte[stride * height];
+
+		// Matching in fewer than minMonths months is the same as not matching in more than 12 - minMonths months.
+		ParallelUtilities.forEachBand(height, (beginRow, endRow) -> BitMaskUtilities.countAtLeast(
+				monthMasks, 13 - minMonths, mask, beginRow * stride, endRow * stride));
+
+		return mask;
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+import org.digitalmodular.weathertolive.util.BitMaskUtilities;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireAtLeast;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireThat;
+
+/**
+ * Morphological operators that clean up the places where the filters match, so a few pixels just outside a filter
+ * range don't break up an area, and a few that are just inside don't show up as specks.
+ * <p>
+ * The neighborhood is a square of {@code 2 * radius + 1} pixels, wrapping around at the date line. Only land takes
+ * part: the sea never matches, but it doesn't erode the coast either.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+public enum Morphology {
+	DILATE("Grow matches"),
+	ERODE("Shrink matches"),
+	OPEN("Remove specks"),
+	CLOSE("Fill holes");
+
+	private final String description;
+
+	Morphology(String description) {
+		this.description = description;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	/**
+	 * Applies the operator to the matching pixels, in place.
+	 *
+	 * @param matches The matching pixels as a packed mask (see {@link BitMaskUtilities}). Pixels outside the domain
+	 *                must be clear, and stay clear.
+	 * @param domain  The pixels that take part (the land), as a packed mask.
+	 */
+	public void apply(byte[] matches, byte[] domain, int width, int height, int radius) {
+		requireNonNull(matches, "matches");
+		requireNonNull(domain, "domain");
+		requireThat(matches.length == domain.length,
+		            "'matches' and 'domain' differ in size: " + matches.length + ", " + domain.length);
+		requireAtLeast(0, radius, "radius");
+
+		if (radius == 0) {
+			return;
+		}
+
+		switch (this) {
+			case DILATE:
+				dilate(matches, domain, width, height, radius);
+				break;
+			case ERODE:
+				erode(matches, domain, width, height, radius);
+				break;
+			case OPEN:
+				erode(matches, domain, width, height, radius);
+				dilate(matches, domain, width, height, radius);
+				break;
+			case CLOSE:
+				dilate(matches, domain, width, height, radius);
+				erode(matches, domain, width, height, radius);
+				break;
+		}
+	}
+
+	private static void dilate(byte[] matches, byte[] domain, int width, int height, int radius) {
+		BitMaskUtilities.dilate(matches, width, height, radius);
+
+		for (int i = 0; i < matches.length; i++) {
+			matches[i] &= domain[i];
+		}
+	}
+
+	private static void erode(byte[] matches, byte[] domain, int width, int height, int radius) {
+		// Outside the domain counts as matching, so it doesn't erode anything.
+		for (int i = 0; i < matches.length; i++) {
+			matches[i] |= (byte)~domain[i];
+		}
+
+		BitMaskUtilities.erode(matches, width, height, radius);
+
+		for (int i = 0; i < matches.length; i++) {
+			matches[i] &= domain[i];
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * A pixel of a data set grid, with the value it was ranked by.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+@Immutable
+public final class RankedLocation {
+	private final int   x;
+	private final int   y;
+	private final float longitude;
+	private final float latitude;
+	private final float value;
+
+	/**
+	 * @param width  The width of the grid, which spans the whole globe, starting at the date line
+	 * @param height The height of the grid, starting at the north pole
+	 */
+	public RankedLocation(int x, int y, int width, int height, float value) {
+		this.x = x;
+		this.y = y;
+		this.value = value;
+
+		// The center of the pixel
+		longitude = (x + 0.5f) * 360.0f / width - 180.0f;
+		latitude = 90.0f - (y + 0.5f) * 180.0f / height;
+	}
+
+	public int getX() {
+		return x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	public float getLongitude() {
+		return longitude;
+	}
+
+	public float getLatitude() {
+		return latitude;
+	}
+
+	public float getValue() {
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + '[' + "x=" + x + ", y=" + y + ", latitude=" + latitude +
+		       ", longitude=" + longitude + ", value=" + value + ']';
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+import java.awt.Rectangle;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * A contiguous region of places, found by {@link RegionFinder}.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+@Immutable
+public final class Region {
+	private final int       numPixels;
+	private final double    area;
+	private final float     centroidLatitude;
+	private final float     centroidLongitude;
+	private final Rectangle bounds;
+
+	/**
+	 * @param area   The area in km²
+	 * @param bounds The bounding box in pixels. It may extend beyond the right edge of the grid, when the region
+	 *               crosses the date line.
+	 */
+	public Region(int numPixels, double area, float centroidLatitude, float centroidLongitude, Rectangle bounds) {
+		this.numPixels = numPixels;
+		this.area = area;
+		this.centroidLatitude = centroidLatitude;
+		this.centroidLongitude = centroidLongitude;
+		this.bounds = new Rectangle(bounds);
+	}
+
+	public int getNumPixels() {
+		return numPixels;
+	}
+
+	/**
+	 * Returns the area in km².
+	 */
+	public double getArea() {
+		return area;
+	}
+
+	public float getCentroidLatitude() {
+		return centroidLatitude;
+	}
+
+	public float getCentroidLongitude() {
+		return centroidLongitude;
+	}
+
+	/**
+	 * Returns the bounding box in pixels. It may extend beyond the right edge of the grid, when the region crosses the
+	 * date line.
+	 */
+	public Rectangle getBounds() {
+		return new Rectangle(bounds);
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[numPixels=" + numPixels + ", area=" + area +
+		       ", centroidLatitude=" + centroidLatitude + ", centroidLongitude=" + centroidLongitude +
+		       ", bounds=" + bounds + ']';
+	}
+}
@@ -0,0 +1,413 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.digitalmodular.weathertolive.util.BitMaskUtilities;
+import org.digitalmodular.weathertolive.util.ParallelUtilities;
+import org.digitalmodular.weathertolive.util.TopKSelector;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireArrayLengthExactly;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireAtLeast;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireRange;
+
+/**
+ * Finds the contiguous regions in a mask. Pixels are connected to the 4 pixels next to them, and the left and right
+ * edges of the grid are connected (the date line).
+ * <p>
+ * Instead of pixels, runs of set pixels in a row are labeled, with union-find. Each band of rows is labeled in
+ * parallel, and then the bands are merged at their edges.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+public final class RegionFinder {
+	private RegionFinder() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Returns the largest regions, largest first. Equal areas are ordered by their first pixel, north to south, then
+	 * west to east.
+	 *
+	 * @param mask       A packed mask (see {@link BitMaskUtilities}) with the pixels of the regions set
+	 * @param maxRegions The maximum number of regions to return
+	 */
+	public static List<Region> find(byte[] mask, int width, int height, int maxRegions) {
+		requireAtLeast(0, maxRegions, "maxRegions");
+
+		return measure(label(mask, width, height), width, height, maxRegions);
+	}
+
+	/**
+	 * Returns which region each pixel belongs to.
+	 *
+	 * @param mask A packed mask (see {@link BitMaskUtilities}) with the pixels of the regions set
+	 */
+	public static Labels label(byte[] mask, int width, int height) {
+		requireNonNull(mask, "mask");
+		requireArrayLengthExactly(BitMaskUtilities.getStride(width) * height, mask, "mask");
+
+		List<Band> bands = Collections.synchronizedList(new ArrayList<>());
+		ParallelUtilities.forEachBand(height, (beginRow, endRow) -> bands.add(new Band(mask, width, beginRow, endRow)));
+		bands.sort(Comparator.comparingInt(band -> band.beginRow));
+
+		// Concatenate the bands, so run numbers become global.
+		int numRuns = 0;
+		for (Band band : bands) {
+			band.firstRun = numRuns;
+			numRuns += band.numRuns;
+		}
+
+		int[] runs      = new int[numRuns * 2];
+		int[] parents   = new int[numRuns];
+		int[] rowStarts = new int[height + 1];
+		for (Band band : bands) {
+			System.arraycopy(band.runs, 0, runs, band.firstRun * 2, band.numRuns * 2);
+
+			for (int run = 0; run < band.numRuns; run++) {
+				parents[band.firstRun + run] = band.parents[run] + band.firstRun;
+			}
+
+			for (int row = 0; row < band.numRows; row++) {
+				rowStarts[band.beginRow + row] = band.firstRun + band.rowStarts[row];
+			}
+		}
+
+		rowStarts[height] = numRuns;
+
+		for (int i = 1; i < bands.size(); i++) {
+			Band above = bands.get(i - 1);
+			Band below = bands.get(i);
+			unionRows(runs, parents,
+			          above.firstRun + above.rowStarts[above.numRows - 1], above.firstRun + above.numRuns,
+			          below.firstRun, below.firstRun + below.rowStarts[1]);
+		}
+
+		// Number the regions in order of their first run, which is the root.
+		int[] regionOfRun = new int[numRuns];
+		int   numRegions  = 0;
+		for (int run = 0; run < numRuns; run++) {
+			int root = find(parents, run);
+			regionOfRun[run] = root == run ? numRegions++ : regionOfRun[root];
+		}
+
+		return new Labels(runs, rowStarts, regionOfRun, numRegions);
+	}
+
+	/**
+	 * Adds up the statistics of the runs of each region, and returns the largest regions.
+	 */
+	private static List<Region> measure(Labels labels, int width, int height, int maxRegions) {
+		int[] runs        = labels.runs;
+		int[] regionOfRun = labels.regionOfRun;
+		int   numRegions  = labels.numRegions;
+
+		int[]    numPixels = new int[numRegions];
+		double[] areas     = new double[numRegions];
+		// The sum of the area-weighted unit vectors of all pixels, for a centroid that doesn't care about the date line
+		double[] centroids = new double[numRegions * 3];
+		int[]    minY      = new int[numRegions];
+		int[]    maxY      = new int[numRegions];
+		// The horizontal extent, directly and shifted by half the width, to find the narrowest around the date line.
+		int[]    minX      = new int[numRegions];
+		int[]    maxX      = new int[numRegions];
+		int[]    minShiftX = new int[numRegions];
+		int[]    maxShiftX = new int[numRegions];
+		Arrays.fill(minY, Integer.MAX_VALUE);
+		Arrays.fill(minX, Integer.MAX_VALUE);
+		Arrays.fill(minShiftX, Integer.MAX_VALUE);
+
+		double step = 2 * Math.PI / width;
+		for (int y = 0; y < height; y++) {
+			double pixelArea = GridGeometry.getPixelArea(y, width, height);
+			double latitude  = Math.toRadians(GridGeometry.getLatitude(y, height));
+			double cosLat    = Math.cos(latitude);
+			double sinLat    = Math.sin(latitude);
+
+			for (int run = labels.rowStarts[y]; run < labels.rowStarts[y + 1]; run++) {
+				int region = regionOfRun[run];
+				int begin  = runs[run * 2];
+				int end    = runs[run * 2 + 1];
+				int length = end - begin;
+
+				numPixels[region] += length;
+				areas[region] += pixelArea * length;
+
+				// Sum of cos and sin of the longitudes of the run, in closed form.
+				double middle    = (begin + end - 1) / 2.0;
+				double longitude = Math.toRadians(GridGeometry.getLongitude(0, width)) + middle * step;
+				double factor    = Math.sin(length * step / 2) / Math.sin(step / 2);
+				double weight    = pixelArea * cosLat * factor;
+				centroids[region * 3] += weight * Math.cos(longitude);
+				centroids[region * 3 + 1] += weight * Math.sin(longitude);
+				centroids[region * 3 + 2] += pixelArea * sinLat * length;
+
+				minY[region] = Math.min(minY[region], y);
+				maxY[region] = Math.max(maxY[region], y);
+				minX[region] = Math.min(minX[region], begin);
+				maxX[region] = Math.max(maxX[region], end - 1);
+
+				int shiftedBegin = (begin + width / 2) % width;
+				if (shiftedBegin + length > width) {
+					minShiftX[region] = 0; // Wraps in shifted coordinates too
+					maxShiftX[region] = width - 1;
+				} else {
+					minShiftX[region] = Math.min(minShiftX[region], shiftedBegin);
+					maxShiftX[region] = Math.max(maxShiftX[region], shiftedBegin + length - 1);
+				}
+			}
+		}
+
+		TopKSelector selector = new TopKSelector(maxRegions);
+		for (int region = 0; region < numRegions; region++) {
+			selector.offer((float)areas[region], region);
+		}
+
+		int[]        largest = selector.removeAllSorted();
+		List<Region> regions = new ArrayList<>(largest.length);
+		for (int region : largest) {
+			double x = centroids[region * 3];
+			double y = centroids[region * 3 + 1];
+			double z = centroids[region * 3 + 2];
+
+			Rectangle bounds;
+			if (maxShiftX[region] - minShiftX[region] < maxX[region] - minX[region]) {
+				int beginX = (minShiftX[region] + width - width / 2) % width;
+				bounds = new Rectangle(beginX, minY[region], maxShiftX[region] - minShiftX[region] + 1,
+				                       maxY[region] - minY[region] + 1);
+			} else {
+				bounds = new Rectangle(minX[region], minY[region], maxX[region] - minX[region] + 1,
+				                       maxY[region] - minY[region] + 1);
+			}
+
+			regions.add(new Region(numPixels[region],
+			                       areas[region],
+			                       (float)Math.toDegrees(Math.atan2(z, Math.hypot(x, y))),
+			                       (float)Math.toDegrees(Math.atan2(y, x)),
+			                       bounds));
+		}
+
+		return regions;
+	}
+
+	/**
+	 * Joins the overlapping runs of two consecutive rows.
+	 */
+	private static void unionRows(int[] runs,
+	                              int[] parents,
+	                              int aboveBegin,
+	                              int aboveEnd,
+	                              int belowBegin,
+	                              int belowEnd) {
+		int above = aboveBegin;
+		int below = belowBegin;
+		while (above < aboveEnd && below < belowEnd) {
+			if (runs[above * 2] < runs[below * 2 + 1] && runs[below * 2] < runs[above * 2 + 1]) {
+				union(parents, above, below);
+			}
+
+			// Advance whichever ends first. The other may overlap the next run as well.
+			if (runs[above * 2 + 1] < runs[below * 2 + 1]) {
+				above++;
+			} else {
+				below++;
+			}
+		}
+	}
+
+	private static int find(int[] parents, int run) {
+		while (parents[run] != run) {
+			parents[run] = parents[parents[run]]; // Path halving
+			run = parents[run];
+		}
+
+		return run;
+	}
+
+	/**
+	 * Joins two sets. The lowest run becomes the root, so it's the first run of the region.
+	 */
+	private static void union(int[] parents, int run1, int run2) {
+		int root1 = find(parents, run1);
+		int root2 = find(parents, run2);
+		if (root1 < root2) {
+			parents[root2] = root1;
+		} else if (root2 < root1) {
+			parents[root1] = root2;
+		}
+	}
+
+	/**
+	 * The region of each set pixel. Regions are numbered from 0 in order of their first pixel, north to south, then
+	 * west to east, so the same mask always gets the same numbers.
+	 */
+	public static final class Labels {
+		/**
+		 * Pairs of begin (inclusive) and end (exclusive) columns of the runs of set pixels.
+		 */
+		private final int[] runs;
+		/**
+		 * For each row, the first run. The element after the last row is the number of runs.
+		 */
+		private final int[] rowStarts;
+		private final int[] regionOfRun;
+		private final int   numRegions;
+
+		Labels(int[] runs, int[] rowStarts, int[] regionOfRun, int numRegions) {
+			this.runs = runs;
+			this.rowStarts = rowStarts;
+			this.regionOfRun = regionOfRun;
+			this.numRegions = numRegions;
+		}
+
+		public int getNumRegions() {
+			return numRegions;
+		}
+
+		/**
+		 * Returns the region of a pixel, or -1 if the pixel isn't set.
+		 */
+		public int getRegion(int x, int y) {
+			requireRange(0, rowStarts.length - 2, y, "y");
+
+			int low  = rowStarts[y];
+			int high = rowStarts[y + 1] - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				if (x < runs[middle * 2]) {
+					high = middle - 1;
+				} else if (x >= runs[middle * 2 + 1]) {
+					low = middle + 1;
+				} else {
+					return regionOfRun[middle];
+				}
+			}
+
+			return -1;
+		}
+	}
+
+	/**
+	 * The runs of a band of rows, labeled within the band.
+	 */
+	private static final class Band {
+		final int beginRow;
+		final int numRows;
+
+		/**
+		 * Pairs of begin (inclusive) and end (exclusive) columns.
+		 */
+		int[] runs    = new int[64];
+		int[] parents = new int[32];
+		int   numRuns = 0;
+		/**
+		 * For each row, the first run. The element after the last row is the number of runs.
+		 */
+		final int[] rowStarts;
+
+		/**
+		 * The number of the first run of this band, among all bands.
+		 */
+		int firstRun = 0;
+
+		Band(byte[] mask, int width, int beginRow, int endRow) {
+			this.beginRow = beginRow;
+			numRows = endRow - beginRow;
+			rowStarts = new int[numRows + 1];
+
+			int stride = BitMaskUtilities.getStride(width);
+			for (int row = 0; row < numRows; row++) {
+				rowStarts[row] = numRuns;
+				findRuns(mask, (beginRow + row) * stride, width);
+
+				// The date line
+				int first = rowStarts[row];
+				int last  = numRuns - 1;
+				if (last > first && runs[first * 2] == 0 && runs[last * 2 + 1] == width) {
+					union(parents, first, last);
+				}
+
+				if (row > 0) {
+					unionRows(runs, parents, rowStarts[row - 1], rowStarts[row], rowStarts[row], numRuns);
+				}
+			}
+
+			rowStarts[numRows] = numRuns;
+		}
+
+		private void findRuns(byte[] mask, int offset, int width) {
+			int x = 0;
+			while (x < width) {
+				// Skip empty bytes at once.
+				if ((x & 7) == 0 && mask[offset + (x >> 3)] == 0) {
+					x += 8;
+					continue;
+				}
+
+				if (!isSet(mask, offset, x)) {
+					x++;
+					continue;
+				}
+
+				int begin = x;
+				while (x < width && isSet(mask, offset, x)) {
+					// Skip full bytes at once.
+					if ((x & 7) == 0 && x + 8 <= width && mask[offset + (x >> 3)] == (byte)0xFF) {
+						x += 8;
+					} else {
+						x++;
+					}
+				}
+
+				addRun(begin, x);
+			}
+		}
+
+		private static boolean isSet(byte[] mask, int offset, int x) {
+			return (mask[offset + (x >> 3)] & 0x80 >>> (x & 7)) != 0;
+		}
+
+		private void addRun(int begin, int end) {
+			if (numRuns == parents.length) {
+				runs = Arrays.copyOf(runs, numRuns * 4);
+				parents = Arrays.copyOf(parents, numRuns * 2);
+			}
+
+			runs[numRuns * 2] = begin;
+			runs[numRuns * 2 + 1] = end;
+			parents[numRuns] = numRuns;
+			numRuns++;
+		}
+	}
+}
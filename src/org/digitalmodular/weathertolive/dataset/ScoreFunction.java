@@ -0,0 +1,134 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+import java.util.Arrays;
+import java.util.List;
+
+import net.jcip.annotations.Immutable;
+
+import org.digitalmodular.weathertolive.util.RangeF;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireAtLeast;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireRange;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireSizeAtLeast;
+
+/**
+ * Turns the filter ranges into a soft score: instead of passing or failing, a value gets 1 inside the range, dropping
+ * smoothly to 0 at {@code falloff} outside of it. The scores of the parameters are combined as a weighted average.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+@Immutable
+public final class ScoreFunction {
+	/**
+	 * The default falloff, as a fraction of the range of values of the data set.
+	 */
+	public static final float DEFAULT_FALLOFF_FRACTION = 0.1f;
+
+	private final float[] weights;
+	private final float[] falloffs;
+
+	private ScoreFunction(float[] weights, float[] falloffs) {
+		this.weights = weights;
+		this.falloffs = falloffs;
+	}
+
+	/**
+	 * Creates a function with equal weights and a falloff of {@link #DEFAULT_FALLOFF_FRACTION} for every data set.
+	 */
+	public static ScoreFunction defaults(List<FilterDataSet> filterDataSets) {
+		requireSizeAtLeast(1, filterDataSets, "filterDataSets");
+
+		float[] weights  = new float[filterDataSets.size()];
+		float[] falloffs = new float[filterDataSets.size()];
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = 1;
+			falloffs[i] = filterDataSets.get(i).getDataSet().getMinMax().getSpan() * DEFAULT_FALLOFF_FRACTION;
+		}
+
+		return new ScoreFunction(weights, falloffs);
+	}
+
+	public int getNumFilters() {
+		return weights.length;
+	}
+
+	public float getWeight(int index) {
+		return weights[index];
+	}
+
+	/**
+	 * Returns a function with one weight changed. A weight of 0 ignores the parameter.
+	 */
+	public ScoreFunction withWeight(int index, float weight) {
+		requireRange(0, weights.length - 1, index, "index");
+		requireAtLeast(0.0, weight, "weight");
+
+		float[] array = weights.clone();
+		array[index] = weight;
+		return new ScoreFunction(array, falloffs);
+	}
+
+	public float getFalloff(int index) {
+		return falloffs[index];
+	}
+
+	/**
+	 * Returns a function with one falloff changed. A falloff of 0 makes the range a hard cutoff.
+	 */
+	public ScoreFunction withFalloff(int index, float falloff) {
+		requireRange(0, falloffs.length - 1, index, "index");
+		requireAtLeast(0.0, falloff, "falloff");
+
+		float[] array = falloffs.clone();
+		array[index] = falloff;
+		return new ScoreFunction(weights, array);
+	}
+
+	/**
+	 * Returns the score of one value: 1 inside the range, 0 at {@code falloff} or more outside of it, and a smooth step
+	 * in between.
+	 */
+	public static float getScore(float value, RangeF range, float falloff) {
+		float distance = Math.max(range.getBegin() - value, value - range.getEnd());
+		if (distance <= 0) {
+			return 1;
+		} else if (distance >= falloff) {
+			return 0;
+		}
+
+		float t = distance / falloff;
+		return 1 - t * t * (3 - 2 * t);
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[weights=" + Arrays.toString(weights) +
+		       ", falloffs=" + Arrays.toString(falloffs) + ']';
+	}
+}
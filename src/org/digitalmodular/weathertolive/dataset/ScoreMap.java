@@ -0,0 +1,199 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.dataset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.jcip.annotations.Immutable;
+
+import org.digitalmodular.weathertolive.util.ParallelUtilities;
+import org.digitalmodular.weathertolive.util.RangeF;
+import org.digitalmodular.weathertolive.util.TopKSelector;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireAtLeast;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireRange;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireThat;
+
+/**
+ * How pleasant each pixel is over the whole year, according to a {@link ScoreFunction}: the average over the months of
+ * the weighted average over the parameters. Scores are in the range {@code [0, 1]}, or {@link Float#NaN} where there's
+ * no data.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+@Immutable
+public final class ScoreMap {
+	private final int     width;
+	private final int     height;
+	private final float[] scores;
+
+	private ScoreMap(int width, int height, float[] scores) {
+		this.width = width;
+		this.height = height;
+		this.scores = scores;
+	}
+
+	public static ScoreMap compute(List<FilterDataSet> filterDataSets,
+	                               FilterState filterState,
+	                               ScoreFunction scoreFunction) {
+		requireNonNull(filterDataSets, "filterDataSets");
+		requireNonNull(filterState, "filterState");
+		requireNonNull(scoreFunction, "scoreFunction");
+		requireThat(filterState.getNumFilters() == filterDataSets.size() &&
+		            scoreFunction.getNumFilters() == filterDataSets.size(),
+		            "Number of filters differs: " + filterDataSets.size() + ", " + filterState.getNumFilters() +
+		            ", " + scoreFunction.getNumFilters());
+
+		int             numFilters = filterDataSets.size();
+		int             width      = filterDataSets.get(0).getDataSet().getWidth();
+		int             height     = filterDataSets.get(0).getDataSet().getHeight();
+		PixelValues[][] values     = new PixelValues[numFilters][12];
+		RangeF[]        ranges     = new RangeF[numFilters];
+		float[]         weights    = new float[numFilters];
+		float[]         falloffs   = new float[numFilters];
+		for (int f = 0; f < numFilters; f++) {
+			for (int month = 0; month < 12; month++) {
+				values[f][month] = filterDataSets.get(f).getDataSet().getMonthValues(month);
+			}
+
+			ranges[f] = filterState.getFilterMinMax(f);
+			weights[f] = scoreFunction.getWeight(f);
+			falloffs[f] = scoreFunction.getFalloff(f);
+		}
+
+		float[] scores = new float[width * height];
+
+		// Row by row, with the innermost loop along the row, so every array is read sequentially.
+		ParallelUtilities.forEachBand(height, (beginRow, endRow) -> {
+			float[] yearTotals   = new float[width];
+			int[]   numMonths    = new int[width];
+			float[] monthTotals  = new float[width];
+			float[] totalWeights = new float[width];
+
+			for (int y = beginRow; y < endRow; y++) {
+				int row = y * width;
+
+				Arrays.fill(yearTotals, 0);
+				Arrays.fill(numMonths, 0);
+
+				for (int month = 0; month < 12; month++) {
+					Arrays.fill(monthTotals, 0);
+					Arrays.fill(totalWeights, 0);
+
+					for (int f = 0; f < numFilters; f++) {
+						if (weights[f] <= 0) {
+							continue;
+						}
+
+						PixelValues monthValues = values[f][month];
+						for (int x = 0; x < width; x++) {
+							float value = monthValues.get(row + x);
+							if (!Float.isNaN(value)) {
+								monthTotals[x] += weights[f] * ScoreFunction.getScore(value, ranges[f], falloffs[f]);
+								totalWeights[x] += weights[f];
+							}
+						}
+					}
+
+					for (int x = 0; x < width; x++) {
+						if (totalWeights[x] > 0) {
+							yearTotals[x] += monthTotals[x] / totalWeights[x];
+							numMonths[x]++;
+						}
+					}
+				}
+
+				for (int x = 0; x < width; x++) {
+					scores[row + x] = numMonths[x] > 0 ? yearTotals[x] / numMonths[x] : Float.NaN;
+				}
+			}
+		});
+
+		return new ScoreMap(width, height, scores);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public float getScore(int x, int y) {
+		requireRange(0, width - 1, x, "x");
+		requireRange(0, height - 1, y, "y");
+
+		return scores[y * width + x];
+	}
+
+	/**
+	 * Returns a view into the (immutable!) internal data, with dimensions [pixel 0..width*height].
+	 */
+	@SuppressWarnings("AssignmentOrReturnOfFieldWithMutableType")
+	public float[] getScores() {
+		return scores;
+	}
+
+	/**
+	 * Returns the {@code k} best locations, best first. Equal scores are ordered north to south, then west to east.
+	 * <p>
+	 * Each thread selects the best of a band of rows, and only those are merged, so the globe is never sorted.
+	 */
+	public List<RankedLocation> findTopK(int k) {
+		requireAtLeast(0, k, "k");
+
+		List<TopKSelector> bandSelectors = Collections.synchronizedList(new ArrayList<>());
+
+		ParallelUtilities.forEachBand(height, (beginRow, endRow) -> {
+			TopKSelector selector = new TopKSelector(k);
+
+			for (int i = beginRow * width; i < endRow * width; i++) {
+				selector.offer(scores[i], i);
+			}
+
+			bandSelectors.add(selector);
+		});
+
+		TopKSelector selector = new TopKSelector(k);
+		for (TopKSelector bandSelector : bandSelectors) {
+			selector.addAll(bandSelector);
+		}
+
+		int[]                indices   = selector.removeAllSorted();
+		List<RankedLocation> locations = new ArrayList<>(indices.length);
+		for (int i : indices) {
+			locations.add(new RankedLocation(i % width, i / width, width, height, scores[i]));
+		}
+
+		return locations;
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.util;
+
+import java.awt.event.ActionEvent;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import javax.swing.Timer;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import static org.digitalmodular.weathertolive.util.GraphicsUtilities.runOnEDT;
+
+/**
+ * Drives all running {@link Animator}s from a single timer on the EDT.
+ * <p>
+ * Instead of polling, the timer is set to wake up at the earliest frame deadline of all animators. While animating
+ * at 12 fps, the EDT is woken 12 times per second (per distinct deadline) instead of 1000 times.
+ * <p>
+ * The state is only touched on the EDT. Calls from other threads are passed on to the EDT.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-10
+@NotThreadSafe // Confined to the EDT
+final class AnimationClock {
+	private static final Set<Animator> ANIMATORS = new LinkedHashSet<>();
+
+	private static final Timer TIMER = new Timer(0, AnimationClock::tick);
+
+	static {
+		TIMER.setRepeats(false);
+		TIMER.setCoalesce(true);
+	}
+
+	private AnimationClock() {
+		throw new AssertionError();
+	}
+
+	static void add(Animator animator) {
+		runOnEDT(() -> {
+			ANIMATORS.add(animator);
+			schedule();
+		});
+	}
+
+	static void remove(Animator animator) {
+		runOnEDT(() -> {
+			if (ANIMATORS.remove(animator)) {
+				schedule();
+			}
+		});
+	}
+
+	/**
+	 * Should be called when the deadline of a running animator changed outside of a tick.
+	 */
+	static void deadlineChanged(Animator animator) {
+		runOnEDT(() -> {
+			if (ANIMATORS.contains(animator)) {
+				schedule();
+			}
+		});
+	}
+
+	private static void tick(ActionEvent ignored) {
+		long now = System.nanoTime();
+
+		// Copy, because animation listeners may start or stop animators.
+		for (Animator animator : new ArrayList<>(ANIMATORS)) {
+			animator.tick(now);
+		}
+
+		schedule();
+	}
+
+	private static void schedule() {
+		if (ANIMATORS.isEmpty()) {
+			TIMER.stop();
+			return;
+		}
+
+		long now            = System.nanoTime();
+		long remainingNanos = Long.MAX_VALUE;
+		for (Animator animator : ANIMATORS) {
+			remainingNanos = Math.min(remainingNanos, animator.getNextDeadline() - now);
+		}
+
+		// Round up, so the deadline has passed when the timer fires.
+		remainingNanos = Math.max(0, remainingNanos);
+		int delayMillis = (int)Math.min(Integer.MAX_VALUE, (remainingNanos + 999_999) / 1_000_000);
+
+		TIMER.setInitialDelay(delayMillis);
+		TIMER.restart();
+	}
+}
@@ -27,7 +27,15 @@
 package org.digitalmodular.weathertolive.util;
 
 import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.Nullable;
+
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -35,22 +43,164 @@ import static java.util.Objects.requireNonNull;
  */
 // Created 2017-07-18
 public class AnimationFrame {
-	private final BufferedImage image;
-	private final long          durationNanos;
+	private static final AtomicLong SERIAL_COUNTER = new AtomicLong();
+
+	private final           BufferedImage image;
+	private final @Nullable BufferedImage overlay;
+	private final @Nullable TileSource    tileSource;
+	private final           long          durationNanos;
+
+	private final List<BufferedImage> imageMipMaps;
+	private final List<BufferedImage> overlayMipMaps;
+
+	/**
+	 * Identifies this frame. Images are recycled, so they can't identify what a frame showed after it's replaced.
+	 */
+	private final long serial = SERIAL_COUNTER.incrementAndGet();
+
+	private final           long            previousSerial;
+	private final @Nullable List<Rectangle> dirtyRegions;
 
 	public AnimationFrame(BufferedImage image, long durationNanos) {
+		this(image, null, durationNanos);
+	}
+
+	/**
+	 * @param overlay An optional image to draw on top of {@code image}. It should have the same size and be (partly)
+	 *                transparent.
+	 */
+	public AnimationFrame(BufferedImage image, @Nullable BufferedImage overlay, long durationNanos) {
+		this(image, overlay, null, durationNanos);
+	}
+
+	/**
+	 * @param tileSource An optional tiled version of the frame, which should be preferred for drawing over
+	 *                   {@code image} and {@code overlay} where tiles are available.
+	 */
+	public AnimationFrame(BufferedImage image,
+	                      @Nullable BufferedImage overlay,
+	                      @Nullable TileSource tileSource,
+	                      long durationNanos) {
+		this(image, overlay, tileSource, durationNanos, Collections.emptyList(), Collections.emptyList(), 0, null);
+	}
+
+	private AnimationFrame(BufferedImage image,
+	                       @Nullable BufferedImage overlay,
+	                       @Nullable TileSource tileSource,
+	                       long durationNanos,
+	                       List<BufferedImage> imageMipMaps,
+	                       List<BufferedImage> overlayMipMaps,
+	                       long previousSerial,
+	                       @Nullable List<Rectangle> dirtyRegions) {
 		this.image = requireNonNull(image);
+		this.overlay = overlay;
+		this.tileSource = tileSource;
 		this.durationNanos = durationNanos;
+		this.imageMipMaps = Collections.unmodifiableList(requireNonNull(imageMipMaps, "imageMipMaps"));
+		this.overlayMipMaps = Collections.unmodifiableList(requireNonNull(overlayMipMaps, "overlayMipMaps"));
+		this.previousSerial = previousSerial;
+		this.dirtyRegions = dirtyRegions == null ? null : Collections.unmodifiableList(dirtyRegions);
 
 		if (durationNanos < 1) {
 			throw new IllegalArgumentException("'durationNanos' must be at least 1: " + durationNanos);
 		}
+
+		if (overlay == null && !overlayMipMaps.isEmpty()) {
+			throw new IllegalArgumentException("'overlayMipMaps' given without 'overlay'");
+		}
+	}
+
+	/**
+	 * Returns a copy of this frame with the given tiled version. The copy has no dirty regions.
+	 */
+	public AnimationFrame withTileSource(@Nullable TileSource tileSource) {
+		return new AnimationFrame(
+				image, overlay, tileSource, durationNanos, imageMipMaps, overlayMipMaps, 0, null);
+	}
+
+	/**
+	 * Returns a copy of this frame with the given mipmap chains. The copy has no dirty regions.
+	 *
+	 * @param imageMipMaps   Reduced versions of {@code image}, starting at half size, each level half the size of the
+	 *                       previous (rounded up). May be empty.
+	 * @param overlayMipMaps Reduced versions of {@code overlay}, in the same way. May have a different length than
+	 *                       {@code imageMipMaps}.
+	 */
+	public AnimationFrame withMipMaps(List<BufferedImage> imageMipMaps, List<BufferedImage> overlayMipMaps) {
+		return new AnimationFrame(
+				image, overlay, tileSource, durationNanos, imageMipMaps, overlayMipMaps, 0, null);
+	}
+
+	/**
+	 * Returns a copy of this frame that tells which parts of the overlay changed, compared to {@code previousFrame},
+	 * which has the same image. A viewer that shows that frame only has to repaint those parts.
+	 *
+	 * @param dirtyRegions The regions, in image coordinates, where the overlay differs from that of
+	 *                     {@code previousFrame}.
+	 */
+	public AnimationFrame withDirtyRegions(AnimationFrame previousFrame, List<Rectangle> dirtyRegions) {
+		requireNonNull(previousFrame, "previousFrame");
+		requireNonNull(dirtyRegions, "dirtyRegions");
+
+		return new AnimationFrame(image,
+		                          overlay,
+		                          tileSource,
+		                          durationNanos,
+		                          imageMipMaps,
+		                          overlayMipMaps,
+		                          previousFrame.serial,
+		                          dirtyRegions);
 	}
 
 	public BufferedImage getImage() {
 		return image;
 	}
 
+	public @Nullable BufferedImage getOverlay() {
+		return overlay;
+	}
+
+	public @Nullable TileSource getTileSource() {
+		return tileSource;
+	}
+
+	/**
+	 * Returns the reduced versions of the image. Element 0 is mipmap level 1 (half size).
+	 */
+	public List<BufferedImage> getImageMipMaps() {
+		return imageMipMaps;
+	}
+
+	/**
+	 * Returns the reduced versions of the overlay. Element 0 is mipmap level 1 (half size).
+	 */
+	public List<BufferedImage> getOverlayMipMaps() {
+		return overlayMipMaps;
+	}
+
+	/**
+	 * Returns a number that's unique to this frame. Copies made by the {@code with...} methods get their own.
+	 */
+	public long getSerial() {
+		return serial;
+	}
+
+	/**
+	 * Returns the {@link #getSerial() serial} of the frame that {@link #getDirtyRegions()} is relative to, or 0 if
+	 * there are no dirty regions.
+	 */
+	public long getPreviousSerial() {
+		return previousSerial;
+	}
+
+	/**
+	 * Returns the regions where the overlay differs from the frame with {@link #getPreviousSerial()}, or {@code null}
+	 * if unknown.
+	 */
+	public @Nullable List<Rectangle> getDirtyRegions() {
+		return dirtyRegions;
+	}
+
 	public long getDurationNanos() {
 		return durationNanos;
 	}
@@ -59,6 +209,7 @@ public class AnimationFrame {
 		return new Dimension(image.getWidth(), image.getHeight());
 	}
 
+	// Dirty regions are a hint for repainting, not part of the content of the frame.
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) {
@@ -69,14 +220,22 @@ public class AnimationFrame {
 
 		AnimationFrame other = (AnimationFrame)o;
 		return getDurationNanos() == other.getDurationNanos() &&
-		       getImage().equals(other.getImage());
+		       getImage().equals(other.getImage()) &&
+		       Objects.equals(getOverlay(), other.getOverlay()) &&
+		       Objects.equals(getTileSource(), other.getTileSource()) &&
+		       getImageMipMaps().equals(other.getImageMipMaps()) &&
+		       getOverlayMipMaps().equals(other.getOverlayMipMaps());
 	}
 
 	@Override
 	public int hashCode() {
 		int hashCode = 0x811C9DC5;
 		hashCode = 0x01000193 * (hashCode ^ image.hashCode());
+		hashCode = 0x01000193 * (hashCode ^ Objects.hashCode(overlay));
+		hashCode = 0x01000193 * (hashCode ^ Objects.hashCode(tileSource));
 		hashCode = 0x01000193 * (hashCode ^ Long.hashCode(durationNanos));
+		hashCode = 0x01000193 * (hashCode ^ imageMipMaps.hashCode());
+		hashCode = 0x01000193 * (hashCode ^ overlayMipMaps.hashCode());
 		return hashCode;
 	}
 }
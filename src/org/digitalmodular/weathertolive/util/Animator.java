@@ -26,42 +26,38 @@
  */
 package org.digitalmodular.weathertolive.util;
 
-import java.awt.event.ActionEvent;
-import java.awt.image.BufferedImage;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.function.Consumer;
 import java.util.function.IntConsumer;
-import javax.swing.Timer;
 
 import org.jetbrains.annotations.Nullable;
 
 import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
 
 /**
+ * Steps through a sequence of frames. All running animators are driven by one shared clock on the EDT, which wakes up
+ * at the frame deadlines only.
+ *
  * @author Mark Jeronimus
  */
 // Created 2022-08-29
 public class Animator {
-	private final Consumer<BufferedImage> imageSink;
+	private final Consumer<AnimationFrame> frameSink;
 
 	private List<AnimationFrame> animation = Collections.emptyList();
 
-	private final Timer timer;
+	private boolean running = false;
 
 	private int  animationFrame        = 0;
 	private long nextAnimationStepTick = 0;
 
 	private final Set<IntConsumer> animationListeners = new CopyOnWriteArraySet<>();
 
-	public Animator(Consumer<BufferedImage> imageSink) {
-		this.imageSink = requireNonNull(imageSink, "imageSink");
-
-		timer = new Timer(1, this::animationStep);
-		timer.setRepeats(true);
-		timer.setCoalesce(true);
+	public Animator(Consumer<AnimationFrame> frameSink) {
+		this.frameSink = requireNonNull(frameSink, "frameSink");
 	}
 
 	public @Nullable List<AnimationFrame> getAnimation() {
@@ -79,7 +75,7 @@ public class Animator {
 		if (sameLength) {
 			AnimationFrame frame = animation.get(animationFrame);
 
-			imageSink.accept(frame.getImage());
+			frameSink.accept(frame);
 		} else {
 			stopAnimation();
 
@@ -95,11 +91,17 @@ public class Animator {
 
 		nextAnimationStepTick = System.nanoTime();
 
-		timer.start();
+		running = true;
+		AnimationClock.add(this);
 	}
 
 	public void stopAnimation() {
-		timer.stop();
+		running = false;
+		AnimationClock.remove(this);
+	}
+
+	public boolean isRunning() {
+		return running;
 	}
 
 	public int getAnimationFrame() {
@@ -114,19 +116,34 @@ public class Animator {
 		this.animationFrame = NumberUtilities.clamp(animationFrame, 0, animation.size() - 1);
 		nextAnimationStepTick = System.nanoTime();
 		switchFrame();
+
+		if (running) {
+			AnimationClock.deadlineChanged(this);
+		}
 	}
 
-	public void animationStep(ActionEvent ignored) {
-		if (animation.isEmpty()) {
+	/**
+	 * Returns the {@link System#nanoTime()} at which the next frame is due.
+	 */
+	long getNextDeadline() {
+		return nextAnimationStepTick;
+	}
+
+	/**
+	 * Called by the clock. Advances one frame if its deadline has passed.
+	 */
+	void tick(long now) {
+		if (animation.isEmpty() || nextAnimationStepTick - now > 0) {
 			return;
 		}
 
-		long now       = System.nanoTime();
-		long remaining = nextAnimationStepTick - now;
-		if (remaining < 0) {
-			animationFrame = (animationFrame + 1) % animation.size();
-			switchFrame();
+		// After a stall (e.g. a long paint), continue from now instead of catching up with a burst of frames.
+		if (now - nextAnimationStepTick > animation.get(animationFrame).getDurationNanos()) {
+			nextAnimationStepTick = now;
 		}
+
+		animationFrame = (animationFrame + 1) % animation.size();
+		switchFrame();
 	}
 
 	/**
@@ -141,7 +158,7 @@ public class Animator {
 
 		nextAnimationStepTick += frame.getDurationNanos();
 
-		imageSink.accept(frame.getImage());
+		frameSink.accept(frame);
 		fireAnimationListeners();
 	}
 
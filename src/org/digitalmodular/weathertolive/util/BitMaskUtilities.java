@@ -0,0 +1,480 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.util;
+
+import java.awt.Rectangle;
+import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireAtLeast;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireThat;
+
+/**
+ * Functions on 1-bit images stored as packed bytes (MSB-first, rows padded to whole bytes), like the pixels of a
+ * {@link java.awt.image.BufferedImage#TYPE_BYTE_BINARY} image.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-09
+public final class BitMaskUtilities {
+	/**
+	 * Shorter runs are cheaper to store as part of a literal.
+	 */
+	private static final int MIN_RUN_LENGTH = 4;
+
+	/**
+	 * Reads and writes 8 bytes at once. The byte order doesn't matter as long as it's the same for reading and writing.
+	 */
+	private static final VarHandle LONG_VIEW =
+			MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private BitMaskUtilities() {
+		throw new AssertionError();
+	}
+
+	public static int getStride(int width) {
+		return (width + 7) / 8;
+	}
+
+	/**
+	 * Compares two masks and returns the bounding boxes of the differences.
+	 * <p>
+	 * The rows are examined in bands of {@code bandHeight} rows. Each band gets the bounding box of its differences
+	 * (rounded outwards to whole bytes), and consecutive bands with differences are merged. The result is empty when
+	 * the masks are equal.
+	 */
+	public static List<Rectangle> findChangedRegions(byte[] mask1,
+	                                                 byte[] mask2,
+	                                                 int width,
+	                                                 int height,
+	                                                 int bandHeight) {
+		requireAtLeast(1, width, "width");
+		requireAtLeast(1, height, "height");
+		requireAtLeast(1, bandHeight, "bandHeight");
+		int stride = getStride(width);
+		requireThat(mask1.length >= stride * height, "'mask1' too small for " + width + 'x' + height);
+		requireThat(mask2.length >= stride * height, "'mask2' too small for " + width + 'x' + height);
+
+		List<Rectangle>     regions = new ArrayList<>();
+		@Nullable Rectangle region  = null;
+
+		for (int bandY = 0; bandY < height; bandY += bandHeight) {
+			int bandEnd = Math.min(bandY + bandHeight, height);
+			int minByte = stride;
+			int maxByte = -1;
+
+			for (int y = bandY; y < bandEnd; y++) {
+				int rowBegin = y * stride;
+				int rowEnd   = rowBegin + stride;
+
+				int first = Arrays.mismatch(mask1, rowBegin, rowEnd, mask2, rowBegin, rowEnd);
+				if (first < 0) {
+					continue;
+				}
+
+				int last = rowEnd - 1;
+				while (mask1[last] == mask2[last]) {
+					last--;
+				}
+
+				minByte = Math.min(minByte, first);
+				maxByte = Math.max(maxByte, last - rowBegin);
+			}
+
+			if (maxByte < 0) {
+				region = null;
+				continue;
+			}
+
+			Rectangle bandRegion = new Rectangle(minByte * 8,
+			                                     bandY,
+			                                     Math.min((maxByte + 1) * 8, width) - minByte * 8,
+			                                     bandEnd - bandY);
+
+			if (region == null) {
+				region = bandRegion;
+				regions.add(region);
+			} else {
+				region.add(bandRegion);
+			}
+		}
+
+		return regions;
+	}
+
+	/**
+	 * Compresses a mask (or any byte array) with run-length encoding. Masks consist mostly of long runs of
+	 * {@code 0x00} and {@code 0xFF}, which take only a few bytes each.
+	 * <p>
+	 * The result is a sequence of records, each starting with a header {@code (length << 1) | isRun} as an unsigned
+	 * variable-length integer (7 bits per byte, least significant group first). A run is followed by the one byte to
+	 * repeat {@code length} times, a literal by {@code length} bytes to copy.
+	 */
+	public static byte[] compress(byte[] mask) {
+		requireNonNull(mask, "mask");
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(mask.length / 32 + 16);
+
+		int literalBegin = 0;
+		int i            = 0;
+		while (i < mask.length) {
+			byte value  = mask[i];
+			int  runEnd = i + 1;
+			while (runEnd < mask.length && mask[runEnd] == value) {
+				runEnd++;
+			}
+
+			if (runEnd - i >= MIN_RUN_LENGTH) {
+				if (literalBegin < i) {
+					writeHeader(out, i - literalBegin, false);
+					out.write(mask, literalBegin, i - literalBegin);
+				}
+
+				writeHeader(out, runEnd - i, true);
+				out.write(value);
+				literalBegin = runEnd;
+			}
+
+			i = runEnd;
+		}
+
+		if (literalBegin < mask.length) {
+			writeHeader(out, mask.length - literalBegin, false);
+			out.write(mask, literalBegin, mask.length - literalBegin);
+		}
+
+		return out.toByteArray();
+	}
+
+	private static void writeHeader(ByteArrayOutputStream out, int length, boolean isRun) {
+		long header = ((long)length << 1) | (isRun ? 1 : 0);
+
+		while (header >= 0x80) {
+			out.write((int)header & 0x7F | 0x80);
+			header >>>= 7;
+		}
+
+		out.write((int)header);
+	}
+
+	/**
+	 * Reverses {@link #compress(byte[])}. The decompressed data must fill {@code mask} exactly.
+	 *
+	 * @throws IllegalArgumentException when the compressed data is corrupt or has a different length than {@code mask}
+	 */
+	public static void decompress(byte[] compressed, byte[] mask) {
+		requireNonNull(compressed, "compressed");
+		requireNonNull(mask, "mask");
+
+		int in  = 0;
+		int out = 0;
+		try {
+			while (in < compressed.length) {
+				long header = 0;
+				int  shift  = 0;
+				int  b;
+				do {
+					b = compressed[in++];
+					header |= (long)(b & 0x7F) << shift;
+					shift += 7;
+				} while ((b & 0x80) != 0);
+
+				int length = (int)(header >>> 1);
+				if ((header & 1) != 0) {
+					Arrays.fill(mask, out, out + length, compressed[in++]);
+				} else {
+					System.arraycopy(compressed, in, mask, out, length);
+					in += length;
+				}
+
+				out += length;
+			}
+		} catch (IndexOutOfBoundsException ex) {
+			throw new IllegalArgumentException("Corrupt compressed data at " + in, ex);
+		}
+
+		if (out != mask.length) {
+			throw new IllegalArgumentException("Decompressed length " + out + " is not " + mask.length);
+		}
+	}
+
+	/**
+	 * Sets the bits of {@code dst} where at least {@code minCount} of the masks have the bit set, for the bytes
+	 * {@code [begin, end)}.
+	 * <p>
+	 * This counts 64 pixels at once, by keeping the counts as bit planes (one word per bit of the count) and adding the
+	 * masks with a ripple-carry adder, like hardware would.
+	 */
+	public static void countAtLeast(byte[][] masks, int minCount, byte[] dst, int begin, int end) {
+		requireNonNull(masks, "masks");
+		requireNonNull(dst, "dst");
+		requireAtLeast(0, begin, "begin");
+		requireThat(end <= dst.length, "'end' beyond 'dst': " + end + ", " + dst.length);
+		for (byte[] mask : masks) {
+			requireThat(end <= mask.length, "'end' beyond a mask: " + end + ", " + mask.length);
+		}
+
+		if (minCount <= 0) {
+			Arrays.fill(dst, begin, end, (byte)-1);
+			return;
+		} else if (minCount > masks.length) {
+			Arrays.fill(dst, begin, end, (byte)0);
+			return;
+		}
+
+		int    numPlanes = 32 - Integer.numberOfLeadingZeros(masks.length);
+		long[] planes    = new long[numPlanes];
+
+		for (int i = begin; i < end; i += 8) {
+			Arrays.fill(planes, 0);
+
+			for (byte[] mask : masks) {
+				long carry = readLong(mask, i, end);
+
+				for (int plane = 0; plane < numPlanes && carry != 0; plane++) {
+					long sum = planes[plane] ^ carry;
+					carry &= planes[plane];
+					planes[plane] = sum;
+				}
+			}
+
+			// Compare the counts with minCount, from the most significant bit down.
+			long greater = 0;
+			long equal   = -1;
+			for (int plane = numPlanes - 1; plane >= 0; plane--) {
+				if ((minCount >>> plane & 1) != 0) {
+					equal &= planes[plane];
+				} else {
+					greater |= equal & planes[plane];
+					equal &= ~planes[plane];
+				}
+			}
+
+			writeLong(dst, i, end, greater | equal);
+		}
+	}
+
+	/**
+	 * Sets every pixel within {@code radius} pixels of a set pixel (in a square, so in both directions separately), in
+	 * place. Rows wrap around, like longitudes do, while the first and last row are edges.
+	 * <p>
+	 * The cost doesn't depend on the radius. Columns use the van Herk/Gil-Werman algorithm: each block of
+	 * {@code 2 * radius + 1} rows gets running ORs from both ends, so every window is the OR of just two of those. This
+	 * works on whole rows, a word at a time. Within a row, the runs of set pixels are widened and filled a word at a
+	 * time, so each row costs its number of runs plus its number of words.
+	 */
+	public static void dilate(byte[] mask, int width, int height, int radius) {
+		requireNonNull(mask, "mask");
+		requireAtLeast(1, width, "width");
+		requireAtLeast(1, height, "height");
+		requireAtLeast(0, radius, "radius");
+		int stride = getStride(width);
+		requireThat(mask.length >= height * stride,
+		            "'mask' too small for a " + width + 'x' + height + " image: " + mask.length);
+
+		if (radius == 0) {
+			return;
+		}
+
+		ParallelUtilities.forEachBand(stride, (begin, end) ->
+				dilateColumns(mask, stride, height, radius, begin, end));
+		ParallelUtilities.forEachBand(height, (begin, end) ->
+				dilateRows(mask, width, stride, radius, begin, end));
+	}
+
+	/**
+	 * Clears every pixel within {@code radius} pixels of a clear pixel, in place. This is the opposite of
+	 * {@link #dilate(byte[], int, int, int)}, so pixels beyond the first and last row count as set.
+	 */
+	public static void erode(byte[] mask, int width, int height, int radius) {
+		requireNonNull(mask, "mask");
+		requireAtLeast(1, width, "width");
+		requireAtLeast(1, height, "height");
+
+		invert(mask, width, height);
+		dilate(mask, width, height, radius);
+		invert(mask, width, height);
+	}
+
+	/**
+	 * Inverts the pixels, and clears the bits that pad the rows to whole bytes.
+	 */
+	private static void invert(byte[] mask, int width, int height) {
+		int  stride  = getStride(width);
+		int  used    = width & 7;
+		byte padding = (byte)(used == 0 ? 0 : 0xFF >>> used);
+
+		for (int y = 0; y < height; y++) {
+			int offset = y * stride;
+			for (int i = 0; i < stride; i++) {
+				mask[offset + i] = (byte)~mask[offset + i];
+			}
+
+			mask[offset + stride - 1] &= (byte)~padding;
+		}
+	}
+
+	/**
+	 * The van Herk/Gil-Werman pass over the columns of bytes {@code [begin, end)}.
+	 */
+	private static void dilateColumns(byte[] mask, int stride, int height, int radius, int begin, int end) {
+		int    windowSize = 2 * radius + 1;
+		int    length     = end - begin;
+		byte[] suffixes   = new byte[height * length];
+
+		// Running ORs towards the start of each block, from the original rows.
+		for (int y = height - 1; y >= 0; y--) {
+			int offset = y * length;
+			if (y == height - 1 || (y + 1) % windowSize == 0) {
+				System.arraycopy(mask, y * stride + begin, suffixes, offset, length);
+			} else {
+				orRows(mask, y * stride + begin, suffixes, offset + length, suffixes, offset, length);
+			}
+		}
+
+		// Running ORs towards the end of each block, in place.
+		for (int y = 0; y < height; y++) {
+			if (y % windowSize != 0) {
+				orRows(mask, y * stride + begin, mask, (y - 1) * stride + begin, mask, y * stride + begin, length);
+			}
+		}
+
+		// Row y becomes the OR of rows [y - radius, y + radius]. Those span at most two blocks, so that's the suffix
+		// of the first block and the prefix of the second. Near the edges, one of them covers the whole window. Rows
+		// are written in increasing order, and each one only reads prefixes at or after it.
+		for (int y = 0; y < height; y++) {
+			int first = y - radius;
+			int last  = Math.min(y + radius, height - 1);
+			if (first <= 0) {
+				System.arraycopy(mask, last * stride + begin, mask, y * stride + begin, length);
+			} else if (first / windowSize == last / windowSize) {
+				System.arraycopy(suffixes, first * length, mask, y * stride + begin, length);
+			} else {
+				orRows(suffixes, first * length, mask, last * stride + begin, mask, y * stride + begin, length);
+			}
+		}
+	}
+
+	private static void orRows(byte[] src1, int offset1, byte[] src2, int offset2, byte[] dst, int offset, int length) {
+		for (int i = 0; i < length; i += 8) {
+			long value = readLong(src1, offset1 + i, offset1 + length) | readLong(src2, offset2 + i, offset2 + length);
+			writeLong(dst, offset + i, offset + length, value);
+		}
+	}
+
+	/**
+	 * The run-widening pass over the rows {@code [begin, end)}.
+	 */
+	private static void dilateRows(byte[] mask, int width, int stride, int radius, int begin, int end) {
+		byte[] row = new byte[stride];
+
+		for (int y = begin; y < end; y++) {
+			int offset = y * stride;
+
+			// BitSet wants the first pixel in the least significant bit.
+			for (int i = 0; i < stride; i++) {
+				row[i] = (byte)(Integer.reverse(mask[offset + i]) >>> 24);
+			}
+
+			BitSet pixels = BitSet.valueOf(row);
+			pixels.clear(width, stride * 8);
+			BitSet dilated = new BitSet(width);
+
+			if (2 * radius + 1 >= width) {
+				if (!pixels.isEmpty()) {
+					dilated.set(0, width);
+				}
+			} else {
+				// Runs come in order, so skip what the previous run filled already. This keeps the filling linear.
+				int filled = Integer.MIN_VALUE;
+				for (int x = pixels.nextSetBit(0); x >= 0; x = pixels.nextSetBit(x)) {
+					int runEnd = Math.min(pixels.nextClearBit(x), width);
+					setWrapped(dilated, Math.max(x - radius, filled), runEnd + radius, width);
+					filled = runEnd + radius;
+					x = runEnd;
+				}
+			}
+
+			byte[] bytes = dilated.toByteArray();
+			for (int i = 0; i < stride; i++) {
+				mask[offset + i] = i < bytes.length ? (byte)(Integer.reverse(bytes[i]) >>> 24) : 0;
+			}
+		}
+	}
+
+	/**
+	 * Sets the pixels {@code [begin, end)}, where pixels before 0 and from {@code width} wrap around.
+	 */
+	private static void setWrapped(BitSet pixels, int begin, int end, int width) {
+		if (end - begin >= width) {
+			pixels.set(0, width);
+		} else if (begin >= width) {
+			pixels.set(begin - width, end - width);
+		} else if (begin < 0) {
+			pixels.set(begin + width, width);
+			pixels.set(0, end);
+		} else if (end > width) {
+			pixels.set(begin, width);
+			pixels.set(0, end - width);
+		} else if (begin < end) {
+			pixels.set(begin, end);
+		}
+	}
+
+	private static long readLong(byte[] array, int i, int end) {
+		if (end - i >= 8) {
+			return (long)LONG_VIEW.get(array, i);
+		}
+
+		long value = 0;
+		for (int j = end - i - 1; j >= 0; j--) {
+			value = value << 8 | (array[i + j] & 0xFF);
+		}
+
+		return value;
+	}
+
+	private static void writeLong(byte[] array, int i, int end, long value) {
+		if (end - i >= 8) {
+			LONG_VIEW.set(array, i, value);
+			return;
+		}
+
+		for (int j = 0; j < end - i; j++) {
+			array[i + j] = (byte)(value >>> (j * 8));
+		}
+	}
+}
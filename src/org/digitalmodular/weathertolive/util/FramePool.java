@@ -0,0 +1,175 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.Nullable;
+
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireAtLeast;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+
+/**
+ * A pool of equally-sized images, to reuse large frame buffers instead of leaving them to the garbage collector.
+ * <p>
+ * Images are taken with {@link #acquire()} and given back with {@link #release(BufferedImage)}. The caller is
+ * responsible for releasing an image only after nobody (e.g. the EDT painting it) uses it anymore. Contents of
+ * acquired images are undefined.
+ * <p>
+ * The counters tell whether the pool is large enough: In a steady state, {@link #getNumAllocated()} shouldn't
+ * increase anymore.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-07
+@ThreadSafe
+public class FramePool {
+	private final           int             width;
+	private final           int             height;
+	private final           int             imageType;
+	private final @Nullable IndexColorModel colorModel;
+	private final           int             maxFree;
+
+	@GuardedBy("this")
+	private final Deque<BufferedImage> free = new ArrayDeque<>();
+
+	@GuardedBy("this")
+	private long numAllocated = 0;
+	@GuardedBy("this")
+	private long numAcquired  = 0;
+	@GuardedBy("this")
+	private long numReleased  = 0;
+	@GuardedBy("this")
+	private long numDiscarded = 0;
+
+	/**
+	 * @param colorModel Required for {@link BufferedImage#TYPE_BYTE_BINARY} and
+	 *                   {@link BufferedImage#TYPE_BYTE_INDEXED}, otherwise should be {@code null}.
+	 * @param maxFree    The maximum number of released images to keep for reuse. Excess images are discarded.
+	 */
+	public FramePool(int width, int height, int imageType, @Nullable IndexColorModel colorModel, int maxFree) {
+		this.width = requireAtLeast(1, width, "width");
+		this.height = requireAtLeast(1, height, "height");
+		this.imageType = imageType;
+		this.colorModel = colorModel;
+		this.maxFree = requireAtLeast(0, maxFree, "maxFree");
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Takes an image from the pool, or allocates a new one if the pool is empty.
+	 */
+	public BufferedImage acquire() {
+		synchronized (this) {
+			numAcquired++;
+
+			@Nullable BufferedImage image = free.pollLast();
+			if (image != null) {
+				return image;
+			}
+
+			numAllocated++;
+		}
+
+		// Allocate outside the lock. Large images take a while to clear.
+		if (colorModel != null) {
+			return new BufferedImage(width, height, imageType, colorModel);
+		} else {
+			return new BufferedImage(width, height, imageType);
+		}
+	}
+
+	/**
+	 * Returns an image to the pool. Images that don't belong to this pool (different size or type) are ignored, so
+	 * images from a previous pool can safely be released here.
+	 */
+	public void release(BufferedImage image) {
+		requireNonNull(image, "image");
+
+		if (image.getWidth() != width || image.getHeight() != height || image.getType() != imageType) {
+			return;
+		}
+
+		synchronized (this) {
+			numReleased++;
+
+			if (free.size() < maxFree) {
+				free.addLast(image);
+			} else {
+				numDiscarded++;
+			}
+		}
+	}
+
+	/**
+	 * The number of images created by this pool.
+	 */
+	public synchronized long getNumAllocated() {
+		return numAllocated;
+	}
+
+	public synchronized long getNumAcquired() {
+		return numAcquired;
+	}
+
+	public synchronized long getNumReleased() {
+		return numReleased;
+	}
+
+	/**
+	 * The number of released images that were dropped because the pool was full.
+	 */
+	public synchronized long getNumDiscarded() {
+		return numDiscarded;
+	}
+
+	public synchronized int getNumFree() {
+		return free.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return getClass().getSimpleName() + '[' + width + 'x' + height +
+		       ", allocated=" + numAllocated +
+		       ", acquired=" + numAcquired +
+		       ", released=" + numReleased +
+		       ", discarded=" + numDiscarded +
+		       ", free=" + free.size() + ']';
+	}
+}
@@ -122,6 +122,21 @@ public final class GraphicsUtilities {
 		return g.getRenderingHint(KEY_ANTIALIASING) == VALUE_ANTIALIAS_ON;
 	}
 
+	/**
+	 * Returns the factor by which the default screen scales the user interface (e.g. 2 on a 4K screen at 200%), or 1
+	 * when there's no screen.
+	 */
+	public static int getScaleFactor() {
+		if (GraphicsEnvironment.isHeadless()) {
+			return 1;
+		}
+
+		GraphicsDevice gd             = getDisplayDevice();
+		int            realWidth      = gd.getDisplayMode().getWidth();
+		float          effectiveWidth = gd.getDefaultConfiguration().getBounds().width;
+		return Math.round(realWidth / effectiveWidth);
+	}
+
 	/**
 	 * Shorthand to get the default screen object.
 	 */
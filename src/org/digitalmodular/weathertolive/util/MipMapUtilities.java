@@ -0,0 +1,256 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.util;
+
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireAtLeast;
+
+/**
+ * Builds mipmap levels of indexed and 1-bit images, working directly on their pixel bytes.
+ * <p>
+ * Each level halves the size of the previous level, rounding up. The reduce functions produce the rows
+ * {@code [beginRow, endRow)} of the destination level, so they can be run in row bands.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-09
+public final class MipMapUtilities {
+	private MipMapUtilities() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Produces the rows {@code [beginRow, endRow)} of a level from the pixel bytes of the level above it.
+	 */
+	@FunctionalInterface
+	public interface Reducer {
+		void reduce(byte[] src, int srcWidth, int srcHeight, byte[] dst, int beginRow, int endRow);
+	}
+
+	/**
+	 * For each byte, the 4 bits that are the AND of its bit pairs (MSB-first).
+	 */
+	private static final byte[] PAIR_AND = new byte[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			int nibble = 0;
+			for (int pair = 0; pair < 4; pair++) {
+				if ((i >> (6 - pair * 2) & 3) == 3) {
+					nibble |= 8 >> pair;
+				}
+			}
+
+			PAIR_AND[i] = (byte)nibble;
+		}
+	}
+
+	/**
+	 * Returns the number of levels (not counting level 0) to make, so that the smallest level is still at least
+	 * {@code minWidth} wide.
+	 */
+	public static int getNumReducedLevels(int width, int minWidth) {
+		requireAtLeast(1, width, "width");
+		requireAtLeast(1, minWidth, "minWidth");
+
+		int numLevels = 0;
+		while (getLevelSize(width, numLevels + 1) >= minWidth) {
+			numLevels++;
+		}
+
+		return numLevels;
+	}
+
+	/**
+	 * Returns the width or height of a level, given the width or height of level 0.
+	 */
+	public static int getLevelSize(int size, int level) {
+		return (size + (1 << level) - 1) >> level;
+	}
+
+	/**
+	 * Reduces an 8-bit indexed image where index 0 is special (e.g. sea) and the other indices are sorted (e.g. a
+	 * gradient). A destination pixel becomes 0 when more than half of its 2x2 source pixels are 0, otherwise it
+	 * becomes the average of the non-zero source pixels.
+	 */
+	public static void reduceIndexed(byte[] src,
+	                                 int srcWidth,
+	                                 int srcHeight,
+	                                 byte[] dst,
+	                                 int beginRow,
+	                                 int endRow) {
+		int dstWidth = getLevelSize(srcWidth, 1);
+
+		for (int y = beginRow; y < endRow; y++) {
+			int row1 = y * 2 * srcWidth;
+			int row2 = Math.min(y * 2 + 1, srcHeight - 1) * srcWidth;
+
+			for (int x = 0; x < dstWidth; x++) {
+				int x1 = x * 2;
+				int x2 = Math.min(x1 + 1, srcWidth - 1);
+
+				int a = src[row1 + x1] & 0xFF;
+				int b = src[row1 + x2] & 0xFF;
+				int c = src[row2 + x1] & 0xFF;
+				int d = src[row2 + x2] & 0xFF;
+
+				int count = (a != 0 ? 1 : 0) + (b != 0 ? 1 : 0) + (c != 0 ? 1 : 0) + (d != 0 ? 1 : 0);
+
+				int value = count >= 2 ? (a + b + c + d + count / 2) / count : 0;
+
+				dst[y * dstWidth + x] = (byte)value;
+			}
+		}
+	}
+
+	/**
+	 * Reduces an 8-bit indexed image where the indices are categories (e.g. climate classes) and index 0 is special
+	 * (e.g. sea). A destination pixel becomes 0 when more than half of its 2x2 source pixels are 0, otherwise it
+	 * becomes the most common non-zero source pixel (the first of them in reading order, on a tie).
+	 */
+	public static void reduceCategorical(byte[] src,
+	                                     int srcWidth,
+	                                     int srcHeight,
+	                                     byte[] dst,
+	                                     int beginRow,
+	                                     int endRow) {
+		int dstWidth = getLevelSize(srcWidth, 1);
+
+		for (int y = beginRow; y < endRow; y++) {
+			int row1 = y * 2 * srcWidth;
+			int row2 = Math.min(y * 2 + 1, srcHeight - 1) * srcWidth;
+
+			for (int x = 0; x < dstWidth; x++) {
+				int x1 = x * 2;
+				int x2 = Math.min(x1 + 1, srcWidth - 1);
+
+				byte a = src[row1 + x1];
+				byte b = src[row1 + x2];
+				byte c = src[row2 + x1];
+				byte d = src[row2 + x2];
+
+				int count = (a != 0 ? 1 : 0) + (b != 0 ? 1 : 0) + (c != 0 ? 1 : 0) + (d != 0 ? 1 : 0);
+
+				byte value;
+				if (count < 2) {
+					value = 0;
+				} else if (a != 0 && (a == b || a == c || a == d)) {
+					value = a;
+				} else if (b != 0 && (b == c || b == d)) {
+					value = b;
+				} else if (c != 0 && c == d) {
+					value = c;
+				} else {
+					// All different: the first non-zero one.
+					value = a != 0 ? a : b != 0 ? b : c;
+				}
+
+				dst[y * dstWidth + x] = value;
+			}
+		}
+	}
+
+	/**
+	 * Reduces a 1-bit image (MSB-first, rows padded to whole bytes). A destination bit is set only when all its 2x2
+	 * source bits are set, so isolated clear bits survive at every level.
+	 */
+	public static void reduceBinaryAnd(byte[] src,
+	                                   int srcWidth,
+	                                   int srcHeight,
+	                                   byte[] dst,
+	                                   int beginRow,
+	                                   int endRow) {
+		int srcStride = (srcWidth + 7) / 8;
+		int dstWidth  = getLevelSize(srcWidth, 1);
+		int dstStride = (dstWidth + 7) / 8;
+
+		for (int y = beginRow; y < endRow; y++) {
+			int row1 = y * 2 * srcStride;
+			int row2 = Math.min(y * 2 + 1, srcHeight - 1) * srcStride;
+			int out  = y * dstStride;
+
+			// Two source bytes make one destination byte.
+			for (int i = 0; i < dstStride; i++) {
+				int j = i * 2;
+
+				int hi = src[row1 + j] & src[row2 + j] & 0xFF;
+				int lo = j + 1 < srcStride ? src[row1 + j + 1] & src[row2 + j + 1] & 0xFF : 0;
+
+				dst[out + i] = (byte)(PAIR_AND[hi] << 4 | PAIR_AND[lo]);
+			}
+
+			// An odd last source column has no partner. Take it by itself.
+			if ((srcWidth & 1) != 0) {
+				int     x   = srcWidth - 1;
+				boolean set = getBit(src, row1, x) && getBit(src, row2, x);
+				setBit(dst, out, dstWidth - 1, set);
+			}
+		}
+	}
+
+	/**
+	 * Reduces a 1-bit image (MSB-first, rows padded to whole bytes). A destination bit is set when at least half of
+	 * its 2x2 source bits are set.
+	 */
+	public static void reduceBinaryMajority(byte[] src,
+	                                        int srcWidth,
+	                                        int srcHeight,
+	                                        byte[] dst,
+	                                        int beginRow,
+	                                        int endRow) {
+		int srcStride = (srcWidth + 7) / 8;
+		int dstWidth  = getLevelSize(srcWidth, 1);
+		int dstStride = (dstWidth + 7) / 8;
+
+		for (int y = beginRow; y < endRow; y++) {
+			int row1 = y * 2 * srcStride;
+			int row2 = Math.min(y * 2 + 1, srcHeight - 1) * srcStride;
+			int out  = y * dstStride;
+
+			for (int x = 0; x < dstWidth; x++) {
+				int x1 = x * 2;
+				int x2 = Math.min(x1 + 1, srcWidth - 1);
+
+				int count = (getBit(src, row1, x1) ? 1 : 0) + (getBit(src, row1, x2) ? 1 : 0) +
+				            (getBit(src, row2, x1) ? 1 : 0) + (getBit(src, row2, x2) ? 1 : 0);
+
+				setBit(dst, out, x, count >= 2);
+			}
+		}
+	}
+
+	private static boolean getBit(byte[] bits, int rowOffset, int x) {
+		return (bits[rowOffset + (x >> 3)] & 0x80 >>> (x & 7)) != 0;
+	}
+
+	private static void setBit(byte[] bits, int rowOffset, int x, boolean set) {
+		if (set) {
+			bits[rowOffset + (x >> 3)] |= (byte)(0x80 >>> (x & 7));
+		} else {
+			bits[rowOffset + (x >> 3)] &= (byte)~(0x80 >>> (x & 7));
+		}
+	}
+}
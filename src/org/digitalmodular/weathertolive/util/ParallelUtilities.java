@@ -0,0 +1,139 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireAtLeast;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+
+/**
+ * Helpers to spread work over all cores by splitting rasters into bands of rows.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-05
+public final class ParallelUtilities {
+	private ParallelUtilities() {
+		throw new AssertionError();
+	}
+
+	public static final int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * More bands than threads, so a few slow bands (e.g. mostly land) don't leave the other cores idle.
+	 */
+	private static final int BANDS_PER_THREAD = 4;
+
+	private static final ForkJoinPool BAND_POOL = new ForkJoinPool(
+			NUM_THREADS, newForkJoinThreadFactory("band-worker", Thread.NORM_PRIORITY), null, false);
+
+	@FunctionalInterface
+	public interface BandTask {
+		/**
+		 * @param begin first row of the band, inclusive
+		 * @param end   last row of the band, exclusive
+		 */
+		void run(int begin, int end);
+	}
+
+	/**
+	 * Splits the rows {@code [0, numRows)} into bands and runs the task on each band in parallel, using all cores.
+	 * Returns when all bands are done.
+	 * <p>
+	 * Nested calls (from within a band task) are allowed and don't deadlock.
+	 */
+	public static void forEachBand(int numRows, BandTask task) {
+		forEachBand(numRows, NUM_THREADS * BANDS_PER_THREAD, task);
+	}
+
+	/**
+	 * Splits the rows {@code [0, numRows)} into at most {@code maxBands} bands and runs the task on each band in
+	 * parallel. Returns when all bands are done.
+	 * <p>
+	 * Nested calls (from within a band task) are allowed and don't deadlock.
+	 */
+	public static void forEachBand(int numRows, int maxBands, BandTask task) {
+		requireAtLeast(0, numRows, "numRows");
+		requireAtLeast(1, maxBands, "maxBands");
+		requireNonNull(task, "task");
+
+		int numBands = Math.min(numRows, maxBands);
+		if (numBands <= 1) {
+			task.run(0, numRows);
+			return;
+		}
+
+		List<ForkJoinTask<?>> bands = new ArrayList<>(numBands);
+		for (int band = 0; band < numBands; band++) {
+			int begin = (int)((long)numRows * band / numBands);
+			int end   = (int)((long)numRows * (band + 1) / numBands);
+			bands.add(ForkJoinTask.adapt(() -> task.run(begin, end)));
+		}
+
+		if (ForkJoinTask.getPool() == BAND_POOL) {
+			ForkJoinTask.invokeAll(bands);
+		} else {
+			BAND_POOL.submit(() -> ForkJoinTask.invokeAll(bands)).join();
+		}
+	}
+
+	/**
+	 * Creates a factory for daemon threads with the specified name prefix and priority, for use with executors.
+	 */
+	public static ThreadFactory newThreadFactory(String namePrefix, int priority) {
+		requireNonNull(namePrefix, "namePrefix");
+
+		AtomicInteger threadNumber = new AtomicInteger();
+
+		return runnable -> {
+			Thread thread = new Thread(runnable, namePrefix + '-' + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			thread.setPriority(priority);
+			return thread;
+		};
+	}
+
+	private static ForkJoinPool.ForkJoinWorkerThreadFactory newForkJoinThreadFactory(String namePrefix,
+	                                                                                 int priority) {
+		AtomicInteger threadNumber = new AtomicInteger();
+
+		return pool -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName(namePrefix + '-' + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			thread.setPriority(priority);
+			return thread;
+		};
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.util;
+
+import java.awt.image.BufferedImage;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A large image that is available as a pyramid of square tiles, so a viewer can draw just what is on screen at the
+ * resolution it needs.
+ * <p>
+ * Level 0 is full resolution, level n is scaled down by 2<sup>n</sup>. At every level, the tile at
+ * {@code (tileX, tileY)} covers the full-resolution pixels starting at
+ * {@code (tileX * tileSize << level, tileY * tileSize << level)}. Tiles at the right and bottom edges may be smaller.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-08
+public interface TileSource {
+	/**
+	 * Returns the width of the full-resolution image.
+	 */
+	int getWidth();
+
+	/**
+	 * Returns the height of the full-resolution image.
+	 */
+	int getHeight();
+
+	/**
+	 * Returns the width and height of tiles, in pixels of the tile's own level.
+	 */
+	int getTileSize();
+
+	/**
+	 * Returns a tile if it's available, or {@code null} if it's not (yet) available.
+	 */
+	@Nullable BufferedImage getTile(int level, int tileX, int tileY);
+}
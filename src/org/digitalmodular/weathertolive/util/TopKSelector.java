@@ -0,0 +1,168 @@
+/*
+ * This file is part of Weather to Live.
+ *
+ * Copyleft 2022 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * Weather to Live. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.digitalmodular.weathertolive.util;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireAtLeast;
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
+
+/**
+ * Keeps the {@code k} highest values offered to it, with their indices, without sorting everything. Each offer takes
+ * {@code O(log k)} time at worst, and constant time for values that don't make it.
+ * <p>
+ * Equal values are ranked by index (lowest first), so the result doesn't depend on the order of offering. That makes
+ * it safe to give each thread its own selector and {@link #addAll(TopKSelector) merge} them afterwards.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2022-09-12
+@NotThreadSafe
+public final class TopKSelector {
+	/**
+	 * A min-heap: element 0 is the worst value kept.
+	 */
+	private final float[] values;
+	private final int[]   indices;
+	private       int     size = 0;
+
+	public TopKSelector(int k) {
+		requireAtLeast(0, k, "k");
+
+		values = new float[k];
+		indices = new int[k];
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns whether a value at the given index would be kept. Use this to skip expensive work early.
+	 */
+	public boolean wouldAccept(float value, int index) {
+		if (size < values.length) {
+			return true;
+		}
+
+		return values.length > 0 && isBetter(value, index, values[0], indices[0]);
+	}
+
+	/**
+	 * Offers a value. {@link Float#NaN} is never kept.
+	 */
+	public void offer(float value, int index) {
+		if (Float.isNaN(value)) {
+			return;
+		}
+
+		if (size < values.length) {
+			values[size] = value;
+			indices[size] = index;
+			siftUp(size);
+			size++;
+		} else if (values.length > 0 && isBetter(value, index, values[0], indices[0])) {
+			values[0] = value;
+			indices[0] = index;
+			siftDown(0);
+		}
+	}
+
+	public void addAll(TopKSelector other) {
+		requireNonNull(other, "other");
+
+		for (int i = 0; i < other.size; i++) {
+			offer(other.values[i], other.indices[i]);
+		}
+	}
+
+	/**
+	 * Returns the indices of the kept values, best first. This empties the selector.
+	 */
+	public int[] removeAllSorted() {
+		int[] sorted = new int[size];
+
+		for (int i = size - 1; i >= 0; i--) {
+			sorted[i] = indices[0];
+
+			size--;
+			values[0] = values[size];
+			indices[0] = indices[size];
+			siftDown(0);
+		}
+
+		return sorted;
+	}
+
+	private static boolean isBetter(float value1, int index1, float value2, int index2) {
+		return value1 > value2 || value1 == value2 && index1 < index2;
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (!isBetter(values[parent], indices[parent], values[i], indices[i])) {
+				break;
+			}
+
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			int worst = i;
+			int left  = i * 2 + 1;
+			int right = left + 1;
+
+			if (left < size && isBetter(values[worst], indices[worst], values[left], indices[left])) {
+				worst = left;
+			}
+			if (right < size && isBetter(values[worst], indices[worst], values[right], indices[right])) {
+				worst = right;
+			}
+
+			if (worst == i) {
+				return;
+			}
+
+			swap(i, worst);
+			i = worst;
+		}
+	}
+
+	private void swap(int i, int j) {
+		float value = values[i];
+		values[i] = values[j];
+		values[j] = value;
+
+		int index = indices[i];
+		indices[i] = indices[j];
+		indices[j] = index;
+	}
+}
@@ -29,6 +29,7 @@ package org.digitalmodular.weathertolive.util;
 import java.awt.Component;
 import java.awt.Graphics;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
 import java.awt.event.InputEvent;
@@ -41,11 +42,15 @@ import java.awt.event.MouseMotionListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import javax.swing.JPanel;
 
 import org.jetbrains.annotations.Nullable;
 
+import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireNonNull;
 import static org.digitalmodular.weathertolive.util.ValidatorUtilities.requireThat;
 
 /**
@@ -57,7 +62,23 @@ public class ZoomPanel extends JPanel implements MouseListener,
                                                  MouseWheelListener,
                                                  KeyListener,
                                                  ComponentListener {
-	private @Nullable BufferedImage image = null;
+	/**
+	 * Up to this many dirty regions are painted separately. More are left to Swing, which repaints their union.
+	 */
+	private static final int MAX_IMMEDIATE_REGIONS = 8;
+
+	private @Nullable BufferedImage image      = null;
+	private @Nullable BufferedImage overlay    = null;
+	private @Nullable TileSource    tileSource = null;
+
+	/**
+	 * The {@link AnimationFrame#getSerial() serial} of the frame on display, or 0 if the image or overlay was set some
+	 * other way.
+	 */
+	private long frameSerial = 0;
+
+	private List<BufferedImage> imageMipMaps   = Collections.emptyList();
+	private List<BufferedImage> overlayMipMaps = Collections.emptyList();
 
 	private int minZoom = -16;
 	private int maxZoom = 16;
@@ -72,6 +93,10 @@ public class ZoomPanel extends JPanel implements MouseListener,
 
 	private @Nullable MouseAdapter imageListener = null;
 
+	private @Nullable ViewportListener viewportListener = null;
+	private           Rectangle        lastViewport     = new Rectangle();
+	private           int              lastViewportZoom = Integer.MIN_VALUE;
+
 	@SuppressWarnings("OverridableMethodCallDuringObjectConstruction")
 	public ZoomPanel() {
 		super(null);
@@ -93,9 +118,191 @@ public class ZoomPanel extends JPanel implements MouseListener,
 			return;
 		}
 
-		boolean wasEmpty = this.image == null;
+		boolean wasEmpty = !hasImage();
 
 		this.image = image;
+		frameSerial = 0;
+
+		if (wasEmpty) {
+			zoomFit();
+		}
+
+		repaint();
+	}
+
+	public @Nullable BufferedImage getOverlay() {
+		return overlay;
+	}
+
+	/**
+	 * Sets an image that is drawn on top of the main image, with the same position and scale. It should have the same
+	 * size as the main image, and should be (partly) transparent.
+	 */
+	public void setOverlay(@Nullable BufferedImage overlay) {
+		if (Objects.equals(this.overlay, overlay)) {
+			return;
+		}
+
+		this.overlay = overlay;
+		frameSerial = 0;
+
+		repaint();
+	}
+
+	public List<BufferedImage> getImageMipMaps() {
+		return imageMipMaps;
+	}
+
+	public List<BufferedImage> getOverlayMipMaps() {
+		return overlayMipMaps;
+	}
+
+	/**
+	 * Sets reduced versions of the image and overlay. Element 0 of each list is mipmap level 1 (half size, rounded up),
+	 * and each next element halves the previous one. When zoomed out, the level closest to (but not smaller than) the
+	 * screen size is drawn, so the cost of painting depends on the size of the panel instead of the size of the image.
+	 * The lists may have different lengths, or be empty.
+	 */
+	public void setMipMaps(List<BufferedImage> imageMipMaps, List<BufferedImage> overlayMipMaps) {
+		requireNonNull(imageMipMaps, "imageMipMaps");
+		requireNonNull(overlayMipMaps, "overlayMipMaps");
+
+		if (this.imageMipMaps.equals(imageMipMaps) && this.overlayMipMaps.equals(overlayMipMaps)) {
+			return;
+		}
+
+		this.imageMipMaps = imageMipMaps;
+		this.overlayMipMaps = overlayMipMaps;
+
+		repaint();
+	}
+
+	/**
+	 * Sets the image, overlay, tile source and mipmaps of a frame at once.
+	 * <p>
+	 * When the frame only changes the overlay, and it has dirty regions relative to the overlay that's showing now,
+	 * only those regions are repainted. Otherwise, everything is repainted.
+	 */
+	public void setFrame(AnimationFrame frame) {
+		requireNonNull(frame, "frame");
+
+		@Nullable List<Rectangle> dirtyRegions = getDirtyRegions(frame);
+
+		boolean wasEmpty = !hasImage();
+
+		image = frame.getImage();
+		overlay = frame.getOverlay();
+		frameSerial = frame.getSerial();
+		tileSource = frame.getTileSource();
+		imageMipMaps = frame.getImageMipMaps();
+		overlayMipMaps = frame.getOverlayMipMaps();
+
+		if (wasEmpty) {
+			zoomFit();
+		}
+
+		if (dirtyRegions == null) {
+			repaint();
+		} else {
+			repaintImageRegions(dirtyRegions);
+		}
+	}
+
+	/**
+	 * Returns the regions of the image (in image coordinates) that look different after switching to the frame, or
+	 * {@code null} if that's unknown.
+	 */
+	private @Nullable List<Rectangle> getDirtyRegions(AnimationFrame frame) {
+		//noinspection ObjectEquality // Comparing identity, not equality
+		if (frame.getImage() != image ||
+		    frame.getTileSource() != null ||
+		    !frame.getImageMipMaps().equals(imageMipMaps)) {
+			return null;
+		}
+
+		int level = getLevelForZoom(zoom);
+		if (level > 0) {
+			// Tiles are point-sampled, which looks different from the mipmaps.
+			if (tileSource != null) {
+				return null;
+			}
+
+			int oldOverlayLevel = Math.min(level, overlayMipMaps.size());
+			int newOverlayLevel = Math.min(level, frame.getOverlayMipMaps().size());
+			if (oldOverlayLevel != newOverlayLevel) {
+				return null;
+			}
+		}
+
+		// Tiles that are showing now (at level 0) were rendered from the same data as the frame.
+		//noinspection ObjectEquality // Comparing identity, not equality
+		if (frame.getOverlay() == overlay) {
+			return Collections.emptyList();
+		} else if (frameSerial != 0 && frame.getPreviousSerial() == frameSerial) {
+			return frame.getDirtyRegions();
+		}
+
+		return null;
+	}
+
+	/**
+	 * Repaints the parts of the panel that show the given regions of the image. When there are a few, they're painted
+	 * right away, one by one. When there are many, Swing merges them into one.
+	 */
+	private void repaintImageRegions(List<Rectangle> imageRegions) {
+		if (imageRegions.isEmpty() || !hasImage()) {
+			return;
+		}
+
+		int displayWidth  = multiplyByZoom(getImageWidth());
+		int displayHeight = multiplyByZoom(getImageHeight());
+		int x             = (getWidth() - displayWidth) / 2 + offsetX;
+		int y             = (getHeight() - displayHeight) / 2 + offsetY;
+
+		// Round outwards to the mipmap level, plus a pixel for rounding errors of the scaling.
+		int       levelMask = (1 << getLevelForZoom(zoom)) - 1;
+		Rectangle bounds    = new Rectangle(0, 0, getWidth(), getHeight());
+
+		List<Rectangle> screenRegions = new ArrayList<>(imageRegions.size());
+		for (Rectangle region : imageRegions) {
+			int x1 = x + multiplyByZoom(region.x & ~levelMask) - 1;
+			int y1 = y + multiplyByZoom(region.y & ~levelMask) - 1;
+			int x2 = x + multiplyByZoom((region.x + region.width + levelMask) & ~levelMask) + 1;
+			int y2 = y + multiplyByZoom((region.y + region.height + levelMask) & ~levelMask) + 1;
+
+			Rectangle screenRegion = new Rectangle(x1, y1, x2 - x1, y2 - y1).intersection(bounds);
+			if (!screenRegion.isEmpty()) {
+				screenRegions.add(screenRegion);
+			}
+		}
+
+		if (screenRegions.size() <= MAX_IMMEDIATE_REGIONS && isShowing()) {
+			for (Rectangle screenRegion : screenRegions) {
+				paintImmediately(screenRegion);
+			}
+		} else {
+			for (Rectangle screenRegion : screenRegions) {
+				repaint(screenRegion);
+			}
+		}
+	}
+
+	public @Nullable TileSource getTileSource() {
+		return tileSource;
+	}
+
+	/**
+	 * Sets a tiled version of the image. When set, the visible tiles are drawn at the level matching the zoom. Where
+	 * tiles are missing, the image and overlay are drawn instead (if they have the same size as the tile source).
+	 */
+	public void setTileSource(@Nullable TileSource tileSource) {
+		if (Objects.equals(this.tileSource, tileSource)) {
+			return;
+		}
+
+		boolean wasEmpty = !hasImage();
+
+		this.tileSource = tileSource;
 
 		if (wasEmpty) {
 			zoomFit();
@@ -104,6 +311,28 @@ public class ZoomPanel extends JPanel implements MouseListener,
 		repaint();
 	}
 
+	private boolean hasImage() {
+		return image != null || tileSource != null;
+	}
+
+	private int getImageWidth() {
+		if (tileSource != null) {
+			return tileSource.getWidth();
+		}
+
+		assert image != null;
+		return image.getWidth();
+	}
+
+	private int getImageHeight() {
+		if (tileSource != null) {
+			return tileSource.getHeight();
+		}
+
+		assert image != null;
+		return image.getHeight();
+	}
+
 	public int getMinZoom() {
 		return minZoom;
 	}
@@ -133,20 +362,32 @@ public class ZoomPanel extends JPanel implements MouseListener,
 		this.zoom = NumberUtilities.clamp(zoom, minZoom, maxZoom);
 	}
 
+	/**
+	 * Returns the {@link TileSource tile level} with at least the resolution of the screen at the given zoom.
+	 */
+	public static int getLevelForZoom(int zoom) {
+		if (zoom >= 0) {
+			return 0;
+		}
+
+		// Rounded down log2 of the scale-down factor
+		return NumberUtilities.bitSize(1 - zoom) - 1;
+	}
+
 	public void zoomFit() {
 		offsetX = 0;
 		offsetY = 0;
 		zoom = 0;
 
-		if (image == null) {
+		if (!hasImage()) {
 			return;
 		}
 
 		// Find ideal zoom.
 		int width       = Math.max(1, getWidth());
 		int height      = Math.max(1, getHeight());
-		int imageWidth  = image.getWidth();
-		int imageHeight = image.getHeight();
+		int imageWidth  = getImageWidth();
+		int imageHeight = getImageHeight();
 		if (width > imageWidth) {
 			zoom = width / imageWidth - 1;
 		} else {
@@ -166,15 +407,47 @@ public class ZoomPanel extends JPanel implements MouseListener,
 		repaint();
 	}
 
+	/**
+	 * Zooms and pans so the given part of the image fills the panel. The part may extend beyond the right edge of the
+	 * image, where it continues at the left edge.
+	 */
+	public void zoomTo(Rectangle imageRect) {
+		requireNonNull(imageRect, "imageRect");
+
+		if (!hasImage()) {
+			return;
+		}
+
+		int width      = Math.max(1, getWidth());
+		int height     = Math.max(1, getHeight());
+		int rectWidth  = Math.max(1, imageRect.width);
+		int rectHeight = Math.max(1, imageRect.height);
+		if (width > rectWidth) {
+			zoom = width / rectWidth - 1;
+		} else {
+			zoom = -(rectWidth / width);
+		}
+
+		if (height > rectHeight) {
+			zoom = Math.min(zoom, height / rectHeight - 1);
+		} else {
+			zoom = Math.min(zoom, -(rectHeight / height));
+		}
+
+		zoom = NumberUtilities.clamp(zoom, minZoom, maxZoom);
+
+		setCenter((imageRect.x + rectWidth / 2) % getImageWidth(), imageRect.y + rectHeight / 2);
+	}
+
 	public void setCenter(int x, int y) {
-		if (image == null) {
+		if (!hasImage()) {
 			return;
 		}
 
 		centered = false;
 
-		int imageWidth  = image.getWidth();
-		int imageHeight = image.getHeight();
+		int imageWidth  = getImageWidth();
+		int imageHeight = getImageHeight();
 
 		int displayWidth  = multiplyByZoom(imageWidth);
 		int displayHeight = multiplyByZoom(imageHeight);
@@ -219,17 +492,62 @@ public class ZoomPanel extends JPanel implements MouseListener,
 		this.imageListener = imageListener;
 	}
 
+	/**
+	 * Sets a listener that is notified (on the EDT) whenever the visible part of the image or the zoom changes.
+	 */
+	public void setViewportListener(@Nullable ViewportListener viewportListener) {
+		this.viewportListener = viewportListener;
+
+		lastViewportZoom = Integer.MIN_VALUE;
+		repaint();
+	}
+
+	/**
+	 * Returns the part of the image that is visible, in image coordinates. It's empty when there's no image or the
+	 * image is panned out of view.
+	 */
+	public Rectangle getVisibleImageRect() {
+		if (!hasImage()) {
+			return new Rectangle();
+		}
+
+		Point ul = toImageCoordinate(0, 0);
+		Point lr = toImageCoordinate(getWidth() - 1, getHeight() - 1);
+
+		Rectangle visible = new Rectangle(ul.x, ul.y, lr.x - ul.x + 1, lr.y - ul.y + 1);
+		visible = visible.intersection(new Rectangle(0, 0, getImageWidth(), getImageHeight()));
+		return visible.isEmpty() ? new Rectangle() : visible;
+	}
+
+	private void updateViewport() {
+		if (viewportListener == null) {
+			return;
+		}
+
+		Rectangle visible = getVisibleImageRect();
+		if (visible.equals(lastViewport) && zoom == lastViewportZoom) {
+			return;
+		}
+
+		lastViewport = visible;
+		lastViewportZoom = zoom;
+
+		viewportListener.viewportChanged(new Rectangle(visible), zoom);
+	}
+
 	@Override
 	public void paintComponent(Graphics g) {
 		// Draw background.
 		super.paintComponent(g);
 
-		if (image == null) {
+		if (!hasImage()) {
 			return;
 		}
 
-		int imageWidth  = image.getWidth();
-		int imageHeight = image.getHeight();
+		updateViewport();
+
+		int imageWidth  = getImageWidth();
+		int imageHeight = getImageHeight();
 
 		int displayWidth  = multiplyByZoom(imageWidth);
 		int displayHeight = multiplyByZoom(imageHeight);
@@ -237,9 +555,16 @@ public class ZoomPanel extends JPanel implements MouseListener,
 		int x = (getWidth() - displayWidth) / 2 + offsetX;
 		int y = (getHeight() - displayHeight) / 2 + offsetY;
 
-		if (zoom <= 0) {
-			g.drawImage(image, x, y, displayWidth, displayHeight, this);
+		if (tileSource != null) {
+			paintTiles(g, tileSource, x, y);
+		} else if (zoom <= 0) {
+			Rectangle visible = getVisibleImageRect();
+			if (!visible.isEmpty()) {
+				paintImageRegion(g, x, y, visible.x, visible.y, visible.x + visible.width, visible.y + visible.height);
+			}
 		} else {
+			assert image != null;
+
 			Point ul        = toImageCoordinate(0, 0);
 			int   blockSize = multiplyByZoom(1);
 			x += ul.x * blockSize;
@@ -281,9 +606,111 @@ public class ZoomPanel extends JPanel implements MouseListener,
 			            ul.x + visibleImageWidth,
 			            ul.y + visibleImageHeight,
 			            this);
+
+			if (overlay != null) {
+				g.drawImage(overlay,
+				            x,
+				            y,
+				            x + visibleImageWidth * blockSize,
+				            y + visibleImageHeight * blockSize,
+				            ul.x,
+				            ul.y,
+				            ul.x + visibleImageWidth,
+				            ul.y + visibleImageHeight,
+				            this);
+			}
 		}
 	}
 
+	/**
+	 * Draws the visible tiles, where {@code (x, y)} is the position of the image's top-left corner on screen.
+	 */
+	private void paintTiles(Graphics g, TileSource tileSource, int x, int y) {
+		Rectangle visible = getVisibleImageRect();
+		if (visible.isEmpty()) {
+			return;
+		}
+
+		int imageWidth  = tileSource.getWidth();
+		int imageHeight = tileSource.getHeight();
+		int level       = getLevelForZoom(zoom);
+		int tileSpan    = tileSource.getTileSize() << level; // In image pixels
+
+		boolean canFallBack = image != null && image.getWidth() == imageWidth && image.getHeight() == imageHeight;
+
+		int beginTileX = visible.x / tileSpan;
+		int beginTileY = visible.y / tileSpan;
+		int endTileX   = (visible.x + visible.width - 1) / tileSpan;
+		int endTileY   = (visible.y + visible.height - 1) / tileSpan;
+
+		for (int tileY = beginTileY; tileY <= endTileY; tileY++) {
+			int imageY1 = tileY * tileSpan;
+			int imageY2 = Math.min(imageY1 + tileSpan, imageHeight);
+			int y1      = y + multiplyByZoom(imageY1);
+			int y2      = y + multiplyByZoom(imageY2);
+
+			for (int tileX = beginTileX; tileX <= endTileX; tileX++) {
+				int imageX1 = tileX * tileSpan;
+				int imageX2 = Math.min(imageX1 + tileSpan, imageWidth);
+				int x1      = x + multiplyByZoom(imageX1);
+				int x2      = x + multiplyByZoom(imageX2);
+
+				@Nullable BufferedImage tile = tileSource.getTile(level, tileX, tileY);
+				if (tile != null) {
+					g.drawImage(tile, x1, y1, x2, y2, 0, 0, tile.getWidth(), tile.getHeight(), this);
+				} else if (canFallBack) {
+					paintImageRegion(g, x, y, imageX1, imageY1, imageX2, imageY2);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Draws part of the image and overlay from the mipmap levels matching the zoom, where {@code (x, y)} is the
+	 * position of the image's top-left corner on screen. The region is rounded outwards to whole pixels of the level.
+	 */
+	private void paintImageRegion(Graphics g, int x, int y, int imageX1, int imageY1, int imageX2, int imageY2) {
+		assert image != null;
+
+		int level = getLevelForZoom(zoom);
+
+		paintMipMapRegion(g, image, imageMipMaps, level, x, y, imageX1, imageY1, imageX2, imageY2);
+
+		if (overlay != null) {
+			paintMipMapRegion(g, overlay, overlayMipMaps, level, x, y, imageX1, imageY1, imageX2, imageY2);
+		}
+	}
+
+	private void paintMipMapRegion(Graphics g,
+	                               BufferedImage image,
+	                               List<BufferedImage> mipMaps,
+	                               int level,
+	                               int x,
+	                               int y,
+	                               int imageX1,
+	                               int imageY1,
+	                               int imageX2,
+	                               int imageY2) {
+		level = Math.min(level, mipMaps.size());
+		BufferedImage levelImage = level == 0 ? image : mipMaps.get(level - 1);
+
+		int levelX1 = imageX1 >> level;
+		int levelY1 = imageY1 >> level;
+		int levelX2 = Math.min(MipMapUtilities.getLevelSize(imageX2, level), levelImage.getWidth());
+		int levelY2 = Math.min(MipMapUtilities.getLevelSize(imageY2, level), levelImage.getHeight());
+
+		g.drawImage(levelImage,
+		            x + multiplyByZoom(levelX1 << level),
+		            y + multiplyByZoom(levelY1 << level),
+		            x + multiplyByZoom(levelX2 << level),
+		            y + multiplyByZoom(levelY2 << level),
+		            levelX1,
+		            levelY1,
+		            levelX2,
+		            levelY2,
+		            this);
+	}
+
 	@Override
 	public void mouseEntered(MouseEvent e) {
 	}
@@ -297,7 +724,7 @@ public class ZoomPanel extends JPanel implements MouseListener,
 	public void mousePressed(MouseEvent e) {
 		requestFocus();
 
-		if (image == null) {
+		if (!hasImage()) {
 			return;
 		}
 
@@ -326,7 +753,7 @@ public class ZoomPanel extends JPanel implements MouseListener,
 	@Override
 	@SuppressWarnings("deprecation")
 	public void mouseReleased(MouseEvent e) {
-		if (image == null) {
+		if (!hasImage()) {
 			return;
 		}
 
@@ -350,7 +777,7 @@ public class ZoomPanel extends JPanel implements MouseListener,
 	@Override
 	@SuppressWarnings("deprecation")
 	public void mouseClicked(MouseEvent e) {
-		if (image == null) {
+		if (!hasImage()) {
 			return;
 		}
 
@@ -375,7 +802,7 @@ public class ZoomPanel extends JPanel implements MouseListener,
 	@Override
 	@SuppressWarnings("deprecation")
 	public void mouseMoved(MouseEvent e) {
-		if (image == null) {
+		if (!hasImage()) {
 			return;
 		}
 
@@ -398,7 +825,7 @@ public class ZoomPanel extends JPanel implements MouseListener,
 	@Override
 	@SuppressWarnings("deprecation")
 	public void mouseDragged(MouseEvent e) {
-		if (image == null) {
+		if (!hasImage()) {
 			return;
 		}
 
@@ -429,10 +856,10 @@ public class ZoomPanel extends JPanel implements MouseListener,
 	}
 
 	private Point toImageCoordinate(int x, int y) {
-		assert image != null;
+		assert hasImage();
 
-		int imageWidth  = image.getWidth();
-		int imageHeight = image.getHeight();
+		int imageWidth  = getImageWidth();
+		int imageHeight = getImageHeight();
 
 		int displayWidth  = multiplyByZoom(imageWidth);
 		int displayHeight = multiplyByZoom(imageHeight);
@@ -447,16 +874,16 @@ public class ZoomPanel extends JPanel implements MouseListener,
 	}
 
 	private boolean insideImage(int x, int y) {
-		assert image != null;
+		assert hasImage();
 
-		int imageWidth  = image.getWidth();
-		int imageHeight = image.getHeight();
+		int imageWidth  = getImageWidth();
+		int imageHeight = getImageHeight();
 		return x >= 0 && y >= 0 && x < imageWidth && y < imageHeight;
 	}
 
 	@Override
 	public void mouseWheelMoved(MouseWheelEvent e) {
-		if (image == null) {
+		if (!hasImage()) {
 			return;
 		}
 
@@ -497,7 +924,7 @@ public class ZoomPanel extends JPanel implements MouseListener,
 
 	@Override
 	public void keyTyped(KeyEvent e) {
-		if (image == null) {
+		if (!hasImage()) {
 			return;
 		}
 
@@ -525,7 +952,7 @@ public class ZoomPanel extends JPanel implements MouseListener,
 
 	@Override
 	public void componentResized(ComponentEvent e) {
-		if (image == null || !centered) {
+		if (!hasImage() || !centered) {
 			return;
 		}
 